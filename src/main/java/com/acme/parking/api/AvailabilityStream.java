@@ -0,0 +1,240 @@
+package com.acme.parking.api;
+
+import com.acme.parking.api.model.Availability;
+import com.acme.parking.exception.AvailabilityStreamUnavailableException;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import com.acme.parking.properties.AvailabilityStreamProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pushes the {@link Availability} of a parking space type to its subscribers as server-sent events,
+ * from the local {@link ParkingSpaceView}, so that displays don't poll the inventory.
+ * <p>
+ * The view is checked {@code app.availabilityStream.maxUpdatesPerSecond} times per second, and each subscriber is sent
+ * at most one update per check: the latest availability of its type, changes in between being coalesced.
+ * Updates are written on a small pool of sender threads, one at a time per subscriber. A subscriber still reading
+ * its previous update keeps only the latest one pending, and is disconnected once it has been reading for longer than
+ * {@code app.availabilityStream.slowSubscriberTimeout}: writes to the connection fail by then, so that a slow subscriber
+ * does not hold a sender thread any longer, see {@link com.acme.parking.config.WebServerConfig}.
+ * Updates pause while the view is not caught up.
+ */
+@Component
+public class AvailabilityStream implements SmartLifecycle {
+
+  private static final Logger log = LoggerFactory.getLogger(AvailabilityStream.class);
+
+  public static final String SUBSCRIBERS_METRIC = "parking.availability.stream.subscribers";
+  public static final String DROPPED_METRIC = "parking.availability.stream.dropped";
+
+  static final String EVENT_NAME = "availability";
+
+  private final ParkingSpaceView view;
+
+  private final AvailabilityStreamProperties properties;
+
+  private final Executor sender;
+
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+  // Latest availability of each type sent to the subscribers, only accessed on checks
+  private final Map<Type, Availability> latest = new EnumMap<>(Type.class);
+
+  private long latestVersion = -1;
+
+  private final Counter dropped;
+
+  private ScheduledExecutorService checker;
+
+  @Autowired
+  public AvailabilityStream(ParkingSpaceView view, AvailabilityStreamProperties properties, MeterRegistry meterRegistry) {
+    this(view, properties, meterRegistry, Executors.newFixedThreadPool(properties.getSenderThreads(),
+      new CustomizableThreadFactory("availability-stream-")));
+  }
+
+  AvailabilityStream(ParkingSpaceView view, AvailabilityStreamProperties properties, MeterRegistry meterRegistry,
+                     Executor sender) {
+    this.view = view;
+    this.properties = properties;
+    this.sender = sender;
+    Gauge.builder(SUBSCRIBERS_METRIC, subscribers, Set::size).register(meterRegistry);
+    this.dropped = Counter.builder(DROPPED_METRIC).description("Slow subscribers disconnected").register(meterRegistry);
+  }
+
+  public SseEmitter subscribe(Type type) {
+    return subscribe(type, new SseEmitter(properties.getTimeout().toMillis()));
+  }
+
+  SseEmitter subscribe(Type type, SseEmitter emitter) {
+    if (!view.isEnabled()) {
+      throw new AvailabilityStreamUnavailableException("Availability stream requires the parking space view, "
+        + "please poll the parking spaces instead");
+    }
+    if (subscribers.size() >= properties.getMaxSubscribers()) {
+      throw new AvailabilityStreamUnavailableException(String.format("Too many availability subscribers (limit %d), "
+        + "please retry later", properties.getMaxSubscribers()));
+    }
+    Subscriber subscriber = new Subscriber(type, emitter);
+    emitter.onCompletion(() -> subscribers.remove(subscriber));
+    emitter.onTimeout(() -> subscribers.remove(subscriber));
+    emitter.onError(exception -> subscribers.remove(subscriber));
+    subscribers.add(subscriber);
+    // Current availability right away, later ones on checks
+    Availability availability = view.availability(type);
+    if (availability != null) {
+      subscriber.pending.set(availability);
+      dispatch(subscriber, System.currentTimeMillis());
+    }
+    return emitter;
+  }
+
+  int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  // Runs on the checker thread only
+  void check() {
+    long version = view.getVersion();
+    if (version != latestVersion && view.isCaughtUp()) {
+      Map<Type, Availability> changes = new EnumMap<>(Type.class);
+      for (Type type : Type.values()) {
+        Availability availability = view.availability(type);
+        if (availability != null && !availability.equals(latest.get(type))) {
+          changes.put(type, availability);
+        }
+      }
+      latest.putAll(changes);
+      latestVersion = version;
+      if (!changes.isEmpty()) {
+        for (Subscriber subscriber : subscribers) {
+          Availability availability = changes.get(subscriber.type);
+          if (availability != null) {
+            subscriber.pending.set(availability);
+          }
+        }
+      }
+    }
+    long now = System.currentTimeMillis();
+    for (Subscriber subscriber : subscribers) {
+      if (subscriber.pending.get() != null) {
+        dispatch(subscriber, now);
+      }
+    }
+  }
+
+  private void dispatch(Subscriber subscriber, long now) {
+    if (subscriber.sending.compareAndSet(false, true)) {
+      subscriber.sendingSinceMillis = now;
+      sender.execute(() -> send(subscriber));
+    } else if (now - subscriber.sendingSinceMillis > properties.getSlowSubscriberTimeout().toMillis()
+      && subscribers.remove(subscriber)) {
+      // Completed by its sender once the write in progress returns, or fails on the write timeout.
+      // Completing it here would wait for that write as well, emitters being locked while writing.
+      subscriber.dropped = true;
+      dropped.increment();
+    }
+  }
+
+  private void send(Subscriber subscriber) {
+    try {
+      Availability availability = subscriber.pending.getAndSet(null);
+      // Subscribers already sent the availability on subscription may be offered it again by the next check
+      if (availability != null && !subscriber.dropped && !availability.equals(subscriber.sent)) {
+        subscriber.emitter.send(SseEmitter.event().name(EVENT_NAME).data(availability, MediaType.APPLICATION_JSON));
+        subscriber.sent = availability;
+      }
+      if (subscriber.dropped) {
+        subscriber.emitter.complete();
+      }
+    } catch (IOException | IllegalStateException e) {
+      // Disconnected, or completed in the meantime
+      subscribers.remove(subscriber);
+      subscriber.emitter.completeWithError(e);
+    } finally {
+      subscriber.sending.set(false);
+    }
+  }
+
+  @Override
+  public void start() {
+    if (!view.isEnabled()) {
+      return;
+    }
+    checker = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("availability-stream-checker-"));
+    long periodMicros = TimeUnit.SECONDS.toMicros(1) / properties.getMaxUpdatesPerSecond();
+    checker.scheduleAtFixedRate(() -> {
+      // Later checks would be cancelled by an exception
+      try {
+        check();
+      } catch (RuntimeException e) {
+        log.error("Availability check failed", e);
+      }
+    }, periodMicros, periodMicros, TimeUnit.MICROSECONDS);
+  }
+
+  @Override
+  public void stop() {
+    if (checker != null) {
+      checker.shutdownNow();
+      checker = null;
+    }
+    for (Subscriber subscriber : subscribers) {
+      subscriber.emitter.complete();
+    }
+    subscribers.clear();
+    if (sender instanceof ExecutorService) {
+      ((ExecutorService) sender).shutdown();
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return checker != null;
+  }
+
+  private static final class Subscriber {
+
+    private final Type type;
+
+    private final SseEmitter emitter;
+
+    // Latest availability not sent yet, replaced by newer ones until its sender takes it
+    private final AtomicReference<Availability> pending = new AtomicReference<>();
+
+    private final AtomicBoolean sending = new AtomicBoolean();
+
+    // Last availability sent, only accessed by the sender holding the sending flag
+    private Availability sent;
+
+    private volatile long sendingSinceMillis;
+
+    private volatile boolean dropped;
+
+    private Subscriber(Type type, SseEmitter emitter) {
+      this.type = type;
+      this.emitter = emitter;
+    }
+  }
+}
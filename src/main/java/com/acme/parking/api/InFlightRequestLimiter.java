@@ -0,0 +1,46 @@
+package com.acme.parking.api;
+
+import com.acme.parking.exception.ServiceOverloadedException;
+import com.acme.parking.properties.AppProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of API requests waiting for a reply from the inventory.
+ * Requests above the limit are rejected right away with {@link ServiceOverloadedException} instead of queueing.
+ */
+@Component
+public class InFlightRequestLimiter {
+
+  private final int maxInFlightRequests;
+  private final Semaphore permits;
+
+  @Autowired
+  public InFlightRequestLimiter(AppProperties config) {
+    this.maxInFlightRequests = config.getMaxInFlightRequests();
+    this.permits = new Semaphore(maxInFlightRequests);
+  }
+
+  /**
+   * Starts the request if a permit is available, the permit is released when the returned future completes.
+   */
+  public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> request) {
+    if (!permits.tryAcquire()) {
+      return CompletableFuture.failedFuture(new ServiceOverloadedException(maxInFlightRequests));
+    }
+    try {
+      return request.get().whenComplete((result, exception) -> permits.release());
+    } catch (RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  public int getInFlightRequests() {
+    return maxInFlightRequests - permits.availablePermits();
+  }
+}
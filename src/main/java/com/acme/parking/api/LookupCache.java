@@ -0,0 +1,173 @@
+package com.acme.parking.api;
+
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpaceEvent;
+import com.acme.parking.properties.LookupCacheProperties;
+import com.acme.parking.properties.MessagingProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of the parkings & parking spaces looked up by API nodes, bounded in size.
+ * <p>
+ * Completed parkings with a calculated billing never change: they are cached until evicted.
+ * Ongoing parkings & parking spaces change as parkings start & complete, so they are only cached when every
+ * {@link ParkingSpaceEvent} reaches this node, ie. with the local view or the in-process transport, and are invalidated
+ * by these events. Lookups replied across an event are not cached, as they may predate it.
+ * Parkings with a pending billing are never cached.
+ * Hits, misses & evictions are reported in the {@code cache.*} metrics, tagged by cache name.
+ */
+@Component
+public class LookupCache {
+
+  public static final String PARKINGS = "parkings";
+  public static final String PARKING_SPACES = "parkingSpaces";
+
+  private final boolean enabled;
+
+  private final boolean viewEnabled;
+
+  // Whether every parking space event reaches this node, for changing entries to be invalidated
+  private final boolean invalidatedByEvents;
+
+  private final Cache<Long, Parking> parkings;
+
+  private final Cache<Long, ParkingSpace> parkingSpaces;
+
+  // Ongoing parking cached for each parking space, invalidated on the next event of its parking space.
+  // Entries are left behind by evictions, at most one per parking space
+  private final Map<Long, Long> ongoingParkingIds = new ConcurrentHashMap<>();
+
+  // Number of events applied, for lookups to tell whether one was applied while in flight
+  private final AtomicLong version = new AtomicLong();
+
+  @Autowired
+  public LookupCache(LookupCacheProperties properties, ParkingSpaceView view, MessagingProperties messagingProperties,
+                     MeterRegistry meterRegistry) {
+    this.enabled = properties.isEnabled();
+    this.viewEnabled = view.isEnabled();
+    this.invalidatedByEvents = viewEnabled || !messagingProperties.isKafkaTransport();
+    this.parkings = Caffeine.newBuilder().maximumSize(properties.getMaxParkings()).recordStats().build();
+    this.parkingSpaces = Caffeine.newBuilder().maximumSize(properties.getMaxParkingSpaces()).recordStats().build();
+    CaffeineCacheMetrics.monitor(meterRegistry, parkings, PARKINGS);
+    CaffeineCacheMetrics.monitor(meterRegistry, parkingSpaces, PARKING_SPACES);
+    if (viewEnabled) {
+      view.addListener(this::invalidate);
+    }
+  }
+
+  /**
+   * @return the cached parking, or the one looked up by the given supplier otherwise
+   */
+  public CompletableFuture<Parking> parking(Long id, Supplier<CompletableFuture<Parking>> lookup) {
+    return parking(id, lookup, true);
+  }
+
+  /**
+   * @return the cached parking if completed, or the one looked up by the given supplier otherwise:
+   * callers about to complete a parking must not act on a cached ongoing one, completed since by another node
+   */
+  public CompletableFuture<Parking> parkingToComplete(Long id, Supplier<CompletableFuture<Parking>> lookup) {
+    return parking(id, lookup, false);
+  }
+
+  /**
+   * @return the cached parking space, or the one looked up by the given supplier otherwise
+   */
+  public CompletableFuture<ParkingSpace> parkingSpace(Long id, Supplier<CompletableFuture<ParkingSpace>> lookup) {
+    if (!enabled || !invalidatedByEvents) {
+      return lookup.get();
+    }
+    ParkingSpace cached = parkingSpaces.getIfPresent(id);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+    long lookupVersion = version.get();
+    return lookup.get().thenApply(parkingSpace -> {
+      if (parkingSpace.getId() != null) {
+        putIfUnchanged(parkingSpaces, id, parkingSpace, lookupVersion);
+      }
+      return parkingSpace;
+    });
+  }
+
+  /**
+   * Caches a parking replied by a completion if final, drops the cached one otherwise
+   */
+  public void completed(Parking parking) {
+    if (!enabled || parking.getId() == null) {
+      return;
+    }
+    if (isFinal(parking)) {
+      parkings.put(parking.getId(), parking);
+    } else {
+      parkings.invalidate(parking.getId());
+    }
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onParkingSpaceEvent(ParkingSpaceEvent event) {
+    // With the view, events of all nodes are applied as it consumes them
+    if (!viewEnabled) {
+      invalidate(event);
+    }
+  }
+
+  void invalidate(ParkingSpaceEvent event) {
+    Long parkingSpaceId = event.getParkingSpace().getId();
+    version.incrementAndGet();
+    parkingSpaces.invalidate(parkingSpaceId);
+    Long parkingId = ongoingParkingIds.remove(parkingSpaceId);
+    if (parkingId != null) {
+      parkings.asMap().computeIfPresent(parkingId, (id, parking) -> isFinal(parking) ? parking : null);
+    }
+  }
+
+  private CompletableFuture<Parking> parking(Long id, Supplier<CompletableFuture<Parking>> lookup, boolean ongoingAllowed) {
+    if (!enabled) {
+      return lookup.get();
+    }
+    Parking cached = parkings.getIfPresent(id);
+    if (cached != null && (ongoingAllowed || isFinal(cached))) {
+      return CompletableFuture.completedFuture(cached);
+    }
+    long lookupVersion = version.get();
+    return lookup.get().thenApply(parking -> {
+      if (parking.getId() == null) {
+        return parking;
+      }
+      if (isFinal(parking)) {
+        parkings.put(id, parking);
+      } else if (parking.getBilling() == null && invalidatedByEvents) {
+        ongoingParkingIds.put(parking.getParkingSpaceId(), id);
+        putIfUnchanged(parkings, id, parking, lookupVersion);
+      }
+      return parking;
+    });
+  }
+
+  // Put first & dropped afterwards, as an event may be applied between the check & the put
+  private <V> void putIfUnchanged(Cache<Long, V> cache, Long id, V value, long lookupVersion) {
+    cache.put(id, value);
+    if (version.get() != lookupVersion) {
+      cache.invalidate(id);
+    }
+  }
+
+  private static boolean isFinal(Parking parking) {
+    return parking.getBilling() != null && parking.getBilling().getStatus() == Billing.Status.CALCULATED;
+  }
+}
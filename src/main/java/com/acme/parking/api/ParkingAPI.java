@@ -1,8 +1,11 @@
 package com.acme.parking.api;
 
+import com.acme.parking.api.model.BatchItem;
+import com.acme.parking.billing.model.Billing;
 import com.acme.parking.inventory.model.Parking;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -16,10 +19,14 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping(path = "/v1/parkings", produces = {"application/json"})
@@ -28,7 +35,9 @@ import java.util.List;
   description = "Exposes operations around actual parking. Available actions: " +
     "\n 1) Start a new parking at a given parking lot." +
     "\n 2) Complete an existing parking & return billing information." +
-    "\n 3) Retrieve details about an existing parking.")
+    "\n 3) Retrieve details about an existing parking." +
+    "\n 4) Retrieve the billing of a completed parking." +
+    "\n 5) Start, complete or retrieve several parkings at once.")
 public interface ParkingAPI {
 
   @Operation(summary = "Starts a new parking at the provided parking space",
@@ -41,14 +50,18 @@ public interface ParkingAPI {
       content = @Content(schema = @Schema())),
     @ApiResponse(responseCode = "404", description = "No parking space exists with given id",
       content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "503", description = "Too many requests in progress",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "504", description = "Request could not be completed in time",
+      content = @Content(schema = @Schema())),
     @ApiResponse(responseCode = "500", description = "Server error",
       content = @Content(schema = @Schema())),
   })
   @PostMapping
-  ResponseEntity<List<Parking>> startParking(@Valid
-                                             @Parameter(description = "Start parking at the given parking space. " +
-                                               "\nOnly the parking space id should be provided.", required = true)
-                                             @RequestBody Parking parking);
+  CompletableFuture<ResponseEntity<List<Parking>>> startParking(@Valid
+                                                                @Parameter(description = "Start parking at the given parking space. " +
+                                                                  "\nOnly the parking space id should be provided.", required = true)
+                                                                @RequestBody Parking parking);
 
 
   @Operation(summary = "Returns parking information by id", description = "Parking information retrieval by id", tags = {"Parking"})
@@ -59,12 +72,16 @@ public interface ParkingAPI {
       content = @Content(schema = @Schema())),
     @ApiResponse(responseCode = "404", description = "No parking information exists with given id",
       content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "503", description = "Too many requests in progress",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "504", description = "Request could not be completed in time",
+      content = @Content(schema = @Schema())),
     @ApiResponse(responseCode = "500", description = "Server error",
       content = @Content(schema = @Schema())),
   })
   @GetMapping(path = "/{id}")
-  ResponseEntity<Parking> getParkingInformation(@Parameter(description = "Id of the parking information to retrieve", required = true)
-                                                @PathVariable Long id);
+  CompletableFuture<ResponseEntity<Parking>> getParkingInformation(@Parameter(description = "Id of the parking information to retrieve", required = true)
+                                                                   @PathVariable Long id);
 
 
   @Operation(summary = "Ends an existing parking",
@@ -78,11 +95,106 @@ public interface ParkingAPI {
       content = @Content(schema = @Schema())),
     @ApiResponse(responseCode = "404", description = "No parking information exists with given id",
       content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "503", description = "Too many requests in progress",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "504", description = "Request could not be completed in time",
+      content = @Content(schema = @Schema())),
     @ApiResponse(responseCode = "500", description = "Server error",
       content = @Content(schema = @Schema())),
   })
   @DeleteMapping(path = "/{id}")
-  ResponseEntity<Parking> endParking(@Parameter(description = "Id of the parking to complete", required = true)
-                                     @PathVariable Long id);
+  CompletableFuture<ResponseEntity<Parking>> endParking(@Parameter(description = "Id of the parking to complete", required = true)
+                                                        @PathVariable Long id);
+
+
+  @Operation(summary = "Returns the billing of a completed parking",
+    description = "Billing of the parking with the given parking id." +
+      "\nWith asynchronous billing, the billing is pending until its price is calculated, and can be polled.", tags = {"Parking"})
+  @ApiResponses(value = {
+    @ApiResponse(responseCode = "200", description = "Billing calculated",
+      content = @Content(schema = @Schema(implementation = Billing.class))),
+    @ApiResponse(responseCode = "202", description = "Billing pending, to be polled again after the Retry-After delay",
+      content = @Content(schema = @Schema(implementation = Billing.class))),
+    @ApiResponse(responseCode = "400", description = "Parking not completed yet",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "404", description = "No parking information exists with given id",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "503", description = "Too many requests in progress",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "504", description = "Request could not be completed in time",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "500", description = "Server error",
+      content = @Content(schema = @Schema())),
+  })
+  @GetMapping(path = "/{id}/billing")
+  CompletableFuture<ResponseEntity<Billing>> getBilling(@Parameter(description = "Id of the completed parking", required = true)
+                                                        @PathVariable Long id);
+
+
+
+  @Operation(summary = "Starts new parkings at the provided parking spaces",
+    description = "Starts a parking at each of the given parking spaces, up to " + ParkingSpaceAPI.MAX_BATCH_SIZE + " at once, " +
+      "like single starts do. Parking spaces that cannot be claimed do not prevent the others from being claimed." +
+      "\nEach parking space gets its own item, in request order, with the status & created parking (or error) of a single start.",
+    tags = {"Parking"})
+  @ApiResponses(value = {
+    @ApiResponse(responseCode = "200", description = "Successful operation, see the status of each item",
+      content = @Content(array = @ArraySchema(schema = @Schema(implementation = BatchItem.class)))),
+    @ApiResponse(responseCode = "400", description = "No or too many parkings",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "503", description = "Too many requests in progress",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "504", description = "Request could not be completed in time",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "500", description = "Server error",
+      content = @Content(schema = @Schema())),
+  })
+  @PostMapping(path = "/batch")
+  CompletableFuture<ResponseEntity<List<BatchItem<Parking>>>> startParkings(@Parameter(description = "Parkings to start. " +
+                                                                              "\nOnly the parking space id of each should be provided.", required = true)
+                                                                            @RequestBody @Size(min = 1, max = ParkingSpaceAPI.MAX_BATCH_SIZE) List<@NotNull Parking> parkings);
+
+
+  @Operation(summary = "Returns parking information by ids",
+    description = "Parking information retrieval for up to " + ParkingSpaceAPI.MAX_BATCH_SIZE + " ids at once. " +
+      "\nEach id gets its own item, in request order, with the status & result (or error) of a retrieval by id.",
+    tags = {"Parking"})
+  @ApiResponses(value = {
+    @ApiResponse(responseCode = "200", description = "Successful operation, see the status of each item",
+      content = @Content(array = @ArraySchema(schema = @Schema(implementation = BatchItem.class)))),
+    @ApiResponse(responseCode = "400", description = "Missing, malformed or too many parking ids",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "503", description = "Too many requests in progress",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "504", description = "Request could not be completed in time",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "500", description = "Server error",
+      content = @Content(schema = @Schema())),
+  })
+  @GetMapping(path = "/batch")
+  CompletableFuture<ResponseEntity<List<BatchItem<Parking>>>> getParkingsInformation(@Parameter(description = "Ids of the parkings to retrieve", required = true)
+                                                                                     @RequestParam("ids") @Size(min = 1, max = ParkingSpaceAPI.MAX_BATCH_SIZE) List<@NotNull Long> ids);
+
+
+  @Operation(summary = "Ends existing parkings",
+    description = "Completes each of the parkings with the given parking ids, up to " + ParkingSpaceAPI.MAX_BATCH_SIZE + " at once, " +
+      "like single completions do. Parkings that cannot be completed do not prevent the others from being completed." +
+      "\nEach parking id gets its own item, in request order, with the status & completed parking (or error) of a single completion.",
+    tags = {"Parking"})
+  @ApiResponses(value = {
+    @ApiResponse(responseCode = "200", description = "Successful operation, see the status of each item",
+      content = @Content(array = @ArraySchema(schema = @Schema(implementation = BatchItem.class)))),
+    @ApiResponse(responseCode = "400", description = "Missing, malformed or too many parking ids",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "503", description = "Too many requests in progress",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "504", description = "Request could not be completed in time",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "500", description = "Server error",
+      content = @Content(schema = @Schema())),
+  })
+  @DeleteMapping(path = "/batch")
+  CompletableFuture<ResponseEntity<List<BatchItem<Parking>>>> endParkings(@Parameter(description = "Ids of the parkings to complete", required = true)
+                                                                          @RequestParam("ids") @Size(min = 1, max = ParkingSpaceAPI.MAX_BATCH_SIZE) List<@NotNull Long> ids);
 
 }
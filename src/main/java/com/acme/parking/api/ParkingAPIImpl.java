@@ -1,97 +1,287 @@
 package com.acme.parking.api;
 
+import com.acme.parking.api.model.BatchItem;
+import com.acme.parking.api.model.IdBatch;
+import com.acme.parking.api.model.ParkingBatchResult;
+import com.acme.parking.api.model.ParkingCompletion;
+import com.acme.parking.api.model.ParkingCompletionBatch;
+import com.acme.parking.api.model.ParkingResult;
+import com.acme.parking.api.model.ParkingStartBatch;
+import com.acme.parking.api.model.UnflushedParkingsQuery;
+import com.acme.parking.billing.model.Billing;
 import com.acme.parking.exception.InvalidParkingIdException;
 import com.acme.parking.exception.InvalidParkingRequestException;
 import com.acme.parking.exception.InvalidParkingSpaceIdException;
 import com.acme.parking.exception.InvalidParkingSpaceStatusException;
 import com.acme.parking.exception.ParkingAlreadyCompletedException;
+import com.acme.parking.exception.ParkingNotCompletedException;
 import com.acme.parking.inventory.model.Parking;
 import com.acme.parking.inventory.model.ParkingSpace;
-import com.acme.parking.properties.KafkaRequestTopics;
-import lombok.SneakyThrows;
-import org.apache.kafka.clients.producer.ProducerRecord;
+import com.acme.parking.messaging.Operation;
+import com.acme.parking.messaging.RequestReplyGateway;
+import com.acme.parking.properties.WriteBehindProperties;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.kafka.requestreply.ReplyingKafkaTemplate;
-import org.springframework.kafka.requestreply.RequestReplyFuture;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.validation.Valid;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
+/**
+ * Batch starts & completions are split by partition of their parking spaces, each group being sent as a single
+ * request to the node owning it, so that a batch costs one round trip per partition rather than one per item.
+ * A batch holds one in-flight permit, whatever its size.
+ * Parkings are looked up through the {@link LookupCache}, completed ones being answered without a round trip.
+ * With write-behind, parkings not found in the database are looked up in the memory of the owners of each partition,
+ * as they may not have been flushed yet.
+ */
 @RestController
 public class ParkingAPIImpl implements ParkingAPI {
 
-  private final KafkaRequestTopics requestTopics;
+  // Pending billings are usually calculated within a second
+  private static final String BILLING_RETRY_AFTER_SECONDS = "1";
 
-  private final ReplyingKafkaTemplate<String, Long, Parking> parkingByIdKafkaTemplate;
-  private final ReplyingKafkaTemplate<String, Long, ParkingSpace> parkingSpaceByIdKafkaTemplate;
-  private final ReplyingKafkaTemplate<String, Parking, Parking> parkingStartKafkaTemplate;
-  private final ReplyingKafkaTemplate<String, Long, Parking> parkingCompletionKafkaTemplate;
+  private final RequestReplyGateway gateway;
+
+  private final InFlightRequestLimiter inFlightRequestLimiter;
+
+  private final LookupCache lookupCache;
+
+  private final WriteBehindProperties writeBehindProperties;
 
   @Autowired
-  public ParkingAPIImpl(KafkaRequestTopics requestTopics,
-                        @Qualifier("parkingById") ReplyingKafkaTemplate<String, Long, Parking> parkingByIdKafkaTemplate,
-                        ReplyingKafkaTemplate<String, Long, ParkingSpace> parkingSpaceByIdKafkaTemplate,
-                        ReplyingKafkaTemplate<String, Parking, Parking> parkingStartKafkaTemplate,
-                        @Qualifier("parkingCompletion") ReplyingKafkaTemplate<String, Long, Parking> parkingCompletionKafkaTemplate) {
-    this.requestTopics = requestTopics;
-    this.parkingByIdKafkaTemplate = parkingByIdKafkaTemplate;
-    this.parkingSpaceByIdKafkaTemplate = parkingSpaceByIdKafkaTemplate;
-    this.parkingStartKafkaTemplate = parkingStartKafkaTemplate;
-    this.parkingCompletionKafkaTemplate = parkingCompletionKafkaTemplate;
-  }
-
-  @SneakyThrows
+  public ParkingAPIImpl(RequestReplyGateway gateway, InFlightRequestLimiter inFlightRequestLimiter,
+                        LookupCache lookupCache, WriteBehindProperties writeBehindProperties) {
+    this.gateway = gateway;
+    this.inFlightRequestLimiter = inFlightRequestLimiter;
+    this.lookupCache = lookupCache;
+    this.writeBehindProperties = writeBehindProperties;
+  }
+
   @Override
-  public ResponseEntity<List<Parking>> startParking(@Valid Parking parkingRequested) {
+  public CompletableFuture<ResponseEntity<List<Parking>>> startParking(@Valid Parking parkingRequested) {
     validateCreateRequest(parkingRequested);
 
-    ProducerRecord<String, Parking> record =
-      new ProducerRecord<>(requestTopics.getParkingStart(), null, UUID.randomUUID().toString(), parkingRequested);
-    RequestReplyFuture<String, Parking, Parking> future = parkingStartKafkaTemplate.sendAndReceive(record);
-    Parking parkingCreated = future.get().value();
-    return ResponseEntity.created(URI.create("/parking/" + parkingCreated.getId())).build();
+    return inFlightRequestLimiter.submit(() -> gateway.sendAndReceive(Operation.PARKING_START, parkingRequested))
+      .thenApply(result -> {
+        Parking parkingCreated = getCreatedParking(parkingRequested.getParkingSpaceId(), result);
+        return ResponseEntity.created(URI.create("/parking/" + parkingCreated.getId())).build();
+      });
   }
 
-  @SneakyThrows
   @Override
-  public ResponseEntity<Parking> getParkingInformation(Long id) {
-    Parking ongoingParking = getParking(id);
-    return ResponseEntity.ok(ongoingParking);
+  public CompletableFuture<ResponseEntity<Parking>> getParkingInformation(Long id) {
+    return inFlightRequestLimiter.submit(() -> getParking(id))
+      .thenApply(ResponseEntity::ok);
   }
 
-  @SneakyThrows
   @Override
-  public ResponseEntity<Parking> endParking(Long id) {
-    Parking parking = getParking(id);
-    if (parking.getBilling() != null) {
-      throw new ParkingAlreadyCompletedException(id);
+  public CompletableFuture<ResponseEntity<Parking>> endParking(Long id) {
+    return inFlightRequestLimiter.submit(() -> lookupCache.parkingToComplete(id, () -> fetchParking(id))
+      .thenCompose(parking -> {
+        if (parking.getBilling() != null) {
+          throw new ParkingAlreadyCompletedException(id);
+        }
+        return gateway.sendAndReceive(Operation.PARKING_COMPLETION, new ParkingCompletion(id), String.valueOf(parking.getParkingSpaceId()));
+      }))
+      .thenApply(result -> {
+        Parking parking = getCompletedParking(id, result);
+        lookupCache.completed(parking);
+        return ResponseEntity.ok(parking);
+      });
+  }
+
+
+  @Override
+  public CompletableFuture<ResponseEntity<Billing>> getBilling(Long id) {
+    return inFlightRequestLimiter.submit(() -> getParking(id))
+      .thenApply(parking -> {
+        Billing billing = parking.getBilling();
+        if (billing == null) {
+          throw new ParkingNotCompletedException(id);
+        }
+        if (billing.getStatus() == Billing.Status.PENDING) {
+          return ResponseEntity.accepted().header(HttpHeaders.RETRY_AFTER, BILLING_RETRY_AFTER_SECONDS).body(billing);
+        }
+        return ResponseEntity.ok(billing);
+      });
+  }
+
+  @Override
+  public CompletableFuture<ResponseEntity<List<BatchItem<Parking>>>> startParkings(List<Parking> parkingsRequested) {
+    List<BatchItem<Parking>> items = new ArrayList<>(Collections.nCopies(parkingsRequested.size(), null));
+    List<Integer> validIndexes = new ArrayList<>();
+    for (int i = 0; i < parkingsRequested.size(); i++) {
+      try {
+        validateCreateRequest(parkingsRequested.get(i));
+        validIndexes.add(i);
+      } catch (InvalidParkingRequestException e) {
+        items.set(i, BatchItem.failed(parkingsRequested.get(i).getParkingSpaceId(), HttpStatus.BAD_REQUEST, e));
+      }
     }
-    ProducerRecord<String, Long> record =
-      new ProducerRecord<>(requestTopics.getParkingCompletion(), null, UUID.randomUUID().toString(), id);
-    RequestReplyFuture<String, Long, Parking> future = parkingCompletionKafkaTemplate.sendAndReceive(record);
-    Parking completedParking = future.get().value();
 
-    return ResponseEntity.ok(completedParking);
+    return inFlightRequestLimiter.submit(() -> allOf(gateway.groupByPartition(Operation.PARKING_START_BATCH, validIndexes,
+      i -> String.valueOf(parkingsRequested.get(i).getParkingSpaceId())).stream()
+      .filter(group -> !group.isEmpty())
+      .map(group -> {
+        List<Long> parkingSpaceIds = group.stream()
+          .map(i -> parkingsRequested.get(i).getParkingSpaceId())
+          .collect(Collectors.toList());
+        return gateway.sendAndReceive(Operation.PARKING_START_BATCH, new ParkingStartBatch(parkingSpaceIds))
+          .thenAccept(batchResult -> setItems(items, group, parkingSpaceIds, HttpStatus.CREATED, batchResult));
+      })
+      .collect(Collectors.toList())))
+      .thenApply(done -> ResponseEntity.ok(items));
   }
 
+  @Override
+  public CompletableFuture<ResponseEntity<List<BatchItem<Parking>>>> getParkingsInformation(List<Long> ids) {
+    return inFlightRequestLimiter.submit(() -> fetchParkings(ids))
+      .thenApply(batchResult -> {
+        List<BatchItem<Parking>> items = new ArrayList<>(Collections.nCopies(ids.size(), null));
+        for (int i = 0; i < ids.size(); i++) {
+          items.set(i, batchItem(ids.get(i), HttpStatus.OK, batchResult.getResults().get(i)));
+        }
+        return ResponseEntity.ok(items);
+      });
+  }
 
-  private Parking getParking(Long id) throws InterruptedException, java.util.concurrent.ExecutionException {
-    ProducerRecord<String, Long> record =
-      new ProducerRecord<>(requestTopics.getParkingById(), null, UUID.randomUUID().toString(), id);
-    RequestReplyFuture<String, Long, Parking> future = parkingByIdKafkaTemplate.sendAndReceive(record);
-    Parking parking = future.get().value();
-    if (parking.getId() == null) {
-      throw new InvalidParkingIdException(id);
+  @Override
+  public CompletableFuture<ResponseEntity<List<BatchItem<Parking>>>> endParkings(List<Long> ids) {
+    List<BatchItem<Parking>> items = new ArrayList<>(Collections.nCopies(ids.size(), null));
+    // Parkings are looked up first, for their parking space ids to route the completions with
+    return inFlightRequestLimiter.submit(() -> fetchParkings(ids)
+      .thenCompose(found -> {
+        List<Integer> pendingIndexes = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+          Parking parking = found.getResults().get(i).getParking();
+          if (parking == null) {
+            items.set(i, batchItem(ids.get(i), HttpStatus.OK, found.getResults().get(i)));
+          } else if (parking.getBilling() != null) {
+            items.set(i, BatchItem.failed(ids.get(i), HttpStatus.BAD_REQUEST, new ParkingAlreadyCompletedException(ids.get(i))));
+          } else {
+            pendingIndexes.add(i);
+          }
+        }
+        return allOf(gateway.groupByPartition(Operation.PARKING_COMPLETION_BATCH, pendingIndexes,
+          i -> String.valueOf(found.getResults().get(i).getParking().getParkingSpaceId())).stream()
+          .filter(group -> !group.isEmpty())
+          .map(group -> {
+            List<Long> parkingIds = group.stream().map(ids::get).collect(Collectors.toList());
+            String key = String.valueOf(found.getResults().get(group.get(0)).getParking().getParkingSpaceId());
+            return gateway.sendAndReceive(Operation.PARKING_COMPLETION_BATCH, new ParkingCompletionBatch(parkingIds), key)
+              .thenAccept(batchResult -> {
+                setItems(items, group, parkingIds, HttpStatus.OK, batchResult);
+                batchResult.getResults().stream()
+                  .filter(result -> result.getRejection() == null)
+                  .forEach(result -> lookupCache.completed(result.getParking()));
+              });
+          })
+          .collect(Collectors.toList()));
+      }))
+      .thenApply(done -> ResponseEntity.ok(items));
+  }
+
+  private static CompletableFuture<Void> allOf(List<CompletableFuture<Void>> futures) {
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+  }
+
+  // Items of a group are replied in request order
+  private static void setItems(List<BatchItem<Parking>> items, List<Integer> group, List<Long> ids, HttpStatus status,
+                               ParkingBatchResult batchResult) {
+    for (int j = 0; j < group.size(); j++) {
+      items.set(group.get(j), batchItem(ids.get(j), status, batchResult.getResults().get(j)));
     }
-    return parking;
   }
 
-  @SneakyThrows
+  private static BatchItem<Parking> batchItem(Long id, HttpStatus status, ParkingResult result) {
+    if (result.getRejection() == null) {
+      return BatchItem.of(id, status, result.getParking());
+    }
+    switch (result.getRejection()) {
+      case INVALID_PARKING_SPACE_ID:
+        return BatchItem.failed(id, HttpStatus.NOT_FOUND, new InvalidParkingSpaceIdException(id));
+      case PARKING_SPACE_NOT_AVAILABLE:
+        return BatchItem.failed(id, HttpStatus.BAD_REQUEST,
+          new InvalidParkingSpaceStatusException(id, ParkingSpace.Status.OCCUPIED.name()));
+      case INVALID_PARKING_ID:
+        return BatchItem.failed(id, HttpStatus.NOT_FOUND, new InvalidParkingIdException(id));
+      default:
+        return BatchItem.failed(id, HttpStatus.BAD_REQUEST, new ParkingAlreadyCompletedException(id));
+    }
+  }
+
+
+  private CompletableFuture<Parking> getParking(Long id) {
+    return lookupCache.parking(id, () -> fetchParking(id));
+  }
+
+  private CompletableFuture<Parking> fetchParking(Long id) {
+    return gateway.sendAndReceive(Operation.PARKING_BY_ID, id)
+      .thenCompose(parking -> parking.getId() != null ? CompletableFuture.completedFuture(parking)
+        : fetchUnflushedParkings(List.of(id)).thenApply(unflushed -> {
+          if (!unflushed.containsKey(id)) {
+            throw new InvalidParkingIdException(id);
+          }
+          return unflushed.get(id);
+        }));
+  }
+
+  private CompletableFuture<ParkingBatchResult> fetchParkings(List<Long> ids) {
+    return gateway.sendAndReceive(Operation.PARKINGS_BY_IDS, new IdBatch(ids))
+      .thenCompose(batchResult -> {
+        List<Long> missingIds = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+          if (batchResult.getResults().get(i).getRejection() == ParkingResult.Rejection.INVALID_PARKING_ID) {
+            missingIds.add(ids.get(i));
+          }
+        }
+        if (missingIds.isEmpty()) {
+          return CompletableFuture.completedFuture(batchResult);
+        }
+        return fetchUnflushedParkings(missingIds).thenApply(unflushed -> {
+          List<ParkingResult> results = new ArrayList<>(batchResult.getResults());
+          for (int i = 0; i < ids.size(); i++) {
+            if (unflushed.containsKey(ids.get(i))) {
+              results.set(i, ParkingResult.accepted(unflushed.get(ids.get(i))));
+            }
+          }
+          return new ParkingBatchResult(results);
+        });
+      });
+  }
+
+  // Found by the owner of the partition of their parking space
+  private CompletableFuture<Map<Long, Parking>> fetchUnflushedParkings(List<Long> ids) {
+    if (!writeBehindProperties.isEnabled()) {
+      return CompletableFuture.completedFuture(Map.of());
+    }
+    List<CompletableFuture<ParkingBatchResult>> partitionResults = gateway.sendToEachPartition(
+      Operation.UNFLUSHED_PARKINGS_BY_IDS, partition -> new UnflushedParkingsQuery(ids, partition));
+    return CompletableFuture.allOf(partitionResults.toArray(new CompletableFuture[0]))
+      .thenApply(done -> {
+        Map<Long, Parking> unflushed = new HashMap<>();
+        for (CompletableFuture<ParkingBatchResult> partition : partitionResults) {
+          List<ParkingResult> results = partition.join().getResults();
+          for (int i = 0; i < ids.size(); i++) {
+            if (results.get(i).getRejection() == null) {
+              unflushed.put(ids.get(i), results.get(i).getParking());
+            }
+          }
+        }
+        return unflushed;
+      });
+  }
+
   private void validateCreateRequest(Parking parking) {
     if (parking.getParkingSpaceId() == null) {
       throw new InvalidParkingRequestException("parkingSpaceId is required");
@@ -99,20 +289,26 @@ public class ParkingAPIImpl implements ParkingAPI {
     if (parking.getEndDateTime() != null || parking.getDurationSeconds() != null || parking.getBilling() != null) {
       throw new InvalidParkingRequestException("Please provide only the parkingSpaceId");
     }
-    ParkingSpace parkingSpace = getParkingSpace(parking.getParkingSpaceId());
-    if (parkingSpace.getStatus() != ParkingSpace.Status.AVAILABLE) {
-      throw new InvalidParkingSpaceStatusException(parking.getParkingSpaceId(), parkingSpace.getStatus().name());
+  }
+
+  private Parking getCreatedParking(Long parkingSpaceId, ParkingResult result) {
+    if (result.getRejection() == ParkingResult.Rejection.INVALID_PARKING_SPACE_ID) {
+      throw new InvalidParkingSpaceIdException(parkingSpaceId);
+    }
+    if (result.getRejection() == ParkingResult.Rejection.PARKING_SPACE_NOT_AVAILABLE) {
+      throw new InvalidParkingSpaceStatusException(parkingSpaceId, ParkingSpace.Status.OCCUPIED.name());
     }
+    return result.getParking();
   }
 
-  private ParkingSpace getParkingSpace(Long id) throws InterruptedException, java.util.concurrent.ExecutionException {
-    ProducerRecord<String, Long> record = new ProducerRecord<>(requestTopics.getParkingSpaceById(),
-      null, UUID.randomUUID().toString(), id);
-    RequestReplyFuture<String, Long, ParkingSpace> future = parkingSpaceByIdKafkaTemplate.sendAndReceive(record);
-    ParkingSpace parkingSpaceFound = future.get().value();
-    if (parkingSpaceFound.getId() == null) {
-      throw new InvalidParkingSpaceIdException(id);
+  // Completed by another request since looked up
+  private Parking getCompletedParking(Long id, ParkingResult result) {
+    if (result.getRejection() == ParkingResult.Rejection.INVALID_PARKING_ID) {
+      throw new InvalidParkingIdException(id);
+    }
+    if (result.getRejection() == ParkingResult.Rejection.PARKING_ALREADY_COMPLETED) {
+      throw new ParkingAlreadyCompletedException(id);
     }
-    return parkingSpaceFound;
+    return result.getParking();
   }
-}
\ No newline at end of file
+}
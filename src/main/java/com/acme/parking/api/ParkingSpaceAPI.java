@@ -1,5 +1,8 @@
 package com.acme.parking.api;
 
+import com.acme.parking.api.model.Availability;
+import com.acme.parking.api.model.BatchItem;
+import com.acme.parking.api.model.ParkingSpaceStats;
 import com.acme.parking.inventory.model.ParkingSpace;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -9,6 +12,7 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -16,9 +20,14 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping(value = "/v1/parking-spaces", produces = {"application/json"})
@@ -27,9 +36,18 @@ import java.util.List;
   description = "Exposes the current state of the parking area. Available actions: " +
     "\n 1) Retrieve current state of a parking space by id." +
     "\n 2) Retrieve next available parking space for a given car type." +
-    "\n 3) Retrieve list of parking spaces matching given search criteria.")
+    "\n 3) Retrieve list of parking spaces matching given search criteria." +
+    "\n 4) Count parking spaces by car type & status." +
+    "\n 5) Subscribe to the availability of the parking spaces of a given car type." +
+    "\n 6) Retrieve current state of several parking spaces by id at once.")
 public interface ParkingSpaceAPI {
 
+  String NEXT_PAGE_TOKEN_HEADER = "X-Next-Page-Token";
+
+  int MAX_PAGE_SIZE = 1000;
+
+  int MAX_BATCH_SIZE = 500;
+
   @Operation(summary = "Finds parking space by id", description = "Parking space retrieval by id", tags = {"Parking Space"})
   @ApiResponses(value = {
     @ApiResponse(responseCode = "200", description = "Successful operation",
@@ -38,18 +56,45 @@ public interface ParkingSpaceAPI {
       content = @Content(schema = @Schema())),
     @ApiResponse(responseCode = "404", description = "No parking space exists with given id",
       content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "503", description = "Too many requests in progress",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "504", description = "Request could not be completed in time",
+      content = @Content(schema = @Schema())),
     @ApiResponse(responseCode = "500", description = "Server error",
       content = @Content(schema = @Schema()))
   })
   @GetMapping(path = "/{id}")
-  ResponseEntity<ParkingSpace> getParkingSpaceById(@Parameter(description = "Id of the parking space to retrieve", required = true)
-                                                   @PathVariable Long id);
+  CompletableFuture<ResponseEntity<ParkingSpace>> getParkingSpaceById(@Parameter(description = "Id of the parking space to retrieve", required = true)
+                                                                      @PathVariable Long id);
+
+
+  @Operation(summary = "Finds parking spaces by ids",
+    description = "Parking space retrieval for up to " + MAX_BATCH_SIZE + " ids at once. " +
+      "\nEach id gets its own item, in request order, with the status & result (or error) of a retrieval by id.",
+    tags = {"Parking Space"})
+  @ApiResponses(value = {
+    @ApiResponse(responseCode = "200", description = "Successful operation, see the status of each item",
+      content = @Content(array = @ArraySchema(schema = @Schema(implementation = BatchItem.class)))),
+    @ApiResponse(responseCode = "400", description = "Missing, malformed or too many parking space ids",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "503", description = "Too many requests in progress",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "504", description = "Request could not be completed in time",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "500", description = "Server error",
+      content = @Content(schema = @Schema()))
+  })
+  @GetMapping(path = "/batch")
+  CompletableFuture<ResponseEntity<List<BatchItem<ParkingSpace>>>> getParkingSpacesByIds(@Parameter(description = "Ids of the parking spaces to retrieve", required = true)
+                                                                                         @RequestParam("ids") @Size(min = 1, max = MAX_BATCH_SIZE) List<@NotNull Long> ids);
 
 
   @Operation(summary = "Lists parking spaces matching given criteria",
     description = "Can be used in order to: " +
       "\n 1) Retrieve the next available parking space for given car type (if 'type' is the only query parameter provided)" +
-      "\n 2) Retrieve the list of parking spaces matching given criteria", tags = {"Parking Space"})
+      "\n 2) Retrieve the list of parking spaces matching given criteria, ordered by id. " +
+      "When more parking spaces match, the '" + ParkingSpaceAPI.NEXT_PAGE_TOKEN_HEADER + "' response header holds " +
+      "the 'pageToken' to retrieve the next page with.", tags = {"Parking Space"})
   @ApiResponses(value = {
     @ApiResponse(responseCode = "200", description = "Successful operation",
       content = @Content(array = @ArraySchema(schema = @Schema(implementation = ParkingSpace.class)))),
@@ -60,15 +105,61 @@ public interface ParkingSpaceAPI {
     @ApiResponse(responseCode = "404", description = "HTTP-404 is never returned for this request. " +
       "\nIn case no parking spaces found, HTTP-204 is returned as shown above.",
       content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "503", description = "Too many requests in progress",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "504", description = "Request could not be completed in time",
+      content = @Content(schema = @Schema())),
     @ApiResponse(responseCode = "500", description = "Server error",
       content = @Content(schema = @Schema()))
   })
   @GetMapping
-  ResponseEntity<List<ParkingSpace>> searchParkingSpaces(@Parameter(description = "Car type", required = true)
-                                                         @RequestParam("type") ParkingSpace.Type type,
-                                                         @Parameter(description = "Current status of the parking space")
-                                                         @RequestParam(value = "status", required = false, defaultValue = "AVAILABLE") ParkingSpace.Status status,
-                                                         @Parameter(description = "Number of parking spaces to retrieve")
-                                                         @RequestParam(value = "count", required = false, defaultValue = "1") @Min(1) Integer count);
+  CompletableFuture<ResponseEntity<List<ParkingSpace>>> searchParkingSpaces(@Parameter(description = "Car type", required = true)
+                                                                            @RequestParam("type") ParkingSpace.Type type,
+                                                                            @Parameter(description = "Current status of the parking space")
+                                                                            @RequestParam(value = "status", required = false, defaultValue = "AVAILABLE") ParkingSpace.Status status,
+                                                                            @Parameter(description = "Number of parking spaces to retrieve, 1 if not provided")
+                                                                            @RequestParam(value = "count", required = false) @Min(1) @Max(MAX_PAGE_SIZE) Integer count,
+                                                                            @Parameter(description = "Token of the page to retrieve, as returned in the " + NEXT_PAGE_TOKEN_HEADER + " header of the previous page")
+                                                                            @RequestParam(value = "pageToken", required = false) String pageToken);
+
+  @Operation(summary = "Counts parking spaces by car type & status",
+    description = "Number of available & occupied parking spaces of given car type, or of every car type " +
+      "when none is provided. Counts are kept up to date as parkings start & complete, rather than counted on request.",
+    tags = {"Parking Space"})
+  @ApiResponses(value = {
+    @ApiResponse(responseCode = "200", description = "Successful operation",
+      content = @Content(array = @ArraySchema(schema = @Schema(implementation = ParkingSpaceStats.class)))),
+    @ApiResponse(responseCode = "400", description = "Invalid car type",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "503", description = "Too many requests in progress",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "504", description = "Request could not be completed in time",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "500", description = "Server error",
+      content = @Content(schema = @Schema()))
+  })
+  @GetMapping(path = "/stats")
+  CompletableFuture<ResponseEntity<List<ParkingSpaceStats>>> getParkingSpaceStats(@Parameter(description = "Car type, every car type when not provided")
+                                                                                  @RequestParam(value = "type", required = false) ParkingSpace.Type type);
+
+  @Operation(summary = "Streams the availability of parking spaces for given car type",
+    description = "Server-sent events named '" + AvailabilityStream.EVENT_NAME + "', holding the number of available " +
+      "parking spaces & the next available one: the current availability on subscription, then its changes, " +
+      "coalesced into at most 'app.availabilityStream.maxUpdatesPerSecond' events per second. " +
+      "\nSubscribers reading events too slowly are disconnected, and are expected to subscribe again.",
+    tags = {"Parking Space"})
+  @ApiResponses(value = {
+    @ApiResponse(responseCode = "200", description = "Successful operation",
+      content = @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE, schema = @Schema(implementation = Availability.class))),
+    @ApiResponse(responseCode = "400", description = "Invalid car type",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "503", description = "Availability stream disabled, or too many subscribers",
+      content = @Content(schema = @Schema())),
+    @ApiResponse(responseCode = "500", description = "Server error",
+      content = @Content(schema = @Schema()))
+  })
+  @GetMapping(path = "/availability", produces = {MediaType.TEXT_EVENT_STREAM_VALUE})
+  SseEmitter streamAvailability(@Parameter(description = "Car type", required = true)
+                                @RequestParam("type") ParkingSpace.Type type);
 
 }
@@ -1,96 +1,211 @@
 package com.acme.parking.api;
 
+import com.acme.parking.api.model.BatchItem;
+import com.acme.parking.api.model.IdBatch;
 import com.acme.parking.api.model.ParkingSpaceQuery;
 import com.acme.parking.api.model.ParkingSpaceQueryResult;
+import com.acme.parking.api.model.ParkingSpaceStats;
+import com.acme.parking.api.model.ParkingSpaceStatsQuery;
 import com.acme.parking.exception.InvalidParkingSpaceIdException;
 import com.acme.parking.inventory.model.ParkingSpace;
 import com.acme.parking.inventory.model.ParkingSpace.Status;
 import com.acme.parking.inventory.model.ParkingSpace.Type;
-import com.acme.parking.properties.KafkaRequestTopics;
-import lombok.SneakyThrows;
-import org.apache.kafka.clients.producer.ProducerRecord;
+import com.acme.parking.messaging.Operation;
+import com.acme.parking.messaging.RequestReplyGateway;
+import com.acme.parking.properties.AppProperties;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.kafka.requestreply.ReplyingKafkaTemplate;
-import org.springframework.kafka.requestreply.RequestReplyFuture;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.UUID;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+/**
+ * Parking space reads are served by the local {@link ParkingSpaceView} when it is caught up,
+ * and by the inventory otherwise, through the {@link LookupCache} for parking spaces looked up by id.
+ * Identical concurrent availability lookups sent to the inventory share a single request, see {@link SingleFlight}.
+ */
 @RestController
 public class ParkingSpaceAPIImpl implements ParkingSpaceAPI {
 
-  private final KafkaRequestTopics requestTopics;
+  private final RequestReplyGateway gateway;
 
-  private final ReplyingKafkaTemplate<String, Long, ParkingSpace> parkingSpaceByIdKafkaTemplate;
+  private final InFlightRequestLimiter inFlightRequestLimiter;
 
-  private final ReplyingKafkaTemplate<String, Type, ParkingSpace> nextAvailableParkingSpaceKafkaTemplate;
+  private final ParkingSpaceView view;
 
-  private final ReplyingKafkaTemplate<String, ParkingSpaceQuery, ParkingSpaceQueryResult> parkingSpacesQueryKafkaTemplate;
+  private final AvailabilityStream availabilityStream;
+
+  private final LookupCache lookupCache;
+
+  private final SingleFlight<Type, ParkingSpace> nextAvailableLookups;
+
+  private final SingleFlight<ParkingSpaceQuery, ParkingSpaceQueryResult> queryLookups;
 
   @Autowired
-  public ParkingSpaceAPIImpl(ReplyingKafkaTemplate<String, Long, ParkingSpace> parkingSpaceByIdKafkaTemplate,
-                             ReplyingKafkaTemplate<String, Type, ParkingSpace> nextAvailableParkingSpaceKafkaTemplate,
-                             ReplyingKafkaTemplate<String, ParkingSpaceQuery, ParkingSpaceQueryResult> parkingSpacesQueryKafkaTemplate,
-                             KafkaRequestTopics requestTopics) {
-    this.parkingSpaceByIdKafkaTemplate = parkingSpaceByIdKafkaTemplate;
-    this.nextAvailableParkingSpaceKafkaTemplate = nextAvailableParkingSpaceKafkaTemplate;
-    this.parkingSpacesQueryKafkaTemplate = parkingSpacesQueryKafkaTemplate;
-    this.requestTopics = requestTopics;
+  public ParkingSpaceAPIImpl(RequestReplyGateway gateway, InFlightRequestLimiter inFlightRequestLimiter,
+                             ParkingSpaceView view, AvailabilityStream availabilityStream, LookupCache lookupCache,
+                             AppProperties config, MeterRegistry meterRegistry) {
+    this.gateway = gateway;
+    this.inFlightRequestLimiter = inFlightRequestLimiter;
+    this.view = view;
+    this.availabilityStream = availabilityStream;
+    this.lookupCache = lookupCache;
+    this.nextAvailableLookups = new SingleFlight<>(Operation.NEXT_AVAILABLE_PARKING_SPACE.getKind(),
+      config.getLookupFreshnessMs(), meterRegistry);
+    this.queryLookups = new SingleFlight<>(Operation.PARKING_SPACES_QUERY.getKind(), config.getLookupFreshnessMs(),
+      meterRegistry);
+  }
+
+  @Override
+  public CompletableFuture<ResponseEntity<ParkingSpace>> getParkingSpaceById(Long id) {
+    return inFlightRequestLimiter.submit(() -> getParkingSpace(id))
+      .thenApply(ResponseEntity::ok);
+  }
+
+  private CompletableFuture<ParkingSpace> getParkingSpace(Long id) {
+    ParkingSpace parkingSpace = view.parkingSpace(id);
+    if (parkingSpace != null) {
+      return CompletableFuture.completedFuture(parkingSpace);
+    }
+    return lookupCache.parkingSpace(id, () -> gateway.sendAndReceive(Operation.PARKING_SPACE_BY_ID, id))
+      .thenApply(parkingSpaceFound -> {
+        if (parkingSpaceFound.getId() == null) {
+          throw new InvalidParkingSpaceIdException(id);
+        }
+        return parkingSpaceFound;
+      });
   }
 
   @Override
-  @SneakyThrows
-  public ResponseEntity<ParkingSpace> getParkingSpaceById(Long id) {
-    ParkingSpace parkingSpaceFound = getParkingSpace(id);
-    return ResponseEntity.ok(parkingSpaceFound);
+  public CompletableFuture<ResponseEntity<List<BatchItem<ParkingSpace>>>> getParkingSpacesByIds(List<Long> ids) {
+    return inFlightRequestLimiter.submit(() -> getParkingSpaces(ids))
+      .thenApply(parkingSpaces -> {
+        List<BatchItem<ParkingSpace>> items = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+          ParkingSpace parkingSpace = parkingSpaces.get(i);
+          Long id = ids.get(i);
+          items.add(parkingSpace != null && parkingSpace.getId() != null ? BatchItem.of(id, HttpStatus.OK, parkingSpace)
+            : BatchItem.failed(id, HttpStatus.NOT_FOUND, new InvalidParkingSpaceIdException(id)));
+        }
+        return ResponseEntity.ok(items);
+      });
   }
 
-  private ParkingSpace getParkingSpace(Long id) throws InterruptedException, java.util.concurrent.ExecutionException {
-    ProducerRecord<String, Long> record = new ProducerRecord<>(requestTopics.getParkingSpaceById(), null, UUID.randomUUID().toString(), id);
-    RequestReplyFuture<String, Long, ParkingSpace> future = parkingSpaceByIdKafkaTemplate.sendAndReceive(record);
-    ParkingSpace parkingSpaceFound = future.get().value();
-    if (parkingSpaceFound.getId() == null) {
-      throw new InvalidParkingSpaceIdException(id);
+  private CompletableFuture<List<ParkingSpace>> getParkingSpaces(List<Long> ids) {
+    List<ParkingSpace> parkingSpaces = view.parkingSpaces(ids);
+    if (parkingSpaces != null) {
+      return CompletableFuture.completedFuture(parkingSpaces);
     }
-    return parkingSpaceFound;
+    // Looked up by the node owning each partition, like batch starts
+    List<ParkingSpace> found = new ArrayList<>(Collections.nCopies(ids.size(), null));
+    List<Integer> indexes = IntStream.range(0, ids.size()).boxed().collect(Collectors.toList());
+    return CompletableFuture.allOf(gateway.groupByPartition(Operation.PARKING_SPACES_BY_IDS, indexes,
+      i -> String.valueOf(ids.get(i))).stream()
+      .filter(group -> !group.isEmpty())
+      .map(group -> gateway.sendAndReceive(Operation.PARKING_SPACES_BY_IDS,
+        new IdBatch(group.stream().map(ids::get).collect(Collectors.toList())))
+        .thenAccept(result -> {
+          for (int j = 0; j < group.size(); j++) {
+            found.set(group.get(j), result.getResult().get(j));
+          }
+        }))
+      .toArray(CompletableFuture[]::new))
+      .thenApply(done -> found);
   }
 
   @Override
-  @SneakyThrows
-  public ResponseEntity<List<ParkingSpace>> searchParkingSpaces(Type type, Status status, Integer count) {
-    if (count == 1 & status == Status.AVAILABLE) {
-      ParkingSpace nextAvailableParkingSpace = getNextAvailableParkingSpace(type);
-      if (nextAvailableParkingSpace.getId() != null) {
-        return ResponseEntity.ok(List.of(nextAvailableParkingSpace));
-      } else {
-        return ResponseEntity.noContent().build();
-      }
+  public CompletableFuture<ResponseEntity<List<ParkingSpace>>> searchParkingSpaces(Type type, Status status, Integer count,
+                                                                                   String pageToken) {
+    // Without count, nor page token, no next page is expected: the next available parking space is enough
+    if (count == null && status == Status.AVAILABLE && pageToken == null) {
+      return inFlightRequestLimiter.submit(() -> getNextAvailableParkingSpace(type))
+        .thenApply(nextAvailableParkingSpace -> {
+          if (nextAvailableParkingSpace.getId() != null) {
+            return ResponseEntity.ok(List.of(nextAvailableParkingSpace));
+          } else {
+            return ResponseEntity.noContent().build();
+          }
+        });
     } else {
-      List<ParkingSpace> matchingParkingSpaces = queryParkingSpaces(type, status, count);
-      if (CollectionUtils.isEmpty(matchingParkingSpaces)) {
-        return ResponseEntity.noContent().build();
-      } else {
-        return ResponseEntity.ok(matchingParkingSpaces);
-      }
+      // Rejects malformed tokens before sending the query
+      ParkingSpaceQuery.afterId(pageToken);
+      ParkingSpaceQuery query = new ParkingSpaceQuery(type, status, count != null ? count : 1, pageToken);
+      return inFlightRequestLimiter.submit(() -> queryParkingSpaces(query))
+        .thenApply(queryResult -> {
+          if (CollectionUtils.isEmpty(queryResult.getResult())) {
+            return ResponseEntity.noContent().build();
+          }
+          ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+          if (queryResult.getNextCursor() != null) {
+            response.header(NEXT_PAGE_TOKEN_HEADER, queryResult.getNextCursor());
+          }
+          return response.body(queryResult.getResult());
+        });
+    }
+  }
+
+  private CompletableFuture<ParkingSpaceQueryResult> queryParkingSpaces(ParkingSpaceQuery query) {
+    ParkingSpaceQueryResult queryResult = view.query(query);
+    if (queryResult != null) {
+      return CompletableFuture.completedFuture(queryResult);
+    }
+    // Pages after the first one are rarely requested concurrently
+    if (query.getCursor() != null) {
+      return gateway.sendAndReceive(Operation.PARKING_SPACES_QUERY, query);
+    }
+    return queryLookups.execute(query, () -> gateway.sendAndReceive(Operation.PARKING_SPACES_QUERY, query));
+  }
+
+  private CompletableFuture<ParkingSpace> getNextAvailableParkingSpace(Type type) {
+    ParkingSpace nextAvailableParkingSpace = view.nextAvailable(type);
+    if (nextAvailableParkingSpace != null) {
+      return CompletableFuture.completedFuture(nextAvailableParkingSpace);
     }
+    return nextAvailableLookups.execute(type, () -> gateway.sendAndReceive(Operation.NEXT_AVAILABLE_PARKING_SPACE, type));
   }
 
-  private List<ParkingSpace> queryParkingSpaces(Type type, Status status, Integer count) throws InterruptedException, ExecutionException {
-    ProducerRecord<String, ParkingSpaceQuery> record =
-      new ProducerRecord<>(requestTopics.getParkingSpacesQuery(), null, UUID.randomUUID().toString(), new ParkingSpaceQuery(type, status, count));
-    RequestReplyFuture<String, ParkingSpaceQuery, ParkingSpaceQueryResult> future = parkingSpacesQueryKafkaTemplate.sendAndReceive(record);
-    return future.get().value().getResult();
+  @Override
+  public CompletableFuture<ResponseEntity<List<ParkingSpaceStats>>> getParkingSpaceStats(Type type) {
+    List<Type> types = type != null ? List.of(type) : List.of(Type.values());
+    return inFlightRequestLimiter.submit(() -> {
+      List<CompletableFuture<ParkingSpaceStats>> stats = types.stream()
+        .map(this::getStats)
+        .collect(Collectors.toList());
+      return CompletableFuture.allOf(stats.toArray(new CompletableFuture[0]))
+        .thenApply(done -> stats.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }).thenApply(ResponseEntity::ok);
   }
 
-  private ParkingSpace getNextAvailableParkingSpace(Type type) throws InterruptedException, ExecutionException {
-    ProducerRecord<String, Type> record =
-      new ProducerRecord<>(requestTopics.getNextAvailableParkingSpace(), null, UUID.randomUUID().toString(), type);
-    RequestReplyFuture<String, Type, ParkingSpace> future = nextAvailableParkingSpaceKafkaTemplate.sendAndReceive(record);
-    return future.get().value();
+  private CompletableFuture<ParkingSpaceStats> getStats(Type type) {
+    ParkingSpaceStats stats = view.stats(type);
+    if (stats != null) {
+      return CompletableFuture.completedFuture(stats);
+    }
+    // Summed over the owners of the partitions
+    List<CompletableFuture<ParkingSpaceStats>> partitionStats = gateway.sendToEachPartition(Operation.PARKING_SPACE_STATS,
+      partition -> new ParkingSpaceStatsQuery(type, partition));
+    return CompletableFuture.allOf(partitionStats.toArray(new CompletableFuture[0]))
+      .thenApply(done -> {
+        ParkingSpaceStats sum = new ParkingSpaceStats(type, 0, 0);
+        for (CompletableFuture<ParkingSpaceStats> partition : partitionStats) {
+          sum.setAvailable(sum.getAvailable() + partition.join().getAvailable());
+          sum.setOccupied(sum.getOccupied() + partition.join().getOccupied());
+        }
+        return sum;
+      });
   }
 
+  @Override
+  public SseEmitter streamAvailability(Type type) {
+    return availabilityStream.subscribe(type);
+  }
 }
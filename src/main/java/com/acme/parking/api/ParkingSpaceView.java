@@ -0,0 +1,326 @@
+package com.acme.parking.api;
+
+import com.acme.parking.api.model.Availability;
+import com.acme.parking.api.model.ParkingSpaceQuery;
+import com.acme.parking.api.model.ParkingSpaceQueryResult;
+import com.acme.parking.api.model.ParkingSpaceStats;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Status;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import com.acme.parking.inventory.model.ParkingSpaceEvent;
+import com.acme.parking.properties.AvailabilityViewProperties;
+import com.acme.parking.properties.MessagingProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Local view of the parking spaces on API nodes, built from the parking space event topic,
+ * so that parking space reads are served without a round trip to the inventory.
+ * <p>
+ * Every node consumes all the partitions of the topic from the beginning, without consumer group.
+ * The view is caught up to a point in time once it has consumed every event published before it:
+ * reads are only served while the last such point is within {@code app.availabilityView.maxStaleness},
+ * otherwise they return null and the caller falls back to the inventory.
+ * Lag (events not consumed yet) and staleness are reported in the {@value #LAG_METRIC} & {@value #STALENESS_METRIC} gauges.
+ */
+@Component
+public class ParkingSpaceView implements SmartLifecycle {
+
+  private static final Logger log = LoggerFactory.getLogger(ParkingSpaceView.class);
+
+  public static final String LAG_METRIC = "parking.availability.view.lag";
+  public static final String STALENESS_METRIC = "parking.availability.view.staleness";
+
+  private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+
+  private final ConsumerFactory<Object, Object> consumerFactory;
+
+  private final AvailabilityViewProperties properties;
+
+  private final boolean enabled;
+
+  private final Map<Long, ParkingSpace> parkingSpaces = new ConcurrentHashMap<>();
+
+  // Ids of the parking spaces of each type & status, in ascending order for paging
+  private final Map<Type, Map<Status, NavigableSet<Long>>> ids = new EnumMap<>(Type.class);
+
+  // Parking spaces of each type & status, maintained as events are applied rather than counted on reads
+  private final Map<Type, Map<Status, AtomicLong>> counts = new EnumMap<>(Type.class);
+
+  // Number of events applied, for readers to tell whether anything changed since they last looked
+  private final AtomicLong version = new AtomicLong();
+
+  // Notified of each event once applied, on the consumer thread
+  private final List<Consumer<ParkingSpaceEvent>> listeners = new CopyOnWriteArrayList<>();
+
+  private volatile long lag;
+
+  // Time at which the view last held every event published, 0 until the end of the topic is first reached
+  private volatile long caughtUpMillis;
+
+  private volatile boolean running;
+
+  private Thread consumerThread;
+
+  private org.apache.kafka.clients.consumer.Consumer<Object, Object> consumer;
+
+  @Autowired
+  public ParkingSpaceView(ConsumerFactory<Object, Object> consumerFactory, AvailabilityViewProperties properties,
+                          MessagingProperties messagingProperties, MeterRegistry meterRegistry) {
+    this.consumerFactory = consumerFactory;
+    this.properties = properties;
+    this.enabled = properties.isEnabled() && messagingProperties.isKafkaTransport();
+    for (Type type : Type.values()) {
+      Map<Status, NavigableSet<Long>> idsByStatus = new EnumMap<>(Status.class);
+      Map<Status, AtomicLong> countsByStatus = new EnumMap<>(Status.class);
+      for (Status status : Status.values()) {
+        idsByStatus.put(status, new ConcurrentSkipListSet<>());
+        countsByStatus.put(status, new AtomicLong());
+      }
+      ids.put(type, idsByStatus);
+      counts.put(type, countsByStatus);
+    }
+    Gauge.builder(LAG_METRIC, this, view -> view.lag).register(meterRegistry);
+    Gauge.builder(STALENESS_METRIC, this, view -> view.caughtUpMillis == 0 ? Double.NaN
+      : System.currentTimeMillis() - view.caughtUpMillis).baseUnit("milliseconds").register(meterRegistry);
+  }
+
+  /**
+   * @return the parking space, or null when the view cannot answer
+   */
+  public ParkingSpace parkingSpace(long id) {
+    return isCaughtUp() ? parkingSpaces.get(id) : null;
+  }
+
+  /**
+   * @return the parking spaces in the order of the ids, null for unknown ones, or null when the view cannot answer
+   */
+  public List<ParkingSpace> parkingSpaces(List<Long> ids) {
+    if (!isCaughtUp()) {
+      return null;
+    }
+    List<ParkingSpace> result = new ArrayList<>(ids.size());
+    ids.forEach(id -> result.add(parkingSpaces.get(id)));
+    return result;
+  }
+
+  /**
+   * @return the available parking space of the given type with the lowest id, one without id when there is none,
+   * or null when the view cannot answer
+   */
+  public ParkingSpace nextAvailable(Type type) {
+    ParkingSpaceQueryResult queryResult = query(new ParkingSpaceQuery(type, Status.AVAILABLE, 1));
+    if (queryResult == null) {
+      return null;
+    }
+    return queryResult.getResult().isEmpty() ? new ParkingSpace(null, type) : queryResult.getResult().get(0);
+  }
+
+  /**
+   * @return the page of parking spaces, or null when the view cannot answer
+   */
+  public ParkingSpaceQueryResult query(ParkingSpaceQuery query) {
+    if (!isCaughtUp()) {
+      return null;
+    }
+    // One more than requested, to know whether there is a next page.
+    // Ids of a parking space being moved may be briefly found under both statuses, hence the status check
+    List<ParkingSpace> candidates = ids.get(query.getType()).get(query.getStatus())
+      .tailSet(ParkingSpaceQuery.afterId(query.getCursor()), false).stream()
+      .map(parkingSpaces::get)
+      .filter(parkingSpace -> parkingSpace != null && parkingSpace.getStatus() == query.getStatus())
+      .limit(query.getCount() + 1)
+      .collect(Collectors.toList());
+    return ParkingSpaceQueryResult.page(candidates, query.getCount());
+  }
+
+  /**
+   * @return the number of available parking spaces of the given type & the next one, or null when the view cannot answer
+   */
+  public Availability availability(Type type) {
+    ParkingSpace nextAvailable = nextAvailable(type);
+    if (nextAvailable == null) {
+      return null;
+    }
+    return new Availability(type, counts.get(type).get(Status.AVAILABLE).get(), nextAvailable.getId());
+  }
+
+  /**
+   * @return the number of parking spaces of the given type in each status, or null when the view cannot answer
+   */
+  public ParkingSpaceStats stats(Type type) {
+    if (!isCaughtUp()) {
+      return null;
+    }
+    Map<Status, AtomicLong> countsByStatus = counts.get(type);
+    return new ParkingSpaceStats(type, countsByStatus.get(Status.AVAILABLE).get(), countsByStatus.get(Status.OCCUPIED).get());
+  }
+
+  /**
+   * Caught up within the maximum staleness, and aware of parking spaces: the owners publish a snapshot of theirs
+   * as soon as they are assigned partitions.
+   */
+  public boolean isCaughtUp() {
+    long caughtUp = caughtUpMillis;
+    return caughtUp != 0 && System.currentTimeMillis() - caughtUp <= properties.getMaxStaleness().toMillis()
+      && !parkingSpaces.isEmpty();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void addListener(Consumer<ParkingSpaceEvent> listener) {
+    listeners.add(listener);
+  }
+
+  public long getVersion() {
+    return version.get();
+  }
+
+  public long getLag() {
+    return lag;
+  }
+
+  // Events of a parking space are consumed in publication order, the latest one holding its current state
+  void apply(ParkingSpaceEvent event) {
+    ParkingSpace parkingSpace = event.getParkingSpace();
+    ParkingSpace previous = parkingSpaces.put(parkingSpace.getId(), parkingSpace);
+    if (previous == null || previous.getType() != parkingSpace.getType() || previous.getStatus() != parkingSpace.getStatus()) {
+      if (previous != null) {
+        ids.get(previous.getType()).get(previous.getStatus()).remove(previous.getId());
+        counts.get(previous.getType()).get(previous.getStatus()).decrementAndGet();
+      }
+      counts.get(parkingSpace.getType()).get(parkingSpace.getStatus()).incrementAndGet();
+    }
+    ids.get(parkingSpace.getType()).get(parkingSpace.getStatus()).add(parkingSpace.getId());
+    version.incrementAndGet();
+    listeners.forEach(listener -> listener.accept(event));
+  }
+
+  void caughtUp(long millis) {
+    caughtUpMillis = millis;
+  }
+
+  @Override
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    Properties consumerProperties = new Properties();
+    consumerProperties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+    // End offsets are requested behind pending fetches, which must not hold them longer than a poll
+    consumerProperties.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, String.valueOf(POLL_TIMEOUT.toMillis()));
+    consumer = consumerFactory.createConsumer(null, "parking-space-view", null, consumerProperties);
+    running = true;
+    consumerThread = new CustomizableThreadFactory("parking-space-view-").newThread(this::consume);
+    consumerThread.start();
+  }
+
+  @Override
+  public void stop() {
+    if (!running) {
+      return;
+    }
+    running = false;
+    consumer.wakeup();
+    try {
+      consumerThread.join(POLL_TIMEOUT.toMillis() * 10);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  private void consume() {
+    try {
+      List<TopicPartition> partitions = assignAll();
+      // End offsets of the last catch-up point, and when they were read
+      Map<TopicPartition, Long> endOffsets = null;
+      long endOffsetsMillis = 0;
+      while (running) {
+        if (endOffsets == null) {
+          endOffsetsMillis = System.currentTimeMillis();
+          endOffsets = consumer.endOffsets(partitions);
+        }
+        ConsumerRecords<Object, Object> records = consumer.poll(POLL_TIMEOUT);
+        for (ConsumerRecord<Object, Object> record : records) {
+          if (record.value() instanceof ParkingSpaceEvent) {
+            apply((ParkingSpaceEvent) record.value());
+          }
+        }
+        long remaining = 0;
+        for (TopicPartition partition : partitions) {
+          remaining += Math.max(0, endOffsets.get(partition) - consumer.position(partition));
+        }
+        lag = remaining;
+        if (remaining == 0) {
+          caughtUp(endOffsetsMillis);
+          endOffsets = null;
+        }
+      }
+    } catch (WakeupException e) {
+      // Stopping
+    } catch (RuntimeException e) {
+      log.error("Parking space view stopped, reads fall back to the inventory", e);
+    } finally {
+      running = false;
+      consumer.close();
+    }
+  }
+
+  private List<TopicPartition> assignAll() {
+    List<PartitionInfo> partitionInfos = consumer.partitionsFor(properties.getTopic());
+    while (partitionInfos == null || partitionInfos.isEmpty()) {
+      log.info("Waiting for topic {} to be created", properties.getTopic());
+      try {
+        Thread.sleep(POLL_TIMEOUT.toMillis());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new WakeupException();
+      }
+      if (!running) {
+        throw new WakeupException();
+      }
+      partitionInfos = consumer.partitionsFor(properties.getTopic());
+    }
+    List<TopicPartition> partitions = new ArrayList<>();
+    for (PartitionInfo partitionInfo : partitionInfos) {
+      partitions.add(new TopicPartition(partitionInfo.topic(), partitionInfo.partition()));
+    }
+    consumer.assign(partitions);
+    consumer.seekToBeginning(partitions);
+    return partitions;
+  }
+}
@@ -0,0 +1,96 @@
+package com.acme.parking.api;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical requests: the first caller of a key sends the request,
+ * and callers of the same key arriving before its reply share it instead of sending their own.
+ * <p>
+ * With a freshness window, a successful reply is also shared with callers arriving up to that long after it.
+ * Failed requests are never shared once failed, the next caller sends a new one.
+ * Shared & sent requests are counted in {@value #METRIC}, tagged by operation & result,
+ * along with the ratio of shared ones in {@value #HIT_RATIO_METRIC}.
+ *
+ * @param <K> request key, identical requests having equal keys
+ * @param <V> reply type
+ */
+public class SingleFlight<K, V> {
+
+  public static final String METRIC = "parking.lookup.coalescing";
+  public static final String HIT_RATIO_METRIC = "parking.lookup.coalescing.hit.ratio";
+
+  private final long freshnessNanos;
+
+  private final Map<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+  private final Counter hits;
+
+  private final Counter misses;
+
+  public SingleFlight(String operation, long freshnessMillis, MeterRegistry meterRegistry) {
+    this.freshnessNanos = freshnessMillis * 1_000_000;
+    this.hits = Counter.builder(METRIC).tag("operation", operation).tag("result", "hit").register(meterRegistry);
+    this.misses = Counter.builder(METRIC).tag("operation", operation).tag("result", "miss").register(meterRegistry);
+    Gauge.builder(HIT_RATIO_METRIC, this, SingleFlight::hitRatio).tag("operation", operation).register(meterRegistry);
+  }
+
+  /**
+   * @return the reply of the request in flight for the key, or of the request sent by the given supplier otherwise
+   */
+  public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> request) {
+    long now = System.nanoTime();
+    Flight<V> flight = new Flight<>();
+    Flight<V> current = flights.compute(key, (k, existing) -> existing != null && existing.isShareable(now, freshnessNanos)
+      ? existing : flight);
+    if (current != flight) {
+      hits.increment();
+      // Copies keep callers from completing the shared reply
+      return current.reply.copy();
+    }
+    misses.increment();
+    try {
+      request.get().whenComplete((reply, exception) -> complete(key, flight, reply, exception));
+    } catch (RuntimeException e) {
+      complete(key, flight, null, e);
+    }
+    return flight.reply.copy();
+  }
+
+  private void complete(K key, Flight<V> flight, V reply, Throwable exception) {
+    flight.completedNanos = System.nanoTime();
+    if (exception != null || freshnessNanos == 0) {
+      flights.remove(key, flight);
+    }
+    if (exception != null) {
+      flight.reply.completeExceptionally(exception);
+    } else {
+      flight.reply.complete(reply);
+    }
+  }
+
+  double hitRatio() {
+    double total = hits.count() + misses.count();
+    return total == 0 ? 0 : hits.count() / total;
+  }
+
+  private static final class Flight<V> {
+
+    private final CompletableFuture<V> reply = new CompletableFuture<>();
+
+    private volatile long completedNanos;
+
+    private boolean isShareable(long now, long freshnessNanos) {
+      if (!reply.isDone()) {
+        return true;
+      }
+      return !reply.isCompletedExceptionally() && now - completedNanos <= freshnessNanos;
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package com.acme.parking.api.model;
+
+import com.acme.parking.inventory.model.ParkingSpace;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Availability of the parking spaces of a type, as pushed to the subscribers of the availability stream.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Availability {
+
+  private ParkingSpace.Type type;
+
+  // Number of available parking spaces of the type
+  private long available;
+
+  // Available parking space with the lowest id, null when there is none
+  private Long nextParkingSpaceId;
+}
@@ -0,0 +1,38 @@
+package com.acme.parking.api.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Outcome of one item of a batch request: the status the item would have got as a single request,
+ * along with its result, or its error message.
+ *
+ * @param <T> result type
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(Include.NON_NULL)
+public class BatchItem<T> {
+
+  // Requested id
+  private Long id;
+
+  private int status;
+
+  private T result;
+
+  private String error;
+
+  public static <T> BatchItem<T> of(Long id, HttpStatus status, T result) {
+    return new BatchItem<>(id, status.value(), result, null);
+  }
+
+  public static <T> BatchItem<T> failed(Long id, HttpStatus status, RuntimeException error) {
+    return new BatchItem<>(id, status.value(), null, error.getMessage());
+  }
+}
@@ -0,0 +1,19 @@
+package com.acme.parking.api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Ids of the parking spaces or parkings to look up in one request.
+ * The reply holds one result per id, in the same order.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IdBatch {
+
+  private List<Long> ids;
+}
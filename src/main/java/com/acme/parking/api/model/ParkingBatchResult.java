@@ -0,0 +1,18 @@
+package com.acme.parking.api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Reply of the batch parking commands & lookups, one result per requested item in request order.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ParkingBatchResult {
+
+  private List<ParkingResult> results;
+}
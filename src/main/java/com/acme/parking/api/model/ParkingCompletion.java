@@ -0,0 +1,17 @@
+package com.acme.parking.api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Parking completion command for a single parking, replied with a {@link ParkingResult}.
+ * A type of its own, as the owner's listener container dispatches requests by payload type.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ParkingCompletion {
+
+  private Long parkingId;
+}
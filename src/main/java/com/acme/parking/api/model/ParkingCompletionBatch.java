@@ -0,0 +1,19 @@
+package com.acme.parking.api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Parking completion command for several parkings, whose parking spaces are all owned by the same node.
+ * Replied with a {@link ParkingBatchResult} holding one result per parking, in the same order.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ParkingCompletionBatch {
+
+  private List<Long> parkingIds;
+}
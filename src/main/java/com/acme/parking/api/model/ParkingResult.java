@@ -0,0 +1,37 @@
+package com.acme.parking.api.model;
+
+import com.acme.parking.inventory.model.Parking;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Reply of the parking start & completion commands, and of parking lookups.
+ * Holds either the started, completed or found parking, or the reason why the request was rejected.
+ * Also used for each item of the batch commands & lookups, see {@link ParkingBatchResult}.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ParkingResult {
+
+  private Parking parking;
+  private Rejection rejection;
+
+  public static ParkingResult accepted(Parking parking) {
+    return new ParkingResult(parking, null);
+  }
+
+  public static ParkingResult rejected(Rejection rejection) {
+    return new ParkingResult(null, rejection);
+  }
+
+  public enum Rejection {
+    // Parking starts
+    INVALID_PARKING_SPACE_ID,
+    PARKING_SPACE_NOT_AVAILABLE,
+    // Parking completions & lookups
+    INVALID_PARKING_ID,
+    PARKING_ALREADY_COMPLETED
+  }
+}
@@ -1,12 +1,18 @@
 package com.acme.parking.api.model;
 
+import com.acme.parking.exception.InvalidParkingRequestException;
 import com.acme.parking.inventory.model.ParkingSpace;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
 /**
  * Simple wrapper used to perform parking space filtering queries
+ * Results are paged by id: the cursor is an opaque token pointing after the last parking space of the previous page,
+ * null for the first page.
  */
 @Data
 @AllArgsConstructor
@@ -16,4 +22,30 @@ public class ParkingSpaceQuery {
   private ParkingSpace.Type type;
   private ParkingSpace.Status status;
   private Integer count;
+  private String cursor;
+
+  public ParkingSpaceQuery(ParkingSpace.Type type, ParkingSpace.Status status, Integer count) {
+    this(type, status, count, null);
+  }
+
+  /**
+   * @return cursor pointing to the parking spaces after the given id
+   */
+  public static String cursorAfter(long id) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(Long.toString(id).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @return id after which the page starts, 0 for the first page
+   */
+  public static long afterId(String cursor) {
+    if (cursor == null) {
+      return 0;
+    }
+    try {
+      return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+    } catch (IllegalArgumentException e) {
+      throw new InvalidParkingRequestException("Invalid page token " + cursor);
+    }
+  }
 }
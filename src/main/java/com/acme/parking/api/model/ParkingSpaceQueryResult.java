@@ -9,6 +9,7 @@ import java.util.List;
 
 /**
  * Simple wrapper used to filtering query results
+ * The next cursor is null when there are no more results
  */
 @Data
 @AllArgsConstructor
@@ -16,4 +17,20 @@ import java.util.List;
 public class ParkingSpaceQueryResult {
 
   private List<ParkingSpace> result;
+  private String nextCursor;
+
+  public ParkingSpaceQueryResult(List<ParkingSpace> result) {
+    this(result, null);
+  }
+
+  /**
+   * @param candidates up to {@code count + 1} parking spaces in ascending id order, the extra one revealing a next page
+   */
+  public static ParkingSpaceQueryResult page(List<ParkingSpace> candidates, int count) {
+    if (candidates.size() <= count) {
+      return new ParkingSpaceQueryResult(candidates);
+    }
+    List<ParkingSpace> page = candidates.subList(0, count);
+    return new ParkingSpaceQueryResult(page, ParkingSpaceQuery.cursorAfter(page.get(count - 1).getId()));
+  }
 }
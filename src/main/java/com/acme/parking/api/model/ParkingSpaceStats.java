@@ -0,0 +1,21 @@
+package com.acme.parking.api.model;
+
+import com.acme.parking.inventory.model.ParkingSpace;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Number of parking spaces of a type in each status.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ParkingSpaceStats {
+
+  private ParkingSpace.Type type;
+
+  private long available;
+
+  private long occupied;
+}
@@ -0,0 +1,20 @@
+package com.acme.parking.api.model;
+
+import com.acme.parking.inventory.model.ParkingSpace;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Stats of the parking spaces of a type hashed to a partition, answered by the node owning it.
+ * The stats of the whole parking area are the sum over the partitions.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ParkingSpaceStatsQuery {
+
+  private ParkingSpace.Type type;
+
+  private int partition;
+}
@@ -0,0 +1,19 @@
+package com.acme.parking.api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Parking start command for several parking spaces, all owned by the same node.
+ * Replied with a {@link ParkingBatchResult} holding one result per parking space, in the same order.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ParkingStartBatch {
+
+  private List<Long> parkingSpaceIds;
+}
@@ -0,0 +1,21 @@
+package com.acme.parking.api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Ids of parkings not found in the database, looked up in the write-behind memory of the node owning a partition.
+ * The reply holds one result per id, in the same order, rejected unless the parking space is hashed to the partition.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UnflushedParkingsQuery {
+
+  private List<Long> ids;
+
+  private int partition;
+}
@@ -1,18 +1,29 @@
 package com.acme.parking.billing;
 
 import com.acme.parking.billing.model.Billing;
-import com.acme.parking.billing.model.PricingStrategy;
 import com.acme.parking.inventory.InventoryController;
 import com.acme.parking.inventory.model.Parking;
-import com.acme.parking.inventory.model.ParkingSpace;
-import org.kie.api.runtime.KieContainer;
-import org.kie.api.runtime.KieSession;
-import org.kie.api.runtime.ObjectFilter;
+import com.acme.parking.messaging.Operation;
+import com.acme.parking.messaging.RequestReplyGateway;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.stereotype.Component;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
 import static com.acme.parking.properties.KafkaRequestTopics.KAFKA_REQUEST_TOPIC_PREFIX;
 
 /**
@@ -20,37 +31,102 @@ import static com.acme.parking.properties.KafkaRequestTopics.KAFKA_REQUEST_TOPIC
  * Incoming & outgoing communication is managed by Kafka topics.
  * Called by {@link InventoryController} to calculate the billing information.
  * <p>
- * Pricing calculation is performed using business Rules, available in the classpath resources (src/main/resources/PricingRules.drl)
+ * Pricing calculation is performed using business Rules, available in the classpath resources (src/main/resources/rules/pricingRules.drl),
+ * compiled at build time by {@link com.acme.parking.config.PricingRulesCompiler}.
  * Powered by Drools rule engine.
+ * Rules can be replaced at runtime, see {@link PricingRules}.
+ * <p>
+ * Billing requests are consumed one by one, or in batches when {@code app.billingBatchEnabled} is set:
+ * each batch is priced by a single rule session, and each request gets its own reply.
+ * <p>
+ * Pending billings of parkings completed with {@code app.asyncBillingEnabled} are consumed from their own topic,
+ * independently of parking completions, and written back to the node owning the parking space.
  */
 @Component
 public class BillingController {
 
-  private final KieContainer kieContainer;
-  private final PricingStrategy pricingStrategy;
+  private static final Logger log = LoggerFactory.getLogger(BillingController.class);
+
+  private final PricingRules pricingRules;
+
+  private final KafkaTemplate<String, Object> replyTemplate;
+
+  private final RequestReplyGateway gateway;
 
   @Autowired
-  public BillingController(KieContainer kieContainer, PricingStrategy pricingStrategy) {
-    this.kieContainer = kieContainer;
-    this.pricingStrategy = pricingStrategy;
+  public BillingController(PricingRules pricingRules,
+                           @Qualifier("replyTemplate") KafkaTemplate<String, Object> replyTemplate,
+                           RequestReplyGateway gateway) {
+    this.pricingRules = pricingRules;
+    this.replyTemplate = replyTemplate;
+    this.gateway = gateway;
   }
 
-  @KafkaListener(topics = "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".billingCalculation}", groupId = "${kafka.group.id}")
+  @KafkaListener(id = "billing", containerFactory = "billingContainerFactory",
+    topics = "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".billingCalculation}", groupId = "${kafka.group.id}")
   @SendTo
   public Billing calculateBilling(Parking parking) {
-    KieSession kieSession = kieContainer.newKieSession();
-    kieSession.insert(parking);
-    kieSession.insert(pricingStrategy);
-    kieSession.fireAllRules();
-
-    ObjectFilter objectFilter = new ObjectFilter() {
-      @Override
-      public boolean accept(Object o) {
-        return "Billing".equals(o.getClass().getSimpleName());
+    return pricingRules.calculate(parking);
+  }
+
+  /**
+   * Prices a batch of billing requests at once, and replies to each of them like {@link #calculateBilling(Parking)}.
+   * When the batch cannot be priced as a whole, requests are priced one by one,
+   * so that a faulty request is left without reply, like in the single path, but does not fail the others.
+   */
+  @KafkaListener(id = "billingBatch", containerFactory = "billingBatchContainerFactory",
+    topics = "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".billingCalculation}", groupId = "${kafka.group.id}")
+  public void calculateBillings(List<ConsumerRecord<String, Object>> requests) {
+    List<Parking> parkings = new ArrayList<>(requests.size());
+    for (ConsumerRecord<String, Object> request : requests) {
+      parkings.add((Parking) request.value());
+    }
+
+    List<Billing> billings;
+    try {
+      billings = pricingRules.calculate(parkings);
+    } catch (RuntimeException e) {
+      log.warn("Batch of {} billing requests failed, pricing them one by one: {}", requests.size(), e.toString());
+      for (ConsumerRecord<String, Object> request : requests) {
+        try {
+          reply(request, calculateBilling((Parking) request.value()));
+        } catch (RuntimeException requestException) {
+          log.error("Billing request at offset {} of {}-{} failed", request.offset(), request.topic(),
+            request.partition(), requestException);
+        }
       }
-    };
-    return (Billing) kieSession.getObjects(objectFilter).stream()
-      .findFirst().get();
+      return;
+    }
+    for (int i = 0; i < requests.size(); i++) {
+      reply(requests.get(i), billings.get(i));
+    }
   }
 
+  // Written back once priced, so that a pending billing is not lost when its write-back cannot be sent
+  @KafkaListener(id = "pendingBilling", topics = "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".pendingBillingCalculation}",
+    groupId = "${kafka.group.id}")
+  public void calculatePendingBilling(Parking parking) {
+    Billing billing = pricingRules.calculate(parking);
+    billing.setId(parking.getBilling().getId());
+    gateway.send(Operation.BILLING_WRITE_BACK, billing, String.valueOf(parking.getParkingSpaceId())).join();
+  }
+
+  // Same reply as @SendTo: to the request's reply topic, with its correlation id
+  private void reply(ConsumerRecord<String, Object> request, Billing billing) {
+    Headers headers = request.headers();
+    Header replyTopic = headers.lastHeader(KafkaHeaders.REPLY_TOPIC);
+    if (replyTopic == null) {
+      log.warn("Billing request at offset {} of {}-{} has no reply topic", request.offset(), request.topic(),
+        request.partition());
+      return;
+    }
+    Header replyPartition = headers.lastHeader(KafkaHeaders.REPLY_PARTITION);
+    ProducerRecord<String, Object> reply = new ProducerRecord<>(new String(replyTopic.value(), StandardCharsets.UTF_8),
+      replyPartition == null ? null : ByteBuffer.wrap(replyPartition.value()).getInt(), request.key(), billing);
+    Header correlationId = headers.lastHeader(KafkaHeaders.CORRELATION_ID);
+    if (correlationId != null) {
+      reply.headers().add(KafkaHeaders.CORRELATION_ID, correlationId.value());
+    }
+    replyTemplate.send(reply);
+  }
 }
@@ -0,0 +1,69 @@
+package com.acme.parking.billing;
+
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.billing.model.PricingStrategy;
+import com.acme.parking.inventory.model.Parking;
+import org.kie.api.command.Command;
+import org.kie.api.runtime.KieContainer;
+import org.kie.api.runtime.KieContainerSessionsPool;
+import org.kie.api.runtime.StatelessKieSession;
+import org.kie.internal.command.CommandFactory;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates the pricing rules with a stateless session backed by a bounded pool: each calculation borrows a session,
+ * which is reset and returned to the pool once rules have fired, and billings are collected by parking through the
+ * {@value #BILLINGS_GLOBAL} global rather than by scanning the working memory.
+ * A batch of parkings is inserted in a single session, and priced by a single {@code fireAllRules}.
+ */
+class DroolsPricingCalculator implements PricingCalculator {
+
+  static final String BILLINGS_GLOBAL = "billings";
+
+  private final PricingStrategy pricingStrategy;
+  private final KieContainerSessionsPool sessionsPool;
+  private final StatelessKieSession pricingSession;
+
+  DroolsPricingCalculator(KieContainer kieContainer, PricingStrategy pricingStrategy, int sessionPoolSize) {
+    this.pricingStrategy = pricingStrategy;
+    this.sessionsPool = kieContainer.newKieSessionsPool(sessionPoolSize);
+    this.pricingSession = sessionsPool.newStatelessKieSession();
+  }
+
+  @Override
+  public Billing calculate(Parking parking) {
+    return calculate(List.of(parking)).get(0);
+  }
+
+  @Override
+  public List<Billing> calculate(List<Parking> parkings) {
+    // The global is set within the execution, so that concurrent calculations do not share it.
+    // Parkings are facts compared by identity, and so are the keys of the billings
+    Map<Parking, Billing> billings = new IdentityHashMap<>(parkings.size());
+    List<Command<?>> commands = List.of(
+      CommandFactory.newSetGlobal(BILLINGS_GLOBAL, billings),
+      CommandFactory.newInsertElements(parkings),
+      CommandFactory.newInsert(pricingStrategy),
+      CommandFactory.newFireAllRules());
+    pricingSession.execute(CommandFactory.newBatchExecution(commands));
+
+    List<Billing> orderedBillings = new ArrayList<>(parkings.size());
+    for (Parking parking : parkings) {
+      Billing billing = billings.get(parking);
+      if (billing == null) {
+        throw new IllegalStateException("No pricing rule matched strategy " + pricingStrategy.getStrategy());
+      }
+      orderedBillings.add(billing);
+    }
+    return orderedBillings;
+  }
+
+  @Override
+  public void close() {
+    sessionsPool.shutdown();
+  }
+}
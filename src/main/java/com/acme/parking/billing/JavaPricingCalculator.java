@@ -0,0 +1,50 @@
+package com.acme.parking.billing;
+
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.billing.model.PricingStrategy;
+import com.acme.parking.inventory.model.Parking;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Plain Java equivalent of the packaged pricing rules (rules/pricingRules.drl).
+ * The price formula is chosen once per {@link PricingStrategy#getStrategy()}, and follows the arithmetic of the rules,
+ * including the operations order, so that both produce identical amounts.
+ */
+class JavaPricingCalculator implements PricingCalculator {
+
+  static final String CURRENCY = "EUR";
+
+  private final PricingStrategy pricingStrategy;
+
+  // Null when no rule matches the strategy
+  private final ToDoubleFunction<Parking> price;
+
+  JavaPricingCalculator(PricingStrategy pricingStrategy) {
+    this.pricingStrategy = pricingStrategy;
+    double fixedAmount = pricingStrategy.getFixedAmount();
+    double pricePerSecond = pricingStrategy.getPricePerSecond();
+    if ("DURATION_ONLY".equals(pricingStrategy.getStrategy())) {
+      // Rule "Pricing Without Fixed Amount"
+      this.price = parking -> limitPrecision(parking.getDurationSeconds() * pricePerSecond);
+    } else if ("WITH_FIXED_AMOUNT".equals(pricingStrategy.getStrategy())) {
+      // Rule "Pricing With Fixed Amount"
+      this.price = parking -> limitPrecision(fixedAmount + parking.getDurationSeconds() * pricePerSecond);
+    } else {
+      this.price = null;
+    }
+  }
+
+  @Override
+  public Billing calculate(Parking parking) {
+    if (price == null) {
+      throw new IllegalStateException("No pricing rule matched strategy " + pricingStrategy.getStrategy());
+    }
+    return new Billing(CURRENCY, price.applyAsDouble(parking));
+  }
+
+  // Same as the limitPrecision function of the rules
+  private static double limitPrecision(double value) {
+    return value * 100 / 100;
+  }
+}
@@ -0,0 +1,52 @@
+package com.acme.parking.billing;
+
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.inventory.model.Parking;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Calculates the price of completed parkings, for a given {@link com.acme.parking.billing.model.PricingStrategy}.
+ * The implementation in use is chosen by {@code app.pricingEngine}.
+ *
+ * @see PricingRuleSet
+ */
+public interface PricingCalculator {
+
+  Billing calculate(Parking parking);
+
+  /**
+   * Calculates the price of several parkings at once
+   *
+   * @return the billings, in the order of the parkings
+   */
+  default List<Billing> calculate(List<Parking> parkings) {
+    List<Billing> billings = new ArrayList<>(parkings.size());
+    for (Parking parking : parkings) {
+      billings.add(calculate(parking));
+    }
+    return billings;
+  }
+
+  /**
+   * Releases the resources held by the calculator, once it is no longer used
+   */
+  default void close() {
+  }
+
+  enum Engine {
+    /**
+     * Evaluates the pricing rules with Drools, rules can be replaced at runtime
+     */
+    DROOLS,
+    /**
+     * Plain Java arithmetic equivalent to the packaged pricing rules, only the pricing strategy can be replaced
+     */
+    JAVA,
+    /**
+     * Time-of-day {@link com.acme.parking.billing.model.Tariffs} per parking space type, in place of the pricing rules
+     */
+    TARIFF
+  }
+}
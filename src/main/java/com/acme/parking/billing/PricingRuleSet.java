@@ -0,0 +1,100 @@
+package com.acme.parking.billing;
+
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.billing.model.PricingStrategy;
+import com.acme.parking.inventory.model.Parking;
+import lombok.Getter;
+import org.kie.api.KieServices;
+import org.kie.api.runtime.KieContainer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pricing rules together with the pricing strategy they are evaluated with,
+ * identified by a version derived from their content.
+ * <p>
+ * Prices are calculated by the {@link PricingCalculator} of the configured engine.
+ * Once retired, a rule set releases its calculator when the last calculation in flight completes.
+ */
+public class PricingRuleSet {
+
+  @Getter
+  private final String version;
+
+  @Getter
+  private final String rules;
+
+  @Getter
+  private final PricingStrategy pricingStrategy;
+
+  private final PricingCalculator calculator;
+
+  // Container compiled for this rule set only, disposed with it
+  private final KieContainer ownedContainer;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicBoolean closed = new AtomicBoolean();
+  private volatile boolean retired;
+
+  PricingRuleSet(String version, String rules, PricingStrategy pricingStrategy, PricingCalculator calculator,
+                 KieContainer ownedContainer) {
+    this.version = version;
+    this.rules = rules;
+    this.pricingStrategy = pricingStrategy;
+    this.calculator = calculator;
+    this.ownedContainer = ownedContainer;
+  }
+
+  Billing calculate(Parking parking) {
+    Billing billing = calculator.calculate(parking);
+    billing.setRuleSetVersion(version);
+    return billing;
+  }
+
+  List<Billing> calculate(List<Parking> parkings) {
+    List<Billing> billings = calculator.calculate(parkings);
+    billings.forEach(billing -> billing.setRuleSetVersion(version));
+    return billings;
+  }
+
+  /**
+   * Registers a calculation about to use this rule set, rejected when the rule set is already retired
+   */
+  boolean acquire() {
+    inFlight.incrementAndGet();
+    if (retired) {
+      release();
+      return false;
+    }
+    return true;
+  }
+
+  void release() {
+    if (inFlight.decrementAndGet() == 0 && retired) {
+      close();
+    }
+  }
+
+  void retire() {
+    retired = true;
+    if (inFlight.get() == 0) {
+      close();
+    }
+  }
+
+  boolean isClosed() {
+    return closed.get();
+  }
+
+  private void close() {
+    if (closed.compareAndSet(false, true)) {
+      calculator.close();
+      if (ownedContainer != null) {
+        ownedContainer.dispose();
+        KieServices.Factory.get().getRepository().removeKieModule(ownedContainer.getReleaseId());
+      }
+    }
+  }
+}
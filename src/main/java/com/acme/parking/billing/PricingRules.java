@@ -0,0 +1,244 @@
+package com.acme.parking.billing;
+
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.billing.model.PricingStrategy;
+import com.acme.parking.billing.model.Tariffs;
+import com.acme.parking.exception.InvalidPricingRulesException;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.properties.AppProperties;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message;
+import org.kie.api.builder.ReleaseId;
+import org.kie.api.runtime.KieContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PreDestroy;
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Holds the pricing rule set used by billing calculations.
+ * <p>
+ * Starts with the rules compiled at build time and the configured {@link PricingStrategy},
+ * evaluated by the {@link PricingCalculator} of the {@code app.pricingEngine} engine.
+ * The {@link Tariffs} only take part in pricing, and in the rule set version, with the {@code TARIFF} engine.
+ * A new rule set is compiled and verified on a dedicated thread, then swapped in atomically:
+ * calculations already in flight complete with the rule set they started with, which is released afterwards.
+ */
+@Component
+public class PricingRules {
+
+  private static final Logger log = LoggerFactory.getLogger(PricingRules.class);
+
+  static final String RULES_RESOURCE = "rules/pricingRules.drl";
+
+  private static final String RULES_GROUP_ID = "com.acme";
+  private static final String RULES_ARTIFACT_ID = "parking-pricing-rules";
+
+  private final KieServices kieServices = KieServices.Factory.get();
+
+  private final AppProperties config;
+
+  private final PricingCalculator.Engine engine;
+
+  // Null unless evaluated by the TARIFF engine
+  private final Tariffs tariffs;
+
+  private final Validator validator;
+
+  private final ExecutorService compiler = Executors.newSingleThreadExecutor(
+    new CustomizableThreadFactory("pricing-rules-compiler-"));
+
+  private final AtomicReference<PricingRuleSet> current;
+
+  @Autowired
+  public PricingRules(KieContainer kieContainer, PricingStrategy pricingStrategy, Tariffs tariffs, AppProperties config,
+                      Validator validator) {
+    this.config = config;
+    this.engine = config.getPricingEngine();
+    this.tariffs = engine == PricingCalculator.Engine.TARIFF ? tariffs : null;
+    this.validator = validator;
+    String rules = classpathRules();
+    PricingStrategy strategy = copy(pricingStrategy);
+    this.current = new AtomicReference<>(new PricingRuleSet(version(rules, strategy, this.tariffs), rules, strategy,
+      calculator(kieContainer, strategy), null));
+    log.info("Pricing rules version {} loaded, evaluated by the {} engine", current.get().getVersion(), engine);
+  }
+
+  public PricingRuleSet current() {
+    return current.get();
+  }
+
+  public Billing calculate(Parking parking) {
+    return withCurrent(ruleSet -> ruleSet.calculate(parking));
+  }
+
+  /**
+   * Prices all the given parkings with the same rule set
+   *
+   * @return the billings, in the order of the parkings
+   */
+  public List<Billing> calculate(List<Parking> parkings) {
+    return withCurrent(ruleSet -> ruleSet.calculate(parkings));
+  }
+
+  /**
+   * Compiles the given rules off the calculation path, and makes them current with the given strategy.
+   * Completes with the current rule set, unchanged when rules & strategy are the same,
+   * or exceptionally with an {@link InvalidPricingRulesException} when they cannot price a parking.
+   */
+  public CompletableFuture<PricingRuleSet> load(String rules, PricingStrategy pricingStrategy) {
+    PricingStrategy strategy = copy(pricingStrategy);
+    Set<ConstraintViolation<PricingStrategy>> violations = validator.validate(strategy);
+    if (!violations.isEmpty()) {
+      return CompletableFuture.failedFuture(new ConstraintViolationException(violations));
+    }
+    return CompletableFuture.supplyAsync(() -> swap(rules, strategy), compiler);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    compiler.shutdownNow();
+    current.get().retire();
+  }
+
+  private <T> T withCurrent(Function<PricingRuleSet, T> calculation) {
+    PricingRuleSet ruleSet;
+    do {
+      ruleSet = current.get();
+    } while (!ruleSet.acquire());
+    try {
+      return calculation.apply(ruleSet);
+    } finally {
+      ruleSet.release();
+    }
+  }
+
+  private PricingRuleSet swap(String rules, PricingStrategy strategy) {
+    String version = version(rules, strategy, tariffs);
+    if (version.equals(current.get().getVersion())) {
+      return current.get();
+    }
+    long start = System.nanoTime();
+    PricingRuleSet ruleSet;
+    if (engine == PricingCalculator.Engine.DROOLS) {
+      KieContainer kieContainer = compile(rules, version);
+      ruleSet = new PricingRuleSet(version, rules, strategy, calculator(kieContainer, strategy), kieContainer);
+    } else {
+      if (!rules.equals(current.get().getRules())) {
+        throw new InvalidPricingRulesException("Pricing rules cannot be replaced with the " + engine + " pricing engine");
+      }
+      ruleSet = new PricingRuleSet(version, rules, strategy, calculator(null, strategy), null);
+    }
+    verify(ruleSet);
+
+    PricingRuleSet previous = current.getAndSet(ruleSet);
+    previous.retire();
+    log.info("Pricing rules version {} replaced version {}, compiled in {} ms", version, previous.getVersion(),
+      (System.nanoTime() - start) / 1_000_000);
+    return ruleSet;
+  }
+
+  private PricingCalculator calculator(KieContainer kieContainer, PricingStrategy strategy) {
+    switch (engine) {
+      case JAVA:
+        return new JavaPricingCalculator(strategy);
+      case TARIFF:
+        return new TariffPricingCalculator(tariffs);
+      default:
+        return new DroolsPricingCalculator(kieContainer, strategy, config.getPricingSessionPoolSize());
+    }
+  }
+
+  private KieContainer compile(String rules, String version) {
+    ReleaseId releaseId = kieServices.newReleaseId(RULES_GROUP_ID, RULES_ARTIFACT_ID, version);
+    KieFileSystem kieFileSystem = kieServices.newKieFileSystem();
+    kieFileSystem.generateAndWritePomXML(releaseId);
+    kieFileSystem.write("src/main/resources/" + RULES_RESOURCE, rules);
+    KieBuilder kieBuilder = kieServices.newKieBuilder(kieFileSystem).buildAll();
+    List<Message> errors = kieBuilder.getResults().getMessages(Message.Level.ERROR);
+    if (!errors.isEmpty()) {
+      throw new InvalidPricingRulesException("Pricing rules do not compile: " + errors.stream()
+        .map(Message::getText)
+        .collect(Collectors.joining(", ")));
+    }
+    return kieServices.newKieContainer(releaseId);
+  }
+
+  // Rules have to price a parking before replacing the current ones
+  private static void verify(PricingRuleSet ruleSet) {
+    Parking parking = new Parking();
+    parking.setParkingSpaceType(ParkingSpace.Type.GASOLINE);
+    parking.setDurationSeconds(0L);
+    try {
+      ruleSet.calculate(parking);
+    } catch (RuntimeException e) {
+      ruleSet.retire();
+      throw new InvalidPricingRulesException("Pricing rules do not price a parking: " + e.getMessage(), e);
+    }
+  }
+
+  static String classpathRules() {
+    try {
+      return StreamUtils.copyToString(new ClassPathResource(RULES_RESOURCE).getInputStream(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static PricingStrategy copy(PricingStrategy pricingStrategy) {
+    PricingStrategy copy = new PricingStrategy();
+    copy.setStrategy(pricingStrategy.getStrategy());
+    copy.setFixedAmount(pricingStrategy.getFixedAmount());
+    copy.setPricePerSecond(pricingStrategy.getPricePerSecond());
+    return copy;
+  }
+
+  // Derived from the content, so that nodes running the same rules & strategy report the same version
+  static String version(String rules, PricingStrategy strategy) {
+    return version(rules, strategy, null);
+  }
+
+  static String version(String rules, PricingStrategy strategy, Tariffs tariffs) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(rules.getBytes(StandardCharsets.UTF_8));
+      digest.update(String.format("%n%s %s %s", strategy.getStrategy(), strategy.getFixedAmount(),
+        strategy.getPricePerSecond()).getBytes(StandardCharsets.UTF_8));
+      if (tariffs != null) {
+        digest.update(String.format("%n%s", tariffs.getTypes()).getBytes(StandardCharsets.UTF_8));
+      }
+      StringBuilder version = new StringBuilder();
+      byte[] hash = digest.digest();
+      for (int i = 0; i < 6; i++) {
+        version.append(String.format("%02x", hash[i]));
+      }
+      return version.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
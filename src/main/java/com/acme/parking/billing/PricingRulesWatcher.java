@@ -0,0 +1,156 @@
+package com.acme.parking.billing;
+
+import com.acme.parking.billing.model.PricingStrategy;
+import com.acme.parking.properties.AppProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the pricing rules & strategy of the {@code app.pricingRulesDirectory} directory at startup,
+ * then each time they change.
+ * <p>
+ * The directory may hold pricingRules.drl, replacing the packaged rules,
+ * and pricing.properties, with the strategy, fixedAmount and pricePerSecond keys overriding {@code app.pricing.*}.
+ * Removing a file or a key restores the packaged rules or the configured value.
+ */
+@Component
+@ConditionalOnProperty(prefix = "app", name = "pricingRulesDirectory")
+public class PricingRulesWatcher {
+
+  private static final Logger log = LoggerFactory.getLogger(PricingRulesWatcher.class);
+
+  static final String RULES_FILE = "pricingRules.drl";
+  static final String STRATEGY_FILE = "pricing.properties";
+
+  // Editors write a file in several steps, changes are loaded once the directory is quiet
+  private static final long QUIET_PERIOD_MILLIS = 200;
+
+  private final PricingRules pricingRules;
+
+  private final PricingStrategy pricingStrategy;
+
+  private final Path directory;
+
+  private WatchService watchService;
+
+  @Autowired
+  public PricingRulesWatcher(PricingRules pricingRules, PricingStrategy pricingStrategy, AppProperties config) {
+    this.pricingRules = pricingRules;
+    this.pricingStrategy = pricingStrategy;
+    this.directory = Paths.get(config.getPricingRulesDirectory());
+  }
+
+  @PostConstruct
+  public void start() throws IOException {
+    watchService = FileSystems.getDefault().newWatchService();
+    directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+      StandardWatchEventKinds.ENTRY_DELETE);
+    if (Files.exists(directory.resolve(RULES_FILE)) || Files.exists(directory.resolve(STRATEGY_FILE))) {
+      reload();
+    }
+    Thread watcher = new Thread(this::watch, "pricing-rules-watcher");
+    watcher.setDaemon(true);
+    watcher.start();
+    log.info("Watching {} for pricing rules", directory.toAbsolutePath());
+  }
+
+  @PreDestroy
+  public void stop() throws IOException {
+    watchService.close();
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        boolean changed = pollChanges(watchService.take());
+        WatchKey key;
+        while ((key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+          changed |= pollChanges(key);
+        }
+        if (changed) {
+          reload();
+        }
+      }
+    } catch (ClosedWatchServiceException | InterruptedException e) {
+      log.debug("Stopped watching {}", directory);
+    }
+  }
+
+  private static boolean pollChanges(WatchKey key) {
+    boolean changed = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      Object file = event.context();
+      changed |= file != null && (RULES_FILE.equals(file.toString()) || STRATEGY_FILE.equals(file.toString()));
+    }
+    key.reset();
+    return changed;
+  }
+
+  void reload() {
+    PricingRuleSet current = pricingRules.current();
+    String rules;
+    PricingStrategy strategy;
+    try {
+      rules = readRules();
+      strategy = readStrategy();
+    } catch (IOException | RuntimeException e) {
+      log.error("Pricing rules of {} could not be read, keeping version {}", directory, current.getVersion(), e);
+      return;
+    }
+    pricingRules.load(rules, strategy).whenComplete((ruleSet, e) -> {
+      if (e != null) {
+        log.error("Pricing rules of {} rejected, keeping version {}: {}", directory,
+          pricingRules.current().getVersion(), e.getMessage());
+      } else {
+        log.info("Pricing rules of {} loaded as version {}", directory, ruleSet.getVersion());
+      }
+    });
+  }
+
+  private String readRules() throws IOException {
+    Path rulesFile = directory.resolve(RULES_FILE);
+    return Files.exists(rulesFile) ? Files.readString(rulesFile) : PricingRules.classpathRules();
+  }
+
+  private PricingStrategy readStrategy() throws IOException {
+    Path strategyFile = directory.resolve(STRATEGY_FILE);
+    PricingStrategy strategy = new PricingStrategy();
+    strategy.setStrategy(pricingStrategy.getStrategy());
+    strategy.setFixedAmount(pricingStrategy.getFixedAmount());
+    strategy.setPricePerSecond(pricingStrategy.getPricePerSecond());
+    if (Files.exists(strategyFile)) {
+      Properties properties = new Properties();
+      try (Reader reader = Files.newBufferedReader(strategyFile, StandardCharsets.UTF_8)) {
+        properties.load(reader);
+      }
+      strategy.setStrategy(properties.getProperty("strategy", strategy.getStrategy()));
+      if (properties.containsKey("fixedAmount")) {
+        strategy.setFixedAmount(Double.parseDouble(properties.getProperty("fixedAmount")));
+      }
+      if (properties.containsKey("pricePerSecond")) {
+        strategy.setPricePerSecond(Double.parseDouble(properties.getProperty("pricePerSecond")));
+      }
+    }
+    return strategy;
+  }
+}
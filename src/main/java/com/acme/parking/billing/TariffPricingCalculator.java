@@ -0,0 +1,38 @@
+package com.acme.parking.billing;
+
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.billing.model.Tariffs;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Prices parkings with the {@link Tariffs} of their parking space type.
+ * Tariffs are compiled into {@link TariffTable}s once, when the calculator is created,
+ * and every parking space type needs one.
+ */
+class TariffPricingCalculator implements PricingCalculator {
+
+  private final Map<ParkingSpace.Type, TariffTable> tables = new EnumMap<>(ParkingSpace.Type.class);
+
+  TariffPricingCalculator(Tariffs tariffs) {
+    for (ParkingSpace.Type type : ParkingSpace.Type.values()) {
+      Tariffs.Tariff tariff = tariffs.getTypes().get(type);
+      if (tariff == null) {
+        throw new IllegalStateException("No tariff for parking space type " + type);
+      }
+      tables.put(type, TariffTable.compile(tariff));
+    }
+  }
+
+  @Override
+  public Billing calculate(Parking parking) {
+    if (parking.getParkingSpaceType() == null) {
+      throw new IllegalStateException("Parking space type of parking #" + parking.getId() + " is unknown");
+    }
+    return new Billing(JavaPricingCalculator.CURRENCY,
+      tables.get(parking.getParkingSpaceType()).price(parking.getStartDateTime(), parking.getDurationSeconds()));
+  }
+}
@@ -0,0 +1,92 @@
+package com.acme.parking.billing;
+
+import com.acme.parking.billing.model.Tariffs;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * {@link Tariffs.Tariff} compiled into a prefix-sum table over a day.
+ * The price of a period is the price of its whole days, plus the difference of the cumulated prices
+ * at its start & end times of the day, each found by a binary search over the bands:
+ * pricing takes O(log bands), whatever the duration of the parking.
+ * <p>
+ * Times of the day are wall-clock times, like the parking start times.
+ */
+final class TariffTable {
+
+  static final int SECONDS_PER_DAY = 86_400;
+
+  private final double fixedAmount;
+
+  // Band i applies from starts[i], in seconds of the day, until starts[i + 1] or the end of the day
+  private final int[] starts;
+
+  private final double[] pricesPerSecond;
+
+  // Price from the start of the day until starts[i]
+  private final double[] cumulativePrices;
+
+  private final double dayPrice;
+
+  private TariffTable(double fixedAmount, int[] starts, double[] pricesPerSecond) {
+    this.fixedAmount = fixedAmount;
+    this.starts = starts;
+    this.pricesPerSecond = pricesPerSecond;
+    this.cumulativePrices = new double[starts.length];
+    for (int i = 1; i < starts.length; i++) {
+      cumulativePrices[i] = cumulativePrices[i - 1] + (starts[i] - starts[i - 1]) * pricesPerSecond[i - 1];
+    }
+    int last = starts.length - 1;
+    this.dayPrice = cumulativePrices[last] + (SECONDS_PER_DAY - starts[last]) * pricesPerSecond[last];
+  }
+
+  static TariffTable compile(Tariffs.Tariff tariff) {
+    Tariffs.TimeBand[] bands = tariff.getBands().toArray(new Tariffs.TimeBand[0]);
+    if (bands.length == 0) {
+      throw new IllegalArgumentException("A tariff needs at least one time band");
+    }
+    Arrays.sort(bands, Comparator.comparing(Tariffs.TimeBand::getStart));
+    // Before the first band of the day, the last band of the previous day still applies
+    boolean startsAtMidnight = bands[0].getStart().toSecondOfDay() == 0;
+    int offset = startsAtMidnight ? 0 : 1;
+    int[] starts = new int[bands.length + offset];
+    double[] pricesPerSecond = new double[bands.length + offset];
+    if (!startsAtMidnight) {
+      pricesPerSecond[0] = bands[bands.length - 1].getPricePerSecond();
+    }
+    for (int i = 0; i < bands.length; i++) {
+      if (i > 0 && bands[i].getStart().equals(bands[i - 1].getStart())) {
+        throw new IllegalArgumentException("Several tariff time bands start at " + bands[i].getStart());
+      }
+      starts[i + offset] = bands[i].getStart().toSecondOfDay();
+      pricesPerSecond[i + offset] = bands[i].getPricePerSecond();
+    }
+    return new TariffTable(tariff.getFixedAmount(), starts, pricesPerSecond);
+  }
+
+  /**
+   * @return the fixed amount plus the price of the time bands covered from start, for the given duration
+   */
+  double price(LocalDateTime start, long durationSeconds) {
+    // Seconds of the wall-clock time line, so that days are aligned on midnight
+    long from = start.toEpochSecond(ZoneOffset.UTC);
+    long to = from + durationSeconds;
+    long days = Math.floorDiv(to, SECONDS_PER_DAY) - Math.floorDiv(from, SECONDS_PER_DAY);
+    // Differences first, so that an empty period adds exactly nothing to the fixed amount
+    return fixedAmount + (days * dayPrice
+      + (cumulativePrice((int) Math.floorMod(to, SECONDS_PER_DAY))
+      - cumulativePrice((int) Math.floorMod(from, SECONDS_PER_DAY))));
+  }
+
+  // Price from the start of the day until the given second of the day
+  private double cumulativePrice(int secondOfDay) {
+    int band = Arrays.binarySearch(starts, secondOfDay);
+    if (band < 0) {
+      band = -band - 2;
+    }
+    return cumulativePrices[band] + (secondOfDay - starts[band]) * pricesPerSecond[band];
+  }
+}
@@ -5,6 +5,9 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -15,6 +18,8 @@ import static io.swagger.v3.oas.annotations.media.Schema.AccessMode.READ_ONLY;
 
 /**
  * Represents a billing instance, for now only with the price information.
+ * With asynchronous billing, a parking is completed with a {@link Status#PENDING} billing,
+ * priced afterwards.
  *
  * @see com.acme.parking.inventory.model.Parking
  */
@@ -26,18 +31,41 @@ public class Billing {
 
   @Schema(description = "Unique identifier", example = "90", minimum = "0", required = true, accessMode = READ_ONLY)
   @Id
-  @GeneratedValue(strategy = GenerationType.AUTO)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "billing_seq")
+  @GenericGenerator(name = "billing_seq", strategy = "com.acme.parking.config.PooledSequenceGenerator",
+    parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "billing_seq"))
   private Long id;
 
-  @Schema(description = "Currency of the price", example = "EUR", required = true, accessMode = READ_ONLY)
+  @Schema(description = "Currency of the price, once calculated", example = "EUR", accessMode = READ_ONLY)
+  @JsonInclude(JsonInclude.Include.NON_NULL)
   private String currency;
 
-  @Schema(description = "Actual price for the parking", example = "5.6", required = true, accessMode = READ_ONLY)
+  @Schema(description = "Actual price for the parking, once calculated", example = "5.6", accessMode = READ_ONLY)
   @JsonInclude(JsonInclude.Include.NON_NULL)
   private Double amount;
 
+  @Schema(description = "Version of the pricing rules used to calculate the price", example = "3f9a1c07d2e4", accessMode = READ_ONLY)
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private String ruleSetVersion;
+
+  @Schema(description = "Whether the price is calculated yet", example = "CALCULATED", required = true, accessMode = READ_ONLY)
+  private Status status = Status.CALCULATED;
+
   public Billing(String currency, Double amount) {
     this.currency = currency;
     this.amount = amount;
   }
+
+  /**
+   * Billing of a completed parking whose price is not calculated yet
+   */
+  public static Billing pending() {
+    Billing billing = new Billing();
+    billing.setStatus(Status.PENDING);
+    return billing;
+  }
+
+  public enum Status {
+    PENDING, CALCULATED
+  }
 }
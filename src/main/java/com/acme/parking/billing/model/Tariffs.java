@@ -0,0 +1,61 @@
+package com.acme.parking.billing.model;
+
+import com.acme.parking.inventory.model.ParkingSpace;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time-of-day tariffs per parking space type, used by the {@code TARIFF} pricing engine.
+ * Each band applies its price from its start time until the start of the next band,
+ * the last band of the day running until the first one of the next day.
+ *
+ * @see com.acme.parking.billing.PricingCalculator.Engine#TARIFF
+ */
+@Component
+@ConfigurationProperties("app.tariffs")
+@Validated
+@Data
+public class Tariffs {
+
+  @Valid
+  private Map<ParkingSpace.Type, Tariff> types = new EnumMap<>(ParkingSpace.Type.class);
+
+  @Data
+  public static class Tariff {
+
+    @Min(0)
+    private double fixedAmount;
+
+    @NotEmpty
+    @Valid
+    private List<TimeBand> bands = new ArrayList<>();
+  }
+
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class TimeBand {
+
+    @NotNull
+    @DateTimeFormat(pattern = "HH:mm")
+    private LocalTime start;
+
+    @Min(0)
+    private double pricePerSecond;
+  }
+}
@@ -1,11 +1,7 @@
 package com.acme.parking.config;
 
 import org.kie.api.KieServices;
-import org.kie.api.builder.KieBuilder;
-import org.kie.api.builder.KieFileSystem;
-import org.kie.api.builder.KieModule;
 import org.kie.api.runtime.KieContainer;
-import org.kie.internal.io.ResourceFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -15,15 +11,15 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class DroolsConfig {
 
+  /**
+   * Container of the rules described by META-INF/kmodule.xml, loaded from the executable model compiled by
+   * {@link PricingRulesCompiler} at build time.
+   * When the model is missing, as for classes built outside of Maven, rules are compiled from the DRL instead.
+   * The application class loader is given explicitly, the bean may be created by a thread having another one.
+   */
   @Bean
   public KieContainer kieContainer() {
-    KieServices kieServices = KieServices.Factory.get();
-    KieFileSystem kieFileSystem = kieServices.newKieFileSystem();
-    kieFileSystem.write(ResourceFactory.newClassPathResource("pricingRules.drl"));
-    KieBuilder kieBuilder = kieServices.newKieBuilder(kieFileSystem);
-    kieBuilder.buildAll();
-    KieModule kieModule = kieBuilder.getKieModule();
-    return kieServices.newKieContainer(kieModule.getReleaseId());
+    return KieServices.Factory.get().newKieClasspathContainer(DroolsConfig.class.getClassLoader());
   }
 
 }
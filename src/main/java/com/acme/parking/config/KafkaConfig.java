@@ -1,24 +1,39 @@
 package com.acme.parking.config;
 
-import com.acme.parking.api.model.ParkingSpaceQuery;
-import com.acme.parking.api.model.ParkingSpaceQueryResult;
-import com.acme.parking.billing.model.Billing;
-import com.acme.parking.inventory.model.Parking;
-import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.ParkingSpaceOwnership;
+import com.acme.parking.properties.AppProperties;
+import com.acme.parking.properties.AvailabilityViewProperties;
 import com.acme.parking.properties.KafkaReplyTopics;
+import com.acme.parking.properties.MessagingProperties;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
 import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.requestreply.ReplyingKafkaTemplate;
 
+import java.util.Properties;
+
 /**
  * Configuration bean to configure Kafka templates
+ * <p>
+ * All request-reply operations share a single {@link ReplyingKafkaTemplate}:
+ * one reply topic, one reply consumer and one consumer group per node,
+ * requests & replies being matched by Kafka's correlation id.
+ * <p>
+ * With the in-process transport, the request-reply template is not created and listener containers are not started,
+ * see {@link com.acme.parking.messaging.InProcessRequestReplyTransport}.
  */
 @Configuration
 public class KafkaConfig {
@@ -26,129 +41,113 @@ public class KafkaConfig {
   @Value("${kafka.group.id}")
   private String groupId;
 
-  private final KafkaReplyTopics replyTopics;
+  @Value("${kafka.node.id}")
+  private String nodeId;
 
-  @Autowired
-  public KafkaConfig(KafkaReplyTopics replyTopics) {
-    this.replyTopics = replyTopics;
-  }
+  // Estimated size of a billing request record, binary parking & request-reply headers included
+  private static final int BILLING_REQUEST_BYTES = 128;
 
-  // Kafka Request-Reply Templates for Get Parking Space By Id
-  @Bean
-  public ReplyingKafkaTemplate<String, Long, ParkingSpace> getParkingSpaceByIdReplyingKafkaTemplate(ProducerFactory<String, Long> pf,
-                                                                                                    ConcurrentKafkaListenerContainerFactory<String, ParkingSpace> factory) {
-    ConcurrentMessageListenerContainer<String, ParkingSpace> replyContainer
-      = factory.createContainer(replyTopics.getParkingSpaceById());
-    setReplyContainerProperties(replyContainer.getContainerProperties());
-    return new ReplyingKafkaTemplate<>(pf, replyContainer);
-  }
+  private final KafkaReplyTopics replyTopics;
 
-  @Bean
-  public KafkaTemplate<String, ParkingSpace> getSingleParkingSpaceReplyTemplate(ProducerFactory<String, ParkingSpace> pf,
-                                                                                ConcurrentKafkaListenerContainerFactory<String, ParkingSpace> factory) {
+  private final MessagingProperties messagingProperties;
 
-    KafkaTemplate<String, ParkingSpace> kafkaTemplate = new KafkaTemplate<>(pf);
-    setFactoryContainerProperties(factory.getContainerProperties());
-    factory.setReplyTemplate(kafkaTemplate);
-    return kafkaTemplate;
-  }
+  private final AppProperties appProperties;
 
-  // Kafka Request-Reply Templates for Next Available Parking Space
-  // (No need to define the reply template, as it is already defined in getSingleParkingSpaceReplyTemplate method)
-  @Bean
-  public ReplyingKafkaTemplate<String, ParkingSpace.Type, ParkingSpace> nextAvailableReplyingKafkaTemplate(ProducerFactory<String, ParkingSpace.Type> pf,
-                                                                                                           ConcurrentKafkaListenerContainerFactory<String, ParkingSpace> factory) {
-    ConcurrentMessageListenerContainer<String, ParkingSpace> replyContainer
-      = factory.createContainer(replyTopics.getNextAvailableParkingSpace());
-    setReplyContainerProperties(replyContainer.getContainerProperties());
-    return new ReplyingKafkaTemplate<>(pf, replyContainer);
+  @Autowired
+  public KafkaConfig(KafkaReplyTopics replyTopics, MessagingProperties messagingProperties, AppProperties appProperties) {
+    this.replyTopics = replyTopics;
+    this.messagingProperties = messagingProperties;
+    this.appProperties = appProperties;
   }
 
-  //Kafka Request-Reply Templates for Parking Spaces Query
+  // Kafka Request-Reply Template shared by all operations
   @Bean
-  public ReplyingKafkaTemplate<String, ParkingSpaceQuery, ParkingSpaceQueryResult> parkingSpacesQueryReplyingKafkaTemplate(ProducerFactory<String, ParkingSpaceQuery> pf,
-                                                                                                                           ConcurrentKafkaListenerContainerFactory<String, ParkingSpaceQueryResult> factory) {
-    ConcurrentMessageListenerContainer<String, ParkingSpaceQueryResult> replyContainer
-      = factory.createContainer(replyTopics.getParkingSpacesQuery());
+  @ConditionalOnProperty(name = "app.messaging.transport", havingValue = "kafka", matchIfMissing = true)
+  public ReplyingKafkaTemplate<String, Object, Object> requestReplyKafkaTemplate(ProducerFactory<String, Object> pf,
+                                                                               @Qualifier("kafkaListenerContainerFactory")
+                                                                               ConcurrentKafkaListenerContainerFactory<String, Object> factory) {
+    ConcurrentMessageListenerContainer<String, Object> replyContainer
+      = factory.createContainer(replyTopics.getGateway());
     setReplyContainerProperties(replyContainer.getContainerProperties());
-    return new ReplyingKafkaTemplate<>(pf, replyContainer);
+    ReplyingKafkaTemplate<String, Object, Object> replyingKafkaTemplate = new ReplyingKafkaTemplate<>(pf, replyContainer);
+    replyingKafkaTemplate.setSharedReplyTopic(false);
+    return replyingKafkaTemplate;
   }
 
+  // Kafka Reply Template used by all @SendTo listeners
   @Bean
-  public KafkaTemplate<String, ParkingSpaceQueryResult> parkingSpacesQueryReplyTemplate(ProducerFactory<String, ParkingSpaceQueryResult> pf,
-                                                                                        ConcurrentKafkaListenerContainerFactory<String, ParkingSpaceQueryResult> factory) {
-    KafkaTemplate<String, ParkingSpaceQueryResult> kafkaTemplate = new KafkaTemplate<>(pf);
+  public KafkaTemplate<String, Object> replyTemplate(ProducerFactory<String, Object> pf,
+                                                     @Qualifier("kafkaListenerContainerFactory")
+                                                     ConcurrentKafkaListenerContainerFactory<String, Object> factory) {
+    KafkaTemplate<String, Object> kafkaTemplate = new KafkaTemplate<>(pf);
     setFactoryContainerProperties(factory.getContainerProperties());
     factory.setReplyTemplate(kafkaTemplate);
+    factory.setAutoStartup(messagingProperties.isKafkaTransport());
     return kafkaTemplate;
   }
 
-  //Kafka Request-Reply Templates for Billing Calculation
+  // Listener container factory for parking start & completion, parking space lookups & stats, tracking the partitions owned by this node
   @Bean
-  public ReplyingKafkaTemplate<String, Parking, Billing> calculateBillingReplyingKafkaTemplate(ProducerFactory<String, Parking> pf,
-                                                                                               ConcurrentKafkaListenerContainerFactory<String, Billing> factory) {
-    ConcurrentMessageListenerContainer<String, Billing> replyContainer
-      = factory.createContainer(replyTopics.getBillingCalculation());
-    setReplyContainerProperties(replyContainer.getContainerProperties());
-    return new ReplyingKafkaTemplate<>(pf, replyContainer);
+  public ConcurrentKafkaListenerContainerFactory<Object, Object> inventoryCommandContainerFactory(
+    ConcurrentKafkaListenerContainerFactoryConfigurer configurer, ConsumerFactory<Object, Object> consumerFactory,
+    @Qualifier("replyTemplate") KafkaTemplate<String, Object> replyTemplate, ParkingSpaceOwnership ownership) {
+    ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+    configurer.configure(factory, consumerFactory);
+    setFactoryContainerProperties(factory.getContainerProperties());
+    factory.getContainerProperties().setConsumerRebalanceListener(ownership);
+    factory.setReplyTemplate(replyTemplate);
+    factory.setAutoStartup(messagingProperties.isKafkaTransport());
+    return factory;
   }
 
+  // Listener container factory for billing calculations consumed one by one
   @Bean
-  public KafkaTemplate<String, Billing> calculateBillingReplyTemplate(ProducerFactory<String, Billing> pf,
-                                                                      ConcurrentKafkaListenerContainerFactory<String, Billing> factory) {
-    KafkaTemplate<String, Billing> kafkaTemplate = new KafkaTemplate<>(pf);
+  public ConcurrentKafkaListenerContainerFactory<Object, Object> billingContainerFactory(
+    ConcurrentKafkaListenerContainerFactoryConfigurer configurer, ConsumerFactory<Object, Object> consumerFactory,
+    @Qualifier("replyTemplate") KafkaTemplate<String, Object> replyTemplate) {
+    ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+    configurer.configure(factory, consumerFactory);
     setFactoryContainerProperties(factory.getContainerProperties());
-    factory.setReplyTemplate(kafkaTemplate);
-    return kafkaTemplate;
-  }
-
-  // Kafka Request-Reply Templates for Get Parking By Id
-  @Bean(name = "parkingById")
-  public ReplyingKafkaTemplate<String, Long, Parking> getParkingByIdReplyingKafkaTemplate(ProducerFactory<String, Long> pf,
-                                                                                          ConcurrentKafkaListenerContainerFactory<String, Parking> factory) {
-    ConcurrentMessageListenerContainer<String, Parking> replyContainer
-      = factory.createContainer(replyTopics.getParkingById());
-    setReplyContainerProperties(replyContainer.getContainerProperties());
-    return new ReplyingKafkaTemplate<>(pf, replyContainer);
+    factory.setReplyTemplate(replyTemplate);
+    factory.setAutoStartup(messagingProperties.isKafkaTransport() && !appProperties.isBillingBatchEnabled());
+    return factory;
   }
 
+  // Listener container factory for billing calculations consumed in batches:
+  // the broker answers a fetch once a full batch is likely available, or after the linger at the latest
   @Bean
-  public KafkaTemplate<String, Parking> getParkingReplyTemplate(ProducerFactory<String, Parking> pf,
-                                                                ConcurrentKafkaListenerContainerFactory<String, Parking> factory) {
-
-    KafkaTemplate<String, Parking> kafkaTemplate = new KafkaTemplate<>(pf);
+  public ConcurrentKafkaListenerContainerFactory<Object, Object> billingBatchContainerFactory(
+    ConcurrentKafkaListenerContainerFactoryConfigurer configurer, ConsumerFactory<Object, Object> consumerFactory) {
+    ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+    configurer.configure(factory, consumerFactory);
+    factory.setBatchListener(true);
     setFactoryContainerProperties(factory.getContainerProperties());
-    factory.setReplyTemplate(kafkaTemplate);
-    return kafkaTemplate;
+    Properties consumerProperties = new Properties();
+    consumerProperties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(appProperties.getBillingBatchMaxSize()));
+    consumerProperties.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG,
+      String.valueOf(appProperties.getBillingBatchMaxSize() * BILLING_REQUEST_BYTES));
+    consumerProperties.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, String.valueOf(appProperties.getBillingBatchLingerMs()));
+    factory.getContainerProperties().setKafkaConsumerProperties(consumerProperties);
+    factory.setAutoStartup(messagingProperties.isKafkaTransport() && appProperties.isBillingBatchEnabled());
+    return factory;
   }
 
-  // Kafka Request-Reply Templates for Parking Start
-  // (No need to define the reply template, as it is already defined in getParkingReplyTemplate method)
+  // Compacted topic of parking space events, keeping the latest event of each parking space
   @Bean
-  public ReplyingKafkaTemplate<String, Parking, Parking> getParkingStartReplyingKafkaTemplate(ProducerFactory<String, Parking> pf,
-                                                                                              ConcurrentKafkaListenerContainerFactory<String, Parking> factory) {
-    ConcurrentMessageListenerContainer<String, Parking> replyContainer
-      = factory.createContainer(replyTopics.getParkingStart());
-    setReplyContainerProperties(replyContainer.getContainerProperties());
-    return new ReplyingKafkaTemplate<>(pf, replyContainer);
+  @ConditionalOnProperty(name = "app.availability-view.enabled", havingValue = "true")
+  public NewTopic parkingSpaceEventTopic(AvailabilityViewProperties availabilityViewProperties) {
+    return TopicBuilder.name(availabilityViewProperties.getTopic())
+      .partitions(availabilityViewProperties.getPartitions())
+      .replicas(availabilityViewProperties.getReplicas())
+      .compact()
+      .build();
   }
 
-  // Kafka Request-Reply Templates for Get Parking By Id
-  @Bean(name = "parkingCompletion")
-  public ReplyingKafkaTemplate<String, Long, Parking> getParkingCompletionReplyingKafkaTemplate(ProducerFactory<String, Long> pf,
-                                                                                                ConcurrentKafkaListenerContainerFactory<String, Parking> factory) {
-    ConcurrentMessageListenerContainer<String, Parking> replyContainer
-      = factory.createContainer(replyTopics.getParkingCompletion());
-    setReplyContainerProperties(replyContainer.getContainerProperties());
-    return new ReplyingKafkaTemplate<>(pf, replyContainer);
-  }
-  // (No need to define the reply template, as it is already defined in getParkingReplyTemplate method)
-
-
   //Common Configuration Methods
   private void setReplyContainerProperties(ContainerProperties containerProperties) {
     containerProperties.setMissingTopicsFatal(false);
-    containerProperties.setGroupId(groupId);
+    // The reply topic is owned by this node only, so its consumer group must be too
+    containerProperties.setGroupId(groupId + "-" + nodeId);
     containerProperties.setAckOnError(true);
   }
 
@@ -157,4 +156,4 @@ public class KafkaConfig {
     containerProperties.setAckOnError(true);
   }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,31 @@
+package com.acme.parking.config;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Properties;
+
+/**
+ * Id generator of an entity backed by its own sequence, ids being allocated in blocks: an insert only reads
+ * the sequence once per block, and inserts of different entities don't contend on a shared sequence.
+ * <p>
+ * The block size is the {@value #ALLOCATION_SIZE_SETTING} Hibernate setting, {@code app.idAllocationSize},
+ * the sequence being incremented by as much: it cannot be changed on an existing database.
+ */
+public class PooledSequenceGenerator extends SequenceStyleGenerator {
+
+  public static final String ALLOCATION_SIZE_SETTING = "parking.id.allocation_size";
+
+  static final int DEFAULT_ALLOCATION_SIZE = 50;
+
+  @Override
+  public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+    Object allocationSize = serviceRegistry.getService(ConfigurationService.class).getSettings()
+      .getOrDefault(ALLOCATION_SIZE_SETTING, DEFAULT_ALLOCATION_SIZE);
+    params.setProperty(INCREMENT_PARAM, allocationSize.toString());
+    super.configure(type, params, serviceRegistry);
+  }
+}
@@ -0,0 +1,104 @@
+package com.acme.parking.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.drools.compiler.kie.builder.impl.InternalKieModule;
+import org.drools.modelcompiler.ExecutableModelProject;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message;
+import org.kie.api.builder.ReleaseId;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles the pricing rules into a Drools executable model at build time, run by Maven in the process-classes phase.
+ * <p>
+ * The kmodule.xml and DRL files of the resources directory are compiled to Java classes, written along the application
+ * classes with the model descriptor, so that {@link DroolsConfig} loads rules without parsing nor compiling them.
+ * Any rule compilation error fails the build.
+ * <p>
+ * Arguments: resources directory, classes output directory, group id, artifact id and version of the rules module.
+ */
+public final class PricingRulesCompiler {
+
+  private static final String KMODULE_XML = "META-INF/kmodule.xml";
+
+  private static final Pattern GENERATED_CLASS = Pattern.compile("(Rules|DomainClassesMetadata)\\p{XDigit}{32}.*\\.class");
+
+  private PricingRulesCompiler() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 5) {
+      throw new IllegalArgumentException(
+        "Usage: PricingRulesCompiler <resources directory> <output directory> <groupId> <artifactId> <version>");
+    }
+    // Logback is not configured outside of Spring Boot, and would log the generated sources at debug level
+    ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+    Path resourcesDirectory = Paths.get(args[0]);
+    Path outputDirectory = Paths.get(args[1]);
+    KieServices kieServices = KieServices.Factory.get();
+    ReleaseId releaseId = kieServices.newReleaseId(args[2], args[3], args[4]);
+
+    KieFileSystem kieFileSystem = kieServices.newKieFileSystem();
+    kieFileSystem.generateAndWritePomXML(releaseId);
+    kieFileSystem.writeKModuleXML(Files.readAllBytes(resourcesDirectory.resolve(KMODULE_XML)));
+    for (Path drl : drlFiles(resourcesDirectory)) {
+      kieFileSystem.write("src/main/resources/" + resourcesDirectory.relativize(drl).toString().replace('\\', '/'),
+        Files.readAllBytes(drl));
+    }
+
+    KieBuilder kieBuilder = kieServices.newKieBuilder(kieFileSystem).buildAll(ExecutableModelProject.class);
+    List<Message> errors = kieBuilder.getResults().getMessages(Message.Level.ERROR);
+    if (!errors.isEmpty()) {
+      throw new IllegalStateException("Pricing rules do not compile: " + errors);
+    }
+
+    InternalKieModule kieModule = (InternalKieModule) kieBuilder.getKieModule();
+    deletePreviousModel(outputDirectory, kieModule);
+    for (String fileName : kieModule.getFileNames()) {
+      // Sources are already part of the resources
+      if (fileName.endsWith(".drl") || fileName.equals(KMODULE_XML)) {
+        continue;
+      }
+      Path file = outputDirectory.resolve(fileName);
+      Files.createDirectories(file.getParent());
+      Files.write(file, kieModule.getBytes(fileName));
+    }
+    System.out.printf("Compiled pricing rules %s into %s%n", releaseId, outputDirectory);
+  }
+
+  // Generated class names embed a hash, which differs from one build to the next
+  private static void deletePreviousModel(Path outputDirectory, InternalKieModule kieModule) throws IOException {
+    List<Path> packageDirectories = kieModule.getFileNames().stream()
+      .filter(fileName -> fileName.endsWith(".class"))
+      .map(fileName -> outputDirectory.resolve(fileName).getParent())
+      .distinct()
+      .filter(Files::isDirectory)
+      .collect(Collectors.toList());
+    for (Path packageDirectory : packageDirectories) {
+      try (Stream<Path> files = Files.list(packageDirectory)) {
+        for (Path file : files.filter(file -> GENERATED_CLASS.matcher(file.getFileName().toString()).matches())
+          .collect(Collectors.toList())) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  private static List<Path> drlFiles(Path resourcesDirectory) throws IOException {
+    try (Stream<Path> files = Files.walk(resourcesDirectory)) {
+      return files.filter(file -> file.toString().endsWith(".drl")).sorted().collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package com.acme.parking.config;
+
+import com.acme.parking.properties.AvailabilityStreamProperties;
+import org.apache.coyote.AbstractProtocol;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration class of the embedded web server
+ */
+@Configuration
+public class WebServerConfig {
+
+  /**
+   * Writes to a client not reading its connection fail after {@code app.availabilityStream.slowSubscriberTimeout},
+   * rather than holding their thread, an availability stream sender in particular, until the client reads or goes away.
+   * Tomcat bounds writes by the connection timeout, so idle keep-alive connections are given their own timeout,
+   * unchanged.
+   */
+  @Bean
+  public WebServerFactoryCustomizer<TomcatServletWebServerFactory> writeTimeoutCustomizer(
+    AvailabilityStreamProperties properties) {
+    return factory -> factory.addConnectorCustomizers(connector -> {
+      AbstractProtocol<?> protocol = (AbstractProtocol<?>) connector.getProtocolHandler();
+      protocol.setKeepAliveTimeout(protocol.getKeepAliveTimeout());
+      protocol.setConnectionTimeout((int) properties.getSlowSubscriberTimeout().toMillis());
+    });
+  }
+}
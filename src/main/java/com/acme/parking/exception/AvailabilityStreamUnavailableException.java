@@ -0,0 +1,8 @@
+package com.acme.parking.exception;
+
+public class AvailabilityStreamUnavailableException extends RuntimeException {
+
+  public AvailabilityStreamUnavailableException(String message) {
+    super(message);
+  }
+}
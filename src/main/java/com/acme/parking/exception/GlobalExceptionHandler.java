@@ -1,6 +1,9 @@
 package com.acme.parking.exception;
 
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.kafka.requestreply.KafkaReplyTimeoutException;
 import org.springframework.messaging.handler.annotation.support.MethodArgumentNotValidException;
 import org.springframework.stereotype.Component;
 import org.springframework.validation.FieldError;
@@ -14,6 +17,7 @@ import org.springframework.web.method.annotation.MethodArgumentTypeMismatchExcep
 import javax.validation.ConstraintViolationException;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 /**
@@ -91,6 +95,13 @@ public class GlobalExceptionHandler {
     return error(exception.getMessage());
   }
 
+  @ExceptionHandler
+  @ResponseBody
+  @ResponseStatus(HttpStatus.BAD_REQUEST)
+  public Map handle(ParkingNotCompletedException exception) {
+    return error(exception.getMessage());
+  }
+
   @ExceptionHandler
   @ResponseBody
   @ResponseStatus(HttpStatus.BAD_REQUEST)
@@ -105,6 +116,42 @@ public class GlobalExceptionHandler {
     return error(exception.getMessage());
   }
 
+  @ExceptionHandler
+  @ResponseBody
+  @ResponseStatus(HttpStatus.BAD_REQUEST)
+  public Map handle(InvalidPricingRulesException exception) {
+    return error(exception.getMessage());
+  }
+
+  @ExceptionHandler
+  @ResponseBody
+  @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+  public Map handle(ServiceOverloadedException exception) {
+    return error(exception.getMessage());
+  }
+
+  // Subscribers only accept event streams, the error can't be written as JSON
+  @ExceptionHandler
+  public ResponseEntity<String> handle(AvailabilityStreamUnavailableException exception) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+      .contentType(MediaType.TEXT_PLAIN)
+      .body(exception.getMessage());
+  }
+
+  @ExceptionHandler
+  @ResponseBody
+  @ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+  public Map handle(KafkaReplyTimeoutException exception) {
+    return error("The request could not be completed in time, please retry later");
+  }
+
+  @ExceptionHandler
+  @ResponseBody
+  @ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+  public Map handle(TimeoutException exception) {
+    return error("The request could not be completed in time, please retry later");
+  }
+
   @ExceptionHandler
   @ResponseBody
   @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -0,0 +1,12 @@
+package com.acme.parking.exception;
+
+public class InvalidPricingRulesException extends RuntimeException {
+
+  public InvalidPricingRulesException(String message) {
+    super(message);
+  }
+
+  public InvalidPricingRulesException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
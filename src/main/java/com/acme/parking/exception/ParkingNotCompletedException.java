@@ -0,0 +1,8 @@
+package com.acme.parking.exception;
+
+public class ParkingNotCompletedException extends RuntimeException {
+
+  public ParkingNotCompletedException(Long id) {
+    super(String.format("Parking #%d is not completed yet", id));
+  }
+}
@@ -0,0 +1,12 @@
+package com.acme.parking.exception;
+
+public class ServiceOverloadedException extends RuntimeException {
+
+  public ServiceOverloadedException(int maxInFlightRequests) {
+    super(String.format("Too many requests in progress (limit %d), please retry later", maxInFlightRequests));
+  }
+
+  public ServiceOverloadedException(String message) {
+    super(message);
+  }
+}
@@ -1,33 +1,58 @@
 package com.acme.parking.inventory;
 
 import com.acme.parking.api.ParkingSpaceAPI;
+import com.acme.parking.api.model.IdBatch;
+import com.acme.parking.api.model.ParkingBatchResult;
+import com.acme.parking.api.model.ParkingCompletion;
+import com.acme.parking.api.model.ParkingCompletionBatch;
+import com.acme.parking.api.model.ParkingResult;
+import com.acme.parking.api.model.ParkingResult.Rejection;
 import com.acme.parking.api.model.ParkingSpaceQuery;
 import com.acme.parking.api.model.ParkingSpaceQueryResult;
+import com.acme.parking.api.model.ParkingSpaceStats;
+import com.acme.parking.api.model.ParkingSpaceStatsQuery;
+import com.acme.parking.api.model.ParkingStartBatch;
+import com.acme.parking.api.model.UnflushedParkingsQuery;
 import com.acme.parking.billing.BillingController;
 import com.acme.parking.billing.model.Billing;
 import com.acme.parking.exception.InvalidParkingIdException;
-import com.acme.parking.exception.InvalidParkingSpaceIdException;
+import com.acme.parking.inventory.dao.BillingRepository;
 import com.acme.parking.inventory.dao.ParkingRepository;
 import com.acme.parking.inventory.dao.ParkingSpaceRepository;
+import com.acme.parking.inventory.dao.ParkingSpaceSummary;
 import com.acme.parking.inventory.model.Parking;
 import com.acme.parking.inventory.model.ParkingSpace;
 import com.acme.parking.inventory.model.ParkingSpace.Status;
-import com.acme.parking.properties.KafkaRequestTopics;
-import lombok.SneakyThrows;
-import org.apache.kafka.clients.producer.ProducerRecord;
+import com.acme.parking.inventory.model.ParkingSpaceEvent;
+import com.acme.parking.messaging.Operation;
+import com.acme.parking.messaging.RequestReplyGateway;
+import com.acme.parking.properties.AppProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.kafka.annotation.KafkaHandler;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.requestreply.ReplyingKafkaTemplate;
-import org.springframework.kafka.requestreply.RequestReplyFuture;
+import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.stereotype.Component;
-import org.springframework.util.CollectionUtils;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.acme.parking.properties.KafkaRequestTopics.KAFKA_REQUEST_TOPIC_PREFIX;
 import static java.time.temporal.ChronoUnit.SECONDS;
@@ -39,120 +64,473 @@ import static java.time.temporal.ChronoUnit.SECONDS;
  * <p>
  * {@link ParkingSpaceAPI} and {@link com.acme.parking.api.ParkingAPI} send requests to {@link InventoryController} to perform inventory-related operations.
  * {@link InventoryController} sends requests to {@link BillingController} to perform billing-related operations.
+ * <p>
+ * Parking start & completion requests are consumed by a single listener container, keyed by parking space id,
+ * so that each node is the single writer of the parking spaces it owns, see {@link ParkingSpaceOwnership}.
+ * Parking space lookups by id & stats are consumed by the same container, so that they are answered by the owner.
+ * Batches of starts & completions, grouped by partition on the API side, are processed as one message in one transaction.
+ * The availability index and the {@link ParkingSpaceCounters} only hold the owned parking spaces,
+ * queries fall back to the database when they are partial.
+ * <p>
+ * With {@code app.asyncBillingEnabled}, parkings are completed with a pending billing, without waiting for
+ * {@link BillingController}: the billing is priced out of band once the completion is committed, then written back
+ * by the node owning the parking space. Billings left pending are resent by the {@link PendingBillingSweeper}.
+ * <p>
+ * Parking starts & completions are published as {@link ParkingSpaceEvent}s, along with a snapshot of the owned
+ * parking spaces every time partitions are assigned, see {@link ParkingSpaceEventPublisher}.
+ * <p>
+ * With {@code app.writeBehind.enabled}, parking spaces & parkings are read & saved through the {@link WriteBehindInventory},
+ * which holds the owned ones in memory and flushes their changes to the database in the background.
  */
 @Component
+@KafkaListener(id = "inventoryCommands", containerFactory = "inventoryCommandContainerFactory",
+  topics = {"${" + KAFKA_REQUEST_TOPIC_PREFIX + ".parkingSpaceById}", "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".parkingSpacesByIds}",
+    "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".parkingStart}", "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".parkingCompletion}",
+    "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".parkingStartBatch}", "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".parkingCompletionBatch}",
+    "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".parkingSpaceStats}", "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".unflushedParkingsByIds}",
+    "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".billingWriteBack}"},
+  groupId = "${kafka.group.id}")
 public class InventoryController {
 
-  private final KafkaRequestTopics requestTopics;
+  private static final Logger log = LoggerFactory.getLogger(InventoryController.class);
+
+  // @KafkaHandler methods do not default to the request's reply topic like @KafkaListener methods
+  private static final String REQUEST_REPLY_TOPIC = "!{source.headers['" + KafkaHeaders.REPLY_TOPIC + "']}";
 
-  private final Map<ParkingSpace.Type, Long> nextAvailableParkingSpaceCache = new HashMap<>();
+  private final ParkingSpaceAvailabilityIndex availabilityIndex = new ParkingSpaceAvailabilityIndex();
 
   private final ParkingSpaceRepository parkingSpaceRepository;
 
   private final ParkingRepository parkingRepository;
 
-  private final ReplyingKafkaTemplate<String, Parking, Billing> billingCalculationKafkaTemplate;
+  private final RequestReplyGateway gateway;
+
+  private final ParkingSpaceOwnership ownership;
+
+  private final BillingRepository billingRepository;
+
+  private final AppProperties config;
+
+  private final ApplicationEventPublisher eventPublisher;
+
+  private final ParkingSpaceCounters counters;
+
+  private final WriteBehindInventory writeBehind;
 
   @Autowired
-  public InventoryController(KafkaRequestTopics requestTopics, ParkingSpaceRepository parkingSpaceRepository,
+  public InventoryController(ParkingSpaceRepository parkingSpaceRepository,
                              ParkingRepository parkingRepository,
-                             ReplyingKafkaTemplate<String, Parking, Billing> billingCalculationKafkaTemplate) {
-    this.requestTopics = requestTopics;
+                             RequestReplyGateway gateway,
+                             ParkingSpaceOwnership ownership,
+                             BillingRepository billingRepository,
+                             AppProperties config,
+                             ApplicationEventPublisher eventPublisher,
+                             ParkingSpaceCounters counters,
+                             WriteBehindInventory writeBehind) {
     this.parkingSpaceRepository = parkingSpaceRepository;
     this.parkingRepository = parkingRepository;
-    this.billingCalculationKafkaTemplate = billingCalculationKafkaTemplate;
+    this.gateway = gateway;
+    this.ownership = ownership;
+    this.billingRepository = billingRepository;
+    this.config = config;
+    this.eventPublisher = eventPublisher;
+    this.counters = counters;
+    this.writeBehind = writeBehind;
   }
 
-  @KafkaListener(topics = "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".parkingSpaceById}", groupId = "${kafka.group.id}")
-  @SendTo
-  public ParkingSpace getParkingSpaceById(Long id) throws InvalidParkingSpaceIdException {
-    ParkingSpace parkingSpace = parkingSpaceRepository.findById(id);
+  @EventListener({ApplicationReadyEvent.class, ParkingSpaceOwnership.OwnershipChangedEvent.class})
+  public void buildAvailabilityIndex(ApplicationEvent event) {
+    List<ParkingSpace> ownedParkingSpaces = new ArrayList<>();
+    for (ParkingSpace parkingSpace : parkingSpaceRepository.findAll()) {
+      if (ownership.owns(parkingSpace.getId())) {
+        ownedParkingSpaces.add(parkingSpace);
+      }
+    }
+    availabilityIndex.rebuild(ownedParkingSpaces);
+    counters.reset(ownedParkingSpaces);
+    // Assigned partitions are not consumed yet, so no change of these parking spaces can be published concurrently
+    if (event instanceof ParkingSpaceOwnership.OwnershipChangedEvent) {
+      ownedParkingSpaces.forEach(parkingSpace -> eventPublisher.publishEvent(ParkingSpaceEvent.snapshot(parkingSpace)));
+    }
+  }
+
+  /**
+   * Looks up a parking space by id, answering a parking space without id when unknown.
+   */
+  @KafkaHandler
+  @SendTo(REQUEST_REPLY_TOPIC)
+  public ParkingSpace getParkingSpaceById(Long id) {
+    ParkingSpace parkingSpace = writeBehind.isEnabled() ? writeBehind.parkingSpace(id)
+      : parkingSpaceRepository.findWithCurrentParkingById(id);
     if (parkingSpace == null) {
       return new ParkingSpace();
     }
     return parkingSpace;
   }
 
+  /**
+   * Looks up parking spaces by id, all of them belonging to the same partition.
+   */
+  @KafkaHandler
+  @SendTo(REQUEST_REPLY_TOPIC)
+  public ParkingSpaceQueryResult getParkingSpacesByIds(IdBatch batch) {
+    Map<Long, ParkingSpace> parkingSpaces = writeBehind.isEnabled() ? writeBehind.parkingSpaces(batch.getIds())
+      : byId(parkingSpaceRepository.findWithCurrentParkingByIdIn(batch.getIds()), ParkingSpace::getId);
+    // Unknown ids get a parking space without id, like single lookups
+    return new ParkingSpaceQueryResult(batch.getIds().stream()
+      .map(id -> parkingSpaces.getOrDefault(id, new ParkingSpace()))
+      .collect(Collectors.toList()));
+  }
+
   @KafkaListener(topics = "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".nextAvailableParkingSpace}", groupId = "${kafka.group.id}")
   @SendTo
   public ParkingSpace getNextAvailableParkingSpace(ParkingSpace.Type type) {
-    if (nextAvailableParkingSpaceCache.get(type) == null) {
-      updateNextAvailableCache(type);
+    Long id = availabilityIndex.nextAvailable(type);
+    if (id == null && ownership.isPartitioned()) {
+      ParkingSpaceSummary parkingSpace = parkingSpaceRepository.findFirstByTypeAndStatusOrderByIdAsc(type, Status.AVAILABLE);
+      return parkingSpace != null ? parkingSpace.toParkingSpace() : new ParkingSpace(null, type);
     }
-    return new ParkingSpace(nextAvailableParkingSpaceCache.get(type), type);
+    return new ParkingSpace(id, type);
+  }
+
+  /**
+   * Counts the parking spaces of the requested partition, owned by this node.
+   */
+  @KafkaHandler
+  @SendTo(REQUEST_REPLY_TOPIC)
+  public ParkingSpaceStats getParkingSpaceStats(ParkingSpaceStatsQuery query) {
+    return counters.stats(query.getType(), query.getPartition());
   }
 
   @KafkaListener(topics = "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".parkingSpacesQuery}", groupId = "${kafka.group.id}")
   @SendTo
   public ParkingSpaceQueryResult parkingSpacesQuery(ParkingSpaceQuery query) {
-    //TODO paging
-    List<ParkingSpace> result = parkingSpaceRepository.findByTypeAndStatus(query.getType(), query.getStatus());
-    if (query.getCount() < result.size()) {
-      result = result.subList(0, query.getCount());
+    long afterId = ParkingSpaceQuery.afterId(query.getCursor());
+    // One more than requested, to know whether there is a next page
+    int limit = query.getCount() + 1;
+    List<ParkingSpace> candidates;
+    if (query.getStatus() == Status.AVAILABLE && !ownership.isPartitioned()) {
+      candidates = availabilityIndex.available(query.getType(), afterId, limit).stream()
+        .map(id -> new ParkingSpace(id, query.getType()))
+        .collect(Collectors.toList());
+    } else if (query.getStatus() == Status.AVAILABLE) {
+      candidates = parkingSpaceRepository.findByTypeAndStatusAndIdGreaterThanOrderByIdAsc(query.getType(),
+        query.getStatus(), afterId, PageRequest.of(0, limit)).stream()
+        .map(ParkingSpaceSummary::toParkingSpace)
+        .collect(Collectors.toList());
+    } else {
+      candidates = parkingSpaceRepository.findWithCurrentParkingByTypeAndStatusAndIdGreaterThanOrderByIdAsc(
+        query.getType(), query.getStatus(), afterId, PageRequest.of(0, limit));
     }
-    return new ParkingSpaceQueryResult(result);
+    return ParkingSpaceQueryResult.page(candidates, query.getCount());
   }
 
 
-  @KafkaListener(topics = "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".parkingStart}", groupId = "${kafka.group.id}")
-  @SendTo
-  public Parking startParking(Parking parking) {
-    Parking parkingCreated = parkingRepository.save(parking);
-    ParkingSpace parkingSpace = parkingSpaceRepository.findById(parking.getParkingSpaceId());
+  /**
+   * Claims the requested parking space and starts the parking in a single step.
+   * The parking space is moved from AVAILABLE to OCCUPIED with a compare-and-set,
+   * so only one of the concurrent requests for the same parking space can succeed.
+   */
+  @KafkaHandler
+  @SendTo(REQUEST_REPLY_TOPIC)
+  @Transactional
+  public ParkingResult startParking(Parking parking) {
+    return start(writeBehind.isEnabled() ? writeBehind.parkingSpace(parking.getParkingSpaceId())
+      : parkingSpaceRepository.findById(parking.getParkingSpaceId()), parking);
+  }
+
+  /**
+   * Starts a parking at each of the requested parking spaces like {@link #startParking(Parking)}, in a single transaction.
+   * Parking spaces that cannot be claimed are rejected without affecting the others.
+   */
+  @KafkaHandler
+  @SendTo(REQUEST_REPLY_TOPIC)
+  @Transactional
+  public ParkingBatchResult startParkings(ParkingStartBatch batch) {
+    Map<Long, ParkingSpace> parkingSpaces = writeBehind.isEnabled() ? writeBehind.parkingSpaces(batch.getParkingSpaceIds())
+      : byId(parkingSpaceRepository.findByIdIn(batch.getParkingSpaceIds()), ParkingSpace::getId);
+    List<ParkingResult> results = new ArrayList<>(batch.getParkingSpaceIds().size());
+    for (Long parkingSpaceId : batch.getParkingSpaceIds()) {
+      Parking parking = new Parking();
+      parking.setParkingSpaceId(parkingSpaceId);
+      results.add(start(parkingSpaces.get(parkingSpaceId), parking));
+    }
+    return new ParkingBatchResult(results);
+  }
+
+  private ParkingResult start(ParkingSpace parkingSpace, Parking parking) {
+    if (parkingSpace == null) {
+      return ParkingResult.rejected(Rejection.INVALID_PARKING_SPACE_ID);
+    }
+    if (!claim(parkingSpace)) {
+      return ParkingResult.rejected(Rejection.PARKING_SPACE_NOT_AVAILABLE);
+    }
 
-    parkingSpace.setStatus(Status.OCCUPIED);
-    parkingSpace.setCurrentParkingInformation(parkingCreated);
-    parkingSpaceRepository.save(parkingSpace);
-    updateNextAvailableCache(parkingSpace.getType());
+    Parking parkingCreated;
+    if (writeBehind.isEnabled()) {
+      parkingSpace.setStatus(Status.OCCUPIED);
+      parkingSpace.setCurrentParkingInformation(parking);
+      writeBehind.save(List.of(parking, parkingSpace));
+      parkingCreated = parking;
+    } else {
+      parkingCreated = parkingRepository.save(parking);
+      parkingSpaceRepository.updateCurrentParkingInformation(parkingSpace.getId(), parkingCreated);
+    }
+    afterCommit(() -> {
+      availabilityIndex.claim(parkingSpace.getType(), parkingSpace.getId());
+      counters.move(parkingSpace, Status.AVAILABLE, Status.OCCUPIED);
+    });
+    eventPublisher.publishEvent(ParkingSpaceEvent.parkingStarted(parkingSpace, parkingCreated));
 
-    return parkingCreated;
+    return ParkingResult.accepted(parkingCreated);
+  }
+
+  private boolean claim(ParkingSpace parkingSpace) {
+    if (writeBehind.isEnabled()) {
+      return writeBehind.claim(parkingSpace.getId());
+    }
+    return parkingSpaceRepository.compareAndSetStatus(parkingSpace.getId(), Status.AVAILABLE, Status.OCCUPIED) != 0;
   }
 
 
   @KafkaListener(topics = "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".parkingById}", groupId = "${kafka.group.id}")
   @SendTo
   public Parking getParkingById(Long id) throws InvalidParkingIdException {
-    Parking parking = parkingRepository.findById(id);
+    Parking parking = writeBehind.isEnabled() ? writeBehind.parking(id) : parkingRepository.findById(id);
     if (parking == null) {
       return new Parking();
     }
     return parking;
   }
 
-  @KafkaListener(topics = "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".parkingCompletion}", groupId = "${kafka.group.id}")
+  @KafkaListener(topics = "${" + KAFKA_REQUEST_TOPIC_PREFIX + ".parkingsByIds}", groupId = "${kafka.group.id}")
   @SendTo
-  public Parking endParking(Long id) {
-    Parking completedParking = parkingRepository.findById(id);
-    ParkingSpace parkingSpace = parkingSpaceRepository.findById(completedParking.getParkingSpaceId());
+  public ParkingBatchResult getParkingsByIds(IdBatch batch) {
+    Map<Long, Parking> parkings = writeBehind.isEnabled() ? writeBehind.parkings(batch.getIds())
+      : byId(parkingRepository.findByIdIn(batch.getIds()), Parking::getId);
+    return new ParkingBatchResult(batch.getIds().stream()
+      .map(id -> parkings.containsKey(id) ? ParkingResult.accepted(parkings.get(id))
+        : ParkingResult.rejected(Rejection.INVALID_PARKING_ID))
+      .collect(Collectors.toList()));
+  }
+
+  /**
+   * Looks up the parkings held in memory with write-behind, whose parking space is hashed to the requested partition:
+   * parkings started since the last flush are missed by the lookups answered from the database by any node.
+   */
+  @KafkaHandler
+  @SendTo(REQUEST_REPLY_TOPIC)
+  public ParkingBatchResult getUnflushedParkings(UnflushedParkingsQuery query) {
+    Map<Long, Parking> parkings = writeBehind.isEnabled() ? writeBehind.parkingsInMemory(query.getIds()) : Map.of();
+    return new ParkingBatchResult(query.getIds().stream()
+      .map(parkings::get)
+      .map(parking -> parking != null && ownership.partitionOf(parking.getParkingSpaceId()) == query.getPartition()
+        ? ParkingResult.accepted(parking) : ParkingResult.rejected(Rejection.INVALID_PARKING_ID))
+      .collect(Collectors.toList()));
+  }
+
+  /**
+   * Completes the parking and bills it, in a single transaction.
+   * Unknown or already completed parkings are rejected, as they may have been completed since looked up by the API.
+   */
+  @KafkaHandler
+  @SendTo(REQUEST_REPLY_TOPIC)
+  @Transactional
+  public ParkingResult endParking(ParkingCompletion completion) {
+    Long id = completion.getParkingId();
+    Parking completedParking = writeBehind.isEnabled() ? writeBehind.parking(id) : parkingRepository.findById(id);
+    if (completedParking == null) {
+      return ParkingResult.rejected(Rejection.INVALID_PARKING_ID);
+    }
+    if (completedParking.getEndDateTime() != null) {
+      return ParkingResult.rejected(Rejection.PARKING_ALREADY_COMPLETED);
+    }
+    ParkingSpace parkingSpace = writeBehind.isEnabled() ? writeBehind.parkingSpace(completedParking.getParkingSpaceId())
+      : parkingSpaceRepository.findById(completedParking.getParkingSpaceId());
+    complete(completedParking, parkingSpace);
+    if (config.isAsyncBillingEnabled()) {
+      completedParking.setBilling(Billing.pending());
+      Parking savedParking = saveCompletion(completedParking, parkingSpace);
+      sendPendingBillings(List.of(savedParking));
+      return ParkingResult.accepted(savedParking);
+    }
+    completedParking.setBilling(calculateBilling(completedParking));
+
+    return ParkingResult.accepted(saveCompletion(completedParking, parkingSpace));
+  }
+
+  /**
+   * Completes each of the requested parkings like {@link #endParking(ParkingCompletion)}, all in a single transaction.
+   * Billings are all requested before waiting for any of them, so that they are priced together
+   * with {@code app.billingBatchEnabled}. Unknown or already completed parkings are rejected without affecting the others.
+   */
+  @KafkaHandler
+  @SendTo(REQUEST_REPLY_TOPIC)
+  @Transactional
+  public ParkingBatchResult endParkings(ParkingCompletionBatch batch) {
+    List<Long> ids = batch.getParkingIds();
+    Map<Long, Parking> parkings;
+    Map<Long, ParkingSpace> parkingSpaces;
+    if (writeBehind.isEnabled()) {
+      parkings = writeBehind.parkings(ids);
+      parkingSpaces = writeBehind.parkingSpaces(parkingSpaceIds(parkings));
+    } else {
+      parkings = byId(parkingRepository.findByIdIn(ids), Parking::getId);
+      parkingSpaces = byId(parkingSpaceRepository.findByIdIn(parkingSpaceIds(parkings)), ParkingSpace::getId);
+    }
+
+    ParkingResult[] results = new ParkingResult[ids.size()];
+    List<Parking> completedParkings = new ArrayList<>();
+    List<ParkingSpace> releasedParkingSpaces = new ArrayList<>();
+    for (int i = 0; i < ids.size(); i++) {
+      Parking parking = parkings.get(ids.get(i));
+      if (parking == null) {
+        results[i] = ParkingResult.rejected(Rejection.INVALID_PARKING_ID);
+      } else if (parking.getEndDateTime() != null) {
+        // Including parkings requested twice in the batch
+        results[i] = ParkingResult.rejected(Rejection.PARKING_ALREADY_COMPLETED);
+      } else {
+        complete(parking, parkingSpaces.get(parking.getParkingSpaceId()));
+        completedParkings.add(parking);
+        releasedParkingSpaces.add(parkingSpaces.get(parking.getParkingSpaceId()));
+      }
+    }
+
+    Map<Long, Parking> savedParkings = new HashMap<>();
+    for (Parking savedParking : billAndSave(completedParkings, releasedParkingSpaces)) {
+      savedParkings.put(savedParking.getId(), savedParking);
+    }
+    for (int i = 0; i < ids.size(); i++) {
+      if (results[i] == null) {
+        results[i] = ParkingResult.accepted(savedParkings.get(ids.get(i)));
+      }
+    }
+    return new ParkingBatchResult(List.of(results));
+  }
+
+  private void complete(Parking completedParking, ParkingSpace parkingSpace) {
+    Status previousStatus = parkingSpace.getStatus();
 
     parkingSpace.setStatus(Status.AVAILABLE);
     parkingSpace.setCurrentParkingInformation(null);
-    parkingSpaceRepository.save(parkingSpace);
-    nextAvailableParkingSpaceCache.put(parkingSpace.getType(), parkingSpace.getId());
+    // Saved by the caller with write-behind, along with its parking once billed
+    if (!writeBehind.isEnabled()) {
+      parkingSpaceRepository.save(parkingSpace);
+    }
+    afterCommit(() -> {
+      availabilityIndex.release(parkingSpace.getType(), parkingSpace.getId());
+      counters.move(parkingSpace, previousStatus, Status.AVAILABLE);
+    });
+    eventPublisher.publishEvent(ParkingSpaceEvent.parkingCompleted(parkingSpace));
 
+    completedParking.setParkingSpaceType(parkingSpace.getType());
     completedParking.setEndDateTime(LocalDateTime.now());
     long parkingDurationSeconds = SECONDS.between(completedParking.getStartDateTime(), completedParking.getEndDateTime());
     completedParking.setDurationSeconds(parkingDurationSeconds);
-    completedParking.setBilling(calculateBilling(completedParking));
+  }
 
-    return parkingRepository.save(completedParking);
+  private static List<Long> parkingSpaceIds(Map<Long, Parking> parkings) {
+    return parkings.values().stream()
+      .map(Parking::getParkingSpaceId)
+      .collect(Collectors.toList());
   }
 
-  private void updateNextAvailableCache(ParkingSpace.Type type) {
-    List<ParkingSpace> availableParkingSpaces = parkingSpaceRepository.findByTypeAndStatus(type, Status.AVAILABLE);
-    if (!CollectionUtils.isEmpty(availableParkingSpaces)) {
-      nextAvailableParkingSpaceCache.put(type, availableParkingSpaces.get(0).getId());
-    } else {
-      nextAvailableParkingSpaceCache.put(type, null);
+  // Same as saveCompletions, for a single parking
+  private Parking saveCompletion(Parking parking, ParkingSpace releasedParkingSpace) {
+    if (!writeBehind.isEnabled()) {
+      return parkingRepository.save(parking);
     }
+    writeBehind.save(List.of(parking, releasedParkingSpace));
+    return parking;
+  }
+
+  /**
+   * Saves the completed parkings, along with their released parking spaces with write-behind,
+   * so that completions are logged at once, like starts.
+   */
+  private Iterable<Parking> saveCompletions(List<Parking> parkings, List<ParkingSpace> releasedParkingSpaces) {
+    if (!writeBehind.isEnabled()) {
+      return parkingRepository.saveAll(parkings);
+    }
+    List<Object> changes = new ArrayList<>(parkings);
+    changes.addAll(releasedParkingSpaces);
+    writeBehind.save(changes);
+    return parkings;
+  }
+
+  private Iterable<Parking> billAndSave(List<Parking> completedParkings, List<ParkingSpace> releasedParkingSpaces) {
+    if (config.isAsyncBillingEnabled()) {
+      completedParkings.forEach(parking -> parking.setBilling(Billing.pending()));
+      Iterable<Parking> savedParkings = saveCompletions(completedParkings, releasedParkingSpaces);
+      sendPendingBillings(savedParkings);
+      return savedParkings;
+    }
+    List<CompletableFuture<Billing>> billings = completedParkings.stream()
+      .map(parking -> gateway.sendAndReceive(Operation.BILLING_CALCULATION, parking))
+      .collect(Collectors.toList());
+    for (int i = 0; i < completedParkings.size(); i++) {
+      completedParkings.get(i).setBilling(billings.get(i).join());
+    }
+    return saveCompletions(completedParkings, releasedParkingSpaces);
+  }
+
+  /**
+   * Sends the pending billings once the current transaction, if any, is committed, so that their write-backs
+   * find them pending. Billings left pending by a failed send are resent by the {@link PendingBillingSweeper}.
+   */
+  private void sendPendingBillings(Iterable<Parking> parkings) {
+    afterCommit(() -> parkings.forEach(this::sendPendingBilling));
+  }
+
+  /**
+   * Runs the action once the current transaction, if any, is committed, so that nothing is left to undo
+   * if it is rolled back, such as on a failed billing or log append.
+   */
+  private static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCommit() {
+        action.run();
+      }
+    });
+  }
+
+  private void sendPendingBilling(Parking parking) {
+    gateway.send(Operation.PENDING_BILLING_CALCULATION, parking).whenComplete((result, exception) -> {
+      if (exception != null) {
+        log.error("Billing of parking #{} left pending until the next sweep", parking.getId(), exception);
+      }
+    });
+  }
+
+  /**
+   * Writes the price of a pending billing back, once calculated.
+   * Billings already calculated are left unchanged, so that a redelivered write-back has no effect.
+   */
+  @KafkaHandler
+  @Transactional
+  public void writeBackBilling(Billing billing) {
+    int updated = writeBehind.isEnabled() ? writeBehind.completePendingBilling(billing)
+      : billingRepository.completePending(billing.getId(), billing.getCurrency(), billing.getAmount(),
+      billing.getRuleSetVersion());
+    if (updated == 0) {
+      log.warn("Billing #{} is not pending, write-back ignored", billing.getId());
+    }
+  }
+
+  private static <T> Map<Long, T> byId(Collection<T> entities, Function<T, Long> id) {
+    Map<Long, T> entitiesById = new HashMap<>();
+    entities.forEach(entity -> entitiesById.put(id.apply(entity), entity));
+    return entitiesById;
   }
 
-  @SneakyThrows
+  // Fails with an unchecked exception, so that the completion is rolled back like batch completions
   private Billing calculateBilling(Parking parking) {
-    ProducerRecord<String, Parking> record =
-      new ProducerRecord<>(requestTopics.getBillingCalculation(), null, UUID.randomUUID().toString(), parking);
-    RequestReplyFuture<String, Parking, Billing> future = billingCalculationKafkaTemplate.sendAndReceive(record);
-    return future.get().value();
+    return gateway.sendAndReceive(Operation.BILLING_CALCULATION, parking).join();
   }
 
 }
@@ -0,0 +1,214 @@
+package com.acme.parking.inventory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Local append-only log of the inventory changes not flushed to the database yet, see {@link WriteBehindInventory}.
+ * <p>
+ * Each change is a parking space or parking snapshot in {@link InventoryLogFormat}, prefixed by its length & CRC32,
+ * appended to the current segment file. A new segment is started on every flush, so that older segments can be deleted
+ * once flushed. On startup, the segments left over are read back up to their first torn or corrupted record,
+ * while an intact record that cannot be read by this release fails the recovery.
+ * <p>
+ * Appends are made durable together: a thread forcing the log to disk covers the appends made by other threads
+ * in the meantime, which then return without forcing it again. Appends & rotations must not run concurrently.
+ */
+class InventoryLog implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(InventoryLog.class);
+
+  private static final String SEGMENT_PREFIX = "inventory-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final int HEADER_BYTES = 2 * Integer.BYTES;
+  // Larger lengths can only be read from a torn header
+  private static final int MAX_RECORD_BYTES = 1 << 20;
+
+  private final Path directory;
+
+  private final Object forceLock = new Object();
+
+  private long segment;
+
+  private volatile FileChannel channel;
+
+  // Bytes appended to all segments since opened
+  private volatile long appended;
+
+  // Bytes forced to disk, guarded by forceLock
+  private long forced;
+
+  InventoryLog(Path directory) throws IOException {
+    this.directory = directory;
+    Files.createDirectories(directory);
+    List<Long> segments = segments();
+    this.segment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1;
+    this.channel = open(segment);
+  }
+
+  /**
+   * @return the changes of the segments left over by the previous run, in order
+   * @throws IOException if one of them cannot be read, such as written by a newer release
+   */
+  List<Object> readPreviousSegments() throws IOException {
+    List<Object> changes = new ArrayList<>();
+    for (long previous : segments()) {
+      if (previous < segment) {
+        read(segmentPath(previous), changes);
+      }
+    }
+    return changes;
+  }
+
+  /**
+   * @return position to pass to {@link #force(long)} for these changes to be durable
+   */
+  long append(Collection<?> changes) throws IOException {
+    List<byte[]> records = new ArrayList<>(changes.size());
+    int size = 0;
+    for (Object change : changes) {
+      byte[] record = InventoryLogFormat.encode(change);
+      records.add(record);
+      size += HEADER_BYTES + record.length;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    CRC32 crc = new CRC32();
+    for (byte[] record : records) {
+      crc.reset();
+      crc.update(record);
+      buffer.putInt(record.length).putInt((int) crc.getValue()).put(record);
+    }
+    buffer.flip();
+    long end = channel.size();
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException e) {
+      // Later records must not follow a partial one, which ends the segment on recovery
+      try {
+        channel.truncate(end);
+      } catch (IOException truncateFailure) {
+        e.addSuppressed(truncateFailure);
+      }
+      throw e;
+    }
+    appended += size;
+    return appended;
+  }
+
+  void force(long position) throws IOException {
+    synchronized (forceLock) {
+      if (forced >= position) {
+        return;
+      }
+      // Appends written by now are covered as well
+      long target = appended;
+      channel.force(false);
+      forced = target;
+    }
+  }
+
+  /**
+   * Starts a new segment, the previous ones holding all the changes appended so far.
+   *
+   * @return the new segment number
+   */
+  long rotate() throws IOException {
+    synchronized (forceLock) {
+      channel.force(false);
+      forced = appended;
+      channel.close();
+      segment++;
+      channel = open(segment);
+      return segment;
+    }
+  }
+
+  void deleteSegmentsBefore(long segment) throws IOException {
+    for (long previous : segments()) {
+      if (previous < segment) {
+        Files.deleteIfExists(segmentPath(previous));
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (forceLock) {
+      channel.force(false);
+      channel.close();
+    }
+  }
+
+  private FileChannel open(long segment) throws IOException {
+    return FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+      StandardOpenOption.APPEND);
+  }
+
+  private Path segmentPath(long segment) {
+    return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+  }
+
+  private List<Long> segments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.map(file -> file.getFileName().toString())
+        .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+        .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+        .sorted()
+        .collect(Collectors.toList());
+    }
+  }
+
+  private static void read(Path segmentPath, List<Object> changes) throws IOException {
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(segmentPath)))) {
+      CRC32 crc = new CRC32();
+      while (true) {
+        byte[] record;
+        int checksum;
+        try {
+          int length = input.readInt();
+          checksum = input.readInt();
+          if (length < 0 || length > MAX_RECORD_BYTES) {
+            log.warn("Corrupted record header in {}, ignoring the rest of the segment", segmentPath);
+            return;
+          }
+          record = new byte[length];
+          input.readFully(record);
+        } catch (EOFException e) {
+          // End of the segment, or record torn by a crash before it was forced
+          return;
+        }
+        crc.reset();
+        crc.update(record);
+        if ((int) crc.getValue() != checksum) {
+          log.warn("Corrupted record in {}, ignoring the rest of the segment", segmentPath);
+          return;
+        }
+        try {
+          changes.add(InventoryLogFormat.decode(record));
+        } catch (IOException e) {
+          // Skipping it would lose changes acknowledged to clients: to be recovered by a release able to read it
+          throw new IOException("Unreadable record in " + segmentPath, e);
+        }
+      }
+    }
+  }
+}
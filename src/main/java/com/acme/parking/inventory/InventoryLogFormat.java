@@ -0,0 +1,189 @@
+package com.acme.parking.inventory;
+
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.messaging.serialization.ParkingBinaryFormat;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Encoding of the changes appended to the {@link InventoryLog}, versioned apart from the {@link ParkingBinaryFormat}
+ * of the messages, so that the changes left over by a crash can be recovered by the next release.
+ * <p>
+ * Each record starts with the version of its layout, followed by a type tag and the fields of the parking space
+ * or parking: each nullable field is preceded by whether it is set, enums are written by name and date-times as UTC
+ * epoch seconds & nanos. A layout change requires a new version, the previous ones being kept readable.
+ * Records of an unknown version fail the recovery rather than being skipped, as they were written by a newer release.
+ * <p>
+ * Records written before this format are read in {@link ParkingBinaryFormat}, as long as its version is unchanged.
+ */
+final class InventoryLogFormat {
+
+  // Never ParkingBinaryFormat's magic byte, which tells the records written before this format apart
+  static final byte VERSION = 1;
+
+  private static final byte PARKING = 1;
+  private static final byte PARKING_SPACE = 2;
+
+  private InventoryLogFormat() {
+  }
+
+  static byte[] encode(Object change) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeByte(VERSION);
+      if (change instanceof ParkingSpace) {
+        output.writeByte(PARKING_SPACE);
+        writeParkingSpace(output, (ParkingSpace) change);
+      } else {
+        output.writeByte(PARKING);
+        writeParking(output, (Parking) change);
+      }
+    } catch (IOException e) {
+      // Never thrown by an in-memory stream
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @throws IOException if the record cannot be read by this release
+   */
+  static Object decode(byte[] record) throws IOException {
+    if (ParkingBinaryFormat.isBinary(record)) {
+      try {
+        return ParkingBinaryFormat.decode(record);
+      } catch (SerializationException e) {
+        throw new IOException("Inventory log record written in a former message format", e);
+      }
+    }
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+    byte version = input.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported inventory log record version " + version);
+    }
+    try {
+      byte tag = input.readByte();
+      switch (tag) {
+        case PARKING:
+          return readParking(input);
+        case PARKING_SPACE:
+          return readParkingSpace(input);
+        default:
+          throw new IOException("Unknown inventory log record type " + tag);
+      }
+    } catch (IllegalArgumentException e) {
+      // Enum constant removed since written
+      throw new IOException("Unreadable inventory log record", e);
+    }
+  }
+
+  private static void writeParkingSpace(DataOutputStream output, ParkingSpace parkingSpace) throws IOException {
+    writeOptionalLong(output, parkingSpace.getId());
+    writeOptionalEnum(output, parkingSpace.getType());
+    writeOptionalEnum(output, parkingSpace.getStatus());
+    output.writeLong(parkingSpace.getVersion());
+    output.writeBoolean(parkingSpace.getCurrentParkingInformation() != null);
+    if (parkingSpace.getCurrentParkingInformation() != null) {
+      writeParking(output, parkingSpace.getCurrentParkingInformation());
+    }
+  }
+
+  private static ParkingSpace readParkingSpace(DataInputStream input) throws IOException {
+    Long id = readOptionalLong(input);
+    ParkingSpace.Type type = readOptionalEnum(input, ParkingSpace.Type.class);
+    ParkingSpace.Status status = readOptionalEnum(input, ParkingSpace.Status.class);
+    long version = input.readLong();
+    Parking currentParking = input.readBoolean() ? readParking(input) : null;
+    return new ParkingSpace(id, type, status, currentParking, version);
+  }
+
+  private static void writeParking(DataOutputStream output, Parking parking) throws IOException {
+    writeOptionalLong(output, parking.getId());
+    writeOptionalLong(output, parking.getParkingSpaceId());
+    writeOptionalEnum(output, parking.getParkingSpaceType());
+    writeOptionalDateTime(output, parking.getStartDateTime());
+    writeOptionalDateTime(output, parking.getEndDateTime());
+    writeOptionalLong(output, parking.getDurationSeconds());
+    Billing billing = parking.getBilling();
+    output.writeBoolean(billing != null);
+    if (billing != null) {
+      writeOptionalLong(output, billing.getId());
+      writeOptionalString(output, billing.getCurrency());
+      output.writeBoolean(billing.getAmount() != null);
+      if (billing.getAmount() != null) {
+        output.writeDouble(billing.getAmount());
+      }
+      writeOptionalString(output, billing.getRuleSetVersion());
+      writeOptionalEnum(output, billing.getStatus());
+    }
+  }
+
+  private static Parking readParking(DataInputStream input) throws IOException {
+    Long id = readOptionalLong(input);
+    Long parkingSpaceId = readOptionalLong(input);
+    ParkingSpace.Type parkingSpaceType = readOptionalEnum(input, ParkingSpace.Type.class);
+    LocalDateTime startDateTime = readOptionalDateTime(input);
+    LocalDateTime endDateTime = readOptionalDateTime(input);
+    Long durationSeconds = readOptionalLong(input);
+    Billing billing = null;
+    if (input.readBoolean()) {
+      billing = new Billing(readOptionalLong(input), readOptionalString(input),
+        input.readBoolean() ? input.readDouble() : null, readOptionalString(input),
+        readOptionalEnum(input, Billing.Status.class));
+    }
+    return new Parking(id, parkingSpaceId, parkingSpaceType, startDateTime, endDateTime, durationSeconds, billing);
+  }
+
+  private static void writeOptionalLong(DataOutputStream output, Long value) throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null) {
+      output.writeLong(value);
+    }
+  }
+
+  private static Long readOptionalLong(DataInputStream input) throws IOException {
+    return input.readBoolean() ? input.readLong() : null;
+  }
+
+  private static void writeOptionalString(DataOutputStream output, String value) throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null) {
+      output.writeUTF(value);
+    }
+  }
+
+  private static String readOptionalString(DataInputStream input) throws IOException {
+    return input.readBoolean() ? input.readUTF() : null;
+  }
+
+  private static void writeOptionalEnum(DataOutputStream output, Enum<?> value) throws IOException {
+    writeOptionalString(output, value != null ? value.name() : null);
+  }
+
+  private static <E extends Enum<E>> E readOptionalEnum(DataInputStream input, Class<E> type) throws IOException {
+    String name = readOptionalString(input);
+    return name != null ? Enum.valueOf(type, name) : null;
+  }
+
+  private static void writeOptionalDateTime(DataOutputStream output, LocalDateTime value) throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null) {
+      output.writeLong(value.toEpochSecond(ZoneOffset.UTC));
+      output.writeInt(value.getNano());
+    }
+  }
+
+  private static LocalDateTime readOptionalDateTime(DataInputStream input) throws IOException {
+    return input.readBoolean() ? LocalDateTime.ofEpochSecond(input.readLong(), input.readInt(), ZoneOffset.UTC) : null;
+  }
+}
@@ -0,0 +1,196 @@
+package com.acme.parking.inventory;
+
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Status;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory index of available parking spaces, kept as one lock-free bitset per {@link Type}.
+ * A set bit means the parking space is available.
+ * <p>
+ * Claiming and releasing a parking space is a single compare-and-set on the word holding its bit,
+ * so the index can be shared by concurrent listener threads without any locking.
+ * Availability queries are answered from memory, without touching the database.
+ */
+public class ParkingSpaceAvailabilityIndex {
+
+  private volatile Map<Type, Slice> slices = Collections.emptyMap();
+
+  /**
+   * Replaces the content of the index with the given parking spaces.
+   * Id ranges are computed per type, available parking spaces are marked in their type's bitset.
+   */
+  public void rebuild(Iterable<ParkingSpace> parkingSpaces) {
+    Map<Type, long[]> ranges = new EnumMap<>(Type.class);
+    for (ParkingSpace parkingSpace : parkingSpaces) {
+      long[] range = ranges.computeIfAbsent(parkingSpace.getType(), type -> new long[]{Long.MAX_VALUE, Long.MIN_VALUE});
+      range[0] = Math.min(range[0], parkingSpace.getId());
+      range[1] = Math.max(range[1], parkingSpace.getId());
+    }
+
+    Map<Type, Slice> rebuiltSlices = new EnumMap<>(Type.class);
+    ranges.forEach((type, range) -> rebuiltSlices.put(type, new Slice(range[0], range[1])));
+    for (ParkingSpace parkingSpace : parkingSpaces) {
+      if (parkingSpace.getStatus() == Status.AVAILABLE) {
+        rebuiltSlices.get(parkingSpace.getType()).set(parkingSpace.getId());
+      }
+    }
+    slices = rebuiltSlices;
+  }
+
+  /**
+   * Marks the parking space as occupied.
+   *
+   * @return true if the parking space was available and has been claimed by this call
+   */
+  public boolean claim(Type type, long id) {
+    Slice slice = slices.get(type);
+    return slice != null && slice.contains(id) && slice.clear(id);
+  }
+
+  /**
+   * Marks the parking space as available.
+   *
+   * @return true if the parking space was occupied and has been released by this call
+   */
+  public boolean release(Type type, long id) {
+    Slice slice = slices.get(type);
+    return slice != null && slice.contains(id) && slice.set(id);
+  }
+
+  /**
+   * @return id of an available parking space for the given type, preferring the lowest one,
+   * or null if there is no available parking space
+   */
+  public Long nextAvailable(Type type) {
+    Slice slice = slices.get(type);
+    return slice == null ? null : slice.next();
+  }
+
+  /**
+   * @return ids of at most {@code count} available parking spaces for the given type, in ascending order
+   */
+  public List<Long> available(Type type, int count) {
+    return available(type, 0, count);
+  }
+
+  /**
+   * @return ids greater than {@code afterId} of at most {@code count} available parking spaces for the given type,
+   * in ascending order
+   */
+  public List<Long> available(Type type, long afterId, int count) {
+    Slice slice = slices.get(type);
+    return slice == null ? Collections.emptyList() : slice.collect(afterId, count);
+  }
+
+  public int availableCount(Type type) {
+    Slice slice = slices.get(type);
+    return slice == null ? 0 : slice.availableCount.get();
+  }
+
+  /**
+   * Bitset covering the contiguous id range of a single parking space type.
+   */
+  private static final class Slice {
+
+    private final long firstId;
+    private final AtomicLongArray words;
+    private final AtomicInteger availableCount = new AtomicInteger();
+
+    // Lower bound of the first word that may contain an available parking space, used to skip full words
+    private final AtomicInteger firstCandidateWord = new AtomicInteger();
+
+    private Slice(long firstId, long lastId) {
+      this.firstId = firstId;
+      this.words = new AtomicLongArray((int) ((lastId - firstId) >>> 6) + 1);
+    }
+
+    private boolean contains(long id) {
+      long offset = id - firstId;
+      return offset >= 0 && (offset >>> 6) < words.length();
+    }
+
+    private boolean set(long id) {
+      int offset = (int) (id - firstId);
+      int word = offset >>> 6;
+      long mask = 1L << offset;
+      while (true) {
+        long current = words.get(word);
+        if ((current & mask) != 0) {
+          return false;
+        }
+        if (words.compareAndSet(word, current, current | mask)) {
+          availableCount.incrementAndGet();
+          firstCandidateWord.accumulateAndGet(word, Math::min);
+          return true;
+        }
+      }
+    }
+
+    private boolean clear(long id) {
+      int offset = (int) (id - firstId);
+      int word = offset >>> 6;
+      long mask = 1L << offset;
+      while (true) {
+        long current = words.get(word);
+        if ((current & mask) == 0) {
+          return false;
+        }
+        if (words.compareAndSet(word, current, current & ~mask)) {
+          availableCount.decrementAndGet();
+          return true;
+        }
+      }
+    }
+
+    private Long next() {
+      int start = firstCandidateWord.get();
+      for (int word = start; word < words.length(); word++) {
+        long current = words.get(word);
+        if (current != 0) {
+          if (word != start && firstCandidateWord.compareAndSet(start, word)) {
+            revisitSkippedWords(start, word);
+          }
+          return firstId + ((long) word << 6) + Long.numberOfTrailingZeros(current);
+        }
+      }
+      return null;
+    }
+
+    // A release may have set a bit behind the candidate word while it was being moved forward
+    private void revisitSkippedWords(int from, int to) {
+      for (int word = from; word < to; word++) {
+        if (words.get(word) != 0) {
+          firstCandidateWord.accumulateAndGet(word, Math::min);
+          return;
+        }
+      }
+    }
+
+    private List<Long> collect(long afterId, int count) {
+      List<Long> found = new ArrayList<>(Math.min(count, availableCount.get() + 1));
+      long firstOffset = Math.max(afterId + 1 - firstId, 0);
+      int firstWord = (int) Math.min(firstOffset >>> 6, words.length());
+      for (int word = firstWord; word < words.length() && found.size() < count; word++) {
+        long current = words.get(word);
+        if (word == firstWord) {
+          // Drop the bits before the first offset
+          current &= -1L << firstOffset;
+        }
+        while (current != 0 && found.size() < count) {
+          found.add(firstId + ((long) word << 6) + Long.numberOfTrailingZeros(current));
+          current &= current - 1;
+        }
+      }
+      return found;
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package com.acme.parking.inventory;
+
+import com.acme.parking.api.model.ParkingSpaceStats;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Status;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number of owned parking spaces of each partition, type & status, reset from the database along with the availability
+ * index and moved by parking starts & completions, so that they are read without touching the database.
+ * <p>
+ * Counters are striped, as parking starts & completions of different partitions are processed concurrently.
+ * They are also reported in the {@value #METRIC} gauge, tagged by type & status: each node reports the parking spaces
+ * it owns, so that the sum over the nodes is the state of the whole parking area.
+ * <p>
+ * On reset, the counters of the partitions retained by this node are checked against the database:
+ * differences are logged and added to the {@value #DRIFT_METRIC} counter, before the counters are overwritten.
+ */
+@Component
+public class ParkingSpaceCounters {
+
+  private static final Logger log = LoggerFactory.getLogger(ParkingSpaceCounters.class);
+
+  public static final String METRIC = "parking.spaces";
+  public static final String DRIFT_METRIC = "parking.spaces.drift";
+
+  private final ParkingSpaceOwnership ownership;
+
+  private final Counter drift;
+
+  // Replaced as a whole on reset
+  private volatile Map<Integer, PartitionCounters> partitions = new ConcurrentHashMap<>();
+
+  @Autowired
+  public ParkingSpaceCounters(ParkingSpaceOwnership ownership, MeterRegistry meterRegistry) {
+    this.ownership = ownership;
+    for (Type type : Type.values()) {
+      for (Status status : Status.values()) {
+        Gauge.builder(METRIC, this, counters -> counters.sum(type, status))
+          .tag("type", type.name())
+          .tag("status", status.name())
+          .register(meterRegistry);
+      }
+    }
+    this.drift = Counter.builder(DRIFT_METRIC)
+      .description("Differences between the counters & the database found on reset")
+      .register(meterRegistry);
+  }
+
+  // Not atomic: counts read during a reset may be partial
+  public void reset(Collection<ParkingSpace> parkingSpaces) {
+    Map<Integer, PartitionCounters> counted = new ConcurrentHashMap<>();
+    for (ParkingSpace parkingSpace : parkingSpaces) {
+      counted.computeIfAbsent(ownership.partitionOf(parkingSpace.getId()), partition -> new PartitionCounters())
+        .get(parkingSpace.getType(), parkingSpace.getStatus()).increment();
+    }
+    checkDrift(counted);
+    partitions = counted;
+  }
+
+  public void move(ParkingSpace parkingSpace, Status from, Status to) {
+    if (from != to) {
+      PartitionCounters counters = partitions.computeIfAbsent(ownership.partitionOf(parkingSpace.getId()),
+        partition -> new PartitionCounters());
+      counters.get(parkingSpace.getType(), from).decrement();
+      counters.get(parkingSpace.getType(), to).increment();
+    }
+  }
+
+  public ParkingSpaceStats stats(Type type, int partition) {
+    PartitionCounters counters = partitions.get(partition);
+    if (counters == null) {
+      return new ParkingSpaceStats(type, 0, 0);
+    }
+    return new ParkingSpaceStats(type, counters.get(type, Status.AVAILABLE).sum(),
+      counters.get(type, Status.OCCUPIED).sum());
+  }
+
+  private long sum(Type type, Status status) {
+    long sum = 0;
+    for (PartitionCounters counters : partitions.values()) {
+      sum += counters.get(type, status).sum();
+    }
+    return sum;
+  }
+
+  // Retained partitions were only changed by this node since counted, so that their counters must match
+  private void checkDrift(Map<Integer, PartitionCounters> counted) {
+    Map<Integer, PartitionCounters> previous = partitions;
+    for (int partition : ownership.getRetainedPartitions()) {
+      PartitionCounters expected = counted.getOrDefault(partition, new PartitionCounters());
+      PartitionCounters actual = previous.getOrDefault(partition, new PartitionCounters());
+      for (Type type : Type.values()) {
+        Map<Status, Long> drifts = new HashMap<>();
+        for (Status status : Status.values()) {
+          long difference = actual.get(type, status).sum() - expected.get(type, status).sum();
+          if (difference != 0) {
+            drifts.put(status, difference);
+          }
+        }
+        if (!drifts.isEmpty()) {
+          log.warn("Counters of {} parking spaces of partition {} drifted from the database by {}, reset",
+            type, partition, drifts);
+          drift.increment(drifts.values().stream().mapToLong(Math::abs).sum());
+        }
+      }
+    }
+  }
+
+  private static final class PartitionCounters {
+
+    private final Map<Type, Map<Status, LongAdder>> counters = new EnumMap<>(Type.class);
+
+    private PartitionCounters() {
+      for (Type type : Type.values()) {
+        Map<Status, LongAdder> countersByStatus = new EnumMap<>(Status.class);
+        for (Status status : Status.values()) {
+          countersByStatus.put(status, new LongAdder());
+        }
+        counters.put(type, countersByStatus);
+      }
+    }
+
+    private LongAdder get(Type type, Status status) {
+      return counters.get(type).get(status);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package com.acme.parking.inventory;
+
+import com.acme.parking.inventory.model.ParkingSpaceEvent;
+import com.acme.parking.properties.AvailabilityViewProperties;
+import com.acme.parking.properties.MessagingProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Publishes the {@link ParkingSpaceEvent}s of {@link InventoryController} on the parking space event topic,
+ * keyed by parking space id, once the change is committed.
+ * Events are only published when the local view of the API nodes is enabled, with the Kafka transport.
+ */
+@Component
+public class ParkingSpaceEventPublisher {
+
+  private static final Logger log = LoggerFactory.getLogger(ParkingSpaceEventPublisher.class);
+
+  private final KafkaTemplate<String, Object> kafkaTemplate;
+
+  private final AvailabilityViewProperties properties;
+
+  private final boolean enabled;
+
+  @Autowired
+  public ParkingSpaceEventPublisher(@Qualifier("replyTemplate") KafkaTemplate<String, Object> kafkaTemplate,
+                                    AvailabilityViewProperties properties,
+                                    MessagingProperties messagingProperties) {
+    this.kafkaTemplate = kafkaTemplate;
+    this.properties = properties;
+    this.enabled = properties.isEnabled() && messagingProperties.isKafkaTransport();
+  }
+
+  // Changes made outside of a transaction are published right away
+  @TransactionalEventListener(fallbackExecution = true)
+  public void publish(ParkingSpaceEvent event) {
+    if (!enabled) {
+      return;
+    }
+    Long parkingSpaceId = event.getParkingSpace().getId();
+    kafkaTemplate.send(properties.getTopic(), String.valueOf(parkingSpaceId), event).addCallback(
+      result -> {
+      },
+      exception -> log.error("{} event of parking space #{} not published, the view of API nodes misses it until its next "
+        + "change", event.getKind(), parkingSpaceId, exception));
+  }
+}
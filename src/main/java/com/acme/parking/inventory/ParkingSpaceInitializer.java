@@ -0,0 +1,165 @@
+package com.acme.parking.inventory;
+
+import com.acme.parking.inventory.model.ParkingSpace.Status;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import com.acme.parking.properties.AppProperties;
+import lombok.Getter;
+import lombok.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the parking spaces described by {@link AppProperties} at startup.
+ * <p>
+ * Each type gets a contiguous block of ids, allocated up front in type order, so that rows can be inserted
+ * with JDBC batches without fetching ids from the database. Types are seeded in parallel, one transaction each.
+ * As these ids bypass parking_space_seq, the sequence is then restarted past them.
+ * Nothing is inserted when the database already holds the configured layout,
+ * and startup fails when it holds a different one.
+ */
+@Component
+public class ParkingSpaceInitializer implements CommandLineRunner {
+
+  private static final Logger log = LoggerFactory.getLogger(ParkingSpaceInitializer.class);
+
+  private static final String INSERT_PARKING_SPACE
+    = "insert into parking_space (id, type, status, version) values (?, ?, ?, 0)";
+
+  private static final String RESTART_PARKING_SPACE_SEQUENCE = "alter sequence parking_space_seq restart with ";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private final TransactionTemplate transactionTemplate;
+
+  private final AppProperties config;
+
+  @Getter
+  private volatile SeedingReport lastSeeding;
+
+  @Autowired
+  public ParkingSpaceInitializer(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, AppProperties config) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = transactionTemplate;
+    this.config = config;
+  }
+
+  @Override
+  public void run(String... args) {
+    long start = System.nanoTime();
+    Map<Type, Integer> layout = configuredLayout();
+    Map<Type, Integer> existingLayout = existingLayout();
+
+    if (existingLayout.equals(layout)) {
+      lastSeeding = new SeedingReport(layout, true, elapsedMillis(start));
+      log.info("Parking spaces already initialized {}, checked in {} ms", layout, lastSeeding.getDurationMillis());
+      return;
+    }
+    if (existingLayout.values().stream().anyMatch(count -> count > 0)) {
+      throw new IllegalStateException(String.format(
+        "Parking spaces in database %s do not match the configured layout %s", existingLayout, layout));
+    }
+
+    log.info("Initializing parking spaces {}...", layout);
+    ExecutorService executor = Executors.newFixedThreadPool(Type.values().length,
+      new CustomizableThreadFactory("parking-space-initializer-"));
+    try {
+      long firstId = 1;
+      CompletableFuture<?>[] seedings = new CompletableFuture<?>[Type.values().length];
+      for (Type type : Type.values()) {
+        long typeFirstId = firstId;
+        seedings[type.ordinal()] = CompletableFuture.runAsync(() -> seed(type, typeFirstId, layout.get(type)), executor);
+        firstId += layout.get(type);
+      }
+      CompletableFuture.allOf(seedings).join();
+    } finally {
+      executor.shutdown();
+    }
+    restartIdSequence();
+    lastSeeding = new SeedingReport(layout, false, elapsedMillis(start));
+    log.info("Created {} parking spaces in {} ms", totalCount(layout), lastSeeding.getDurationMillis());
+  }
+
+  private void seed(Type type, long firstId, int count) {
+    long start = System.nanoTime();
+    transactionTemplate.executeWithoutResult(status -> {
+      for (long batchFirstId = firstId; batchFirstId < firstId + count; batchFirstId += config.getSeedingBatchSize()) {
+        long batchStartId = batchFirstId;
+        int batchSize = (int) Math.min(config.getSeedingBatchSize(), firstId + count - batchFirstId);
+        jdbcTemplate.batchUpdate(INSERT_PARKING_SPACE, new BatchPreparedStatementSetter() {
+          @Override
+          public void setValues(PreparedStatement ps, int i) throws SQLException {
+            ps.setLong(1, batchStartId + i);
+            ps.setInt(2, type.ordinal());
+            ps.setInt(3, Status.AVAILABLE.ordinal());
+          }
+
+          @Override
+          public int getBatchSize() {
+            return batchSize;
+          }
+        });
+      }
+    });
+    log.info("Created {} parking spaces for type {} in {} ms", count, type, elapsedMillis(start));
+  }
+
+  // The pooled generator allocates the block of ids ending at the next value of the sequence
+  private void restartIdSequence() {
+    Long maxId = jdbcTemplate.queryForObject("select max(id) from parking_space", Long.class);
+    if (maxId != null) {
+      jdbcTemplate.execute(RESTART_PARKING_SPACE_SEQUENCE + (maxId + config.getIdAllocationSize()));
+    }
+  }
+
+  private Map<Type, Integer> configuredLayout() {
+    Map<Type, Integer> layout = new EnumMap<>(Type.class);
+    layout.put(Type.GASOLINE, config.getTypeGasolineCount());
+    layout.put(Type.KW20, config.getTypeKW20Count());
+    layout.put(Type.KW50, config.getTypeKW50Count());
+    return layout;
+  }
+
+  private Map<Type, Integer> existingLayout() {
+    Map<Type, Integer> layout = new EnumMap<>(Type.class);
+    for (Type type : Type.values()) {
+      layout.put(type, 0);
+    }
+    jdbcTemplate.query("select type, count(*) from parking_space group by type",
+      (RowCallbackHandler) rs -> layout.put(Type.values()[rs.getInt(1)], rs.getInt(2)));
+    return layout;
+  }
+
+  private static long totalCount(Map<Type, Integer> layout) {
+    return layout.values().stream().mapToLong(Integer::longValue).sum();
+  }
+
+  private static long elapsedMillis(long startNanos) {
+    return (System.nanoTime() - startNanos) / 1_000_000;
+  }
+
+  /**
+   * Outcome of the last parking space initialization
+   */
+  @Value
+  public static class SeedingReport {
+    Map<Type, Integer> layout;
+    boolean skipped;
+    long durationMillis;
+  }
+}
@@ -0,0 +1,133 @@
+package com.acme.parking.inventory;
+
+import com.acme.parking.properties.KafkaRequestTopics;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Tracks the parking spaces owned by this node.
+ * <p>
+ * Parking start & completion requests, single or batched, as well as parking space lookups by id, are keyed by
+ * parking space id, and all their topics are consumed by the same listener container,
+ * so that the same partition of each topic is assigned to the same node.
+ * The owner of a partition is therefore the single writer of the parking spaces hashed to it,
+ * and only keeps those in its {@link ParkingSpaceAvailabilityIndex}.
+ * Parking space stats requests are sent to each partition of their topic, also consumed by this container,
+ * so that each owner counts its own parking spaces. These request topics must all have the same number of partitions.
+ * <p>
+ * Until partitions are assigned (or with the in-process transport), the node owns all parking spaces.
+ * A {@link OwnershipChangedEvent} is published every time partitions are assigned,
+ * and a {@link OwnershipRevokedEvent} before they are reassigned.
+ */
+@Component
+public class ParkingSpaceOwnership implements ConsumerAwareRebalanceListener {
+
+  private final KafkaRequestTopics requestTopics;
+
+  private final ApplicationEventPublisher eventPublisher;
+
+  private final Set<Integer> ownedPartitions = ConcurrentHashMap.newKeySet();
+
+  // 0 until partitions are assigned, meaning that all parking spaces are owned
+  private volatile int partitionCount;
+
+  // Owned before the latest assignment & still owned since: changed by this node only, as no other node owned them
+  private volatile Set<Integer> retainedPartitions = Set.of();
+
+  // Owned when the ongoing rebalance started, only accessed on the consumer thread
+  private Set<Integer> partitionsBeforeRebalance;
+
+  @Autowired
+  public ParkingSpaceOwnership(KafkaRequestTopics requestTopics, ApplicationEventPublisher eventPublisher) {
+    this.requestTopics = requestTopics;
+    this.eventPublisher = eventPublisher;
+  }
+
+  @Override
+  public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+    String topic = requestTopics.getParkingStart();
+    int previousPartitionCount = partitionCount;
+    Set<Integer> previousPartitions = partitionsBeforeRebalance != null ? partitionsBeforeRebalance
+      : Set.copyOf(ownedPartitions);
+    partitionsBeforeRebalance = null;
+    partitionCount = consumer.partitionsFor(topic).size();
+    partitions.stream()
+      .filter(partition -> partition.topic().equals(topic))
+      .forEach(partition -> ownedPartitions.add(partition.partition()));
+    // Partitions are renumbered when their count changes
+    retainedPartitions = previousPartitionCount != partitionCount ? Set.of() : previousPartitions.stream()
+      .filter(ownedPartitions::contains)
+      .collect(Collectors.toUnmodifiableSet());
+    eventPublisher.publishEvent(new OwnershipChangedEvent(this));
+  }
+
+  @Override
+  public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+    String topic = requestTopics.getParkingStart();
+    if (partitionsBeforeRebalance == null) {
+      partitionsBeforeRebalance = Set.copyOf(ownedPartitions);
+    }
+    partitions.stream()
+      .filter(partition -> partition.topic().equals(topic))
+      .forEach(partition -> ownedPartitions.remove(partition.partition()));
+    // Listeners run on the consumer thread, before the partitions can be assigned to another node
+    eventPublisher.publishEvent(new OwnershipRevokedEvent(this));
+  }
+
+  public boolean isPartitioned() {
+    return partitionCount > 1;
+  }
+
+  public boolean owns(long parkingSpaceId) {
+    int partitions = partitionCount;
+    return partitions == 0 || ownedPartitions.contains(partitionFor(String.valueOf(parkingSpaceId), partitions));
+  }
+
+  /**
+   * @return partition of the parking space, 0 when not partitioned
+   */
+  public int partitionOf(long parkingSpaceId) {
+    int partitions = partitionCount;
+    return partitions <= 1 ? 0 : partitionFor(String.valueOf(parkingSpaceId), partitions);
+  }
+
+  /**
+   * @return the partitions owned before the latest assignment and ever since
+   */
+  public Set<Integer> getRetainedPartitions() {
+    return retainedPartitions;
+  }
+
+  /**
+   * Same partition as the one chosen by Kafka's default partitioner for a String record key.
+   */
+  public static int partitionFor(String key, int partitionCount) {
+    return Utils.toPositive(Utils.murmur2(key.getBytes(StandardCharsets.UTF_8))) % partitionCount;
+  }
+
+  public static class OwnershipChangedEvent extends ApplicationEvent {
+
+    public OwnershipChangedEvent(ParkingSpaceOwnership source) {
+      super(source);
+    }
+  }
+
+  public static class OwnershipRevokedEvent extends ApplicationEvent {
+
+    public OwnershipRevokedEvent(ParkingSpaceOwnership source) {
+      super(source);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package com.acme.parking.inventory;
+
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.inventory.dao.ParkingRepository;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.messaging.Operation;
+import com.acme.parking.messaging.RequestReplyGateway;
+import com.acme.parking.properties.AppProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * With {@code app.asyncBillingEnabled}, resends the pending billings of the owned parking spaces every
+ * {@code app.pendingBillingSweepIntervalMs}, when their parking was completed longer ago than that:
+ * their pricing request failed to be sent, was lost, or its write-back was.
+ * <p>
+ * Pending billings are read from the database, so with write-behind they are only resent once flushed.
+ * Billings priced meanwhile are left unchanged by the write-back of the resent ones.
+ */
+@Component
+public class PendingBillingSweeper implements SmartLifecycle {
+
+  private static final Logger log = LoggerFactory.getLogger(PendingBillingSweeper.class);
+
+  private static final int PAGE_SIZE = 500;
+
+  private final AppProperties config;
+
+  private final ParkingRepository parkingRepository;
+
+  private final ParkingSpaceOwnership ownership;
+
+  private final RequestReplyGateway gateway;
+
+  private ScheduledExecutorService sweeper;
+
+  @Autowired
+  public PendingBillingSweeper(AppProperties config,
+                               ParkingRepository parkingRepository,
+                               ParkingSpaceOwnership ownership,
+                               RequestReplyGateway gateway) {
+    this.config = config;
+    this.parkingRepository = parkingRepository;
+    this.ownership = ownership;
+    this.gateway = gateway;
+  }
+
+  /**
+   * @return the number of billings resent
+   */
+  int sweep() {
+    LocalDateTime completedBefore = LocalDateTime.now().minus(config.getPendingBillingSweepIntervalMs(), ChronoUnit.MILLIS);
+    int resent = 0;
+    long afterId = 0;
+    List<Parking> parkings;
+    do {
+      parkings = parkingRepository.findByBillingStatusAndEndDateTimeBeforeAndIdGreaterThanOrderByIdAsc(
+        Billing.Status.PENDING, completedBefore, afterId, PageRequest.of(0, PAGE_SIZE));
+      for (Parking parking : parkings) {
+        // Each node resends the billings it would write back
+        if (ownership.owns(parking.getParkingSpaceId())) {
+          gateway.send(Operation.PENDING_BILLING_CALCULATION, parking).whenComplete((result, exception) -> {
+            if (exception != null) {
+              log.error("Billing of parking #{} left pending until the next sweep", parking.getId(), exception);
+            }
+          });
+          resent++;
+        }
+        afterId = parking.getId();
+      }
+    } while (parkings.size() == PAGE_SIZE);
+    if (resent > 0) {
+      log.warn("Resent {} billings left pending", resent);
+    }
+    return resent;
+  }
+
+  @Override
+  public void start() {
+    if (!config.isAsyncBillingEnabled()) {
+      return;
+    }
+    sweeper = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("pending-billing-sweeper-"));
+    long intervalMillis = config.getPendingBillingSweepIntervalMs();
+    sweeper.scheduleWithFixedDelay(() -> {
+      // Later sweeps would be cancelled by an exception
+      try {
+        sweep();
+      } catch (RuntimeException e) {
+        log.error("Pending billing sweep failed, retrying on next sweep", e);
+      }
+    }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void stop() {
+    if (sweeper == null) {
+      return;
+    }
+    sweeper.shutdownNow();
+    sweeper = null;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return sweeper != null;
+  }
+}
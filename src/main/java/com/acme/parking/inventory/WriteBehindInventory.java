@@ -0,0 +1,656 @@
+package com.acme.parking.inventory;
+
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.inventory.dao.BillingRepository;
+import com.acme.parking.inventory.dao.ParkingRepository;
+import com.acme.parking.inventory.dao.ParkingSpaceRepository;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Status;
+import com.acme.parking.properties.WriteBehindProperties;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * With {@code app.writeBehind.enabled}, keeps the parking spaces owned by this node & their parkings in memory,
+ * as the authoritative inventory state: parking starts & completions are acknowledged once durably appended to the local
+ * {@link InventoryLog}, only then applied in memory, and flushed to the database in the background every
+ * {@code app.writeBehind.flushInterval}.
+ * <p>
+ * Changes of the same parking space or parking between two flushes are coalesced into a single row write,
+ * flushed in transactions of up to {@code app.writeBehind.maxBatchSize} rows. Changes left in the log by a crash are
+ * flushed on startup, before any request is consumed. Owned parking spaces are loaded from the database on first use,
+ * and changes are flushed before ownership changes, so that the next owner loads them from the database.
+ * <p>
+ * Parking spaces & parkings not owned by this node, as well as parking space queries, are read from the database,
+ * at most the flush lag behind. The flush lag & batch sizes are reported by the {@value #LAG_METRIC}
+ * & {@value #BATCH_SIZE_METRIC} metrics.
+ */
+@Component
+public class WriteBehindInventory implements SmartLifecycle {
+
+  private static final Logger log = LoggerFactory.getLogger(WriteBehindInventory.class);
+
+  public static final String LAG_METRIC = "parking.writebehind.lag";
+  public static final String BATCH_SIZE_METRIC = "parking.writebehind.batch.size";
+  public static final String PENDING_METRIC = "parking.writebehind.pending";
+
+  private static final String UPDATE_BILLING = "update billing set currency = ?, amount = ?, rule_set_version = ?, "
+    + "status = ? where id = ?";
+  private static final String INSERT_BILLING = "insert into billing (currency, amount, rule_set_version, status, id) "
+    + "values (?, ?, ?, ?, ?)";
+  private static final String UPDATE_PARKING = "update parking set parking_space_id = ?, parking_space_type = ?, "
+    + "start_date_time = ?, end_date_time = ?, duration_seconds = ?, billing_id = ? where id = ?";
+  private static final String INSERT_PARKING = "insert into parking (parking_space_id, parking_space_type, "
+    + "start_date_time, end_date_time, duration_seconds, billing_id, id) values (?, ?, ?, ?, ?, ?, ?)";
+  private static final String UPDATE_PARKING_SPACE = "update parking_space set status = ?, "
+    + "current_parking_information_id = ?, version = version + 1 where id = ?";
+
+  private final WriteBehindProperties properties;
+
+  private final ParkingSpaceOwnership ownership;
+
+  private final ParkingSpaceRepository parkingSpaceRepository;
+
+  private final ParkingRepository parkingRepository;
+
+  private final BillingRepository billingRepository;
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private final TransactionTemplate transactionTemplate;
+
+  private final EntityManagerFactory entityManagerFactory;
+
+  private final SessionFactoryImplementor sessionFactory;
+
+  private final DistributionSummary batchSizes;
+
+  // Authoritative state: owned parking spaces loaded so far, and parkings changed since, until flushed & final
+  private final Map<Long, ParkingSpace> parkingSpaces = new ConcurrentHashMap<>();
+
+  private final Map<Long, Parking> parkings = new ConcurrentHashMap<>();
+
+  // Parking of each billing held in memory, for write-backs
+  private final Map<Long, Long> billingParkings = new ConcurrentHashMap<>();
+
+  // Parking spaces claimed, until saved as occupied
+  private final Set<Long> claimedParkingSpaceIds = ConcurrentHashMap.newKeySet();
+
+  // Guards the changes not flushed yet along with the log appends, so that a flush takes exactly the changes logged
+  private final Object lock = new Object();
+
+  // Changes appended to the log but not durable yet, by log position: applied in log order once forced
+  private final NavigableMap<Long, List<Object>> loggedChanges = new TreeMap<>();
+
+  private Map<Long, ParkingSpace> dirtyParkingSpaces = new LinkedHashMap<>();
+
+  private Map<Long, Parking> dirtyParkings = new LinkedHashMap<>();
+
+  // Change time of the oldest change not flushed yet, 0 if none
+  private volatile long dirtySinceNanos;
+
+  private volatile long flushingSinceNanos;
+
+  // Only one flush at a time, whether scheduled or before ownership changes
+  private final Object flushLock = new Object();
+
+  private InventoryLog inventoryLog;
+
+  private ScheduledExecutorService flusher;
+
+  @Autowired
+  public WriteBehindInventory(WriteBehindProperties properties,
+                              ParkingSpaceOwnership ownership,
+                              ParkingSpaceRepository parkingSpaceRepository,
+                              ParkingRepository parkingRepository,
+                              BillingRepository billingRepository,
+                              JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              EntityManagerFactory entityManagerFactory,
+                              MeterRegistry meterRegistry) {
+    this.properties = properties;
+    this.ownership = ownership;
+    this.parkingSpaceRepository = parkingSpaceRepository;
+    this.parkingRepository = parkingRepository;
+    this.billingRepository = billingRepository;
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.entityManagerFactory = entityManagerFactory;
+    this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+    this.batchSizes = DistributionSummary.builder(BATCH_SIZE_METRIC)
+      .description("Rows written per flush transaction")
+      .register(meterRegistry);
+    TimeGauge.builder(LAG_METRIC, this, TimeUnit.NANOSECONDS, WriteBehindInventory::lagNanos)
+      .description("Age of the oldest change not flushed yet")
+      .register(meterRegistry);
+    Gauge.builder(PENDING_METRIC, this, WriteBehindInventory::pendingCount)
+      .description("Parking spaces & parkings changed since the last flush")
+      .register(meterRegistry);
+  }
+
+  public boolean isEnabled() {
+    return properties.isEnabled();
+  }
+
+  /**
+   * @return a copy of the parking space, from memory if owned, null if unknown
+   */
+  public ParkingSpace parkingSpace(Long id) {
+    return parkingSpaces(List.of(id)).get(id);
+  }
+
+  /**
+   * @return copies of the known parking spaces by id, from memory if owned
+   */
+  public Map<Long, ParkingSpace> parkingSpaces(Collection<Long> ids) {
+    Map<Long, ParkingSpace> found = new HashMap<>();
+    List<Long> missing = new ArrayList<>();
+    for (Long id : ids) {
+      ParkingSpace parkingSpace = parkingSpaces.get(id);
+      if (parkingSpace != null) {
+        found.put(id, copy(parkingSpace));
+      } else {
+        missing.add(id);
+      }
+    }
+    if (!missing.isEmpty()) {
+      for (ParkingSpace parkingSpace : parkingSpaceRepository.findWithCurrentParkingByIdIn(missing)) {
+        ParkingSpace loaded = copy(parkingSpace);
+        // Not owned ones could be changed by their owner at any time
+        if (ownership.owns(loaded.getId())) {
+          ParkingSpace current = parkingSpaces.putIfAbsent(loaded.getId(), loaded);
+          loaded = current != null ? current : loaded;
+        }
+        found.put(loaded.getId(), copy(loaded));
+      }
+    }
+    return found;
+  }
+
+  /**
+   * @return a copy of the parking, from memory if changed since its parking space was loaded, null if unknown
+   */
+  public Parking parking(Long id) {
+    return parkings(List.of(id)).get(id);
+  }
+
+  /**
+   * @return copies of the known parkings by id, from memory if changed since their parking space was loaded
+   */
+  public Map<Long, Parking> parkings(Collection<Long> ids) {
+    Map<Long, Parking> found = new HashMap<>();
+    List<Long> missing = new ArrayList<>();
+    for (Long id : ids) {
+      Parking parking = parkings.get(id);
+      if (parking != null) {
+        found.put(id, copy(parking));
+      } else {
+        missing.add(id);
+      }
+    }
+    if (!missing.isEmpty()) {
+      parkingRepository.findByIdIn(missing).forEach(parking -> found.put(parking.getId(), copy(parking)));
+    }
+    return found;
+  }
+
+  /**
+   * @return copies of the parkings held in memory by id, without reading the missing ones from the database
+   */
+  public Map<Long, Parking> parkingsInMemory(Collection<Long> ids) {
+    Map<Long, Parking> found = new HashMap<>();
+    for (Long id : ids) {
+      Parking parking = parkings.get(id);
+      if (parking != null) {
+        found.put(id, copy(parking));
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Reserves an AVAILABLE parking space, to be saved as OCCUPIED with its parking right after.
+   * The parking space stays available in memory until then, and the claim is released if it fails to be saved.
+   *
+   * @return whether the parking space was available & not claimed yet
+   */
+  public boolean claim(Long parkingSpaceId) {
+    boolean[] claimed = new boolean[1];
+    parkingSpaces.computeIfPresent(parkingSpaceId, (id, parkingSpace) -> {
+      claimed[0] = parkingSpace.getStatus() == Status.AVAILABLE && claimedParkingSpaceIds.add(id);
+      return parkingSpace;
+    });
+    return claimed[0];
+  }
+
+  /**
+   * Saves parking spaces & parkings, along with their billing, as the authoritative state, once durably logged.
+   * New parkings & billings are given an id from their sequence.
+   * Nothing is changed in memory if they fail to be logged, and the claims of the parking spaces are released.
+   *
+   * @return the given entities
+   */
+  public <T> List<T> save(List<T> entities) {
+    long position;
+    try {
+      assignIds(entities);
+      List<Object> changes = new ArrayList<>(entities.size());
+      entities.forEach(entity -> changes.add(copy(entity)));
+      synchronized (lock) {
+        position = inventoryLog.append(changes);
+        loggedChanges.put(position, changes);
+      }
+    } catch (IOException e) {
+      releaseClaims(entities);
+      throw new UncheckedIOException("Inventory changes could not be logged", e);
+    } catch (RuntimeException e) {
+      releaseClaims(entities);
+      throw e;
+    }
+    try {
+      inventoryLog.force(position);
+    } catch (IOException e) {
+      synchronized (lock) {
+        // Unless forced & applied meanwhile by a flush
+        if (loggedChanges.remove(position) != null) {
+          releaseClaims(entities);
+          throw new UncheckedIOException("Inventory changes could not be logged", e);
+        }
+      }
+      return entities;
+    }
+    synchronized (lock) {
+      applyLoggedChanges(position);
+    }
+    return entities;
+  }
+
+  /**
+   * Sets the price of a pending billing and marks it as calculated, like {@link BillingRepository#completePending}.
+   *
+   * @return 1 if the billing has been updated, 0 if it was not pending
+   */
+  public int completePendingBilling(Billing billing) {
+    Long parkingId = billingParkings.get(billing.getId());
+    Parking parking = parkingId != null ? parkings.get(parkingId) : null;
+    if (parking == null) {
+      // Already flushed
+      return billingRepository.completePending(billing.getId(), billing.getCurrency(), billing.getAmount(),
+        billing.getRuleSetVersion());
+    }
+    parking = copy(parking);
+    if (parking.getBilling().getStatus() != Billing.Status.PENDING) {
+      return 0;
+    }
+    parking.getBilling().setCurrency(billing.getCurrency());
+    parking.getBilling().setAmount(billing.getAmount());
+    parking.getBilling().setRuleSetVersion(billing.getRuleSetVersion());
+    parking.getBilling().setStatus(Billing.Status.CALCULATED);
+    save(List.of(parking));
+    return 1;
+  }
+
+  // Runs under the lock: the log being forced up to the position, so are the changes appended before
+  private void applyLoggedChanges(long position) {
+    Map<Long, List<Object>> durableChanges = loggedChanges.headMap(position, true);
+    durableChanges.values().forEach(changes -> changes.forEach(this::apply));
+    durableChanges.clear();
+  }
+
+  // Runs under the lock, in log order
+  private void apply(Object change) {
+    if (dirtySinceNanos == 0) {
+      dirtySinceNanos = System.nanoTime();
+    }
+    if (change instanceof ParkingSpace) {
+      ParkingSpace parkingSpace = (ParkingSpace) change;
+      parkingSpaces.put(parkingSpace.getId(), parkingSpace);
+      dirtyParkingSpaces.put(parkingSpace.getId(), parkingSpace);
+      if (parkingSpace.getStatus() == Status.OCCUPIED) {
+        claimedParkingSpaceIds.remove(parkingSpace.getId());
+      }
+    } else {
+      Parking parking = (Parking) change;
+      parkings.put(parking.getId(), parking);
+      dirtyParkings.put(parking.getId(), parking);
+      if (parking.getBilling() != null) {
+        billingParkings.put(parking.getBilling().getId(), parking.getId());
+      }
+    }
+  }
+
+  private void releaseClaims(List<?> entities) {
+    for (Object entity : entities) {
+      if (entity instanceof ParkingSpace && ((ParkingSpace) entity).getStatus() == Status.OCCUPIED) {
+        claimedParkingSpaceIds.remove(((ParkingSpace) entity).getId());
+      }
+    }
+  }
+
+  private void assignIds(List<?> entities) {
+    List<Object> newEntities = new ArrayList<>();
+    for (Object entity : entities) {
+      Parking parking = entity instanceof ParkingSpace ? ((ParkingSpace) entity).getCurrentParkingInformation()
+        : (Parking) entity;
+      if (parking != null && parking.getId() == null) {
+        newEntities.add(parking);
+      }
+      if (parking != null && parking.getBilling() != null && parking.getBilling().getId() == null) {
+        newEntities.add(parking.getBilling());
+      }
+    }
+    if (newEntities.isEmpty()) {
+      return;
+    }
+    // Sequences are read on the connection of the current transaction if any, rather than on another one
+    EntityManager entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+    if (entityManager != null) {
+      assignIds(newEntities, entityManager.unwrap(SharedSessionContractImplementor.class));
+      return;
+    }
+    try (StatelessSession session = sessionFactory.openStatelessSession()) {
+      assignIds(newEntities, (SharedSessionContractImplementor) session);
+    }
+  }
+
+  // Same generators as the entity inserts, so that ids are never given twice
+  private void assignIds(List<Object> newEntities, SharedSessionContractImplementor session) {
+    for (Object entity : newEntities) {
+      Long id = (Long) sessionFactory.getIdentifierGenerator(entity.getClass().getName()).generate(session, entity);
+      if (entity instanceof Parking) {
+        ((Parking) entity).setId(id);
+      } else {
+        ((Billing) entity).setId(id);
+      }
+    }
+  }
+
+  /**
+   * Writes the changes logged so far to the database, then deletes them from the log.
+   * Changes that fail to be written are kept, along with the log, for the next flush.
+   */
+  public void flush() {
+    flush(false);
+  }
+
+  private void flush(boolean evenIfClean) {
+    synchronized (flushLock) {
+      Map<Long, ParkingSpace> flushedParkingSpaces;
+      Map<Long, Parking> flushedParkings;
+      long segment;
+      synchronized (lock) {
+        if (!evenIfClean && dirtyParkingSpaces.isEmpty() && dirtyParkings.isEmpty() && loggedChanges.isEmpty()) {
+          return;
+        }
+        try {
+          segment = inventoryLog.rotate();
+        } catch (IOException e) {
+          throw new UncheckedIOException("Inventory log could not be rotated", e);
+        }
+        // Forced by the rotation, so flushed along with the others before their segment is deleted
+        applyLoggedChanges(Long.MAX_VALUE);
+        flushedParkingSpaces = dirtyParkingSpaces;
+        flushedParkings = dirtyParkings;
+        dirtyParkingSpaces = new LinkedHashMap<>();
+        dirtyParkings = new LinkedHashMap<>();
+        flushingSinceNanos = dirtySinceNanos;
+        dirtySinceNanos = 0;
+      }
+      try {
+        write(flushedParkingSpaces.values(), flushedParkings.values());
+      } catch (RuntimeException e) {
+        synchronized (lock) {
+          // Newer changes of the same rows replace these ones
+          flushedParkingSpaces.forEach(dirtyParkingSpaces::putIfAbsent);
+          flushedParkings.forEach(dirtyParkings::putIfAbsent);
+          dirtySinceNanos = flushingSinceNanos;
+        }
+        throw e;
+      } finally {
+        flushingSinceNanos = 0;
+      }
+      try {
+        inventoryLog.deleteSegmentsBefore(segment);
+      } catch (IOException e) {
+        // Flushed changes would only be written again on recovery
+        log.warn("Flushed inventory log segments could not be deleted", e);
+      }
+      // Final parkings are read back from the database from now on
+      flushedParkings.keySet().forEach(id -> parkings.computeIfPresent(id, (key, parking) -> {
+        if (!isFinal(parking)) {
+          return parking;
+        }
+        billingParkings.remove(parking.getBilling().getId());
+        return null;
+      }));
+    }
+  }
+
+  private void write(Collection<ParkingSpace> parkingSpaces, Collection<Parking> parkings) {
+    // Parkings first, referenced by their parking space
+    for (List<Parking> batch : batches(parkings)) {
+      transactionTemplate.executeWithoutResult(status -> {
+        List<Object[]> billings = new ArrayList<>();
+        for (Parking parking : batch) {
+          Billing billing = parking.getBilling();
+          if (billing != null) {
+            billings.add(new Object[]{billing.getCurrency(), billing.getAmount(), billing.getRuleSetVersion(),
+              ordinal(billing.getStatus()), billing.getId()});
+          }
+        }
+        upsert(UPDATE_BILLING, INSERT_BILLING, billings);
+        upsert(UPDATE_PARKING, INSERT_PARKING, batch.stream()
+          .map(parking -> new Object[]{parking.getParkingSpaceId(), ordinal(parking.getParkingSpaceType()),
+            parking.getStartDateTime(), parking.getEndDateTime(), parking.getDurationSeconds(),
+            parking.getBilling() != null ? parking.getBilling().getId() : null, parking.getId()})
+          .collect(Collectors.toList()));
+      });
+      batchSizes.record(batch.size());
+    }
+    for (List<ParkingSpace> batch : batches(parkingSpaces)) {
+      transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPDATE_PARKING_SPACE, batch.stream()
+        .map(parkingSpace -> new Object[]{ordinal(parkingSpace.getStatus()),
+          parkingSpace.getCurrentParkingInformation() != null ? parkingSpace.getCurrentParkingInformation().getId() : null,
+          parkingSpace.getId()})
+        .collect(Collectors.toList())));
+      batchSizes.record(batch.size());
+    }
+  }
+
+  // Rows are updated, or inserted if missing, so that changes replayed from the log are written again harmlessly
+  private void upsert(String update, String insert, List<Object[]> rows) {
+    if (rows.isEmpty()) {
+      return;
+    }
+    int[] updated = jdbcTemplate.batchUpdate(update, rows);
+    List<Object[]> missing = new ArrayList<>();
+    for (int i = 0; i < updated.length; i++) {
+      if (updated[i] == 0) {
+        missing.add(rows.get(i));
+      }
+    }
+    if (!missing.isEmpty()) {
+      jdbcTemplate.batchUpdate(insert, missing);
+    }
+  }
+
+  private <T> List<List<T>> batches(Collection<T> rows) {
+    List<T> all = new ArrayList<>(rows);
+    List<List<T>> batches = new ArrayList<>();
+    for (int from = 0; from < all.size(); from += properties.getMaxBatchSize()) {
+      batches.add(all.subList(from, Math.min(all.size(), from + properties.getMaxBatchSize())));
+    }
+    return batches;
+  }
+
+  /**
+   * Flushes the changes of the parking spaces owned so far, then forgets them, to load the owned ones from the database.
+   * Runs before the availability index is rebuilt, and before partitions are reassigned to other nodes.
+   */
+  @EventListener({ApplicationReadyEvent.class, ParkingSpaceOwnership.OwnershipChangedEvent.class,
+    ParkingSpaceOwnership.OwnershipRevokedEvent.class})
+  @Order(Ordered.HIGHEST_PRECEDENCE)
+  public void onOwnershipChange() {
+    if (!isEnabled()) {
+      return;
+    }
+    synchronized (flushLock) {
+      flush();
+      synchronized (lock) {
+        // Changed since the flush: not in the database yet
+        parkingSpaces.keySet().removeIf(id -> !dirtyParkingSpaces.containsKey(id));
+        parkings.keySet().removeIf(id -> !dirtyParkings.containsKey(id));
+        billingParkings.values().removeIf(parkingId -> !parkings.containsKey(parkingId));
+      }
+    }
+  }
+
+  long lagNanos() {
+    long since = flushingSinceNanos != 0 ? flushingSinceNanos : dirtySinceNanos;
+    return since == 0 ? 0 : System.nanoTime() - since;
+  }
+
+  int pendingCount() {
+    synchronized (lock) {
+      return dirtyParkingSpaces.size() + dirtyParkings.size();
+    }
+  }
+
+  /**
+   * Flushes the changes left in the log by the previous run, then starts flushing in the background.
+   * Starts before the listener containers, and stops after them.
+   */
+  @Override
+  public void start() {
+    if (!isEnabled()) {
+      return;
+    }
+    try {
+      inventoryLog = new InventoryLog(Paths.get(properties.getLogDirectory()));
+      List<Object> changes = inventoryLog.readPreviousSegments();
+      if (!changes.isEmpty()) {
+        log.info("Recovering {} inventory changes from {}", changes.size(), properties.getLogDirectory());
+        synchronized (lock) {
+          changes.forEach(this::apply);
+        }
+      }
+      // Also deletes the segments left over without any change
+      flush(true);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Inventory log could not be recovered", e);
+    }
+    flusher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("write-behind-flusher-"));
+    long intervalMillis = properties.getFlushInterval().toMillis();
+    flusher.scheduleWithFixedDelay(() -> {
+      // Later flushes would be cancelled by an exception
+      try {
+        flush();
+      } catch (RuntimeException e) {
+        log.error("Inventory flush failed, retrying on next flush", e);
+      }
+    }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void stop() {
+    if (flusher == null) {
+      return;
+    }
+    flusher.shutdown();
+    try {
+      flusher.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flusher = null;
+    try {
+      flush();
+    } catch (RuntimeException e) {
+      log.error("Inventory flush failed on shutdown, changes left in {}", properties.getLogDirectory(), e);
+    }
+    try {
+      inventoryLog.close();
+    } catch (IOException e) {
+      log.warn("Inventory log could not be closed", e);
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return flusher != null;
+  }
+
+  @Override
+  public int getPhase() {
+    return 0;
+  }
+
+  private static boolean isFinal(Parking parking) {
+    return parking.getEndDateTime() != null && parking.getBilling() != null
+      && parking.getBilling().getStatus() == Billing.Status.CALCULATED;
+  }
+
+  private static Integer ordinal(Enum<?> value) {
+    return value != null ? value.ordinal() : null;
+  }
+
+  private static Object copy(Object entity) {
+    return entity instanceof ParkingSpace ? copy((ParkingSpace) entity) : copy((Parking) entity);
+  }
+
+  private static ParkingSpace copy(ParkingSpace parkingSpace) {
+    return new ParkingSpace(parkingSpace.getId(), parkingSpace.getType(), parkingSpace.getStatus(),
+      copy(parkingSpace.getCurrentParkingInformation()), parkingSpace.getVersion());
+  }
+
+  private static Parking copy(Parking parking) {
+    if (parking == null) {
+      return null;
+    }
+    Billing billing = parking.getBilling();
+    return new Parking(parking.getId(), parking.getParkingSpaceId(), parking.getParkingSpaceType(),
+      parking.getStartDateTime(), parking.getEndDateTime(), parking.getDurationSeconds(), billing == null ? null
+      : new Billing(billing.getId(), billing.getCurrency(), billing.getAmount(), billing.getRuleSetVersion(),
+      billing.getStatus()));
+  }
+}
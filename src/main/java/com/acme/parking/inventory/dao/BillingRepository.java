@@ -0,0 +1,28 @@
+package com.acme.parking.inventory.dao;
+
+
+import com.acme.parking.billing.model.Billing;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * Data access object exposing persistence operations on {@link Billing}
+ */
+public interface BillingRepository extends PagingAndSortingRepository<Billing, Long> {
+
+  /**
+   * Sets the price of a pending billing and marks it as calculated.
+   *
+   * @return 1 if the billing has been updated, 0 if it was not pending
+   */
+  @Modifying(clearAutomatically = true)
+  @Query("update Billing b set b.currency = :currency, b.amount = :amount, b.ruleSetVersion = :ruleSetVersion, " +
+    "b.status = com.acme.parking.billing.model.Billing$Status.CALCULATED " +
+    "where b.id = :id and b.status = com.acme.parking.billing.model.Billing$Status.PENDING")
+  int completePending(@Param("id") Long id,
+                      @Param("currency") String currency,
+                      @Param("amount") Double amount,
+                      @Param("ruleSetVersion") String ruleSetVersion);
+}
@@ -1,14 +1,36 @@
 package com.acme.parking.inventory.dao;
 
 
+import com.acme.parking.billing.model.Billing;
 import com.acme.parking.inventory.model.Parking;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Data access object exposing persistence operations on {@link Parking}
+ * <p>
+ * Parkings are always replied or completed along with their billing, fetched in the same statement.
  */
 public interface ParkingRepository extends PagingAndSortingRepository<Parking, Integer> {
 
+  @EntityGraph(attributePaths = "billing")
   Parking findById(Long id);
 
+  @EntityGraph(attributePaths = "billing")
+  List<Parking> findByIdIn(Collection<Long> ids);
+
+  /**
+   * Parkings completed before the given time whose billing has the given status, by ascending id
+   */
+  @EntityGraph(attributePaths = "billing")
+  List<Parking> findByBillingStatusAndEndDateTimeBeforeAndIdGreaterThanOrderByIdAsc(Billing.Status status,
+                                                                                    LocalDateTime endedBefore,
+                                                                                    Long afterId,
+                                                                                    Pageable pageable);
+
 }
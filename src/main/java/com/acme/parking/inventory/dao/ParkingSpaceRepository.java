@@ -1,17 +1,73 @@
 package com.acme.parking.inventory.dao;
 
 
+import com.acme.parking.inventory.model.Parking;
 import com.acme.parking.inventory.model.ParkingSpace;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
  * Data access object exposing persistence operations on {@link ParkingSpace}
+ * <p>
+ * The ongoing parking of a parking space is loaded lazily: commands only read parking spaces to change their status,
+ * while reads replied with the ongoing parking fetch it in the same statement, and availability searches are projected
+ * on {@link ParkingSpaceSummary}.
  */
 public interface ParkingSpaceRepository extends PagingAndSortingRepository<ParkingSpace, Integer> {
 
+  @Override
+  @EntityGraph(attributePaths = "currentParkingInformation")
+  Iterable<ParkingSpace> findAll();
+
   ParkingSpace findById(Long id);
 
-  List<ParkingSpace> findByTypeAndStatus(ParkingSpace.Type type, ParkingSpace.Status status);
+  List<ParkingSpace> findByIdIn(Collection<Long> ids);
+
+  @EntityGraph(attributePaths = "currentParkingInformation")
+  ParkingSpace findWithCurrentParkingById(Long id);
+
+  @EntityGraph(attributePaths = "currentParkingInformation")
+  List<ParkingSpace> findWithCurrentParkingByIdIn(Collection<Long> ids);
+
+  List<ParkingSpaceSummary> findByTypeAndStatus(ParkingSpace.Type type, ParkingSpace.Status status);
+
+  /**
+   * Keyset paging on id: returns the first parking spaces after the given id, the page size being the pageable's
+   */
+  List<ParkingSpaceSummary> findByTypeAndStatusAndIdGreaterThanOrderByIdAsc(ParkingSpace.Type type,
+                                                                            ParkingSpace.Status status,
+                                                                            Long afterId, Pageable pageable);
+
+  /**
+   * Same as {@link #findByTypeAndStatusAndIdGreaterThanOrderByIdAsc}, with the ongoing parkings
+   */
+  @EntityGraph(attributePaths = "currentParkingInformation")
+  List<ParkingSpace> findWithCurrentParkingByTypeAndStatusAndIdGreaterThanOrderByIdAsc(ParkingSpace.Type type,
+                                                                                       ParkingSpace.Status status,
+                                                                                       Long afterId, Pageable pageable);
+
+  ParkingSpaceSummary findFirstByTypeAndStatusOrderByIdAsc(ParkingSpace.Type type, ParkingSpace.Status status);
+
+  /**
+   * Atomically moves the parking space from the expected status to the new one and bumps its version.
+   *
+   * @return 1 if the status has been changed, 0 if the parking space was not in the expected status
+   */
+  @Modifying(clearAutomatically = true)
+  @Query("update ParkingSpace p set p.status = :newStatus, p.version = p.version + 1 " +
+    "where p.id = :id and p.status = :expectedStatus")
+  int compareAndSetStatus(@Param("id") Long id,
+                          @Param("expectedStatus") ParkingSpace.Status expectedStatus,
+                          @Param("newStatus") ParkingSpace.Status newStatus);
+
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @Query("update ParkingSpace p set p.currentParkingInformation = :parking where p.id = :id")
+  int updateCurrentParkingInformation(@Param("id") Long id, @Param("parking") Parking parking);
 }
@@ -0,0 +1,20 @@
+package com.acme.parking.inventory.dao;
+
+import com.acme.parking.inventory.model.ParkingSpace;
+
+/**
+ * Projection of a {@link ParkingSpace} on the columns availability searches need,
+ * read without joining its ongoing parking
+ */
+public interface ParkingSpaceSummary {
+
+  Long getId();
+
+  ParkingSpace.Type getType();
+
+  ParkingSpace.Status getStatus();
+
+  default ParkingSpace toParkingSpace() {
+    return new ParkingSpace(getId(), getType(), getStatus(), null, 0);
+  }
+}
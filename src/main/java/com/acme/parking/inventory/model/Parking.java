@@ -9,9 +9,13 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NonNull;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
@@ -36,12 +40,19 @@ public class Parking {
 
   @Schema(description = "Unique identifier", example = "8", minimum = "0", required = true, accessMode = READ_ONLY)
   @Id
-  @GeneratedValue(strategy = GenerationType.AUTO)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "parking_seq")
+  @GenericGenerator(name = "parking_seq", strategy = "com.acme.parking.config.PooledSequenceGenerator",
+    parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "parking_seq"))
   private Long id;
 
   @Schema(description = "Parking space where the parking takes place", example = "8", minimum = "1", required = true)
   private Long parkingSpaceId;
 
+  @Schema(description = "Type of the parking space, set at the completion time for pricing", example = "KW20", accessMode = READ_ONLY)
+  @JsonProperty(access = Access.READ_ONLY)
+  @JsonInclude(Include.NON_NULL)
+  private ParkingSpace.Type parkingSpaceType;
+
   @Schema(description = "Start time of the parking", example = "2020-04-13T07:30:00.000Z", required = true, accessMode = READ_ONLY)
   @JsonProperty(access = Access.READ_ONLY)
   private final LocalDateTime startDateTime;
@@ -56,7 +67,7 @@ public class Parking {
 
   @Schema(description = "Billing information calculated when the parking is completed", accessMode = READ_ONLY)
   @JsonInclude(Include.NON_NULL)
-  @OneToOne(cascade = CascadeType.ALL)
+  @OneToOne(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
   private Billing billing;
 
   public Parking() {
@@ -1,23 +1,30 @@
 package com.acme.parking.inventory.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToOne;
+import javax.persistence.Version;
 
 import static io.swagger.v3.oas.annotations.media.Schema.AccessMode.READ_ONLY;
 
 /**
  * Represents a single parking space entity with a given type
  * The current availability status is reflected in the status filed
+ * Status changes are guarded by optimistic versioning, see {@link com.acme.parking.inventory.dao.ParkingSpaceRepository}
  *
  * For the actual parking entity, see {@link Parking}
  *
@@ -31,7 +38,9 @@ public class ParkingSpace {
 
   @Schema(description = "Unique identifier", example = "15", minimum = "1", required = true)
   @Id
-  @GeneratedValue(strategy = GenerationType.AUTO)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "parking_space_seq")
+  @GenericGenerator(name = "parking_space_seq", strategy = "com.acme.parking.config.PooledSequenceGenerator",
+    parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "parking_space_seq"))
   private Long id;
 
   @Schema(description = "Type of the cars allowed to park in this parking space", accessMode = READ_ONLY)
@@ -42,9 +51,13 @@ public class ParkingSpace {
 
   @Schema(description = "Details regarding the ongoing parking in this parking space", accessMode = READ_ONLY)
   @JsonInclude(JsonInclude.Include.NON_NULL)
-  @OneToOne(cascade = CascadeType.ALL)
+  @OneToOne(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
   private Parking currentParkingInformation;
 
+  @JsonIgnore
+  @Version
+  private long version;
+
   public ParkingSpace(Long id, Type type) {
     this.id = id;
     this.type = type;
@@ -0,0 +1,44 @@
+package com.acme.parking.inventory.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Change of a parking space, published by the node owning it on the compacted parking space event topic.
+ * Events are keyed by parking space id and carry the whole parking space after the change,
+ * so that the latest event of each parking space is enough to know its current state.
+ *
+ * @see com.acme.parking.api.ParkingSpaceView
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ParkingSpaceEvent {
+
+  private Kind kind;
+
+  private ParkingSpace parkingSpace;
+
+  public static ParkingSpaceEvent parkingStarted(ParkingSpace parkingSpace, Parking parking) {
+    return new ParkingSpaceEvent(Kind.PARKING_STARTED,
+      new ParkingSpace(parkingSpace.getId(), parkingSpace.getType(), ParkingSpace.Status.OCCUPIED, parking, 0));
+  }
+
+  public static ParkingSpaceEvent parkingCompleted(ParkingSpace parkingSpace) {
+    return new ParkingSpaceEvent(Kind.PARKING_COMPLETED,
+      new ParkingSpace(parkingSpace.getId(), parkingSpace.getType(), ParkingSpace.Status.AVAILABLE, null, 0));
+  }
+
+  public static ParkingSpaceEvent snapshot(ParkingSpace parkingSpace) {
+    return new ParkingSpaceEvent(Kind.SNAPSHOT, new ParkingSpace(parkingSpace.getId(), parkingSpace.getType(),
+      parkingSpace.getStatus(), parkingSpace.getCurrentParkingInformation(), 0));
+  }
+
+  public enum Kind {
+    PARKING_STARTED,
+    PARKING_COMPLETED,
+    // Current state of a parking space, published when its node starts owning it
+    SNAPSHOT
+  }
+}
@@ -0,0 +1,237 @@
+package com.acme.parking.messaging;
+
+import com.acme.parking.exception.ServiceOverloadedException;
+import com.acme.parking.inventory.ParkingSpaceOwnership;
+import com.acme.parking.properties.KafkaRequestTopics;
+import com.acme.parking.properties.MessagingProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.annotation.KafkaHandler;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import javax.annotation.PreDestroy;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport for single-site installs, where the API and the controllers live in the same JVM.
+ * <p>
+ * Requests are dispatched straight to the {@link KafkaListener} method subscribed to the operation's request topic,
+ * or to the matching {@link KafkaHandler} method of a class-level {@link KafkaListener},
+ * skipping serialization and the broker round trip.
+ * <p>
+ * Keyed requests run one at a time per partition of their parking space (see {@link ParkingSpaceOwnership#partitionOf}),
+ * each partition having a single-thread lane, as they would on the one consumer of a Kafka partition:
+ * the controllers rely on being the single writer of the parking spaces of a partition.
+ * Other requests run on a bounded executor. Requests above the queue capacity of their lane or of the executor
+ * are rejected with {@link ServiceOverloadedException}.
+ * <p>
+ * Requests sent by a listener already running on a lane or the executor, such as the billing calculation of a parking completion,
+ * are invoked on the caller thread: waiting for them on a lane or the bounded executor would deadlock once all of
+ * its threads wait for their own nested request. Their reply deadline is then the one of the outer request.
+ */
+@Component
+@ConditionalOnProperty(name = "app.messaging.transport", havingValue = "in-process")
+public class InProcessRequestReplyTransport implements RequestReplyTransport, SmartInitializingSingleton {
+
+  private static final Logger log = LoggerFactory.getLogger(InProcessRequestReplyTransport.class);
+
+  private final ApplicationContext applicationContext;
+  private final KafkaRequestTopics requestTopics;
+  private final MessagingProperties messagingProperties;
+  private final ParkingSpaceOwnership ownership;
+  private final ThreadPoolExecutor executor;
+
+  private final Map<Integer, ThreadPoolExecutor> lanesByPartition = new ConcurrentHashMap<>();
+
+  private final Map<String, Listener> listenersByTopic = new HashMap<>();
+
+  // Set on lane & executor threads while a listener runs, so that nested requests run on the same thread
+  private final ThreadLocal<Boolean> dispatching = ThreadLocal.withInitial(() -> false);
+
+  @Autowired
+  public InProcessRequestReplyTransport(ApplicationContext applicationContext,
+                                        KafkaRequestTopics requestTopics,
+                                        MessagingProperties messagingProperties,
+                                        ParkingSpaceOwnership ownership) {
+    this.applicationContext = applicationContext;
+    this.requestTopics = requestTopics;
+    this.messagingProperties = messagingProperties;
+    this.ownership = ownership;
+    this.executor = executor(messagingProperties.getInProcessThreads(), "in-process-transport-");
+  }
+
+  private ThreadPoolExecutor executor(int threads, String threadNamePrefix) {
+    return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+      new ArrayBlockingQueue<>(messagingProperties.getInProcessQueueCapacity()), new CustomizableThreadFactory(threadNamePrefix));
+  }
+
+  // Record keys are parking space ids, see Operation
+  private ThreadPoolExecutor executorOf(String key) {
+    if (key == null) {
+      return executor;
+    }
+    return lanesByPartition.computeIfAbsent(ownership.partitionOf(Long.parseLong(key)),
+      partition -> executor(1, "in-process-transport-partition-" + partition + "-"));
+  }
+
+  @Override
+  public void afterSingletonsInstantiated() {
+    Environment environment = applicationContext.getEnvironment();
+    for (String beanName : applicationContext.getBeanDefinitionNames()) {
+      Class<?> beanType = applicationContext.getType(beanName);
+      if (beanType == null) {
+        continue;
+      }
+      Class<?> userClass = ClassUtils.getUserClass(beanType);
+      Map<Method, KafkaListener> listenerMethods = MethodIntrospector.selectMethods(userClass,
+        (MethodIntrospector.MetadataLookup<KafkaListener>) method -> AnnotatedElementUtils.findMergedAnnotation(method, KafkaListener.class));
+      listenerMethods.forEach((method, listener) -> register(environment, listener, new Listener(beanName, List.of(method))));
+
+      KafkaListener classListener = AnnotatedElementUtils.findMergedAnnotation(userClass, KafkaListener.class);
+      if (classListener != null) {
+        Set<Method> handlerMethods = MethodIntrospector.selectMethods(userClass,
+          (ReflectionUtils.MethodFilter) method -> AnnotatedElementUtils.hasAnnotation(method, KafkaHandler.class));
+        register(environment, classListener, new Listener(beanName, new ArrayList<>(handlerMethods)));
+      }
+    }
+  }
+
+  private void register(Environment environment, KafkaListener kafkaListener, Listener listener) {
+    for (String topic : kafkaListener.topics()) {
+      // A bean may listen to a topic one by one & in batches, requests being dispatched to the method accepting them
+      listenersByTopic.merge(environment.resolvePlaceholders(topic), listener, Listener::merge);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Object> sendAndReceive(Operation<?, ?> operation, String key, Object request, Duration replyTimeout) {
+    String topic = operation.getRequestTopic().apply(requestTopics);
+    Listener listener = listenersByTopic.get(topic);
+    if (listener == null) {
+      return CompletableFuture.failedFuture(new IllegalStateException("No listener subscribed to " + topic));
+    }
+
+    CompletableFuture<Object> reply = new CompletableFuture<>();
+    if (dispatching.get()) {
+      try {
+        reply.complete(listener.invoke(request));
+      } catch (Exception e) {
+        reply.completeExceptionally(e);
+      }
+      return reply;
+    }
+    try {
+      executorOf(key).execute(() -> dispatch(() -> {
+        try {
+          reply.complete(listener.invoke(request));
+        } catch (Exception e) {
+          reply.completeExceptionally(e);
+        }
+      }));
+    } catch (RejectedExecutionException e) {
+      return CompletableFuture.failedFuture(overloaded());
+    }
+    return reply.orTimeout(replyTimeout.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public CompletableFuture<Void> send(Operation<?, ?> operation, String key, Object request) {
+    String topic = operation.getRequestTopic().apply(requestTopics);
+    Listener listener = listenersByTopic.get(topic);
+    if (listener == null) {
+      return CompletableFuture.failedFuture(new IllegalStateException("No listener subscribed to " + topic));
+    }
+
+    try {
+      // Delivered once queued, as a Kafka request is once written to its topic: one-way requests never wait for
+      // the listener, so nested ones are queued as well
+      executorOf(key).execute(() -> dispatch(() -> {
+        try {
+          listener.invoke(request);
+        } catch (Exception e) {
+          log.error("{} request failed", operation, e);
+        }
+      }));
+    } catch (RejectedExecutionException e) {
+      return CompletableFuture.failedFuture(overloaded());
+    }
+    return CompletableFuture.completedFuture(null);
+  }
+
+  private ServiceOverloadedException overloaded() {
+    return new ServiceOverloadedException(String.format("Too many requests queued (capacity %d), please retry later",
+      messagingProperties.getInProcessQueueCapacity()));
+  }
+
+  private void dispatch(Runnable invocation) {
+    dispatching.set(true);
+    try {
+      invocation.run();
+    } finally {
+      dispatching.set(false);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+    lanesByPartition.values().forEach(ThreadPoolExecutor::shutdown);
+  }
+
+  private class Listener {
+
+    private final String beanName;
+    private final List<Method> methods;
+
+    private Listener(String beanName, List<Method> methods) {
+      this.beanName = beanName;
+      this.methods = methods;
+    }
+
+    private Listener merge(Listener other) {
+      if (!beanName.equals(other.beanName)) {
+        throw new IllegalStateException("Beans " + beanName + " and " + other.beanName + " listen to the same topic");
+      }
+      List<Method> mergedMethods = new ArrayList<>(methods);
+      mergedMethods.addAll(other.methods);
+      return new Listener(beanName, mergedMethods);
+    }
+
+    // Invoked on the bean from the context, so that proxies such as transactions are applied
+    private Object invoke(Object request) throws Exception {
+      Method method = methods.stream()
+        .filter(candidate -> ClassUtils.isAssignableValue(candidate.getParameterTypes()[0], request))
+        .findFirst()
+        .orElseThrow(() -> new IllegalStateException("No listener method accepting " + request));
+      try {
+        return method.invoke(applicationContext.getBean(beanName), request);
+      } catch (InvocationTargetException e) {
+        throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+      }
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.acme.parking.messaging;
+
+import com.acme.parking.properties.KafkaRequestTopics;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.requestreply.ReplyingKafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Default transport, exchanging requests & replies through Kafka topics.
+ * Requests are sent to the topic of their operation and correlated by Kafka's correlation id,
+ * replies of every operation come back on the one reply topic of this node (see {@link com.acme.parking.config.KafkaConfig}).
+ */
+@Component
+@ConditionalOnProperty(name = "app.messaging.transport", havingValue = "kafka", matchIfMissing = true)
+public class KafkaRequestReplyTransport implements RequestReplyTransport {
+
+  private final ReplyingKafkaTemplate<String, Object, Object> replyingKafkaTemplate;
+  private final KafkaRequestTopics requestTopics;
+
+  @Autowired
+  public KafkaRequestReplyTransport(ReplyingKafkaTemplate<String, Object, Object> replyingKafkaTemplate,
+                                    KafkaRequestTopics requestTopics) {
+    this.replyingKafkaTemplate = replyingKafkaTemplate;
+    this.requestTopics = requestTopics;
+  }
+
+  @Override
+  public CompletableFuture<Object> sendAndReceive(Operation<?, ?> operation, String key, Object request, Duration replyTimeout) {
+    return replyingKafkaTemplate.sendAndReceive(record(operation, key, request), replyTimeout).completable()
+      .thenApply(ConsumerRecord::value);
+  }
+
+  @Override
+  public CompletableFuture<Void> send(Operation<?, ?> operation, String key, Object request) {
+    return replyingKafkaTemplate.send(record(operation, key, request)).completable()
+      .thenApply(result -> null);
+  }
+
+  @Override
+  public int partitionCount(Operation<?, ?> operation) {
+    // Cached by the producer along with the rest of the topic metadata
+    return replyingKafkaTemplate.partitionsFor(operation.getRequestTopic().apply(requestTopics)).size();
+  }
+
+  private ProducerRecord<String, Object> record(Operation<?, ?> operation, String key, Object request) {
+    return new ProducerRecord<>(operation.getRequestTopic().apply(requestTopics),
+      null, key != null ? key : UUID.randomUUID().toString(), request);
+  }
+}
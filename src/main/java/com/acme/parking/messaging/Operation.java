@@ -0,0 +1,135 @@
+package com.acme.parking.messaging;
+
+import com.acme.parking.api.model.IdBatch;
+import com.acme.parking.api.model.ParkingBatchResult;
+import com.acme.parking.api.model.ParkingCompletion;
+import com.acme.parking.api.model.ParkingCompletionBatch;
+import com.acme.parking.api.model.ParkingResult;
+import com.acme.parking.api.model.ParkingSpaceQuery;
+import com.acme.parking.api.model.ParkingSpaceQueryResult;
+import com.acme.parking.api.model.ParkingSpaceStats;
+import com.acme.parking.api.model.ParkingSpaceStatsQuery;
+import com.acme.parking.api.model.ParkingStartBatch;
+import com.acme.parking.api.model.UnflushedParkingsQuery;
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.properties.KafkaReplyTimeouts;
+import com.acme.parking.properties.KafkaRequestTopics;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Request-reply operation exchanged through the {@link RequestReplyGateway}.
+ * Binds the message kind to its request topic, reply type and reply deadline,
+ * so that callers keep a typed view over the single multiplexed reply channel.
+ * <p>
+ * Parking space lookups by id and requests touching a single parking space are keyed by the parking space id,
+ * and consumed by the container of the parking start & completion topics, so that they are always processed
+ * by the node owning its partition (see {@link com.acme.parking.inventory.ParkingSpaceOwnership}).
+ * Batches are keyed by one of their parking space ids, all of them belonging to the same partition
+ * (see {@link RequestReplyGateway#groupByPartition}). Stats are requested from the owner of each partition
+ * (see {@link RequestReplyGateway#sendToEachPartition}).
+ * Other requests, including parking lookups whose parking space is unknown, can be answered by any node
+ * and are spread randomly. With write-behind, parkings they miss are looked up in the memory of each partition's owner,
+ * not having been flushed yet.
+ * <p>
+ * One-way operations, sent with {@link RequestReplyGateway#send}, have no reply type nor reply deadline.
+ *
+ * @param <Q> request payload type
+ * @param <R> reply payload type
+ */
+@Getter
+public final class Operation<Q, R> {
+
+  public static final Operation<Long, ParkingSpace> PARKING_SPACE_BY_ID = new Operation<>("parkingSpaceById",
+    ParkingSpace.class, KafkaRequestTopics::getParkingSpaceById, KafkaReplyTimeouts::getParkingSpaceById, String::valueOf);
+
+  public static final Operation<IdBatch, ParkingSpaceQueryResult> PARKING_SPACES_BY_IDS = new Operation<>("parkingSpacesByIds",
+    ParkingSpaceQueryResult.class, KafkaRequestTopics::getParkingSpacesByIds, KafkaReplyTimeouts::getParkingSpacesByIds,
+    batch -> String.valueOf(batch.getIds().get(0)));
+
+  public static final Operation<ParkingSpace.Type, ParkingSpace> NEXT_AVAILABLE_PARKING_SPACE = new Operation<>("nextAvailableParkingSpace",
+    ParkingSpace.class, KafkaRequestTopics::getNextAvailableParkingSpace, KafkaReplyTimeouts::getNextAvailableParkingSpace);
+
+  // Sent to each partition with RequestReplyGateway#sendToEachPartition, the owners counting their parking spaces
+  public static final Operation<ParkingSpaceStatsQuery, ParkingSpaceStats> PARKING_SPACE_STATS = new Operation<>("parkingSpaceStats",
+    ParkingSpaceStats.class, KafkaRequestTopics::getParkingSpaceStats, KafkaReplyTimeouts::getParkingSpaceStats);
+
+  public static final Operation<ParkingSpaceQuery, ParkingSpaceQueryResult> PARKING_SPACES_QUERY = new Operation<>("parkingSpacesQuery",
+    ParkingSpaceQueryResult.class, KafkaRequestTopics::getParkingSpacesQuery, KafkaReplyTimeouts::getParkingSpacesQuery);
+
+  public static final Operation<Long, Parking> PARKING_BY_ID = new Operation<>("parkingById",
+    Parking.class, KafkaRequestTopics::getParkingById, KafkaReplyTimeouts::getParkingById);
+
+  public static final Operation<IdBatch, ParkingBatchResult> PARKINGS_BY_IDS = new Operation<>("parkingsByIds",
+    ParkingBatchResult.class, KafkaRequestTopics::getParkingsByIds, KafkaReplyTimeouts::getParkingsByIds);
+
+  // Sent to each partition with RequestReplyGateway#sendToEachPartition, the owners looking up their unflushed parkings
+  public static final Operation<UnflushedParkingsQuery, ParkingBatchResult> UNFLUSHED_PARKINGS_BY_IDS = new Operation<>("unflushedParkingsByIds",
+    ParkingBatchResult.class, KafkaRequestTopics::getUnflushedParkingsByIds, KafkaReplyTimeouts::getUnflushedParkingsByIds);
+
+  public static final Operation<Parking, ParkingResult> PARKING_START = new Operation<>("parkingStart",
+    ParkingResult.class, KafkaRequestTopics::getParkingStart, KafkaReplyTimeouts::getParkingStart,
+    parking -> String.valueOf(parking.getParkingSpaceId()));
+
+  // Keyed by the parking space id of the parking, which must be provided by the caller
+  public static final Operation<ParkingCompletion, ParkingResult> PARKING_COMPLETION = new Operation<>("parkingCompletion",
+    ParkingResult.class, KafkaRequestTopics::getParkingCompletion, KafkaReplyTimeouts::getParkingCompletion);
+
+  public static final Operation<ParkingStartBatch, ParkingBatchResult> PARKING_START_BATCH = new Operation<>("parkingStartBatch",
+    ParkingBatchResult.class, KafkaRequestTopics::getParkingStartBatch, KafkaReplyTimeouts::getParkingStartBatch,
+    batch -> String.valueOf(batch.getParkingSpaceIds().get(0)));
+
+  // Keyed by the parking space id of any of the parkings, which must be provided by the caller
+  public static final Operation<ParkingCompletionBatch, ParkingBatchResult> PARKING_COMPLETION_BATCH = new Operation<>("parkingCompletionBatch",
+    ParkingBatchResult.class, KafkaRequestTopics::getParkingCompletionBatch, KafkaReplyTimeouts::getParkingCompletionBatch);
+
+  public static final Operation<Parking, Billing> BILLING_CALCULATION = new Operation<>("billingCalculation",
+    Billing.class, KafkaRequestTopics::getBillingCalculation, KafkaReplyTimeouts::getBillingCalculation);
+
+  // One-way, completed parking whose pending billing is to be calculated
+  public static final Operation<Parking, Void> PENDING_BILLING_CALCULATION = new Operation<>("pendingBillingCalculation",
+    Void.class, KafkaRequestTopics::getPendingBillingCalculation, null);
+
+  // One-way, keyed by the parking space id of the billed parking, which must be provided by the caller
+  public static final Operation<Billing, Void> BILLING_WRITE_BACK = new Operation<>("billingWriteBack",
+    Void.class, KafkaRequestTopics::getBillingWriteBack, null);
+
+  private final String kind;
+  private final Class<R> replyType;
+  private final Function<KafkaRequestTopics, String> requestTopic;
+  private final Function<KafkaReplyTimeouts, Duration> replyTimeout;
+  private final Function<Q, String> recordKey;
+
+  private Operation(String kind, Class<R> replyType,
+                    Function<KafkaRequestTopics, String> requestTopic,
+                    Function<KafkaReplyTimeouts, Duration> replyTimeout) {
+    this(kind, replyType, requestTopic, replyTimeout, request -> null);
+  }
+
+  private Operation(String kind, Class<R> replyType,
+                    Function<KafkaRequestTopics, String> requestTopic,
+                    Function<KafkaReplyTimeouts, Duration> replyTimeout,
+                    Function<Q, String> recordKey) {
+    this.kind = kind;
+    this.replyType = replyType;
+    this.requestTopic = requestTopic;
+    this.replyTimeout = replyTimeout;
+    this.recordKey = recordKey;
+  }
+
+  /**
+   * @return key of the request record, or null if the request can be processed by any node
+   */
+  public String recordKey(Q request) {
+    return recordKey.apply(request);
+  }
+
+  @Override
+  public String toString() {
+    return kind;
+  }
+}
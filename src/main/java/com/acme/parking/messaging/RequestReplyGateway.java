@@ -0,0 +1,141 @@
+package com.acme.parking.messaging;
+
+import com.acme.parking.inventory.ParkingSpaceOwnership;
+import com.acme.parking.properties.KafkaReplyTimeouts;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.requestreply.KafkaReplyTimeoutException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Single request-reply channel shared by all {@link Operation}s of this node.
+ * <p>
+ * Requests are delivered by the configured {@link RequestReplyTransport}, each with the deadline of its operation.
+ * Latency of each operation is recorded in the {@value #LATENCY_METRIC} timer, tagged by operation and outcome.
+ * One-way operations are sent through the same transport, without waiting for any reply.
+ * Items of a batch command are grouped by the partition their record key hashes to with {@link #groupByPartition},
+ * so that each group can be sent as one request to the node owning all of its items.
+ */
+@Component
+public class RequestReplyGateway {
+
+  public static final String LATENCY_METRIC = "parking.request.latency";
+
+  private final RequestReplyTransport transport;
+  private final KafkaReplyTimeouts replyTimeouts;
+  private final MeterRegistry meterRegistry;
+
+  // Record key of each partition, by partition count
+  private final Map<Integer, String[]> partitionKeys = new ConcurrentHashMap<>();
+
+  @Autowired
+  public RequestReplyGateway(RequestReplyTransport transport,
+                             KafkaReplyTimeouts replyTimeouts,
+                             MeterRegistry meterRegistry) {
+    this.transport = transport;
+    this.replyTimeouts = replyTimeouts;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * Sends the request and completes the returned future with the reply,
+   * or exceptionally once the operation's deadline has passed.
+   */
+  public <Q, R> CompletableFuture<R> sendAndReceive(Operation<Q, R> operation, Q request) {
+    return sendAndReceive(operation, request, operation.recordKey(request));
+  }
+
+  /**
+   * Same as {@link #sendAndReceive(Operation, Object)}, for requests whose record key cannot be derived from the payload.
+   */
+  public <Q, R> CompletableFuture<R> sendAndReceive(Operation<Q, R> operation, Q request, String key) {
+    Timer.Sample sample = Timer.start(meterRegistry);
+    return transport.sendAndReceive(operation, key, request, operation.getReplyTimeout().apply(replyTimeouts))
+      .thenApply(reply -> operation.getReplyType().cast(reply))
+      .whenComplete((reply, exception) -> sample.stop(meterRegistry.timer(LATENCY_METRIC,
+        "operation", operation.getKind(), "outcome", outcome(exception))));
+  }
+
+  /**
+   * Sends a one-way request, completing the returned future once it is delivered
+   */
+  public <Q> CompletableFuture<Void> send(Operation<Q, Void> operation, Q request) {
+    return send(operation, request, operation.recordKey(request));
+  }
+
+  /**
+   * Same as {@link #send(Operation, Object)}, for requests whose record key cannot be derived from the payload.
+   */
+  public <Q> CompletableFuture<Void> send(Operation<Q, Void> operation, Q request, String key) {
+    return transport.send(operation, key, request);
+  }
+
+  /**
+   * Groups items by the partition of the operation's request topic their record key hashes to, in their original order.
+   *
+   * @param key record key of each item
+   */
+  public <T> Collection<List<T>> groupByPartition(Operation<?, ?> operation, List<T> items, Function<T, String> key) {
+    int partitionCount = transport.partitionCount(operation);
+    if (partitionCount <= 1) {
+      return List.of(items);
+    }
+    Map<Integer, List<T>> groups = new LinkedHashMap<>();
+    for (T item : items) {
+      groups.computeIfAbsent(ParkingSpaceOwnership.partitionFor(key.apply(item), partitionCount), partition -> new ArrayList<>())
+        .add(item);
+    }
+    return groups.values();
+  }
+
+  /**
+   * Sends a request to each partition of the operation's request topic, so that each one is processed by its owner.
+   *
+   * @param request request of each partition
+   * @return the replies, by partition
+   */
+  public <Q, R> List<CompletableFuture<R>> sendToEachPartition(Operation<Q, R> operation, IntFunction<Q> request) {
+    int partitionCount = Math.max(1, transport.partitionCount(operation));
+    String[] keys = partitionKeys.computeIfAbsent(partitionCount, RequestReplyGateway::partitionKeys);
+    List<CompletableFuture<R>> replies = new ArrayList<>(partitionCount);
+    for (int partition = 0; partition < partitionCount; partition++) {
+      replies.add(sendAndReceive(operation, request.apply(partition), keys[partition]));
+    }
+    return replies;
+  }
+
+  // Smallest parking space id hashed to each partition, as a record key
+  private static String[] partitionKeys(int partitionCount) {
+    String[] keys = new String[partitionCount];
+    int found = 0;
+    for (long id = 0; found < partitionCount; id++) {
+      String key = String.valueOf(id);
+      int partition = ParkingSpaceOwnership.partitionFor(key, partitionCount);
+      if (keys[partition] == null) {
+        keys[partition] = key;
+        found++;
+      }
+    }
+    return keys;
+  }
+
+  private static String outcome(Throwable exception) {
+    if (exception == null) {
+      return "success";
+    }
+    Throwable cause = exception.getCause() != null ? exception.getCause() : exception;
+    return cause instanceof KafkaReplyTimeoutException || cause instanceof TimeoutException ? "timeout" : "error";
+  }
+}
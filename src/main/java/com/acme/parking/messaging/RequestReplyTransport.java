@@ -0,0 +1,35 @@
+package com.acme.parking.messaging;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Carries requests of the {@link RequestReplyGateway} to the listener handling the operation and brings its reply back.
+ * The implementation is selected with the {@code app.messaging.transport} property.
+ *
+ * @see KafkaRequestReplyTransport
+ * @see InProcessRequestReplyTransport
+ */
+public interface RequestReplyTransport {
+
+  /**
+   * @param key record key deciding which node processes the request, null if any node can
+   * @return future completed with the reply, or exceptionally if no reply arrived before the timeout
+   */
+  CompletableFuture<Object> sendAndReceive(Operation<?, ?> operation, String key, Object request, Duration replyTimeout);
+
+  /**
+   * Delivers a request expecting no reply
+   *
+   * @param key record key deciding which node processes the request, null if any node can
+   * @return future completed once the request is delivered
+   */
+  CompletableFuture<Void> send(Operation<?, ?> operation, String key, Object request);
+
+  /**
+   * @return number of partitions the requests of the operation are spread over by record key, 1 if not partitioned
+   */
+  default int partitionCount(Operation<?, ?> operation) {
+    return 1;
+  }
+}
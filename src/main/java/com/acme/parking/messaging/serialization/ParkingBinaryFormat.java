@@ -0,0 +1,570 @@
+package com.acme.parking.messaging.serialization;
+
+import com.acme.parking.api.model.IdBatch;
+import com.acme.parking.api.model.ParkingBatchResult;
+import com.acme.parking.api.model.ParkingCompletion;
+import com.acme.parking.api.model.ParkingCompletionBatch;
+import com.acme.parking.api.model.ParkingResult;
+import com.acme.parking.api.model.ParkingSpaceQuery;
+import com.acme.parking.api.model.ParkingSpaceQueryResult;
+import com.acme.parking.api.model.ParkingSpaceStats;
+import com.acme.parking.api.model.ParkingSpaceStatsQuery;
+import com.acme.parking.api.model.ParkingStartBatch;
+import com.acme.parking.api.model.UnflushedParkingsQuery;
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpaceEvent;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of the messages exchanged between the API and the controllers.
+ * <p>
+ * A message is made of a magic byte, a format version byte, a type tag and the payload.
+ * The magic byte can never start a JSON document, so binary and JSON messages can be told apart.
+ * Each record starts with a bitmask of its non-null fields, followed by these fields in declaration order:
+ * integers as variable-length zigzag, doubles as 8 bytes, strings as length-prefixed UTF-8,
+ * enums as their ordinal and date-times as UTC epoch seconds & nanos.
+ * Any change to this layout, including enum constants order, requires a new version.
+ */
+public final class ParkingBinaryFormat {
+
+  static final byte MAGIC = (byte) 0xB7;
+  static final byte VERSION = 4;
+
+  private static final byte LONG = 1;
+  private static final byte PARKING_SPACE_TYPE = 2;
+  private static final byte PARKING = 3;
+  private static final byte PARKING_SPACE = 4;
+  private static final byte BILLING = 5;
+  private static final byte PARKING_SPACE_QUERY = 6;
+  private static final byte PARKING_SPACE_QUERY_RESULT = 7;
+  private static final byte PARKING_RESULT = 8;
+  private static final byte PARKING_SPACE_EVENT = 9;
+  private static final byte PARKING_SPACE_STATS = 10;
+  private static final byte ID_BATCH = 11;
+  private static final byte PARKING_START_BATCH = 12;
+  private static final byte PARKING_COMPLETION_BATCH = 13;
+  private static final byte PARKING_BATCH_RESULT = 14;
+  private static final byte PARKING_SPACE_STATS_QUERY = 15;
+  private static final byte UNFLUSHED_PARKINGS_QUERY = 16;
+  private static final byte PARKING_COMPLETION = 17;
+
+  private static final ParkingSpace.Type[] TYPES = ParkingSpace.Type.values();
+  private static final ParkingSpace.Status[] STATUSES = ParkingSpace.Status.values();
+  private static final ParkingResult.Rejection[] REJECTIONS = ParkingResult.Rejection.values();
+  private static final Billing.Status[] BILLING_STATUSES = Billing.Status.values();
+  private static final ParkingSpaceEvent.Kind[] EVENT_KINDS = ParkingSpaceEvent.Kind.values();
+
+  // Encoding buffer reused by each producer thread, only the resulting message is allocated
+  private static final ThreadLocal<Writer> WRITERS = ThreadLocal.withInitial(Writer::new);
+
+  private ParkingBinaryFormat() {
+  }
+
+  public static boolean supports(Object value) {
+    return value instanceof Long
+      || value instanceof ParkingSpace.Type
+      || value instanceof Parking
+      || value instanceof ParkingSpace
+      || value instanceof Billing
+      || value instanceof ParkingSpaceQuery
+      || value instanceof ParkingSpaceQueryResult
+      || value instanceof ParkingResult
+      || value instanceof ParkingSpaceEvent
+      || value instanceof ParkingSpaceStats
+      || value instanceof IdBatch
+      || value instanceof ParkingStartBatch
+      || value instanceof ParkingCompletionBatch
+      || value instanceof ParkingBatchResult
+      || value instanceof ParkingSpaceStatsQuery
+      || value instanceof UnflushedParkingsQuery
+      || value instanceof ParkingCompletion;
+  }
+
+  public static boolean isBinary(byte[] data) {
+    return data != null && data.length > 0 && data[0] == MAGIC;
+  }
+
+  public static byte[] encode(Object value) {
+    Writer writer = WRITERS.get();
+    writer.reset();
+    writer.writeByte(MAGIC);
+    writer.writeByte(VERSION);
+    if (value instanceof Long) {
+      writer.writeByte(LONG);
+      writer.writeLong((Long) value);
+    } else if (value instanceof ParkingSpace.Type) {
+      writer.writeByte(PARKING_SPACE_TYPE);
+      writer.writeByte(((ParkingSpace.Type) value).ordinal());
+    } else if (value instanceof Parking) {
+      writer.writeByte(PARKING);
+      writeParking(writer, (Parking) value);
+    } else if (value instanceof ParkingSpace) {
+      writer.writeByte(PARKING_SPACE);
+      writeParkingSpace(writer, (ParkingSpace) value);
+    } else if (value instanceof Billing) {
+      writer.writeByte(BILLING);
+      writeBilling(writer, (Billing) value);
+    } else if (value instanceof ParkingSpaceQuery) {
+      writer.writeByte(PARKING_SPACE_QUERY);
+      writeParkingSpaceQuery(writer, (ParkingSpaceQuery) value);
+    } else if (value instanceof ParkingSpaceQueryResult) {
+      writer.writeByte(PARKING_SPACE_QUERY_RESULT);
+      writeParkingSpaceQueryResult(writer, (ParkingSpaceQueryResult) value);
+    } else if (value instanceof ParkingResult) {
+      writer.writeByte(PARKING_RESULT);
+      writeParkingResult(writer, (ParkingResult) value);
+    } else if (value instanceof ParkingSpaceEvent) {
+      writer.writeByte(PARKING_SPACE_EVENT);
+      writeParkingSpaceEvent(writer, (ParkingSpaceEvent) value);
+    } else if (value instanceof ParkingSpaceStats) {
+      writer.writeByte(PARKING_SPACE_STATS);
+      writeParkingSpaceStats(writer, (ParkingSpaceStats) value);
+    } else if (value instanceof IdBatch) {
+      writer.writeByte(ID_BATCH);
+      writeIds(writer, ((IdBatch) value).getIds());
+    } else if (value instanceof ParkingStartBatch) {
+      writer.writeByte(PARKING_START_BATCH);
+      writeIds(writer, ((ParkingStartBatch) value).getParkingSpaceIds());
+    } else if (value instanceof ParkingCompletionBatch) {
+      writer.writeByte(PARKING_COMPLETION_BATCH);
+      writeIds(writer, ((ParkingCompletionBatch) value).getParkingIds());
+    } else if (value instanceof ParkingBatchResult) {
+      writer.writeByte(PARKING_BATCH_RESULT);
+      writeParkingBatchResult(writer, (ParkingBatchResult) value);
+    } else if (value instanceof ParkingSpaceStatsQuery) {
+      writer.writeByte(PARKING_SPACE_STATS_QUERY);
+      writeParkingSpaceStatsQuery(writer, (ParkingSpaceStatsQuery) value);
+    } else if (value instanceof UnflushedParkingsQuery) {
+      writer.writeByte(UNFLUSHED_PARKINGS_QUERY);
+      writeIds(writer, ((UnflushedParkingsQuery) value).getIds());
+      writer.writeLong(((UnflushedParkingsQuery) value).getPartition());
+    } else if (value instanceof ParkingCompletion) {
+      writer.writeByte(PARKING_COMPLETION);
+      writer.writeLong(((ParkingCompletion) value).getParkingId());
+    } else {
+      throw new SerializationException("Unsupported type for binary format: " + value.getClass().getName());
+    }
+    return writer.toByteArray();
+  }
+
+  public static Object decode(byte[] data) {
+    Reader reader = new Reader(data);
+    try {
+      if (reader.readByte() != MAGIC) {
+        throw new SerializationException("Not a binary message");
+      }
+      byte version = reader.readByte();
+      if (version != VERSION) {
+        throw new SerializationException("Unsupported binary format version " + version);
+      }
+      byte tag = reader.readByte();
+      switch (tag) {
+        case LONG:
+          return reader.readLong();
+        case PARKING_SPACE_TYPE:
+          return TYPES[reader.readByte()];
+        case PARKING:
+          return readParking(reader);
+        case PARKING_SPACE:
+          return readParkingSpace(reader);
+        case BILLING:
+          return readBilling(reader);
+        case PARKING_SPACE_QUERY:
+          return readParkingSpaceQuery(reader);
+        case PARKING_SPACE_QUERY_RESULT:
+          return readParkingSpaceQueryResult(reader);
+        case PARKING_RESULT:
+          return readParkingResult(reader);
+        case PARKING_SPACE_EVENT:
+          return readParkingSpaceEvent(reader);
+        case PARKING_SPACE_STATS:
+          return readParkingSpaceStats(reader);
+        case ID_BATCH:
+          return new IdBatch(readIds(reader));
+        case PARKING_START_BATCH:
+          return new ParkingStartBatch(readIds(reader));
+        case PARKING_COMPLETION_BATCH:
+          return new ParkingCompletionBatch(readIds(reader));
+        case PARKING_BATCH_RESULT:
+          return readParkingBatchResult(reader);
+        case PARKING_SPACE_STATS_QUERY:
+          return readParkingSpaceStatsQuery(reader);
+        case UNFLUSHED_PARKINGS_QUERY:
+          return new UnflushedParkingsQuery(readIds(reader), (int) reader.readLong());
+        case PARKING_COMPLETION:
+          return new ParkingCompletion(reader.readLong());
+        default:
+          throw new SerializationException("Unknown binary type tag " + tag);
+      }
+    } catch (IndexOutOfBoundsException e) {
+      throw new SerializationException("Malformed binary message", e);
+    }
+  }
+
+  private static void writeParking(Writer writer, Parking parking) {
+    writer.writeFields(parking.getId(), parking.getParkingSpaceId(), parking.getParkingSpaceType(),
+      parking.getStartDateTime(), parking.getEndDateTime(), parking.getDurationSeconds(), parking.getBilling());
+    writer.writeOptionalLong(parking.getId());
+    writer.writeOptionalLong(parking.getParkingSpaceId());
+    writer.writeOptionalEnum(parking.getParkingSpaceType());
+    writer.writeOptionalDateTime(parking.getStartDateTime());
+    writer.writeOptionalDateTime(parking.getEndDateTime());
+    writer.writeOptionalLong(parking.getDurationSeconds());
+    if (parking.getBilling() != null) {
+      writeBilling(writer, parking.getBilling());
+    }
+  }
+
+  private static Parking readParking(Reader reader) {
+    int fields = reader.readByte();
+    return new Parking(
+      reader.readOptionalLong(fields, 0),
+      reader.readOptionalLong(fields, 1),
+      reader.readOptionalEnum(fields, 2, TYPES),
+      reader.readOptionalDateTime(fields, 3),
+      reader.readOptionalDateTime(fields, 4),
+      reader.readOptionalLong(fields, 5),
+      Reader.isSet(fields, 6) ? readBilling(reader) : null);
+  }
+
+  private static void writeParkingSpace(Writer writer, ParkingSpace parkingSpace) {
+    writer.writeFields(parkingSpace.getId(), parkingSpace.getType(), parkingSpace.getStatus(),
+      parkingSpace.getCurrentParkingInformation());
+    writer.writeOptionalLong(parkingSpace.getId());
+    writer.writeOptionalEnum(parkingSpace.getType());
+    writer.writeOptionalEnum(parkingSpace.getStatus());
+    if (parkingSpace.getCurrentParkingInformation() != null) {
+      writeParking(writer, parkingSpace.getCurrentParkingInformation());
+    }
+  }
+
+  private static ParkingSpace readParkingSpace(Reader reader) {
+    int fields = reader.readByte();
+    // The version is not part of the messages, like in JSON
+    return new ParkingSpace(
+      reader.readOptionalLong(fields, 0),
+      reader.readOptionalEnum(fields, 1, TYPES),
+      reader.readOptionalEnum(fields, 2, STATUSES),
+      Reader.isSet(fields, 3) ? readParking(reader) : null,
+      0);
+  }
+
+  private static void writeBilling(Writer writer, Billing billing) {
+    writer.writeFields(billing.getId(), billing.getCurrency(), billing.getAmount(), billing.getRuleSetVersion(),
+      billing.getStatus());
+    writer.writeOptionalLong(billing.getId());
+    writer.writeOptionalString(billing.getCurrency());
+    if (billing.getAmount() != null) {
+      writer.writeDouble(billing.getAmount());
+    }
+    writer.writeOptionalString(billing.getRuleSetVersion());
+    writer.writeOptionalEnum(billing.getStatus());
+  }
+
+  private static Billing readBilling(Reader reader) {
+    int fields = reader.readByte();
+    return new Billing(
+      reader.readOptionalLong(fields, 0),
+      reader.readOptionalString(fields, 1),
+      Reader.isSet(fields, 2) ? reader.readDouble() : null,
+      reader.readOptionalString(fields, 3),
+      reader.readOptionalEnum(fields, 4, BILLING_STATUSES));
+  }
+
+  private static void writeParkingSpaceQuery(Writer writer, ParkingSpaceQuery query) {
+    writer.writeFields(query.getType(), query.getStatus(), query.getCount(), query.getCursor());
+    writer.writeOptionalEnum(query.getType());
+    writer.writeOptionalEnum(query.getStatus());
+    if (query.getCount() != null) {
+      writer.writeLong(query.getCount());
+    }
+    writer.writeOptionalString(query.getCursor());
+  }
+
+  private static ParkingSpaceQuery readParkingSpaceQuery(Reader reader) {
+    int fields = reader.readByte();
+    return new ParkingSpaceQuery(
+      reader.readOptionalEnum(fields, 0, TYPES),
+      reader.readOptionalEnum(fields, 1, STATUSES),
+      Reader.isSet(fields, 2) ? (int) reader.readLong() : null,
+      reader.readOptionalString(fields, 3));
+  }
+
+  private static void writeParkingSpaceQueryResult(Writer writer, ParkingSpaceQueryResult queryResult) {
+    writer.writeFields(queryResult.getResult(), queryResult.getNextCursor());
+    if (queryResult.getResult() != null) {
+      writer.writeLong(queryResult.getResult().size());
+      queryResult.getResult().forEach(parkingSpace -> writeParkingSpace(writer, parkingSpace));
+    }
+    writer.writeOptionalString(queryResult.getNextCursor());
+  }
+
+  private static ParkingSpaceQueryResult readParkingSpaceQueryResult(Reader reader) {
+    int fields = reader.readByte();
+    List<ParkingSpace> result = null;
+    if (Reader.isSet(fields, 0)) {
+      int size = (int) reader.readLong();
+      result = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        result.add(readParkingSpace(reader));
+      }
+    }
+    return new ParkingSpaceQueryResult(result, reader.readOptionalString(fields, 1));
+  }
+
+  private static void writeParkingResult(Writer writer, ParkingResult result) {
+    writer.writeFields(result.getParking(), result.getRejection());
+    if (result.getParking() != null) {
+      writeParking(writer, result.getParking());
+    }
+    writer.writeOptionalEnum(result.getRejection());
+  }
+
+  private static ParkingResult readParkingResult(Reader reader) {
+    int fields = reader.readByte();
+    return new ParkingResult(
+      Reader.isSet(fields, 0) ? readParking(reader) : null,
+      reader.readOptionalEnum(fields, 1, REJECTIONS));
+  }
+
+  private static void writeParkingSpaceEvent(Writer writer, ParkingSpaceEvent event) {
+    writer.writeFields(event.getKind(), event.getParkingSpace());
+    writer.writeOptionalEnum(event.getKind());
+    if (event.getParkingSpace() != null) {
+      writeParkingSpace(writer, event.getParkingSpace());
+    }
+  }
+
+  private static ParkingSpaceEvent readParkingSpaceEvent(Reader reader) {
+    int fields = reader.readByte();
+    return new ParkingSpaceEvent(
+      reader.readOptionalEnum(fields, 0, EVENT_KINDS),
+      Reader.isSet(fields, 1) ? readParkingSpace(reader) : null);
+  }
+
+  private static void writeParkingSpaceStats(Writer writer, ParkingSpaceStats stats) {
+    writer.writeFields(stats.getType());
+    writer.writeOptionalEnum(stats.getType());
+    writer.writeLong(stats.getAvailable());
+    writer.writeLong(stats.getOccupied());
+  }
+
+  private static ParkingSpaceStats readParkingSpaceStats(Reader reader) {
+    int fields = reader.readByte();
+    return new ParkingSpaceStats(
+      reader.readOptionalEnum(fields, 0, TYPES),
+      reader.readLong(),
+      reader.readLong());
+  }
+
+  private static void writeParkingSpaceStatsQuery(Writer writer, ParkingSpaceStatsQuery query) {
+    writer.writeFields(query.getType());
+    writer.writeOptionalEnum(query.getType());
+    writer.writeLong(query.getPartition());
+  }
+
+  private static ParkingSpaceStatsQuery readParkingSpaceStatsQuery(Reader reader) {
+    int fields = reader.readByte();
+    return new ParkingSpaceStatsQuery(
+      reader.readOptionalEnum(fields, 0, TYPES),
+      (int) reader.readLong());
+  }
+
+  private static void writeIds(Writer writer, List<Long> ids) {
+    writer.writeFields(ids);
+    if (ids != null) {
+      writer.writeLong(ids.size());
+      ids.forEach(writer::writeLong);
+    }
+  }
+
+  private static List<Long> readIds(Reader reader) {
+    int fields = reader.readByte();
+    if (!Reader.isSet(fields, 0)) {
+      return null;
+    }
+    int size = (int) reader.readLong();
+    List<Long> ids = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      ids.add(reader.readLong());
+    }
+    return ids;
+  }
+
+  private static void writeParkingBatchResult(Writer writer, ParkingBatchResult batchResult) {
+    writer.writeFields(batchResult.getResults());
+    if (batchResult.getResults() != null) {
+      writer.writeLong(batchResult.getResults().size());
+      batchResult.getResults().forEach(result -> writeParkingResult(writer, result));
+    }
+  }
+
+  private static ParkingBatchResult readParkingBatchResult(Reader reader) {
+    int fields = reader.readByte();
+    List<ParkingResult> results = null;
+    if (Reader.isSet(fields, 0)) {
+      int size = (int) reader.readLong();
+      results = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        results.add(readParkingResult(reader));
+      }
+    }
+    return new ParkingBatchResult(results);
+  }
+
+  private static final class Writer {
+
+    private byte[] buffer = new byte[256];
+    private int position;
+
+    private void reset() {
+      position = 0;
+    }
+
+    private byte[] toByteArray() {
+      return Arrays.copyOf(buffer, position);
+    }
+
+    private void ensureCapacity(int length) {
+      if (position + length > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+      }
+    }
+
+    private void writeByte(int value) {
+      ensureCapacity(1);
+      buffer[position++] = (byte) value;
+    }
+
+    // Bitmask of the non-null fields of a record
+    private void writeFields(Object... fields) {
+      int mask = 0;
+      for (int i = 0; i < fields.length; i++) {
+        if (fields[i] != null) {
+          mask |= 1 << i;
+        }
+      }
+      writeByte(mask);
+    }
+
+    private void writeLong(long value) {
+      ensureCapacity(10);
+      long zigzag = (value << 1) ^ (value >> 63);
+      while ((zigzag & ~0x7FL) != 0) {
+        buffer[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+        zigzag >>>= 7;
+      }
+      buffer[position++] = (byte) zigzag;
+    }
+
+    private void writeDouble(double value) {
+      ensureCapacity(8);
+      long bits = Double.doubleToRawLongBits(value);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        buffer[position++] = (byte) (bits >>> shift);
+      }
+    }
+
+    private void writeOptionalLong(Long value) {
+      if (value != null) {
+        writeLong(value);
+      }
+    }
+
+    private void writeOptionalEnum(Enum<?> value) {
+      if (value != null) {
+        writeByte(value.ordinal());
+      }
+    }
+
+    private void writeOptionalString(String value) {
+      if (value != null) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeLong(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+      }
+    }
+
+    private void writeOptionalDateTime(LocalDateTime value) {
+      if (value != null) {
+        writeLong(value.toEpochSecond(ZoneOffset.UTC));
+        writeLong(value.getNano());
+      }
+    }
+  }
+
+  private static final class Reader {
+
+    private final byte[] buffer;
+    private int position;
+
+    private Reader(byte[] buffer) {
+      this.buffer = buffer;
+    }
+
+    private static boolean isSet(int fields, int index) {
+      return (fields & (1 << index)) != 0;
+    }
+
+    private byte readByte() {
+      return buffer[position++];
+    }
+
+    private long readLong() {
+      long zigzag = 0;
+      for (int shift = 0; ; shift += 7) {
+        byte b = buffer[position++];
+        zigzag |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          break;
+        }
+      }
+      return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    private double readDouble() {
+      long bits = 0;
+      for (int i = 0; i < 8; i++) {
+        bits = (bits << 8) | (buffer[position++] & 0xFF);
+      }
+      return Double.longBitsToDouble(bits);
+    }
+
+    private Long readOptionalLong(int fields, int index) {
+      return isSet(fields, index) ? readLong() : null;
+    }
+
+    private <E extends Enum<E>> E readOptionalEnum(int fields, int index, E[] values) {
+      return isSet(fields, index) ? values[readByte()] : null;
+    }
+
+    private String readOptionalString(int fields, int index) {
+      if (!isSet(fields, index)) {
+        return null;
+      }
+      int length = (int) readLong();
+      String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return value;
+    }
+
+    private LocalDateTime readOptionalDateTime(int fields, int index) {
+      if (!isSet(fields, index)) {
+        return null;
+      }
+      long epochSecond = readLong();
+      return LocalDateTime.ofEpochSecond(epochSecond, (int) readLong(), ZoneOffset.UTC);
+    }
+  }
+}
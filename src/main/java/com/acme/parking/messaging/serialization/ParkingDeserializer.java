@@ -0,0 +1,37 @@
+package com.acme.parking.messaging.serialization;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.util.Map;
+
+/**
+ * Kafka value deserializer reading both {@link ParkingBinaryFormat} and JSON messages,
+ * so that binary serialization can be enabled topic by topic, see {@link ParkingSerializer}.
+ */
+public class ParkingDeserializer implements Deserializer<Object> {
+
+  private final JsonDeserializer<Object> jsonDeserializer = new JsonDeserializer<>();
+
+  @Override
+  public void configure(Map<String, ?> configs, boolean isKey) {
+    jsonDeserializer.configure(configs, isKey);
+  }
+
+  @Override
+  public Object deserialize(String topic, byte[] data) {
+    return ParkingBinaryFormat.isBinary(data) ? ParkingBinaryFormat.decode(data) : jsonDeserializer.deserialize(topic, data);
+  }
+
+  @Override
+  public Object deserialize(String topic, Headers headers, byte[] data) {
+    return ParkingBinaryFormat.isBinary(data) ? ParkingBinaryFormat.decode(data)
+      : jsonDeserializer.deserialize(topic, headers, data);
+  }
+
+  @Override
+  public void close() {
+    jsonDeserializer.close();
+  }
+}
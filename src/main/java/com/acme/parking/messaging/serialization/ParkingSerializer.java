@@ -0,0 +1,65 @@
+package com.acme.parking.messaging.serialization;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Kafka value serializer writing parking messages in {@link ParkingBinaryFormat} on the topics listed in
+ * {@value #BINARY_TOPICS} (comma separated, a trailing '*' matching any topic with the given prefix).
+ * Other topics and other message types are written in JSON.
+ */
+public class ParkingSerializer implements Serializer<Object> {
+
+  public static final String BINARY_TOPICS = "parking.binary.topics";
+
+  private final JsonSerializer<Object> jsonSerializer = new JsonSerializer<>();
+
+  private List<String> binaryTopics = Collections.emptyList();
+
+  @Override
+  public void configure(Map<String, ?> configs, boolean isKey) {
+    jsonSerializer.configure(configs, isKey);
+    Object topics = configs.get(BINARY_TOPICS);
+    if (topics != null) {
+      binaryTopics = Arrays.stream(topics.toString().split(","))
+        .map(String::trim)
+        .filter(topic -> !topic.isEmpty())
+        .collect(Collectors.toList());
+    }
+  }
+
+  @Override
+  public byte[] serialize(String topic, Object data) {
+    return serialize(topic, null, data);
+  }
+
+  @Override
+  public byte[] serialize(String topic, Headers headers, Object data) {
+    if (data != null && isBinaryTopic(topic) && ParkingBinaryFormat.supports(data)) {
+      return ParkingBinaryFormat.encode(data);
+    }
+    return headers == null ? jsonSerializer.serialize(topic, data) : jsonSerializer.serialize(topic, headers, data);
+  }
+
+  private boolean isBinaryTopic(String topic) {
+    for (String binaryTopic : binaryTopics) {
+      if (binaryTopic.endsWith("*") ? topic.startsWith(binaryTopic.substring(0, binaryTopic.length() - 1))
+        : topic.equals(binaryTopic)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void close() {
+    jsonSerializer.close();
+  }
+}
@@ -0,0 +1,65 @@
+package com.acme.parking.monitoring;
+
+import com.acme.parking.billing.PricingRuleSet;
+import com.acme.parking.billing.PricingRules;
+import com.acme.parking.billing.model.PricingStrategy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Actuator endpoint exposing the pricing rules in use on this node, and replacing them.
+ * Available at /actuator/pricingrules: a POST with any of rules (DRL), strategy, fixedAmount and pricePerSecond
+ * replaces the given parts, returning the new version once rules are compiled & in use.
+ */
+@Component
+@Endpoint(id = "pricingrules")
+public class PricingRulesEndpoint {
+
+  private final PricingRules pricingRules;
+
+  @Autowired
+  public PricingRulesEndpoint(PricingRules pricingRules) {
+    this.pricingRules = pricingRules;
+  }
+
+  @ReadOperation
+  public Map<String, Object> pricingRules() {
+    return describe(pricingRules.current());
+  }
+
+  @WriteOperation
+  public Map<String, Object> load(@Nullable String rules, @Nullable String strategy, @Nullable Double fixedAmount,
+                                  @Nullable Double pricePerSecond) {
+    PricingRuleSet current = pricingRules.current();
+    PricingStrategy pricingStrategy = new PricingStrategy();
+    pricingStrategy.setStrategy(strategy != null ? strategy : current.getPricingStrategy().getStrategy());
+    pricingStrategy.setFixedAmount(fixedAmount != null ? fixedAmount : current.getPricingStrategy().getFixedAmount());
+    pricingStrategy.setPricePerSecond(pricePerSecond != null ? pricePerSecond
+      : current.getPricingStrategy().getPricePerSecond());
+    try {
+      return describe(pricingRules.load(rules != null ? rules : current.getRules(), pricingStrategy).join());
+    } catch (CompletionException e) {
+      // Rejected rules or strategy, mapped by the GlobalExceptionHandler
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private static Map<String, Object> describe(PricingRuleSet ruleSet) {
+    Map<String, Object> description = new LinkedHashMap<>();
+    description.put("version", ruleSet.getVersion());
+    description.put("pricingStrategy", ruleSet.getPricingStrategy());
+    description.put("rules", ruleSet.getRules());
+    return description;
+  }
+}
@@ -0,0 +1,53 @@
+package com.acme.parking.monitoring;
+
+import com.acme.parking.inventory.ParkingSpaceInitializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint reporting how long the application took to get ready, and how parking spaces were initialized.
+ * Available at /actuator/startup
+ */
+@Component
+@Endpoint(id = "startup")
+public class StartupEndpoint {
+
+  private static final Logger log = LoggerFactory.getLogger(StartupEndpoint.class);
+
+  private final ParkingSpaceInitializer parkingSpaceInitializer;
+
+  private volatile Long readyMillis;
+
+  @Autowired
+  public StartupEndpoint(ParkingSpaceInitializer parkingSpaceInitializer) {
+    this.parkingSpaceInitializer = parkingSpaceInitializer;
+  }
+
+  // Last ready listener, so that the availability index build is accounted for
+  @EventListener(ApplicationReadyEvent.class)
+  @Order(Ordered.LOWEST_PRECEDENCE)
+  public void applicationReady() {
+    readyMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+    log.info("Application ready in {} ms", readyMillis);
+  }
+
+  @ReadOperation
+  public Map<String, Object> startup() {
+    Map<String, Object> startup = new LinkedHashMap<>();
+    startup.put("readyMillis", readyMillis);
+    startup.put("parkingSpaceSeeding", parkingSpaceInitializer.getLastSeeding());
+    return startup;
+  }
+}
@@ -1,5 +1,6 @@
 package com.acme.parking.properties;
 
+import com.acme.parking.billing.PricingCalculator;
 import com.acme.parking.billing.model.PricingStrategy;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -7,6 +8,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.validation.annotation.Validated;
 
 import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
 
 /**
  * Property manager class for user-defined values
@@ -26,4 +28,45 @@ public class AppProperties {
 
   @Min(0)
   private int typeKW50Count;
+
+  @Min(1)
+  private int maxInFlightRequests = 1000;
+
+  // Successful availability lookups are shared with identical ones arriving up to this long after their reply,
+  // in addition to those arriving while they are in flight
+  @Min(0)
+  private int lookupFreshnessMs;
+
+  @Min(1)
+  private int seedingBatchSize = 1000;
+
+  // Ids allocated per sequence read, for each entity, see PooledSequenceGenerator
+  @Min(1)
+  private int idAllocationSize = 50;
+
+  @Min(1)
+  private int pricingSessionPoolSize = 4;
+
+  @NotNull
+  private PricingCalculator.Engine pricingEngine = PricingCalculator.Engine.DROOLS;
+
+  // Parkings completed with a pending billing, priced & written back afterwards, rather than priced on completion
+  private boolean asyncBillingEnabled;
+
+  // Pending billings of parkings completed longer ago than this are resent, this often
+  @Min(1)
+  private int pendingBillingSweepIntervalMs = 60000;
+
+  // Billing requests consumed in batches, priced by a single rule session, rather than one by one
+  private boolean billingBatchEnabled;
+
+  @Min(1)
+  private int billingBatchMaxSize = 500;
+
+  // Longest wait for a batch of billing requests to fill up
+  @Min(0)
+  private int billingBatchLingerMs = 20;
+
+  // Directory watched for pricing rules (pricingRules.drl) and strategy (pricing.properties) replacing the packaged ones
+  private String pricingRulesDirectory;
 }
@@ -0,0 +1,41 @@
+package com.acme.parking.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.time.Duration;
+
+/**
+ * Availability stream pushed to entrance displays & mobile apps, fed by the local view of the parking spaces
+ *
+ * @see com.acme.parking.api.AvailabilityStream
+ */
+@Component
+@ConfigurationProperties("app.availability-stream")
+@Validated
+@Data
+public class AvailabilityStreamProperties {
+
+  // Changes in between are coalesced, each subscriber receiving the latest availability only
+  @Min(1)
+  private int maxUpdatesPerSecond = 2;
+
+  @Min(1)
+  private int maxSubscribers = 10000;
+
+  // Threads writing updates to the subscribers' connections
+  @Min(1)
+  private int senderThreads = 4;
+
+  // Subscribers reconnect once their stream times out
+  @NotNull
+  private Duration timeout = Duration.ofMinutes(30);
+
+  // Subscribers still not done reading an update after this long are disconnected
+  @NotNull
+  private Duration slowSubscriberTimeout = Duration.ofSeconds(5);
+}
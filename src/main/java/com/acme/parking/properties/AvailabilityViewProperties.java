@@ -0,0 +1,40 @@
+package com.acme.parking.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.time.Duration;
+
+/**
+ * Parking space event topic & local view of the parking spaces on API nodes, only available with the Kafka transport
+ *
+ * @see com.acme.parking.api.ParkingSpaceView
+ */
+@Component
+@ConfigurationProperties("app.availability-view")
+@Validated
+@Data
+public class AvailabilityViewProperties {
+
+  // Parking space reads served by the local view rather than by the inventory
+  private boolean enabled;
+
+  // Compacted topic of parking space events, keyed by parking space id
+  @NotEmpty
+  private String topic = "parkingSpaceEvents";
+
+  @Min(1)
+  private int partitions = 1;
+
+  @Min(1)
+  private int replicas = 1;
+
+  // Reads fall back to the inventory when the view may miss events published longer ago
+  @NotNull
+  private Duration maxStaleness = Duration.ofSeconds(1);
+}
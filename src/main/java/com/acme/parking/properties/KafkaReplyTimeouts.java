@@ -0,0 +1,34 @@
+package com.acme.parking.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Deadlines for Kafka request-reply operations, after which the pending request fails with a reply timeout
+ */
+@Component
+@ConfigurationProperties(KafkaReplyTimeouts.KAFKA_REPLY_TIMEOUT_PREFIX)
+@Data
+public class KafkaReplyTimeouts {
+
+  public static final String KAFKA_REPLY_TIMEOUT_PREFIX = "kafka.timeout";
+
+  private Duration parkingSpaceById = Duration.ofSeconds(5);
+  private Duration parkingSpacesByIds = Duration.ofSeconds(5);
+  private Duration parkingSpacesQuery = Duration.ofSeconds(5);
+  private Duration nextAvailableParkingSpace = Duration.ofSeconds(5);
+  private Duration parkingSpaceStats = Duration.ofSeconds(5);
+
+  private Duration parkingById = Duration.ofSeconds(5);
+  private Duration parkingsByIds = Duration.ofSeconds(5);
+  private Duration unflushedParkingsByIds = Duration.ofSeconds(5);
+  private Duration parkingStart = Duration.ofSeconds(5);
+  private Duration parkingCompletion = Duration.ofSeconds(5);
+  private Duration parkingStartBatch = Duration.ofSeconds(10);
+  private Duration parkingCompletionBatch = Duration.ofSeconds(15);
+  private Duration billingCalculation = Duration.ofSeconds(5);
+
+}
@@ -6,6 +6,7 @@ import org.springframework.stereotype.Component;
 
 /**
  * Placeholders for Kafka reply topics
+ * Replies of all operations are multiplexed on a single topic per node, see {@link com.acme.parking.messaging.RequestReplyGateway}
  */
 @Component
 @ConfigurationProperties(KafkaReplyTopics.KAFKA_REPLY_TOPIC_PREFIX)
@@ -14,13 +15,6 @@ public class KafkaReplyTopics {
 
   public static final String KAFKA_REPLY_TOPIC_PREFIX = "kafka.topic.reply";
 
-  private String parkingSpaceById;
-  private String parkingSpacesQuery;
-  private String nextAvailableParkingSpace;
-
-  private String parkingById;
-  private String parkingStart;
-  private String parkingCompletion;
-  private String billingCalculation;
+  private String gateway;
 
 }
@@ -15,12 +15,20 @@ public class KafkaRequestTopics {
   public static final String KAFKA_REQUEST_TOPIC_PREFIX = "kafka.topic.request";
 
   private String parkingSpaceById;
+  private String parkingSpacesByIds;
   private String parkingSpacesQuery;
   private String nextAvailableParkingSpace;
+  private String parkingSpaceStats;
 
   private String parkingById;
+  private String parkingsByIds;
+  private String unflushedParkingsByIds;
   private String parkingStart;
   private String parkingCompletion;
+  private String parkingStartBatch;
+  private String parkingCompletionBatch;
   private String billingCalculation;
+  private String pendingBillingCalculation;
+  private String billingWriteBack;
 
 }
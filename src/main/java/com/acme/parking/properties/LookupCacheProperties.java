@@ -0,0 +1,29 @@
+package com.acme.parking.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+
+/**
+ * Cache of the parkings & parking spaces looked up by API nodes
+ *
+ * @see com.acme.parking.api.LookupCache
+ */
+@Component
+@ConfigurationProperties("app.lookup-cache")
+@Validated
+@Data
+public class LookupCacheProperties {
+
+  private boolean enabled = true;
+
+  // Beyond these sizes, the entries least likely to be looked up again are evicted (W-TinyLFU)
+  @Min(1)
+  private long maxParkings = 100_000;
+
+  @Min(1)
+  private long maxParkingSpaces = 10_000;
+}
@@ -0,0 +1,34 @@
+package com.acme.parking.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.Pattern;
+
+/**
+ * Selection & sizing of the transport used between the API and the controllers
+ *
+ * @see com.acme.parking.messaging.RequestReplyTransport
+ */
+@Component
+@ConfigurationProperties("app.messaging")
+@Validated
+@Data
+public class MessagingProperties {
+
+  @Pattern(regexp = "kafka|in-process")
+  private String transport = "kafka";
+
+  @Min(1)
+  private int inProcessThreads = 16;
+
+  @Min(1)
+  private int inProcessQueueCapacity = 1000;
+
+  public boolean isKafkaTransport() {
+    return "kafka".equals(transport);
+  }
+}
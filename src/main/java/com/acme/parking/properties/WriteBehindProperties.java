@@ -0,0 +1,37 @@
+package com.acme.parking.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.time.Duration;
+
+/**
+ * Write-behind persistence of the parking spaces & parkings owned by the inventory
+ *
+ * @see com.acme.parking.inventory.WriteBehindInventory
+ */
+@Component
+@ConfigurationProperties("app.write-behind")
+@Validated
+@Data
+public class WriteBehindProperties {
+
+  // Parking starts & completions acknowledged once appended to the local log, flushed to the database afterwards
+  private boolean enabled;
+
+  // Local log of the changes not flushed yet, replayed on startup: one per node
+  @NotEmpty
+  private String logDirectory = "inventory-log";
+
+  @NotNull
+  private Duration flushInterval = Duration.ofMillis(100);
+
+  // Parking spaces or parkings written per flush transaction
+  @Min(1)
+  private int maxBatchSize = 500;
+}
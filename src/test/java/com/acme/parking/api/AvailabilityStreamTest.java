@@ -0,0 +1,153 @@
+package com.acme.parking.api;
+
+import com.acme.parking.api.model.Availability;
+import com.acme.parking.exception.AvailabilityStreamUnavailableException;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import com.acme.parking.inventory.model.ParkingSpaceEvent;
+import com.acme.parking.properties.AvailabilityStreamProperties;
+import com.acme.parking.properties.AvailabilityViewProperties;
+import com.acme.parking.properties.MessagingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class AvailabilityStreamTest {
+
+  private final List<Runnable> sends = new ArrayList<>();
+  private AvailabilityViewProperties viewProperties;
+  private AvailabilityStreamProperties properties;
+  private SimpleMeterRegistry meterRegistry;
+  private ParkingSpaceView view;
+  private AvailabilityStream stream;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    viewProperties = new AvailabilityViewProperties();
+    viewProperties.setEnabled(true);
+    properties = new AvailabilityStreamProperties();
+    meterRegistry = new SimpleMeterRegistry();
+    view = new ParkingSpaceView(mock(ConsumerFactory.class), viewProperties, new MessagingProperties(), meterRegistry);
+    for (long id = 1; id <= 3; id++) {
+      view.apply(ParkingSpaceEvent.snapshot(new ParkingSpace(id, Type.GASOLINE)));
+    }
+    view.apply(ParkingSpaceEvent.snapshot(new ParkingSpace(4L, Type.KW20)));
+    view.caughtUp(System.currentTimeMillis());
+    stream = new AvailabilityStream(view, properties, meterRegistry, sends::add);
+  }
+
+  @Test
+  void sendsCurrentAvailabilityThenCoalescedChangesOfItsType() {
+    RecordingEmitter gasoline = subscribe(Type.GASOLINE);
+    RecordingEmitter kw20 = subscribe(Type.KW20);
+    runSends();
+
+    view.apply(ParkingSpaceEvent.parkingStarted(new ParkingSpace(1L, Type.GASOLINE), new Parking()));
+    view.apply(ParkingSpaceEvent.parkingStarted(new ParkingSpace(2L, Type.GASOLINE), new Parking()));
+    stream.check();
+    runSends();
+    stream.check();
+    runSends();
+
+    assertEquals(List.of(new Availability(Type.GASOLINE, 3, 1L), new Availability(Type.GASOLINE, 1, 3L)), gasoline.sent);
+    assertEquals(List.of(new Availability(Type.KW20, 1, 4L)), kw20.sent);
+  }
+
+  @Test
+  void keepsLatestAvailabilityForSlowSubscribersThenDropsThem() {
+    RecordingEmitter gasoline = subscribe(Type.GASOLINE);
+
+    // First update still being sent
+    view.apply(ParkingSpaceEvent.parkingStarted(new ParkingSpace(1L, Type.GASOLINE), new Parking()));
+    stream.check();
+    runSends();
+    assertEquals(List.of(new Availability(Type.GASOLINE, 2, 2L)), gasoline.sent);
+
+    properties.setSlowSubscriberTimeout(Duration.ZERO);
+    subscribe(Type.GASOLINE);
+    sleep();
+    view.apply(ParkingSpaceEvent.parkingStarted(new ParkingSpace(2L, Type.GASOLINE), new Parking()));
+    stream.check();
+
+    assertEquals(1, stream.getSubscriberCount());
+    assertEquals(1, meterRegistry.counter(AvailabilityStream.DROPPED_METRIC).count());
+  }
+
+  @Test
+  void completesDroppedSubscribersOnceTheirSendReturns() {
+    properties.setSlowSubscriberTimeout(Duration.ZERO);
+    RecordingEmitter gasoline = subscribe(Type.GASOLINE);
+    sleep();
+    stream.check();
+
+    runSends();
+
+    assertTrue(gasoline.completed);
+    assertTrue(gasoline.sent.isEmpty());
+    assertEquals(0, stream.getSubscriberCount());
+  }
+
+  @Test
+  void rejectsSubscriptionsWithoutViewOrAboveLimit() {
+    properties.setMaxSubscribers(1);
+    subscribe(Type.GASOLINE);
+    assertThrows(AvailabilityStreamUnavailableException.class, () -> subscribe(Type.KW50));
+
+    viewProperties.setEnabled(false);
+    AvailabilityStream disabled = new AvailabilityStream(new ParkingSpaceView(mock(ConsumerFactory.class),
+      viewProperties, new MessagingProperties(), meterRegistry), properties, new SimpleMeterRegistry(), sends::add);
+    assertThrows(AvailabilityStreamUnavailableException.class, () -> disabled.subscribe(Type.GASOLINE, new RecordingEmitter()));
+  }
+
+  private RecordingEmitter subscribe(Type type) {
+    RecordingEmitter emitter = new RecordingEmitter();
+    stream.subscribe(type, emitter);
+    return emitter;
+  }
+
+  private void runSends() {
+    List<Runnable> pending = new ArrayList<>(sends);
+    sends.clear();
+    pending.forEach(Runnable::run);
+  }
+
+  // Lets the slow subscriber timeout elapse
+  private static void sleep() {
+    try {
+      Thread.sleep(5);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static class RecordingEmitter extends SseEmitter {
+
+    private final List<Availability> sent = new ArrayList<>();
+
+    private boolean completed;
+
+    @Override
+    public void send(SseEventBuilder builder) {
+      builder.build().stream()
+        .map(DataWithMediaType::getData)
+        .filter(Availability.class::isInstance)
+        .forEach(data -> sent.add((Availability) data));
+    }
+
+    @Override
+    public synchronized void complete() {
+      completed = true;
+    }
+  }
+}
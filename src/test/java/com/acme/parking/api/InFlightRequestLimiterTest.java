@@ -0,0 +1,60 @@
+package com.acme.parking.api;
+
+import com.acme.parking.exception.ServiceOverloadedException;
+import com.acme.parking.properties.AppProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InFlightRequestLimiterTest {
+
+  private InFlightRequestLimiter limiter;
+
+  @BeforeEach
+  void setUp() {
+    AppProperties config = new AppProperties();
+    config.setMaxInFlightRequests(2);
+    limiter = new InFlightRequestLimiter(config);
+  }
+
+  @Test
+  void rejectsRequestsAboveLimit() {
+    CompletableFuture<String> first = new CompletableFuture<>();
+    CompletableFuture<String> second = new CompletableFuture<>();
+    limiter.submit(() -> first);
+    limiter.submit(() -> second);
+    assertEquals(2, limiter.getInFlightRequests());
+
+    CompletableFuture<String> rejected = limiter.submit(() -> CompletableFuture.completedFuture("rejected"));
+    ExecutionException exception = assertThrows(ExecutionException.class, rejected::get);
+    assertTrue(exception.getCause() instanceof ServiceOverloadedException);
+  }
+
+  @Test
+  void releasesPermitOnCompletion() throws Exception {
+    CompletableFuture<String> pending = new CompletableFuture<>();
+    CompletableFuture<String> result = limiter.submit(() -> pending);
+    assertEquals(1, limiter.getInFlightRequests());
+
+    pending.complete("done");
+    assertEquals("done", result.get());
+    assertEquals(0, limiter.getInFlightRequests());
+
+    CompletableFuture<String> failing = new CompletableFuture<>();
+    limiter.submit(() -> failing);
+    failing.completeExceptionally(new IllegalStateException());
+    assertEquals(0, limiter.getInFlightRequests());
+  }
+
+  @Test
+  void releasesPermitWhenRequestCannotBeSent() {
+    assertThrows(IllegalStateException.class, () -> limiter.submit(() -> {
+      throw new IllegalStateException();
+    }));
+    assertEquals(0, limiter.getInFlightRequests());
+  }
+}
@@ -0,0 +1,122 @@
+package com.acme.parking.api;
+
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import com.acme.parking.inventory.model.ParkingSpaceEvent;
+import com.acme.parking.properties.AvailabilityViewProperties;
+import com.acme.parking.properties.LookupCacheProperties;
+import com.acme.parking.properties.MessagingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.ConsumerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class LookupCacheTest {
+
+  private final AtomicInteger lookups = new AtomicInteger();
+  private SimpleMeterRegistry meterRegistry;
+  private ParkingSpaceView view;
+  private LookupCache cache;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    AvailabilityViewProperties viewProperties = new AvailabilityViewProperties();
+    viewProperties.setEnabled(true);
+    meterRegistry = new SimpleMeterRegistry();
+    view = new ParkingSpaceView(mock(ConsumerFactory.class), viewProperties, new MessagingProperties(), meterRegistry);
+    cache = new LookupCache(new LookupCacheProperties(), view, new MessagingProperties(), meterRegistry);
+  }
+
+  @Test
+  void keepsCompletedParkingsAndInvalidatesOngoingOnesOnEvents() {
+    Parking ongoing = parking(1L, 3L, null);
+    Parking completed = parking(2L, 4L, new Billing("EUR", 5.0));
+
+    cache.parking(1L, lookup(ongoing)).join();
+    cache.parking(2L, lookup(completed)).join();
+    assertEquals(ongoing, cache.parking(1L, lookup(ongoing)).join());
+    assertEquals(completed, cache.parking(2L, lookup(completed)).join());
+    assertEquals(2, lookups.get());
+
+    view.apply(ParkingSpaceEvent.parkingCompleted(new ParkingSpace(3L, Type.KW20)));
+    view.apply(ParkingSpaceEvent.parkingCompleted(new ParkingSpace(4L, Type.KW20)));
+    cache.parking(1L, lookup(ongoing)).join();
+    cache.parking(2L, lookup(completed)).join();
+
+    assertEquals(3, lookups.get());
+    assertEquals(3, meterRegistry.get("cache.gets").tag("cache", LookupCache.PARKINGS).tag("result", "hit")
+      .functionCounter().count());
+  }
+
+  @Test
+  void neverServesOngoingParkingsToComplete() {
+    Parking ongoing = parking(1L, 3L, null);
+    cache.parking(1L, lookup(ongoing)).join();
+
+    cache.parkingToComplete(1L, lookup(ongoing)).join();
+    cache.completed(parking(1L, 3L, new Billing("EUR", 5.0)));
+
+    assertEquals(2, lookups.get());
+    assertNotNull(cache.parkingToComplete(1L, lookup(ongoing)).join().getBilling());
+    assertEquals(2, lookups.get());
+  }
+
+  @Test
+  void skipsPendingBillingsAndLookupsRepliedAcrossAnEvent() {
+    Parking pending = parking(1L, 3L, Billing.pending());
+    cache.parking(1L, lookup(pending)).join();
+    cache.parking(1L, lookup(pending)).join();
+    assertEquals(2, lookups.get());
+
+    CompletableFuture<ParkingSpace> reply = new CompletableFuture<>();
+    CompletableFuture<ParkingSpace> parkingSpace = cache.parkingSpace(5L, () -> reply);
+    view.apply(ParkingSpaceEvent.parkingCompleted(new ParkingSpace(5L, Type.KW20)));
+    reply.complete(new ParkingSpace(5L, Type.KW20));
+    parkingSpace.join();
+
+    cache.parkingSpace(5L, () -> CompletableFuture.completedFuture(new ParkingSpace(5L, Type.KW20))).join();
+    assertEquals(0, meterRegistry.get("cache.gets").tag("cache", LookupCache.PARKING_SPACES).tag("result", "hit")
+      .functionCounter().count());
+  }
+
+  @Test
+  void onlyCachesCompletedParkingsWithoutInvalidation() {
+    cache = new LookupCache(new LookupCacheProperties(), mock(ParkingSpaceView.class), new MessagingProperties(),
+      new SimpleMeterRegistry());
+    Parking ongoing = parking(1L, 3L, null);
+
+    cache.parking(1L, lookup(ongoing)).join();
+    cache.parking(1L, lookup(ongoing)).join();
+    cache.parkingSpace(3L, () -> {
+      lookups.incrementAndGet();
+      return CompletableFuture.completedFuture(new ParkingSpace(3L, Type.KW20));
+    }).join();
+
+    assertEquals(3, lookups.get());
+  }
+
+  private Supplier<CompletableFuture<Parking>> lookup(Parking parking) {
+    return () -> {
+      lookups.incrementAndGet();
+      return CompletableFuture.completedFuture(parking);
+    };
+  }
+
+  private static Parking parking(Long id, Long parkingSpaceId, Billing billing) {
+    Parking parking = new Parking();
+    parking.setId(id);
+    parking.setParkingSpaceId(parkingSpaceId);
+    parking.setBilling(billing);
+    return parking;
+  }
+}
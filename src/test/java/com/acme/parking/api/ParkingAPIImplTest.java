@@ -1,14 +1,60 @@
 package com.acme.parking.api;
 
+import com.acme.parking.api.model.BatchItem;
+import com.acme.parking.api.model.IdBatch;
+import com.acme.parking.api.model.ParkingBatchResult;
+import com.acme.parking.api.model.ParkingCompletion;
+import com.acme.parking.api.model.ParkingCompletionBatch;
+import com.acme.parking.api.model.ParkingResult;
+import com.acme.parking.api.model.ParkingResult.Rejection;
+import com.acme.parking.api.model.ParkingStartBatch;
+import com.acme.parking.api.model.UnflushedParkingsQuery;
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.exception.InvalidParkingIdException;
+import com.acme.parking.exception.ParkingAlreadyCompletedException;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.messaging.Operation;
+import com.acme.parking.messaging.RequestReplyGateway;
+import com.acme.parking.properties.AppProperties;
+import com.acme.parking.properties.LookupCacheProperties;
+import com.acme.parking.properties.MessagingProperties;
+import com.acme.parking.properties.WriteBehindProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 class ParkingAPIImplTest {
 
+  private RequestReplyGateway gateway;
+  private WriteBehindProperties writeBehindProperties;
+  private ParkingAPIImpl parkingAPI;
+
   @BeforeEach
   void setUp() {
+    gateway = mock(RequestReplyGateway.class);
+    // Single partition
+    when(gateway.groupByPartition(any(), any(), any())).then(invocation -> List.of(invocation.<List<?>>getArgument(1)));
+    writeBehindProperties = new WriteBehindProperties();
+    parkingAPI = new ParkingAPIImpl(gateway, new InFlightRequestLimiter(new AppProperties()),
+      new LookupCache(new LookupCacheProperties(), mock(ParkingSpaceView.class), new MessagingProperties(),
+        new SimpleMeterRegistry()), writeBehindProperties);
   }
 
   @Test
@@ -26,4 +72,116 @@ class ParkingAPIImplTest {
   @Test
   void getParkingSpace() {
   }
-}
\ No newline at end of file
+
+  @Test
+  void endParkingRejectsCachedCompletedParkingsWithoutLookup() {
+    Parking completed = parking(5L, 2L);
+    completed.setBilling(new Billing("EUR", 5.0));
+    when(gateway.sendAndReceive(Operation.PARKING_BY_ID, 5L)).thenReturn(CompletableFuture.completedFuture(completed));
+
+    assertEquals(completed, parkingAPI.getParkingInformation(5L).join().getBody());
+    CompletionException exception = assertThrows(CompletionException.class, () -> parkingAPI.endParking(5L).join());
+
+    assertTrue(exception.getCause() instanceof ParkingAlreadyCompletedException);
+    verify(gateway, times(1)).sendAndReceive(Operation.PARKING_BY_ID, 5L);
+  }
+
+  @Test
+  void endParkingRejectsParkingsCompletedSinceLookedUp() {
+    when(gateway.sendAndReceive(Operation.PARKING_BY_ID, 5L)).thenReturn(CompletableFuture.completedFuture(parking(5L, 2L)));
+    when(gateway.sendAndReceive(Operation.PARKING_COMPLETION, new ParkingCompletion(5L), "2"))
+      .thenReturn(CompletableFuture.completedFuture(ParkingResult.rejected(Rejection.PARKING_ALREADY_COMPLETED)));
+
+    CompletionException exception = assertThrows(CompletionException.class, () -> parkingAPI.endParking(5L).join());
+
+    assertTrue(exception.getCause() instanceof ParkingAlreadyCompletedException);
+  }
+
+  @Test
+  void startParkingsReportsEachParkingSpace() {
+    Parking invalid = new Parking();
+    invalid.setParkingSpaceId(2L);
+    invalid.setDurationSeconds(60L);
+    Parking created = parking(8L, 1L);
+    when(gateway.sendAndReceive(Operation.PARKING_START_BATCH, new ParkingStartBatch(List.of(1L, 3L))))
+      .thenReturn(CompletableFuture.completedFuture(new ParkingBatchResult(List.of(ParkingResult.accepted(created),
+        ParkingResult.rejected(Rejection.PARKING_SPACE_NOT_AVAILABLE)))));
+
+    List<BatchItem<Parking>> items = parkingAPI.startParkings(List.of(parking(null, 1L), invalid, parking(null, 3L)))
+      .join().getBody();
+
+    assertEquals(List.of(201, 400, 400), statuses(items));
+    assertEquals(created, items.get(0).getResult());
+    assertEquals("Please provide only the parkingSpaceId", items.get(1).getError());
+    assertEquals(3L, items.get(2).getId());
+  }
+
+  @Test
+  void endParkingsOnlyCompletesParkingsInProgress() {
+    Parking completed = parking(9L, 4L);
+    completed.setBilling(Billing.pending());
+    when(gateway.sendAndReceive(Operation.PARKINGS_BY_IDS, new IdBatch(List.of(8L, 7L, 9L))))
+      .thenReturn(CompletableFuture.completedFuture(new ParkingBatchResult(List.of(ParkingResult.accepted(parking(8L, 3L)),
+        ParkingResult.rejected(Rejection.INVALID_PARKING_ID), ParkingResult.accepted(completed)))));
+    Parking ended = parking(8L, 3L);
+    ended.setEndDateTime(LocalDateTime.now());
+    when(gateway.sendAndReceive(Operation.PARKING_COMPLETION_BATCH, new ParkingCompletionBatch(List.of(8L)), "3"))
+      .thenReturn(CompletableFuture.completedFuture(new ParkingBatchResult(List.of(ParkingResult.accepted(ended)))));
+
+    List<BatchItem<Parking>> items = parkingAPI.endParkings(List.of(8L, 7L, 9L)).join().getBody();
+
+    assertEquals(List.of(200, 404, 400), statuses(items));
+    assertEquals(ended, items.get(0).getResult());
+    assertEquals("Parking #9 is already completed", items.get(2).getError());
+    verify(gateway).sendAndReceive(Operation.PARKING_COMPLETION_BATCH, new ParkingCompletionBatch(List.of(8L)), "3");
+  }
+
+  @Test
+  void looksUpParkingsNotFlushedYetInTheirOwnersMemory() {
+    writeBehindProperties.setEnabled(true);
+    Parking unflushed = parking(5L, 2L);
+    when(gateway.sendAndReceive(Operation.PARKING_BY_ID, 5L)).thenReturn(CompletableFuture.completedFuture(new Parking()));
+    when(gateway.sendAndReceive(Operation.PARKINGS_BY_IDS, new IdBatch(List.of(5L, 6L))))
+      .thenReturn(CompletableFuture.completedFuture(new ParkingBatchResult(List.of(
+        ParkingResult.rejected(Rejection.INVALID_PARKING_ID), ParkingResult.rejected(Rejection.INVALID_PARKING_ID)))));
+    // Two partitions, parking #5 being held by the owner of the second one
+    when(gateway.sendToEachPartition(eq(Operation.UNFLUSHED_PARKINGS_BY_IDS), any())).then(invocation -> {
+      IntFunction<UnflushedParkingsQuery> request = invocation.getArgument(1);
+      return IntStream.range(0, 2)
+        .mapToObj(request)
+        .map(query -> CompletableFuture.completedFuture(new ParkingBatchResult(query.getIds().stream()
+          .map(id -> id == 5L && query.getPartition() == 1 ? ParkingResult.accepted(unflushed)
+            : ParkingResult.rejected(Rejection.INVALID_PARKING_ID))
+          .collect(Collectors.toList()))))
+        .collect(Collectors.toList());
+    });
+
+    assertEquals(unflushed, parkingAPI.getParkingInformation(5L).join().getBody());
+    List<BatchItem<Parking>> items = parkingAPI.getParkingsInformation(List.of(5L, 6L)).join().getBody();
+    assertEquals(List.of(200, 404), statuses(items));
+    assertEquals(unflushed, items.get(0).getResult());
+    verify(gateway, times(2)).sendToEachPartition(eq(Operation.UNFLUSHED_PARKINGS_BY_IDS), any());
+  }
+
+  @Test
+  void looksUpMissingParkingsInTheDatabaseOnlyWithoutWriteBehind() {
+    when(gateway.sendAndReceive(Operation.PARKING_BY_ID, 5L)).thenReturn(CompletableFuture.completedFuture(new Parking()));
+
+    CompletionException exception = assertThrows(CompletionException.class,
+      () -> parkingAPI.getParkingInformation(5L).join());
+
+    assertTrue(exception.getCause() instanceof InvalidParkingIdException);
+    verify(gateway, never()).sendToEachPartition(any(), any());
+  }
+
+  private static Parking parking(Long id, Long parkingSpaceId) {
+    Parking parking = new Parking();
+    parking.setId(id);
+    parking.setParkingSpaceId(parkingSpaceId);
+    return parking;
+  }
+
+  private static List<Integer> statuses(List<BatchItem<Parking>> items) {
+    return items.stream().map(BatchItem::getStatus).collect(Collectors.toList());
+  }
+}
@@ -1,16 +1,167 @@
 package com.acme.parking.api;
 
+import com.acme.parking.api.model.BatchItem;
+import com.acme.parking.api.model.IdBatch;
+import com.acme.parking.api.model.ParkingSpaceQuery;
+import com.acme.parking.api.model.ParkingSpaceQueryResult;
+import com.acme.parking.api.model.ParkingSpaceStats;
+import com.acme.parking.api.model.ParkingSpaceStatsQuery;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Status;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import com.acme.parking.messaging.Operation;
+import com.acme.parking.messaging.RequestReplyGateway;
+import com.acme.parking.properties.AppProperties;
+import com.acme.parking.properties.LookupCacheProperties;
+import com.acme.parking.properties.MessagingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 class ParkingSpaceAPIImplTest {
 
+  private RequestReplyGateway gateway;
+  private ParkingSpaceView view;
+  private ParkingSpaceAPIImpl parkingSpaceAPI;
+
+  @BeforeEach
+  void setUp() {
+    gateway = mock(RequestReplyGateway.class);
+    when(gateway.groupByPartition(any(), any(), any())).then(invocation -> List.of(invocation.<List<?>>getArgument(1)));
+    view = mock(ParkingSpaceView.class);
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    parkingSpaceAPI = new ParkingSpaceAPIImpl(gateway, new InFlightRequestLimiter(new AppProperties()), view,
+      mock(AvailabilityStream.class), new LookupCache(new LookupCacheProperties(), view, new MessagingProperties(),
+      meterRegistry), new AppProperties(), meterRegistry);
+  }
+
   @Test
   void getParkingSpaceById() {
+    when(view.parkingSpace(3L)).thenReturn(new ParkingSpace(3L, Type.KW20));
+
+    ResponseEntity<ParkingSpace> response = parkingSpaceAPI.getParkingSpaceById(3L).join();
+
+    assertEquals(new ParkingSpace(3L, Type.KW20), response.getBody());
+    verify(gateway, never()).sendAndReceive(any(), any());
+  }
+
+  @Test
+  void getParkingSpaceByIdFallsBackToInventory() {
+    when(gateway.sendAndReceive(Operation.PARKING_SPACE_BY_ID, 3L))
+      .thenReturn(CompletableFuture.completedFuture(new ParkingSpace(3L, Type.KW20)));
+
+    ResponseEntity<ParkingSpace> response = parkingSpaceAPI.getParkingSpaceById(3L).join();
+
+    assertEquals(new ParkingSpace(3L, Type.KW20), response.getBody());
+  }
+
+  @Test
+  void getParkingSpacesByIds() {
+    when(view.parkingSpaces(List.of(3L, 9L))).thenReturn(null);
+    when(gateway.sendAndReceive(Operation.PARKING_SPACES_BY_IDS, new IdBatch(List.of(3L, 9L))))
+      .thenReturn(CompletableFuture.completedFuture(new ParkingSpaceQueryResult(List.of(new ParkingSpace(3L, Type.KW20),
+        new ParkingSpace()))));
+
+    List<BatchItem<ParkingSpace>> items = parkingSpaceAPI.getParkingSpacesByIds(List.of(3L, 9L)).join().getBody();
+
+    assertEquals(List.of(new BatchItem<>(3L, 200, new ParkingSpace(3L, Type.KW20), null),
+      new BatchItem<>(9L, 404, null, "Invalid parking space id 9")), items);
+  }
+
+  @Test
+  void getParkingSpacesByIdsFromEachPartition() {
+    when(view.parkingSpaces(List.of(3L, 9L, 4L))).thenReturn(null);
+    doReturn(List.of(List.of(0, 2), List.of(1))).when(gateway).groupByPartition(any(), any(), any());
+    when(gateway.sendAndReceive(Operation.PARKING_SPACES_BY_IDS, new IdBatch(List.of(3L, 4L))))
+      .thenReturn(CompletableFuture.completedFuture(new ParkingSpaceQueryResult(List.of(new ParkingSpace(3L, Type.KW20),
+        new ParkingSpace(4L, Type.KW50)))));
+    when(gateway.sendAndReceive(Operation.PARKING_SPACES_BY_IDS, new IdBatch(List.of(9L))))
+      .thenReturn(CompletableFuture.completedFuture(new ParkingSpaceQueryResult(List.of(new ParkingSpace(9L, Type.GASOLINE)))));
+
+    List<BatchItem<ParkingSpace>> items = parkingSpaceAPI.getParkingSpacesByIds(List.of(3L, 9L, 4L)).join().getBody();
+
+    assertEquals(List.of(new BatchItem<>(3L, 200, new ParkingSpace(3L, Type.KW20), null),
+      new BatchItem<>(9L, 200, new ParkingSpace(9L, Type.GASOLINE), null),
+      new BatchItem<>(4L, 200, new ParkingSpace(4L, Type.KW50), null)), items);
   }
 
   @Test
   void searchParkingSpaces() {
+    when(view.nextAvailable(Type.KW50)).thenReturn(new ParkingSpace(null, Type.KW50));
+    ParkingSpaceQuery query = new ParkingSpaceQuery(Type.GASOLINE, Status.OCCUPIED, 20);
+    when(gateway.sendAndReceive(Operation.PARKING_SPACES_QUERY, query))
+      .thenReturn(CompletableFuture.completedFuture(new ParkingSpaceQueryResult(List.of(new ParkingSpace(1L, Type.GASOLINE)))));
+
+    assertEquals(HttpStatus.NO_CONTENT, parkingSpaceAPI.searchParkingSpaces(Type.KW50, Status.AVAILABLE, null, null)
+      .join().getStatusCode());
+    assertEquals(List.of(new ParkingSpace(1L, Type.GASOLINE)), parkingSpaceAPI.searchParkingSpaces(Type.GASOLINE,
+      Status.OCCUPIED, 20, null).join().getBody());
+    verify(gateway, never()).sendAndReceive(Operation.NEXT_AVAILABLE_PARKING_SPACE, Type.KW50);
+  }
+
+  @Test
+  void pagesSingleParkingSpaces() {
+    ParkingSpaceQuery query = new ParkingSpaceQuery(Type.KW20, Status.AVAILABLE, 1);
+    when(gateway.sendAndReceive(Operation.PARKING_SPACES_QUERY, query)).thenReturn(CompletableFuture.completedFuture(
+      ParkingSpaceQueryResult.page(List.of(new ParkingSpace(4L, Type.KW20), new ParkingSpace(6L, Type.KW20)), 1)));
+
+    ResponseEntity<List<ParkingSpace>> response = parkingSpaceAPI.searchParkingSpaces(Type.KW20, Status.AVAILABLE, 1,
+      null).join();
+
+    assertEquals(List.of(new ParkingSpace(4L, Type.KW20)), response.getBody());
+    assertEquals(ParkingSpaceQuery.cursorAfter(4L), response.getHeaders().getFirst(ParkingSpaceAPI.NEXT_PAGE_TOKEN_HEADER));
+    verify(gateway, never()).sendAndReceive(Operation.NEXT_AVAILABLE_PARKING_SPACE, Type.KW20);
+  }
+
+  @Test
+  void coalescesConcurrentNextAvailableLookups() {
+    CompletableFuture<ParkingSpace> reply = new CompletableFuture<>();
+    when(gateway.sendAndReceive(Operation.NEXT_AVAILABLE_PARKING_SPACE, Type.KW20)).thenReturn(reply);
+
+    CompletableFuture<ResponseEntity<List<ParkingSpace>>> first = parkingSpaceAPI.searchParkingSpaces(Type.KW20,
+      Status.AVAILABLE, null, null);
+    CompletableFuture<ResponseEntity<List<ParkingSpace>>> second = parkingSpaceAPI.searchParkingSpaces(Type.KW20,
+      Status.AVAILABLE, null, null);
+    reply.complete(new ParkingSpace(4L, Type.KW20));
+
+    assertEquals(List.of(new ParkingSpace(4L, Type.KW20)), first.join().getBody());
+    assertEquals(List.of(new ParkingSpace(4L, Type.KW20)), second.join().getBody());
+    verify(gateway, times(1)).sendAndReceive(Operation.NEXT_AVAILABLE_PARKING_SPACE, Type.KW20);
+  }
+
+  @Test
+  void getParkingSpaceStats() {
+    when(view.stats(Type.GASOLINE)).thenReturn(new ParkingSpaceStats(Type.GASOLINE, 7, 3));
+    // Two partitions, the second one holding one more available parking space
+    when(gateway.sendToEachPartition(eq(Operation.PARKING_SPACE_STATS), any())).then(invocation -> {
+      IntFunction<ParkingSpaceStatsQuery> request = invocation.getArgument(1);
+      return IntStream.range(0, 2)
+        .mapToObj(request)
+        .map(query -> CompletableFuture.completedFuture(new ParkingSpaceStats(query.getType(), query.getPartition() + 1, 1)))
+        .collect(Collectors.toList());
+    });
+
+    assertEquals(List.of(new ParkingSpaceStats(Type.GASOLINE, 7, 3), new ParkingSpaceStats(Type.KW20, 3, 2),
+      new ParkingSpaceStats(Type.KW50, 3, 2)), parkingSpaceAPI.getParkingSpaceStats(null).join().getBody());
+    assertEquals(List.of(new ParkingSpaceStats(Type.GASOLINE, 7, 3)),
+      parkingSpaceAPI.getParkingSpaceStats(Type.GASOLINE).join().getBody());
   }
-}
\ No newline at end of file
+}
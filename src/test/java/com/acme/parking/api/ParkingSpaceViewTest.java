@@ -0,0 +1,104 @@
+package com.acme.parking.api;
+
+import com.acme.parking.api.model.Availability;
+import com.acme.parking.api.model.ParkingSpaceQuery;
+import com.acme.parking.api.model.ParkingSpaceQueryResult;
+import com.acme.parking.api.model.ParkingSpaceStats;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Status;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import com.acme.parking.inventory.model.ParkingSpaceEvent;
+import com.acme.parking.properties.AvailabilityViewProperties;
+import com.acme.parking.properties.MessagingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.ConsumerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class ParkingSpaceViewTest {
+
+  private ParkingSpaceView view;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    AvailabilityViewProperties properties = new AvailabilityViewProperties();
+    properties.setMaxStaleness(Duration.ofSeconds(1));
+    view = new ParkingSpaceView(mock(ConsumerFactory.class), properties, new MessagingProperties(),
+      new SimpleMeterRegistry());
+    for (long id = 1; id <= 5; id++) {
+      view.apply(ParkingSpaceEvent.snapshot(new ParkingSpace(id, Type.GASOLINE)));
+    }
+    view.apply(ParkingSpaceEvent.snapshot(new ParkingSpace(6L, Type.KW20)));
+  }
+
+  @Test
+  void appliesLatestEventOfEachParkingSpace() {
+    view.caughtUp(System.currentTimeMillis());
+    Parking parking = new Parking();
+
+    view.apply(ParkingSpaceEvent.parkingStarted(new ParkingSpace(1L, Type.GASOLINE), parking));
+    view.apply(ParkingSpaceEvent.parkingStarted(new ParkingSpace(2L, Type.GASOLINE), parking));
+    view.apply(ParkingSpaceEvent.parkingCompleted(new ParkingSpace(1L, Type.GASOLINE)));
+
+    assertEquals(Status.AVAILABLE, view.parkingSpace(1L).getStatus());
+    assertEquals(parking, view.parkingSpace(2L).getCurrentParkingInformation());
+    assertEquals(1L, view.nextAvailable(Type.GASOLINE).getId());
+    assertEquals(List.of(2L), ids(view.query(new ParkingSpaceQuery(Type.GASOLINE, Status.OCCUPIED, 10))));
+    assertNull(view.nextAvailable(Type.KW50).getId());
+  }
+
+  @Test
+  void countsParkingSpacesOfEachTypeAndStatus() {
+    view.caughtUp(System.currentTimeMillis());
+
+    view.apply(ParkingSpaceEvent.parkingStarted(new ParkingSpace(1L, Type.GASOLINE), new Parking()));
+    view.apply(ParkingSpaceEvent.parkingStarted(new ParkingSpace(6L, Type.KW20), new Parking()));
+    view.apply(ParkingSpaceEvent.snapshot(new ParkingSpace(2L, Type.GASOLINE)));
+
+    assertEquals(new Availability(Type.GASOLINE, 4, 2L), view.availability(Type.GASOLINE));
+    assertEquals(new Availability(Type.KW20, 0, null), view.availability(Type.KW20));
+    assertEquals(new ParkingSpaceStats(Type.GASOLINE, 4, 1), view.stats(Type.GASOLINE));
+    assertEquals(new ParkingSpaceStats(Type.KW50, 0, 0), view.stats(Type.KW50));
+    assertEquals(9, view.getVersion());
+  }
+
+  @Test
+  void pagesParkingSpacesById() {
+    view.caughtUp(System.currentTimeMillis());
+
+    ParkingSpaceQueryResult firstPage = view.query(new ParkingSpaceQuery(Type.GASOLINE, Status.AVAILABLE, 3));
+    ParkingSpaceQueryResult lastPage = view.query(new ParkingSpaceQuery(Type.GASOLINE, Status.AVAILABLE, 3,
+      firstPage.getNextCursor()));
+
+    assertEquals(List.of(1L, 2L, 3L), ids(firstPage));
+    assertEquals(List.of(4L, 5L), ids(lastPage));
+    assertNull(lastPage.getNextCursor());
+  }
+
+  @Test
+  void answersOnlyWhenCaughtUpWithinMaxStaleness() {
+    assertNull(view.parkingSpace(1L));
+
+    view.caughtUp(System.currentTimeMillis() - 5000);
+    assertFalse(view.isCaughtUp());
+    assertNull(view.nextAvailable(Type.GASOLINE));
+    assertNull(view.query(new ParkingSpaceQuery(Type.GASOLINE, Status.AVAILABLE, 3)));
+
+    view.caughtUp(System.currentTimeMillis());
+    assertTrue(view.isCaughtUp());
+    assertEquals(new ParkingSpace(6L, Type.KW20), view.parkingSpace(6L));
+  }
+
+  private static List<Long> ids(ParkingSpaceQueryResult queryResult) {
+    return queryResult.getResult().stream().map(ParkingSpace::getId).collect(Collectors.toList());
+  }
+}
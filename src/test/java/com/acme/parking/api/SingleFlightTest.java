@@ -0,0 +1,72 @@
+package com.acme.parking.api;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private final AtomicInteger sent = new AtomicInteger();
+
+  @Test
+  void sharesRequestInFlightWithIdenticalOnes() {
+    SingleFlight<String, Long> singleFlight = new SingleFlight<>("lookup", 0, meterRegistry);
+    CompletableFuture<Long> reply = new CompletableFuture<>();
+
+    CompletableFuture<Long> first = singleFlight.execute("KW20", send(reply));
+    CompletableFuture<Long> second = singleFlight.execute("KW20", send(reply));
+    CompletableFuture<Long> other = singleFlight.execute("KW50", send(CompletableFuture.completedFuture(9L)));
+    reply.complete(4L);
+
+    assertEquals(4L, first.join());
+    assertEquals(4L, second.join());
+    assertEquals(9L, other.join());
+    assertEquals(2, sent.get());
+    assertEquals(1 / 3.0, singleFlight.hitRatio());
+
+    // Replied already, without freshness window
+    assertEquals(5L, singleFlight.execute("KW20", send(CompletableFuture.completedFuture(5L))).join());
+    assertEquals(3, sent.get());
+  }
+
+  @Test
+  void sharesRepliesWithinFreshnessWindowOnly() throws InterruptedException {
+    SingleFlight<String, Long> singleFlight = new SingleFlight<>("lookup", 50, meterRegistry);
+
+    singleFlight.execute("KW20", send(CompletableFuture.completedFuture(4L)));
+    assertEquals(4L, singleFlight.execute("KW20", send(CompletableFuture.completedFuture(5L))).join());
+    Thread.sleep(60);
+    assertEquals(6L, singleFlight.execute("KW20", send(CompletableFuture.completedFuture(6L))).join());
+    assertEquals(2, sent.get());
+  }
+
+  @Test
+  void neverSharesFailedRequestsOnceFailed() {
+    SingleFlight<String, Long> singleFlight = new SingleFlight<>("lookup", 1000, meterRegistry);
+    CompletableFuture<Long> reply = new CompletableFuture<>();
+
+    CompletableFuture<Long> first = singleFlight.execute("KW20", send(reply));
+    CompletableFuture<Long> second = singleFlight.execute("KW20", send(reply));
+    reply.completeExceptionally(new IllegalStateException());
+
+    assertThrows(CompletionException.class, first::join);
+    assertThrows(CompletionException.class, second::join);
+    assertEquals(4L, singleFlight.execute("KW20", send(CompletableFuture.completedFuture(4L))).join());
+    assertEquals(2, sent.get());
+  }
+
+  private Supplier<CompletableFuture<Long>> send(CompletableFuture<Long> reply) {
+    return () -> {
+      sent.incrementAndGet();
+      return reply;
+    };
+  }
+}
@@ -0,0 +1,36 @@
+package com.acme.parking.api.model;
+
+import com.acme.parking.exception.InvalidParkingRequestException;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParkingSpaceQueryResultTest {
+
+  @Test
+  void lastPage() {
+    ParkingSpaceQueryResult result = ParkingSpaceQueryResult.page(
+      List.of(new ParkingSpace(4L, Type.KW20), new ParkingSpace(7L, Type.KW20)), 2);
+    assertEquals(2, result.getResult().size());
+    assertNull(result.getNextCursor());
+  }
+
+  @Test
+  void pageWithNext() {
+    ParkingSpaceQueryResult result = ParkingSpaceQueryResult.page(
+      List.of(new ParkingSpace(4L, Type.KW20), new ParkingSpace(7L, Type.KW20), new ParkingSpace(9L, Type.KW20)), 2);
+    assertEquals(2, result.getResult().size());
+    assertEquals(7L, ParkingSpaceQuery.afterId(result.getNextCursor()));
+  }
+
+  @Test
+  void invalidCursor() {
+    assertEquals(0L, ParkingSpaceQuery.afterId(null));
+    assertThrows(InvalidParkingRequestException.class, () -> ParkingSpaceQuery.afterId("not a cursor"));
+    assertThrows(InvalidParkingRequestException.class, () -> ParkingSpaceQuery.afterId(ParkingSpaceQuery.cursorAfter(7L) + "x"));
+  }
+}
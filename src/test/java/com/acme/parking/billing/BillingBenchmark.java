@@ -0,0 +1,123 @@
+package com.acme.parking.billing;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.billing.model.PricingStrategy;
+import com.acme.parking.config.DroolsConfig;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.messaging.RequestReplyGateway;
+import org.junit.jupiter.api.Test;
+import org.kie.api.runtime.ClassObjectFilter;
+import org.kie.api.runtime.KieContainer;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Compares latency and allocation of a billing calculation with a stateful session created for each parking,
+ * as billing used to be calculated, and with the pooled stateless session of {@link DroolsPricingCalculator},
+ * then of parkings priced one by one and in batches.
+ * Run with {@code mvn test -Pbenchmark}
+ */
+class BillingBenchmark {
+
+  private static final int WARMUP_ITERATIONS = 20_000;
+  private static final int ITERATIONS = 50_000;
+  private static final int BATCH_SIZE = 200;
+
+  @Test
+  void newSessionVersusPooledSession() {
+    // Outside of Spring Boot, logback defaults to debug, and agenda state changes would be measured
+    ((Logger) LoggerFactory.getLogger("org.drools")).setLevel(Level.INFO);
+    DroolsConfig droolsConfig = new DroolsConfig();
+    KieContainer kieContainer = droolsConfig.kieContainer();
+    PricingStrategy pricingStrategy = BillingControllerTest.pricingStrategy("WITH_FIXED_AMOUNT");
+    Parking parking = BillingControllerTest.parking(3600);
+    PricingRules pricingRules = BillingControllerTest.pricingRules(kieContainer, pricingStrategy);
+    BillingController billingController = new BillingController(pricingRules, mock(KafkaTemplate.class), mock(RequestReplyGateway.class));
+
+    Function<Parking, Billing> newSession = p -> {
+      KieSession kieSession = kieContainer.newKieSession();
+      try {
+        Map<Parking, Billing> billings = new IdentityHashMap<>(1);
+        kieSession.setGlobal(DroolsPricingCalculator.BILLINGS_GLOBAL, billings);
+        kieSession.insert(p);
+        kieSession.insert(pricingStrategy);
+        kieSession.fireAllRules();
+        // Working memory scan, as billings used to be inserted facts
+        kieSession.getObjects(new ClassObjectFilter(Billing.class));
+        return billings.get(p);
+      } finally {
+        // Sessions used not to be disposed, but the benchmark heap has to stay bounded
+        kieSession.dispose();
+      }
+    };
+
+    System.out.printf("%-20s %14s %16s%n", "session", "ns/op", "allocated B/op");
+    report("new per parking", newSession, parking);
+    report("pooled stateless", billingController::calculateBilling, parking);
+    pricingRules.shutdown();
+  }
+
+  @Test
+  void singleVersusBatch() {
+    ((Logger) LoggerFactory.getLogger("org.drools")).setLevel(Level.INFO);
+    PricingRules pricingRules = BillingControllerTest.pricingRules(new DroolsConfig().kieContainer(),
+      BillingControllerTest.pricingStrategy("WITH_FIXED_AMOUNT"));
+    List<Parking> parkings = IntStream.range(0, BATCH_SIZE)
+      .mapToObj(i -> BillingControllerTest.parking(60L * i))
+      .collect(Collectors.toList());
+    DoubleSupplier single = () -> {
+      double total = 0;
+      for (Parking parking : parkings) {
+        total += pricingRules.calculate(parking).getAmount();
+      }
+      return total;
+    };
+    DoubleSupplier batch = () -> pricingRules.calculate(parkings).stream().mapToDouble(Billing::getAmount).sum();
+
+    System.out.printf("%-20s %14s %16s%n", "calculation", "ns/parking", "alloc B/parking");
+    report("one by one", single, BATCH_SIZE);
+    report("batch of " + BATCH_SIZE, batch, BATCH_SIZE);
+    pricingRules.shutdown();
+  }
+
+  private static void report(String name, Function<Parking, Billing> calculation, Parking parking) {
+    report(name, () -> calculation.apply(parking).getAmount(), 1);
+  }
+
+  private static void report(String name, DoubleSupplier calculation, int parkingsPerCalculation) {
+    int warmupIterations = WARMUP_ITERATIONS / parkingsPerCalculation;
+    int iterations = ITERATIONS / parkingsPerCalculation;
+    double expected = calculation.getAsDouble();
+    for (int i = 0; i < warmupIterations; i++) {
+      assertEquals(expected, calculation.getAsDouble(), 1e-6);
+    }
+    com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+    long start = System.nanoTime();
+    double blackhole = 0;
+    for (int i = 0; i < iterations; i++) {
+      blackhole += calculation.getAsDouble();
+    }
+    long elapsed = System.nanoTime() - start;
+    long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+    assertNotEquals(42, blackhole);
+    long parkings = (long) iterations * parkingsPerCalculation;
+    System.out.printf("%-20s %14.0f %16d%n", name, (double) elapsed / parkings, allocated / parkings);
+  }
+}
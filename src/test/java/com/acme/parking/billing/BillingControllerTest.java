@@ -1,12 +1,178 @@
 package com.acme.parking.billing;
 
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.billing.model.PricingStrategy;
+import com.acme.parking.billing.model.Tariffs;
+import com.acme.parking.config.DroolsConfig;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.messaging.Operation;
+import com.acme.parking.messaging.RequestReplyGateway;
+import com.acme.parking.properties.AppProperties;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.kie.api.runtime.KieContainer;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+
+import javax.validation.Validation;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 class BillingControllerTest {
 
+  private static final KieContainer KIE_CONTAINER = new DroolsConfig().kieContainer();
+
+  private PricingRules pricingRules;
+
+  @SuppressWarnings("unchecked")
+  private final KafkaTemplate<String, Object> replyTemplate = mock(KafkaTemplate.class);
+
+  private final RequestReplyGateway gateway = mock(RequestReplyGateway.class);
+
+  @AfterEach
+  void tearDown() {
+    pricingRules.shutdown();
+  }
+
   @Test
   void calculateBilling() {
+    BillingController billingController = new BillingController(pricingRules(pricingStrategy("WITH_FIXED_AMOUNT")), replyTemplate, gateway);
+
+    Billing billing = billingController.calculateBilling(parking(3600));
+
+    assertEquals("EUR", billing.getCurrency());
+    assertEquals(5 + 3600 * 0.001, billing.getAmount());
+    assertEquals(pricingRules.current().getVersion(), billing.getRuleSetVersion());
+  }
+
+  @Test
+  void calculateBillingDurationOnly() {
+    BillingController billingController = new BillingController(pricingRules(pricingStrategy("DURATION_ONLY")), replyTemplate, gateway);
+
+    assertEquals(3600 * 0.001, billingController.calculateBilling(parking(3600)).getAmount());
+  }
+
+  @Test
+  void calculateBillingReusesPooledSessions() {
+    BillingController billingController = new BillingController(pricingRules(pricingStrategy("WITH_FIXED_AMOUNT")), replyTemplate, gateway);
+    int pooledSessions = KIE_CONTAINER.getKieBase().getKieSessions().size();
+
+    for (int i = 0; i < 10; i++) {
+      billingController.calculateBilling(parking(i));
+    }
+
+    assertEquals(pooledSessions, KIE_CONTAINER.getKieBase().getKieSessions().size());
+  }
+
+  @Test
+  void calculateBillingWithoutMatchingRule() {
+    BillingController billingController = new BillingController(pricingRules(pricingStrategy("UNKNOWN")), replyTemplate, gateway);
+
+    assertThrows(IllegalStateException.class, () -> billingController.calculateBilling(parking(60)));
+  }
+
+  @Test
+  void calculateBillingsRepliesToEachRequest() {
+    BillingController billingController = new BillingController(pricingRules(pricingStrategy("WITH_FIXED_AMOUNT")), replyTemplate, gateway);
+    int pooledSessions = KIE_CONTAINER.getKieBase().getKieSessions().size();
+
+    // Equal parkings are still distinct requests
+    billingController.calculateBillings(List.of(request(0, parking(3600)), request(1, parking(60)), request(2, parking(60))));
+
+    List<ProducerRecord<String, Object>> replies = replies(3);
+    for (int i = 0; i < 3; i++) {
+      assertEquals("parkingReply-test", replies.get(i).topic());
+      assertArrayEquals(correlationId(i), replies.get(i).headers().lastHeader(KafkaHeaders.CORRELATION_ID).value());
+    }
+    assertEquals(5 + 3600 * 0.001, ((Billing) replies.get(0).value()).getAmount());
+    assertEquals(5 + 60 * 0.001, ((Billing) replies.get(1).value()).getAmount());
+    assertNotSame(replies.get(1).value(), replies.get(2).value());
+    assertEquals(pricingRules.current().getVersion(), ((Billing) replies.get(2).value()).getRuleSetVersion());
+    assertEquals(pooledSessions, KIE_CONTAINER.getKieBase().getKieSessions().size());
+  }
+
+  @Test
+  void calculateBillingsSkipsFaultyRequest() {
+    BillingController billingController = new BillingController(pricingRules(pricingStrategy("WITH_FIXED_AMOUNT")), replyTemplate, gateway);
+    Parking faultyParking = new Parking();
+
+    billingController.calculateBillings(List.of(request(0, parking(3600)), request(1, faultyParking), request(2, parking(60))));
+
+    List<ProducerRecord<String, Object>> replies = replies(2);
+    assertArrayEquals(correlationId(0), replies.get(0).headers().lastHeader(KafkaHeaders.CORRELATION_ID).value());
+    assertArrayEquals(correlationId(2), replies.get(1).headers().lastHeader(KafkaHeaders.CORRELATION_ID).value());
+    assertEquals(5 + 60 * 0.001, ((Billing) replies.get(1).value()).getAmount());
+  }
+
+  @Test
+  void calculatePendingBillingWritesBack() {
+    BillingController billingController = new BillingController(pricingRules(pricingStrategy("WITH_FIXED_AMOUNT")), replyTemplate, gateway);
+    when(gateway.send(eq(Operation.BILLING_WRITE_BACK), any(Billing.class), eq("1")))
+      .thenReturn(CompletableFuture.completedFuture(null));
+    Parking parking = parking(3600);
+    parking.setBilling(new Billing(9L, null, null, null, Billing.Status.PENDING));
+
+    billingController.calculatePendingBilling(parking);
+
+    ArgumentCaptor<Billing> billing = ArgumentCaptor.forClass(Billing.class);
+    verify(gateway).send(eq(Operation.BILLING_WRITE_BACK), billing.capture(), eq("1"));
+    assertEquals(9L, billing.getValue().getId());
+    assertEquals(Billing.Status.CALCULATED, billing.getValue().getStatus());
+    assertEquals(5 + 3600 * 0.001, billing.getValue().getAmount());
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<ProducerRecord<String, Object>> replies(int count) {
+    ArgumentCaptor<ProducerRecord<String, Object>> replies = ArgumentCaptor.forClass(ProducerRecord.class);
+    verify(replyTemplate, times(count)).send(replies.capture());
+    return replies.getAllValues();
+  }
+
+  private static ConsumerRecord<String, Object> request(int offset, Parking parking) {
+    ConsumerRecord<String, Object> request = new ConsumerRecord<>("billingCalculationRequest", 0, offset, null, parking);
+    request.headers().add(KafkaHeaders.REPLY_TOPIC, "parkingReply-test".getBytes(StandardCharsets.UTF_8));
+    request.headers().add(KafkaHeaders.CORRELATION_ID, correlationId(offset));
+    return request;
+  }
+
+  private static byte[] correlationId(int offset) {
+    return new byte[]{(byte) offset, 42};
+  }
+
+  private PricingRules pricingRules(PricingStrategy pricingStrategy) {
+    pricingRules = pricingRules(KIE_CONTAINER, pricingStrategy);
+    return pricingRules;
+  }
+
+  static PricingRules pricingRules(KieContainer kieContainer, PricingStrategy pricingStrategy) {
+    return new PricingRules(kieContainer, pricingStrategy, new Tariffs(), new AppProperties(),
+      Validation.buildDefaultValidatorFactory().getValidator());
+  }
+
+  static PricingStrategy pricingStrategy(String strategy) {
+    PricingStrategy pricingStrategy = new PricingStrategy();
+    pricingStrategy.setStrategy(strategy);
+    pricingStrategy.setFixedAmount(5);
+    pricingStrategy.setPricePerSecond(0.001);
+    return pricingStrategy;
+  }
+
+  static Parking parking(long durationSeconds) {
+    Parking parking = new Parking();
+    parking.setParkingSpaceId(1L);
+    parking.setDurationSeconds(durationSeconds);
+    return parking;
   }
-}
\ No newline at end of file
+}
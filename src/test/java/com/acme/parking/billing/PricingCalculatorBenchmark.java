@@ -0,0 +1,75 @@
+package com.acme.parking.billing;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.acme.parking.billing.model.PricingStrategy;
+import com.acme.parking.config.DroolsConfig;
+import com.acme.parking.inventory.model.Parking;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the throughput of the Drools and Java pricing calculators, with as many threads as billing consumers.
+ * Run with {@code mvn test -Pbenchmark}
+ */
+class PricingCalculatorBenchmark {
+
+  private static final int THREADS = 4;
+  private static final int WARMUP_ITERATIONS = 20_000;
+  private static final int ITERATIONS = 100_000;
+
+  @Test
+  void droolsVersusJava() throws Exception {
+    // Outside of Spring Boot, logback defaults to debug, and agenda state changes would be measured
+    ((Logger) LoggerFactory.getLogger("org.drools")).setLevel(Level.INFO);
+    PricingStrategy pricingStrategy = BillingControllerTest.pricingStrategy("WITH_FIXED_AMOUNT");
+    DroolsPricingCalculator drools = new DroolsPricingCalculator(new DroolsConfig().kieContainer(), pricingStrategy,
+      THREADS);
+    JavaPricingCalculator java = new JavaPricingCalculator(pricingStrategy);
+
+    System.out.printf("%-10s %16s%n", "engine", "billings/s");
+    double droolsThroughput = throughput(drools);
+    System.out.printf("%-10s %16.0f%n", "drools", droolsThroughput);
+    double javaThroughput = throughput(java);
+    System.out.printf("%-10s %16.0f%n", "java", javaThroughput);
+    drools.close();
+    assertTrue(javaThroughput > droolsThroughput);
+  }
+
+  private static double throughput(PricingCalculator calculator) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      run(calculator, executor, WARMUP_ITERATIONS);
+      long start = System.nanoTime();
+      run(calculator, executor, ITERATIONS);
+      return (double) ITERATIONS * THREADS * 1_000_000_000 / (System.nanoTime() - start);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static void run(PricingCalculator calculator, ExecutorService executor, int iterations) throws Exception {
+    DoubleAdder blackhole = new DoubleAdder();
+    CompletableFuture<?>[] runs = new CompletableFuture<?>[THREADS];
+    for (int thread = 0; thread < THREADS; thread++) {
+      runs[thread] = CompletableFuture.runAsync(() -> {
+        Parking parking = BillingControllerTest.parking(0);
+        double sum = 0;
+        for (int i = 0; i < iterations; i++) {
+          parking.setDurationSeconds((long) i);
+          sum += calculator.calculate(parking).getAmount();
+        }
+        blackhole.add(sum);
+      }, executor);
+    }
+    CompletableFuture.allOf(runs).get();
+    assertNotEquals(42, blackhole.sum());
+  }
+}
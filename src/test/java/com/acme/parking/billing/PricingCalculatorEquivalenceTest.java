@@ -0,0 +1,104 @@
+package com.acme.parking.billing;
+
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.billing.model.PricingStrategy;
+import com.acme.parking.config.DroolsConfig;
+import com.acme.parking.inventory.model.Parking;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.kie.api.runtime.KieContainer;
+
+import java.util.Random;
+
+import static com.acme.parking.billing.BillingControllerTest.parking;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the Java calculator prices random parkings exactly like the pricing rules.
+ */
+class PricingCalculatorEquivalenceTest {
+
+  private static final String[] STRATEGIES = {"DURATION_ONLY", "WITH_FIXED_AMOUNT"};
+  private static final int STRATEGIES_COUNT = 200;
+  private static final int PARKINGS_PER_STRATEGY = 100;
+
+  private static KieContainer kieContainer;
+
+  @BeforeAll
+  static void buildRules() {
+    kieContainer = new DroolsConfig().kieContainer();
+  }
+
+  @Test
+  void randomParkingsAndStrategies() {
+    long seed = System.nanoTime();
+    Random random = new Random(seed);
+    for (int i = 0; i < STRATEGIES_COUNT; i++) {
+      PricingStrategy strategy = new PricingStrategy();
+      strategy.setStrategy(STRATEGIES[random.nextInt(STRATEGIES.length)]);
+      strategy.setFixedAmount(randomAmount(random));
+      strategy.setPricePerSecond(random.nextBoolean() ? random.nextDouble() : random.nextDouble() / 1000);
+      assertEquivalent(strategy, random, seed);
+    }
+  }
+
+  @Test
+  void edgeCases() {
+    Random random = new Random(0);
+    for (double pricePerSecond : new double[]{0, Double.MIN_VALUE, 0.1, 1.0 / 3, 1e300}) {
+      for (double fixedAmount : new double[]{0, 0.1, 5, 1e-9}) {
+        for (String strategyName : STRATEGIES) {
+          PricingStrategy strategy = new PricingStrategy();
+          strategy.setStrategy(strategyName);
+          strategy.setFixedAmount(fixedAmount);
+          strategy.setPricePerSecond(pricePerSecond);
+          for (long duration : new long[]{0, 1, 59, 3600, 86_400 * 365L, Long.MAX_VALUE}) {
+            assertSameBilling(strategy, parking(duration));
+          }
+          assertEquivalent(strategy, random, 0);
+        }
+      }
+    }
+  }
+
+  private static void assertEquivalent(PricingStrategy strategy, Random random, long seed) {
+    DroolsPricingCalculator drools = new DroolsPricingCalculator(kieContainer, strategy, 1);
+    JavaPricingCalculator java = new JavaPricingCalculator(strategy);
+    try {
+      for (int i = 0; i < PARKINGS_PER_STRATEGY; i++) {
+        Parking parking = parking(randomDuration(random));
+        Billing expected = drools.calculate(parking);
+        Billing actual = java.calculate(parking);
+        assertEquals(expected, actual, () -> "Seed " + seed + ", " + strategy + ", " + parking.getDurationSeconds() + " s");
+      }
+    } finally {
+      drools.close();
+    }
+  }
+
+  private static void assertSameBilling(PricingStrategy strategy, Parking parking) {
+    DroolsPricingCalculator drools = new DroolsPricingCalculator(kieContainer, strategy, 1);
+    try {
+      assertEquals(drools.calculate(parking), new JavaPricingCalculator(strategy).calculate(parking),
+        () -> strategy + ", " + parking.getDurationSeconds() + " s");
+    } finally {
+      drools.close();
+    }
+  }
+
+  // From a few seconds to weeks, as well as durations reached by the amount rounding
+  private static long randomDuration(Random random) {
+    switch (random.nextInt(3)) {
+      case 0:
+        return random.nextInt(600);
+      case 1:
+        return random.nextInt(86_400);
+      default:
+        return (long) random.nextInt(86_400 * 60) * (1 + random.nextInt(10));
+    }
+  }
+
+  private static double randomAmount(Random random) {
+    return random.nextBoolean() ? random.nextInt(20) : random.nextDouble() * 20;
+  }
+}
@@ -0,0 +1,174 @@
+package com.acme.parking.billing;
+
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.billing.model.PricingStrategy;
+import com.acme.parking.billing.model.Tariffs;
+import com.acme.parking.config.DroolsConfig;
+import com.acme.parking.exception.InvalidPricingRulesException;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import com.acme.parking.properties.AppProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validation;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletionException;
+
+import static com.acme.parking.billing.BillingControllerTest.parking;
+import static com.acme.parking.billing.BillingControllerTest.pricingStrategy;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PricingRulesTest {
+
+  private PricingRules pricingRules;
+
+  @BeforeEach
+  void setUp() {
+    pricingRules = BillingControllerTest.pricingRules(new DroolsConfig().kieContainer(), pricingStrategy("WITH_FIXED_AMOUNT"));
+  }
+
+  @AfterEach
+  void tearDown() {
+    pricingRules.shutdown();
+  }
+
+  @Test
+  void loadsNewRules() {
+    PricingRuleSet initial = pricingRules.current();
+    String doubledRules = initial.getRules().replace("billing.setAmount(limitPrecision(", "billing.setAmount(2 * limitPrecision(");
+
+    PricingRuleSet loaded = pricingRules.load(doubledRules, initial.getPricingStrategy()).join();
+
+    assertNotEquals(initial.getVersion(), loaded.getVersion());
+    assertSame(loaded, pricingRules.current());
+    assertTrue(initial.isClosed());
+    Billing billing = pricingRules.calculate(parking(3600));
+    assertEquals(2 * (5 + 3600 * 0.001), billing.getAmount());
+    assertEquals(loaded.getVersion(), billing.getRuleSetVersion());
+  }
+
+  @Test
+  void loadsNewStrategy() {
+    PricingRuleSet initial = pricingRules.current();
+
+    PricingRuleSet loaded = pricingRules.load(initial.getRules(), pricingStrategy("DURATION_ONLY")).join();
+
+    assertNotEquals(initial.getVersion(), loaded.getVersion());
+    assertEquals(3600 * 0.001, pricingRules.calculate(parking(3600)).getAmount());
+  }
+
+  @Test
+  void keepsSameRules() {
+    PricingRuleSet initial = pricingRules.current();
+
+    assertSame(initial, pricingRules.load(initial.getRules(), pricingStrategy("WITH_FIXED_AMOUNT")).join());
+    assertFalse(initial.isClosed());
+  }
+
+  @Test
+  void rejectsInvalidRules() {
+    PricingRuleSet initial = pricingRules.current();
+
+    CompletionException notCompiling = assertThrows(CompletionException.class,
+      () -> pricingRules.load(initial.getRules().replace("getDurationSeconds", "getDuration"),
+        initial.getPricingStrategy()).join());
+    CompletionException notPricing = assertThrows(CompletionException.class,
+      () -> pricingRules.load(initial.getRules().replace("billings.put(parkingInformation, billing);", ""),
+        initial.getPricingStrategy()).join());
+
+    assertTrue(notCompiling.getCause() instanceof InvalidPricingRulesException);
+    assertTrue(notPricing.getCause() instanceof InvalidPricingRulesException);
+    assertSame(initial, pricingRules.current());
+    assertEquals(5 + 3600 * 0.001, pricingRules.calculate(parking(3600)).getAmount());
+  }
+
+  @Test
+  void rejectsInvalidStrategy() {
+    PricingStrategy strategy = pricingStrategy("HALF_PRICE");
+
+    CompletionException rejection = assertThrows(CompletionException.class,
+      () -> pricingRules.load(pricingRules.current().getRules(), strategy).join());
+
+    assertTrue(rejection.getCause() instanceof ConstraintViolationException);
+  }
+
+  @Test
+  void retiredRulesCompleteInFlightCalculations() {
+    PricingRuleSet initial = pricingRules.current();
+    assertTrue(initial.acquire());
+
+    pricingRules.load(initial.getRules(), pricingStrategy("DURATION_ONLY")).join();
+
+    assertFalse(initial.isClosed());
+    assertEquals(5 + 3600 * 0.001, initial.calculate(parking(3600)).getAmount());
+    initial.release();
+    assertTrue(initial.isClosed());
+    assertFalse(initial.acquire());
+  }
+
+  @Test
+  void javaEngineReplacesStrategyOnly() {
+    AppProperties config = new AppProperties();
+    config.setPricingEngine(PricingCalculator.Engine.JAVA);
+    PricingRules javaPricingRules = new PricingRules(new DroolsConfig().kieContainer(), pricingStrategy("WITH_FIXED_AMOUNT"),
+      new Tariffs(), config, Validation.buildDefaultValidatorFactory().getValidator());
+    try {
+      PricingRuleSet initial = javaPricingRules.current();
+      assertEquals(5 + 3600 * 0.001, javaPricingRules.calculate(parking(3600)).getAmount());
+
+      CompletionException rejection = assertThrows(CompletionException.class,
+        () -> javaPricingRules.load(initial.getRules().replace("limitPrecision(", "2 * limitPrecision("),
+          initial.getPricingStrategy()).join());
+      assertTrue(rejection.getCause() instanceof InvalidPricingRulesException);
+
+      javaPricingRules.load(initial.getRules(), pricingStrategy("DURATION_ONLY")).join();
+      Billing billing = javaPricingRules.calculate(parking(3600));
+      assertEquals(3600 * 0.001, billing.getAmount());
+      assertEquals(javaPricingRules.current().getVersion(), billing.getRuleSetVersion());
+    } finally {
+      javaPricingRules.shutdown();
+    }
+  }
+
+  @Test
+  void tariffEnginePricesPerParkingSpaceType() {
+    AppProperties config = new AppProperties();
+    config.setPricingEngine(PricingCalculator.Engine.TARIFF);
+    PricingRules tariffPricingRules = new PricingRules(new DroolsConfig().kieContainer(), pricingStrategy("WITH_FIXED_AMOUNT"),
+      TariffTableTest.tariffs(), config, Validation.buildDefaultValidatorFactory().getValidator());
+    try {
+      Parking parking = new Parking(8L, 3L, Type.KW50, LocalDateTime.of(2020, 4, 13, 10, 0), null, 3600L, null);
+      assertEquals(5 + 3600 * 0.0016, tariffPricingRules.calculate(parking).getAmount(), 1e-9);
+      parking.setParkingSpaceType(Type.GASOLINE);
+      assertEquals(5 + 3600 * 0.001, tariffPricingRules.calculate(parking).getAmount(), 1e-9);
+      assertNotEquals(pricingRules.current().getVersion(), tariffPricingRules.current().getVersion());
+
+      parking.setParkingSpaceType(null);
+      assertThrows(IllegalStateException.class, () -> tariffPricingRules.calculate(parking));
+    } finally {
+      tariffPricingRules.shutdown();
+    }
+  }
+
+  @Test
+  void tariffEngineRequiresTariffForEachType() {
+    AppProperties config = new AppProperties();
+    config.setPricingEngine(PricingCalculator.Engine.TARIFF);
+    Tariffs tariffs = TariffTableTest.tariffs();
+    tariffs.getTypes().remove(Type.KW50);
+
+    assertThrows(IllegalStateException.class, () -> new PricingRules(new DroolsConfig().kieContainer(),
+      pricingStrategy("WITH_FIXED_AMOUNT"), tariffs, config, Validation.buildDefaultValidatorFactory().getValidator()));
+  }
+
+  @Test
+  void versionDependsOnContent() {
+    assertEquals(PricingRules.version("rules", pricingStrategy("DURATION_ONLY")),
+      PricingRules.version("rules", pricingStrategy("DURATION_ONLY")));
+    assertNotEquals(PricingRules.version("rules", pricingStrategy("DURATION_ONLY")),
+      PricingRules.version("rules", pricingStrategy("WITH_FIXED_AMOUNT")));
+  }
+}
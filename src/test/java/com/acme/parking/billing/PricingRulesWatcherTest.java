@@ -0,0 +1,95 @@
+package com.acme.parking.billing;
+
+import com.acme.parking.billing.model.PricingStrategy;
+import com.acme.parking.config.DroolsConfig;
+import com.acme.parking.properties.AppProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+
+import static com.acme.parking.billing.BillingControllerTest.parking;
+import static com.acme.parking.billing.BillingControllerTest.pricingStrategy;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PricingRulesWatcherTest {
+
+  @TempDir
+  Path directory;
+
+  private PricingRules pricingRules;
+  private PricingRulesWatcher watcher;
+
+  @BeforeEach
+  void setUp() {
+    PricingStrategy pricingStrategy = pricingStrategy("WITH_FIXED_AMOUNT");
+    pricingRules = BillingControllerTest.pricingRules(new DroolsConfig().kieContainer(), pricingStrategy);
+    AppProperties config = new AppProperties();
+    config.setPricingRulesDirectory(directory.toString());
+    watcher = new PricingRulesWatcher(pricingRules, pricingStrategy, config);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    watcher.stop();
+    pricingRules.shutdown();
+  }
+
+  @Test
+  void loadsDirectoryAtStartupThenOnChange() throws Exception {
+    Files.writeString(directory.resolve(PricingRulesWatcher.STRATEGY_FILE), "strategy=DURATION_ONLY\n");
+
+    watcher.start();
+    awaitUntil(() -> "DURATION_ONLY".equals(pricingRules.current().getPricingStrategy().getStrategy()));
+    assertEquals(3600 * 0.001, pricingRules.calculate(parking(3600)).getAmount());
+
+    Files.writeString(directory.resolve(PricingRulesWatcher.RULES_FILE), pricingRules.current().getRules()
+      .replace("billing.setAmount(limitPrecision(", "billing.setAmount(2 * limitPrecision("));
+    awaitUntil(() -> pricingRules.calculate(parking(3600)).getAmount() == 2 * 3600 * 0.001);
+  }
+
+  @Test
+  void keepsRulesOnInvalidChange() throws Exception {
+    watcher.start();
+    String version = pricingRules.current().getVersion();
+
+    Files.writeString(directory.resolve(PricingRulesWatcher.RULES_FILE), "rule \"Broken\" when then end end");
+    Thread.sleep(2000);
+    assertEquals(version, pricingRules.current().getVersion());
+
+    Files.delete(directory.resolve(PricingRulesWatcher.RULES_FILE));
+    Files.writeString(directory.resolve(PricingRulesWatcher.STRATEGY_FILE), "fixedAmount=7\n");
+    awaitUntil(() -> pricingRules.current().getPricingStrategy().getFixedAmount() == 7);
+    assertEquals(7 + 3600 * 0.001, pricingRules.calculate(parking(3600)).getAmount());
+  }
+
+  @Test
+  void restoresPackagedRulesAndConfiguredStrategyOnceOverridesDeleted() throws Exception {
+    String packagedVersion = pricingRules.current().getVersion();
+    Files.writeString(directory.resolve(PricingRulesWatcher.STRATEGY_FILE), "strategy=DURATION_ONLY\nfixedAmount=7\n");
+    Files.writeString(directory.resolve(PricingRulesWatcher.RULES_FILE), pricingRules.current().getRules()
+      .replace("billing.setAmount(limitPrecision(", "billing.setAmount(2 * limitPrecision("));
+    watcher.start();
+    awaitUntil(() -> pricingRules.calculate(parking(3600)).getAmount() == 2 * 3600 * 0.001);
+
+    Files.delete(directory.resolve(PricingRulesWatcher.RULES_FILE));
+    Files.writeString(directory.resolve(PricingRulesWatcher.STRATEGY_FILE), "fixedAmount=7\n");
+    awaitUntil(() -> pricingRules.calculate(parking(3600)).getAmount() == 7 + 3600 * 0.001);
+
+    Files.delete(directory.resolve(PricingRulesWatcher.STRATEGY_FILE));
+    awaitUntil(() -> packagedVersion.equals(pricingRules.current().getVersion()));
+    assertEquals(5 + 3600 * 0.001, pricingRules.calculate(parking(3600)).getAmount());
+  }
+
+  private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 30_000;
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.currentTimeMillis() < deadline, "Condition not met in time");
+      Thread.sleep(50);
+    }
+  }
+}
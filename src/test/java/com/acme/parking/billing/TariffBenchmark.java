@@ -0,0 +1,57 @@
+package com.acme.parking.billing;
+
+import com.acme.parking.billing.model.Tariffs;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.function.ToDoubleFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the latency of pricing parkings of growing durations with the prefix-sum tables of {@link TariffTable},
+ * and by walking through the time bands covered by the parking.
+ * Run with {@code mvn test -Pbenchmark}
+ */
+class TariffBenchmark {
+
+  private static final int WARMUP_ITERATIONS = 20_000;
+  private static final int ITERATIONS = 100_000;
+  private static final long[] DURATIONS = {3600, 24 * 3600, 7 * 24 * 3600};
+
+  @Test
+  void tableVersusBandWalk() {
+    Tariffs tariffs = TariffTableTest.tariffs();
+    Tariffs.Tariff tariff = tariffs.getTypes().get(Type.KW50);
+    TariffPricingCalculator calculator = new TariffPricingCalculator(tariffs);
+    LocalDateTime start = LocalDateTime.of(2020, 4, 13, 7, 30);
+
+    System.out.printf("%-12s %14s %14s%n", "duration", "table ns/op", "walk ns/op");
+    for (long durationSeconds : DURATIONS) {
+      Parking parking = new Parking(8L, 3L, Type.KW50, start, start.plusSeconds(durationSeconds), durationSeconds, null);
+      double table = latency(p -> calculator.calculate(p).getAmount(), parking);
+      double walk = latency(p -> TariffTableTest.walkPrice(tariff, p.getStartDateTime(), p.getDurationSeconds()), parking);
+      System.out.printf("%-12s %14.0f %14.0f%n", durationSeconds + " s", table, walk);
+      if (durationSeconds == DURATIONS[DURATIONS.length - 1]) {
+        assertTrue(table < walk);
+      }
+    }
+  }
+
+  private static double latency(ToDoubleFunction<Parking> price, Parking parking) {
+    double expected = price.applyAsDouble(parking);
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      assertEquals(expected, price.applyAsDouble(parking), 1e-6);
+    }
+    long start = System.nanoTime();
+    double blackhole = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+      blackhole += price.applyAsDouble(parking);
+    }
+    long elapsed = System.nanoTime() - start;
+    assertNotEquals(42, blackhole);
+    return (double) elapsed / ITERATIONS;
+  }
+}
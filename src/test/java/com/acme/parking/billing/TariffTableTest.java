@@ -0,0 +1,131 @@
+package com.acme.parking.billing;
+
+import com.acme.parking.billing.model.Tariffs;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Random;
+
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TariffTableTest {
+
+  private static final LocalDateTime MONDAY = LocalDateTime.of(2020, 4, 13, 0, 0);
+
+  @Test
+  void pricesWithinBand() {
+    TariffTable table = TariffTable.compile(tariffs().getTypes().get(Type.GASOLINE));
+
+    assertEquals(5 + 3600 * 0.001, table.price(MONDAY.withHour(10), 3600), 1e-9);
+    assertEquals(5, table.price(MONDAY.withHour(10).withMinute(17), 0));
+  }
+
+  @Test
+  void pricesAcrossBands() {
+    TariffTable table = TariffTable.compile(tariffs().getTypes().get(Type.KW20));
+
+    // 15:30 to 16:30, half an hour before the peak band and half an hour in
+    assertEquals(5 + 1800 * 0.0013 + 1800 * 0.0018, table.price(MONDAY.withHour(15).withMinute(30), 3600), 1e-9);
+  }
+
+  @Test
+  void lastBandRunsUntilFirstBandOfNextDay() {
+    TariffTable table = TariffTable.compile(tariff(0,
+      new Tariffs.TimeBand(LocalTime.of(7, 0), 0.002),
+      new Tariffs.TimeBand(LocalTime.of(22, 0), 0.001)));
+
+    // 21:00 to 08:00: 1 hour at the day rate, 9 hours at the night rate, 1 hour at the day rate
+    assertEquals(7200 * 0.002 + 9 * 3600 * 0.001, table.price(MONDAY.withHour(21), 11 * 3600), 1e-9);
+  }
+
+  @Test
+  void matchesBandWalkForLongParkings() {
+    Tariffs.Tariff tariff = tariffs().getTypes().get(Type.KW50);
+    TariffTable table = TariffTable.compile(tariff);
+    Random random = new Random(42);
+
+    for (int i = 0; i < 1000; i++) {
+      LocalDateTime start = MONDAY.plusSeconds(random.nextInt(7 * TariffTable.SECONDS_PER_DAY));
+      long durationSeconds = random.nextInt(14 * TariffTable.SECONDS_PER_DAY);
+      assertEquals(walkPrice(tariff, start, durationSeconds), table.price(start, durationSeconds), 1e-6,
+        () -> start + " for " + durationSeconds + " s");
+    }
+  }
+
+  @Test
+  void rejectsBandsStartingAtSameTime() {
+    Tariffs.Tariff tariff = tariff(0,
+      new Tariffs.TimeBand(LocalTime.of(7, 0), 0.002),
+      new Tariffs.TimeBand(LocalTime.of(7, 0), 0.001));
+
+    assertThrows(IllegalArgumentException.class, () -> TariffTable.compile(tariff));
+  }
+
+  /**
+   * Same tariffs as the packaged configuration: night, day & peak bands, with surcharges for EV chargers
+   */
+  static Tariffs tariffs() {
+    Tariffs tariffs = new Tariffs();
+    tariffs.getTypes().put(Type.GASOLINE, dailyTariff(0));
+    tariffs.getTypes().put(Type.KW20, dailyTariff(0.0003));
+    tariffs.getTypes().put(Type.KW50, dailyTariff(0.0006));
+    return tariffs;
+  }
+
+  /**
+   * Reference price, walking through the bands one by one until the end of the parking
+   */
+  static double walkPrice(Tariffs.Tariff tariff, LocalDateTime start, long durationSeconds) {
+    double price = tariff.getFixedAmount();
+    LocalDateTime end = start.plusSeconds(durationSeconds);
+    LocalDateTime time = start;
+    while (time.isBefore(end)) {
+      Tariffs.TimeBand current = null;
+      LocalDateTime next = null;
+      for (Tariffs.TimeBand band : tariff.getBands()) {
+        LocalDateTime bandStart = time.toLocalDate().atTime(band.getStart());
+        if (!bandStart.isAfter(time)) {
+          if (current == null || band.getStart().isAfter(current.getStart())) {
+            current = band;
+          }
+          bandStart = bandStart.plusDays(1);
+        }
+        if (next == null || bandStart.isBefore(next)) {
+          next = bandStart;
+        }
+      }
+      if (current == null) {
+        // Before the first band of the day
+        for (Tariffs.TimeBand band : tariff.getBands()) {
+          if (current == null || band.getStart().isAfter(current.getStart())) {
+            current = band;
+          }
+        }
+      }
+      LocalDateTime until = next.isBefore(end) ? next : end;
+      price += SECONDS.between(time, until) * current.getPricePerSecond();
+      time = until;
+    }
+    return price;
+  }
+
+  private static Tariffs.Tariff dailyTariff(double surcharge) {
+    return tariff(5,
+      new Tariffs.TimeBand(LocalTime.MIDNIGHT, 0.0005 + surcharge),
+      new Tariffs.TimeBand(LocalTime.of(7, 0), 0.001 + surcharge),
+      new Tariffs.TimeBand(LocalTime.of(16, 0), 0.0015 + surcharge),
+      new Tariffs.TimeBand(LocalTime.of(19, 0), 0.001 + surcharge),
+      new Tariffs.TimeBand(LocalTime.of(22, 0), 0.0005 + surcharge));
+  }
+
+  private static Tariffs.Tariff tariff(double fixedAmount, Tariffs.TimeBand... bands) {
+    Tariffs.Tariff tariff = new Tariffs.Tariff();
+    tariff.setFixedAmount(fixedAmount);
+    tariff.setBands(List.of(bands));
+    return tariff;
+  }
+}
@@ -0,0 +1,44 @@
+package com.acme.parking.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.junit.jupiter.api.Test;
+import org.kie.api.runtime.KieContainer;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures the time, loaded classes and metaspace needed to get the pricing rule base ready.
+ * Only meaningful as the first test of its JVM: {@code mvn test -Pbenchmark -Dtest=DroolsConfigBenchmark}
+ */
+class DroolsConfigBenchmark {
+
+  @Test
+  void pricingRuleBaseLoading() {
+    // Outside of Spring Boot, logback defaults to debug
+    ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+    ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+    long classesBefore = classLoading.getTotalLoadedClassCount();
+    long metaspaceBefore = metaspaceUsed();
+    long start = System.nanoTime();
+
+    KieContainer kieContainer = new DroolsConfig().kieContainer();
+    kieContainer.getKieBase();
+
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+    System.out.printf("Pricing rule base ready in %d ms, %d classes loaded, %d KB of metaspace%n", elapsedMillis,
+      classLoading.getTotalLoadedClassCount() - classesBefore, (metaspaceUsed() - metaspaceBefore) / 1024);
+    assertFalse(kieContainer.getKieBase().getKiePackages().isEmpty());
+  }
+
+  private static long metaspaceUsed() {
+    return ManagementFactory.getMemoryPoolMXBeans().stream()
+      .filter(pool -> "Metaspace".equals(pool.getName()))
+      .mapToLong(pool -> pool.getUsage().getUsed())
+      .sum();
+  }
+}
@@ -0,0 +1,57 @@
+package com.acme.parking.config;
+
+import com.acme.parking.properties.AvailabilityStreamProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServer;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebServerConfigTest {
+
+  @Test
+  void failsWritesToClientsNotReading() throws Exception {
+    AvailabilityStreamProperties properties = new AvailabilityStreamProperties();
+    properties.setSlowSubscriberTimeout(Duration.ofMillis(500));
+    TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory(0);
+    new WebServerConfig().writeTimeoutCustomizer(properties).customize(factory);
+    CompletableFuture<Long> blockedWriteMillis = new CompletableFuture<>();
+    WebServer server = factory.getWebServer(context -> context.addServlet("endless", new HttpServlet() {
+      @Override
+      protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+        byte[] chunk = new byte[64 * 1024];
+        long lastWriteNanos = System.nanoTime();
+        try {
+          OutputStream output = response.getOutputStream();
+          while (true) {
+            lastWriteNanos = System.nanoTime();
+            output.write(chunk);
+            output.flush();
+          }
+        } catch (IOException e) {
+          blockedWriteMillis.complete(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastWriteNanos));
+        }
+      }
+    }).addMapping("/"));
+    server.start();
+    try (Socket client = new Socket("localhost", server.getPort())) {
+      client.getOutputStream().write("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+
+      // Never reading the response
+      assertTrue(blockedWriteMillis.get(10, TimeUnit.SECONDS) < 5000);
+    } finally {
+      server.stop();
+    }
+  }
+}
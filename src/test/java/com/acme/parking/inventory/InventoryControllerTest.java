@@ -1,14 +1,75 @@
 package com.acme.parking.inventory;
 
+import com.acme.parking.api.model.ParkingBatchResult;
+import com.acme.parking.api.model.ParkingCompletion;
+import com.acme.parking.api.model.ParkingCompletionBatch;
+import com.acme.parking.api.model.ParkingResult;
+import com.acme.parking.api.model.ParkingResult.Rejection;
+import com.acme.parking.api.model.ParkingSpaceStats;
+import com.acme.parking.api.model.ParkingSpaceStatsQuery;
+import com.acme.parking.api.model.ParkingStartBatch;
+import com.acme.parking.api.model.UnflushedParkingsQuery;
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.inventory.dao.BillingRepository;
+import com.acme.parking.inventory.dao.ParkingRepository;
+import com.acme.parking.inventory.dao.ParkingSpaceRepository;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Status;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import com.acme.parking.inventory.model.ParkingSpaceEvent;
+import com.acme.parking.messaging.Operation;
+import com.acme.parking.messaging.RequestReplyGateway;
+import com.acme.parking.properties.AppProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 class InventoryControllerTest {
 
+  private ParkingSpaceRepository parkingSpaceRepository;
+  private ParkingRepository parkingRepository;
+  private BillingRepository billingRepository;
+  private RequestReplyGateway gateway;
+  private AppProperties config;
+  private ParkingSpaceOwnership ownership;
+  private ApplicationEventPublisher eventPublisher;
+  private ParkingSpaceCounters counters;
+  private WriteBehindInventory writeBehind;
+  private InventoryController inventoryController;
+
   @BeforeEach
   void setUp() {
+    parkingSpaceRepository = mock(ParkingSpaceRepository.class);
+    parkingRepository = mock(ParkingRepository.class);
+    billingRepository = mock(BillingRepository.class);
+    gateway = mock(RequestReplyGateway.class);
+    config = new AppProperties();
+    ownership = mock(ParkingSpaceOwnership.class);
+    eventPublisher = mock(ApplicationEventPublisher.class);
+    counters = new ParkingSpaceCounters(ownership, new SimpleMeterRegistry());
+    writeBehind = mock(WriteBehindInventory.class);
+    inventoryController = new InventoryController(parkingSpaceRepository, parkingRepository, gateway,
+      ownership, billingRepository, config, eventPublisher, counters, writeBehind);
   }
 
   @Test
@@ -34,4 +95,246 @@ class InventoryControllerTest {
   @Test
   void endParking() {
   }
-}
\ No newline at end of file
+
+  @Test
+  void endParkingWithAsyncBilling() {
+    config.setAsyncBillingEnabled(true);
+    Parking parking = new Parking();
+    parking.setId(8L);
+    parking.setParkingSpaceId(3L);
+    when(parkingRepository.findById(8L)).thenReturn(parking);
+    when(parkingRepository.save(any(Parking.class))).then(returnsFirstArg());
+    when(parkingSpaceRepository.findById(3L)).thenReturn(new ParkingSpace(3L, Type.GASOLINE, Status.OCCUPIED, parking, 1));
+    // Billing lagging behind: the pending billing is never delivered
+    when(gateway.send(eq(Operation.PENDING_BILLING_CALCULATION), any(Parking.class))).thenReturn(new CompletableFuture<>());
+
+    Parking completedParking = inventoryController.endParking(new ParkingCompletion(8L)).getParking();
+
+    assertEquals(Billing.Status.PENDING, completedParking.getBilling().getStatus());
+    assertNull(completedParking.getBilling().getAmount());
+    assertNotNull(completedParking.getDurationSeconds());
+    assertEquals(Type.GASOLINE, completedParking.getParkingSpaceType());
+    verify(parkingSpaceRepository).save(argThat(parkingSpace -> parkingSpace.getStatus() == Status.AVAILABLE));
+    verify(gateway).send(Operation.PENDING_BILLING_CALCULATION, completedParking);
+    verify(gateway, never()).sendAndReceive(any(), any());
+    verify(eventPublisher).publishEvent(new ParkingSpaceEvent(ParkingSpaceEvent.Kind.PARKING_COMPLETED,
+      new ParkingSpace(3L, Type.GASOLINE)));
+  }
+
+  @Test
+  void sendsPendingBillingsOnceCommitted() {
+    config.setAsyncBillingEnabled(true);
+    Parking parking = new Parking();
+    parking.setId(8L);
+    parking.setParkingSpaceId(3L);
+    when(parkingRepository.findByIdIn(List.of(8L))).thenReturn(List.of(parking));
+    when(parkingSpaceRepository.findByIdIn(any())).thenReturn(List.of(new ParkingSpace(3L, Type.KW20, Status.OCCUPIED, parking, 1)));
+    when(parkingRepository.saveAll(any())).then(returnsFirstArg());
+    when(gateway.send(eq(Operation.PENDING_BILLING_CALCULATION), any(Parking.class)))
+      .thenReturn(CompletableFuture.completedFuture(null));
+
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      inventoryController.endParkings(new ParkingCompletionBatch(List.of(8L)));
+      verify(gateway, never()).send(any(), any());
+
+      TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    verify(gateway).send(Operation.PENDING_BILLING_CALCULATION, parking);
+  }
+
+  @Test
+  void updatesAvailabilityIndexAndCountersOnceCommitted() {
+    when(parkingSpaceRepository.findAll()).thenReturn(List.of(new ParkingSpace(1L, Type.KW20)));
+    when(ownership.owns(any(Long.class))).thenReturn(true);
+    inventoryController.buildAvailabilityIndex(new ParkingSpaceOwnership.OwnershipChangedEvent(ownership));
+    when(parkingSpaceRepository.findById(1L)).thenReturn(new ParkingSpace(1L, Type.KW20));
+    when(parkingSpaceRepository.compareAndSetStatus(1L, Status.AVAILABLE, Status.OCCUPIED)).thenReturn(1);
+    when(parkingRepository.save(any(Parking.class))).then(returnsFirstArg());
+
+    for (int status : new int[]{TransactionSynchronization.STATUS_ROLLED_BACK, TransactionSynchronization.STATUS_COMMITTED}) {
+      Parking parking = new Parking();
+      parking.setParkingSpaceId(1L);
+      TransactionSynchronizationManager.initSynchronization();
+      try {
+        inventoryController.startParking(parking);
+        assertEquals(1L, inventoryController.getNextAvailableParkingSpace(Type.KW20).getId());
+        assertEquals(new ParkingSpaceStats(Type.KW20, 1, 0), inventoryController.getParkingSpaceStats(
+          new ParkingSpaceStatsQuery(Type.KW20, 0)));
+
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+          TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        }
+        TransactionSynchronizationManager.getSynchronizations().forEach(sync -> sync.afterCompletion(status));
+      } finally {
+        TransactionSynchronizationManager.clearSynchronization();
+      }
+    }
+    assertNull(inventoryController.getNextAvailableParkingSpace(Type.KW20).getId());
+    assertEquals(new ParkingSpaceStats(Type.KW20, 0, 1), inventoryController.getParkingSpaceStats(
+      new ParkingSpaceStatsQuery(Type.KW20, 0)));
+  }
+
+  @Test
+  void endParkingRejectsUnknownOrCompletedParkings() {
+    Parking completed = new Parking();
+    completed.setId(9L);
+    completed.setParkingSpaceId(3L);
+    completed.setEndDateTime(LocalDateTime.now());
+    when(parkingRepository.findById(9L)).thenReturn(completed);
+
+    assertEquals(ParkingResult.rejected(Rejection.INVALID_PARKING_ID), inventoryController.endParking(new ParkingCompletion(8L)));
+    assertEquals(ParkingResult.rejected(Rejection.PARKING_ALREADY_COMPLETED), inventoryController.endParking(new ParkingCompletion(9L)));
+    verify(parkingSpaceRepository, never()).save(any());
+    verify(gateway, never()).sendAndReceive(any(), any());
+  }
+
+  @Test
+  void startParkingsRejectsOnlyUnclaimableParkingSpaces() {
+    when(parkingSpaceRepository.findByIdIn(List.of(1L, 2L, 9L)))
+      .thenReturn(List.of(new ParkingSpace(1L, Type.KW20), new ParkingSpace(2L, Type.KW20, Status.OCCUPIED, null, 1)));
+    when(parkingSpaceRepository.compareAndSetStatus(1L, Status.AVAILABLE, Status.OCCUPIED)).thenReturn(1);
+    when(parkingRepository.save(any(Parking.class))).then(returnsFirstArg());
+
+    ParkingBatchResult batchResult = inventoryController.startParkings(new ParkingStartBatch(List.of(1L, 2L, 9L)));
+
+    assertEquals(1L, batchResult.getResults().get(0).getParking().getParkingSpaceId());
+    assertEquals(List.of(ParkingResult.rejected(Rejection.PARKING_SPACE_NOT_AVAILABLE),
+      ParkingResult.rejected(Rejection.INVALID_PARKING_SPACE_ID)), batchResult.getResults().subList(1, 3));
+    verify(parkingRepository, times(1)).save(any(Parking.class));
+  }
+
+  @Test
+  void endParkingsBillsAndSavesCompletedParkingsTogether() {
+    Parking first = new Parking();
+    first.setId(8L);
+    first.setParkingSpaceId(3L);
+    Parking second = new Parking();
+    second.setId(9L);
+    second.setParkingSpaceId(4L);
+    when(parkingRepository.findByIdIn(List.of(8L, 7L, 9L, 8L))).thenReturn(List.of(first, second));
+    when(parkingSpaceRepository.findByIdIn(any())).thenReturn(List.of(
+      new ParkingSpace(3L, Type.GASOLINE, Status.OCCUPIED, first, 1), new ParkingSpace(4L, Type.KW20, Status.OCCUPIED, second, 1)));
+    when(gateway.sendAndReceive(eq(Operation.BILLING_CALCULATION), any(Parking.class)))
+      .thenReturn(CompletableFuture.completedFuture(new Billing(1L, "EUR", 2.5, "1", Billing.Status.CALCULATED)));
+    when(parkingRepository.saveAll(any())).then(returnsFirstArg());
+
+    ParkingBatchResult batchResult = inventoryController.endParkings(new ParkingCompletionBatch(List.of(8L, 7L, 9L, 8L)));
+
+    assertEquals(List.of(ParkingResult.accepted(first), ParkingResult.rejected(Rejection.INVALID_PARKING_ID),
+      ParkingResult.accepted(second), ParkingResult.rejected(Rejection.PARKING_ALREADY_COMPLETED)),
+      batchResult.getResults());
+    assertEquals(Type.KW20, second.getParkingSpaceType());
+    assertEquals(2.5, second.getBilling().getAmount());
+    verify(gateway, times(2)).sendAndReceive(eq(Operation.BILLING_CALCULATION), any(Parking.class));
+    verify(parkingRepository).saveAll(List.of(first, second));
+    verify(parkingSpaceRepository, times(2)).save(argThat(parkingSpace -> parkingSpace.getStatus() == Status.AVAILABLE));
+  }
+
+  @Test
+  void publishesSnapshotOfOwnedParkingSpacesOnOwnershipChange() {
+    Parking parking = new Parking();
+    ParkingSpace occupied = new ParkingSpace(1L, Type.KW20, Status.OCCUPIED, parking, 4);
+    when(parkingSpaceRepository.findAll()).thenReturn(List.of(occupied, new ParkingSpace(2L, Type.KW20)));
+    when(ownership.owns(1L)).thenReturn(true);
+
+    inventoryController.buildAvailabilityIndex(new ParkingSpaceOwnership.OwnershipChangedEvent(ownership));
+
+    verify(eventPublisher).publishEvent(new ParkingSpaceEvent(ParkingSpaceEvent.Kind.SNAPSHOT,
+      new ParkingSpace(1L, Type.KW20, Status.OCCUPIED, parking, 0)));
+    verify(eventPublisher, times(1)).publishEvent(any(Object.class));
+  }
+
+  @Test
+  void countsOwnedParkingSpacesAsParkingsStartAndComplete() {
+    Parking parking = new Parking();
+    parking.setId(8L);
+    parking.setParkingSpaceId(2L);
+    when(parkingSpaceRepository.findAll()).thenReturn(List.of(new ParkingSpace(1L, Type.KW20, Status.OCCUPIED, parking, 4),
+      new ParkingSpace(2L, Type.KW20), new ParkingSpace(3L, Type.KW50)));
+    when(ownership.owns(any(Long.class))).thenReturn(true);
+    inventoryController.buildAvailabilityIndex(new ParkingSpaceOwnership.OwnershipChangedEvent(ownership));
+    when(parkingSpaceRepository.findById(2L)).thenReturn(new ParkingSpace(2L, Type.KW20));
+    when(parkingSpaceRepository.compareAndSetStatus(2L, Status.AVAILABLE, Status.OCCUPIED)).thenReturn(1);
+    when(parkingRepository.save(any(Parking.class))).then(returnsFirstArg());
+
+    inventoryController.startParking(parking);
+
+    assertEquals(new ParkingSpaceStats(Type.KW20, 0, 2), inventoryController.getParkingSpaceStats(
+      new ParkingSpaceStatsQuery(Type.KW20, 0)));
+    assertEquals(new ParkingSpaceStats(Type.KW50, 1, 0), inventoryController.getParkingSpaceStats(
+      new ParkingSpaceStatsQuery(Type.KW50, 0)));
+  }
+
+  @Test
+  void countsParkingSpacesOfRequestedPartition() {
+    when(parkingSpaceRepository.findAll()).thenReturn(List.of(new ParkingSpace(1L, Type.KW20),
+      new ParkingSpace(2L, Type.KW20), new ParkingSpace(3L, Type.KW20, Status.OCCUPIED, new Parking(), 1)));
+    when(ownership.owns(any(Long.class))).thenReturn(true);
+    when(ownership.partitionOf(2L)).thenReturn(1);
+    when(ownership.partitionOf(3L)).thenReturn(1);
+    inventoryController.buildAvailabilityIndex(new ParkingSpaceOwnership.OwnershipChangedEvent(ownership));
+
+    assertEquals(new ParkingSpaceStats(Type.KW20, 1, 0), inventoryController.getParkingSpaceStats(
+      new ParkingSpaceStatsQuery(Type.KW20, 0)));
+    assertEquals(new ParkingSpaceStats(Type.KW20, 1, 1), inventoryController.getParkingSpaceStats(
+      new ParkingSpaceStatsQuery(Type.KW20, 1)));
+    assertEquals(new ParkingSpaceStats(Type.KW20, 0, 0), inventoryController.getParkingSpaceStats(
+      new ParkingSpaceStatsQuery(Type.KW20, 2)));
+  }
+
+  @Test
+  void startsAndEndsParkingsInMemoryWithWriteBehind() {
+    when(writeBehind.isEnabled()).thenReturn(true);
+    when(writeBehind.parkingSpace(3L)).thenReturn(new ParkingSpace(3L, Type.KW20));
+    when(writeBehind.claim(3L)).thenReturn(true);
+    when(writeBehind.save(any())).then(returnsFirstArg());
+    Parking parking = new Parking();
+    parking.setParkingSpaceId(3L);
+
+    assertEquals(ParkingResult.accepted(parking), inventoryController.startParking(parking));
+    verify(writeBehind).save(List.of(parking, new ParkingSpace(3L, Type.KW20, Status.OCCUPIED, parking, 0)));
+
+    when(writeBehind.parking(8L)).thenReturn(parking);
+    when(writeBehind.parkingSpace(3L)).thenReturn(new ParkingSpace(3L, Type.KW20, Status.OCCUPIED, parking, 0));
+    when(gateway.sendAndReceive(eq(Operation.BILLING_CALCULATION), any(Parking.class)))
+      .thenReturn(CompletableFuture.completedFuture(new Billing("EUR", 2.5)));
+
+    assertEquals(2.5, inventoryController.endParking(new ParkingCompletion(8L)).getParking().getBilling().getAmount());
+    // Logged along with its parking space once billed, like the start
+    verify(writeBehind).save(List.of(parking, new ParkingSpace(3L, Type.KW20)));
+    verify(parkingSpaceRepository, never()).compareAndSetStatus(any(), any(), any());
+    verify(parkingSpaceRepository, never()).save(any());
+    verify(parkingRepository, never()).save(any());
+  }
+
+  @Test
+  void looksUpUnflushedParkingsOfRequestedPartition() {
+    Parking unflushed = parking(8L, 3L);
+    when(writeBehind.isEnabled()).thenReturn(true);
+    when(writeBehind.parkingsInMemory(List.of(8L, 9L, 10L))).thenReturn(Map.of(8L, unflushed, 9L, parking(9L, 4L)));
+    when(ownership.partitionOf(3L)).thenReturn(1);
+
+    assertEquals(new ParkingBatchResult(List.of(ParkingResult.accepted(unflushed),
+      ParkingResult.rejected(Rejection.INVALID_PARKING_ID), ParkingResult.rejected(Rejection.INVALID_PARKING_ID))),
+      inventoryController.getUnflushedParkings(new UnflushedParkingsQuery(List.of(8L, 9L, 10L), 1)));
+  }
+
+  @Test
+  void writeBackBilling() {
+    when(billingRepository.completePending(9L, "EUR", 8.6, "3f9a1c07d2e4")).thenReturn(1);
+
+    inventoryController.writeBackBilling(new Billing(9L, "EUR", 8.6, "3f9a1c07d2e4", Billing.Status.CALCULATED));
+
+    verify(billingRepository).completePending(9L, "EUR", 8.6, "3f9a1c07d2e4");
+  }
+
+  private static Parking parking(Long id, Long parkingSpaceId) {
+    Parking parking = new Parking();
+    parking.setId(id);
+    parking.setParkingSpaceId(parkingSpaceId);
+    return parking;
+  }
+}
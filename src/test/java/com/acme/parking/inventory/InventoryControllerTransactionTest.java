@@ -0,0 +1,77 @@
+package com.acme.parking.inventory;
+
+import com.acme.parking.api.model.ParkingCompletion;
+import com.acme.parking.inventory.dao.ParkingRepository;
+import com.acme.parking.inventory.dao.ParkingSpaceRepository;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Status;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import com.acme.parking.messaging.Operation;
+import com.acme.parking.messaging.RequestReplyGateway;
+import com.acme.parking.properties.AppProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+/**
+ * Completions & starts through the transactional proxy of the controller, on the database.
+ */
+// Parking spaces are not seeded by this slice
+@DataJpaTest(properties = {"typeGasolineCount=0", "typeKW20Count=0", "typeKW50Count=0"})
+// Committed or rolled back by the controller
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({InventoryController.class, AppProperties.class})
+class InventoryControllerTransactionTest {
+
+  @Autowired
+  private InventoryController inventoryController;
+
+  @Autowired
+  private ParkingSpaceRepository parkingSpaceRepository;
+
+  @Autowired
+  private ParkingRepository parkingRepository;
+
+  @MockBean
+  private RequestReplyGateway gateway;
+
+  @MockBean
+  private ParkingSpaceOwnership ownership;
+
+  @MockBean
+  private ParkingSpaceCounters counters;
+
+  @MockBean
+  private WriteBehindInventory writeBehind;
+
+  @Test
+  void keepsParkingOngoingWhenBillingFails() {
+    Parking parking = new Parking();
+    parking.setParkingSpaceId(parkingSpaceRepository.save(new ParkingSpace(null, Type.KW20)).getId());
+    parking = parkingRepository.save(parking);
+    parkingSpaceRepository.save(new ParkingSpace(parking.getParkingSpaceId(), Type.KW20, Status.OCCUPIED, parking, 0));
+    when(gateway.sendAndReceive(eq(Operation.BILLING_CALCULATION), any(Parking.class)))
+      .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("Billing timed out")));
+
+    Long parkingId = parking.getId();
+    assertThrows(CompletionException.class, () -> inventoryController.endParking(new ParkingCompletion(parkingId)));
+
+    Parking ongoing = parkingRepository.findById(parkingId);
+    assertNull(ongoing.getEndDateTime());
+    assertNull(ongoing.getBilling());
+    assertEquals(Status.OCCUPIED, parkingSpaceRepository.findById(parking.getParkingSpaceId()).getStatus());
+  }
+}
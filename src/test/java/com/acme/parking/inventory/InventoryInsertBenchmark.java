@@ -0,0 +1,189 @@
+package com.acme.parking.inventory;
+
+import com.acme.parking.TollParkingApplication;
+import com.acme.parking.api.model.ParkingCompletion;
+import com.acme.parking.api.model.ParkingResult;
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.inventory.dao.ParkingSpaceRepository;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import com.acme.parking.messaging.Operation;
+import com.acme.parking.messaging.RequestReplyGateway;
+import com.acme.parking.properties.AppProperties;
+import com.acme.parking.properties.WriteBehindProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Compares the throughput of parking starts, each inserting a parking, and of parking completions, each inserting
+ * a billing, at increasing listener concurrency: with ids read one by one from the sequence, as they used to be,
+ * allocated in blocks by {@link com.acme.parking.config.PooledSequenceGenerator}, and with these blocks
+ * and write-behind persistence, see {@link WriteBehindInventory}.
+ * Each thread starts then completes parkings on its own parking spaces, like the partitions of a listener container.
+ * Run with {@code mvn test -Pbenchmark}
+ */
+class InventoryInsertBenchmark {
+
+  private static final int[] ALLOCATION_SIZES = {1, 50, 50};
+  private static final boolean[] WRITE_BEHIND = {false, false, true};
+  private static final int[] CONCURRENCIES = {1, 2, 4, 8, 16};
+  private static final int PARKINGS_PER_THREAD = 500;
+  private static final int ROUNDS = 3;
+
+  @Test
+  void startAndEndThroughput() throws Exception {
+    System.out.printf("%-16s %-13s %8s %12s %12s%n", "allocation size", "write-behind", "threads", "starts/s", "ends/s");
+    Path logDirectory = Files.createTempDirectory("inventory-log");
+    for (int mode = 0; mode < ALLOCATION_SIZES.length; mode++) {
+      int allocationSize = ALLOCATION_SIZES[mode];
+      try (ConfigurableApplicationContext context = new SpringApplicationBuilder(BenchmarkConfiguration.class)
+        .web(WebApplicationType.NONE)
+        .logStartupInfo(false)
+        .run("--app.idAllocationSize=" + allocationSize,
+          "--app.writeBehind.enabled=" + WRITE_BEHIND[mode],
+          "--app.writeBehind.logDirectory=" + logDirectory.resolve(String.valueOf(mode)),
+          "--spring.datasource.url=jdbc:h2:mem:insertBenchmark" + mode,
+          "--typeGasolineCount=0", "--typeKW20Count=0", "--typeKW50Count=0",
+          "--logging.level.root=WARN")) {
+        InventoryController inventory = context.getBean(InventoryController.class);
+        int maxThreads = CONCURRENCIES[CONCURRENCIES.length - 1];
+        List<Long> parkingSpaceIds = new ArrayList<>();
+        context.getBean(ParkingSpaceRepository.class).saveAll(IntStream.range(0, maxThreads * PARKINGS_PER_THREAD)
+          .mapToObj(i -> new ParkingSpace(null, Type.GASOLINE))
+          .collect(Collectors.toList()))
+          .forEach(parkingSpace -> parkingSpaceIds.add(parkingSpace.getId()));
+
+        // Warm-up
+        round(inventory, parkingSpaceIds, maxThreads);
+        for (int threads : CONCURRENCIES) {
+          double bestStarts = 0;
+          double bestEnds = 0;
+          for (int i = 0; i < ROUNDS; i++) {
+            double[] throughputs = round(inventory, parkingSpaceIds, threads);
+            bestStarts = Math.max(bestStarts, throughputs[0]);
+            bestEnds = Math.max(bestEnds, throughputs[1]);
+          }
+          System.out.printf("%-16d %-13b %8d %12.0f %12.0f%n", allocationSize, WRITE_BEHIND[mode], threads, bestStarts,
+            bestEnds);
+        }
+      }
+    }
+  }
+
+  // Starts then completes a parking on each parking space of each thread: returns starts & completions per second
+  private static double[] round(InventoryController inventory, List<Long> parkingSpaceIds, int threads) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<List<Long>> parkingIds = new ArrayList<>();
+      double starts = run(executor, threads, thread -> {
+        List<Long> started = new ArrayList<>(PARKINGS_PER_THREAD);
+        for (int i = 0; i < PARKINGS_PER_THREAD; i++) {
+          Parking parking = new Parking();
+          parking.setParkingSpaceId(parkingSpaceIds.get(thread * PARKINGS_PER_THREAD + i));
+          ParkingResult result = inventory.startParking(parking);
+          assertNull(result.getRejection());
+          started.add(result.getParking().getId());
+        }
+        return started;
+      }, parkingIds);
+      double ends = run(executor, threads, thread -> {
+        parkingIds.get(thread).forEach(id -> inventory.endParking(new ParkingCompletion(id)));
+        return List.of();
+      }, new ArrayList<>());
+      return new double[]{starts, ends};
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static double run(ExecutorService executor, int threads, IntFunction<List<Long>> work,
+                            List<List<Long>> results) throws Exception {
+    long start = System.nanoTime();
+    List<Future<List<Long>>> futures = new ArrayList<>();
+    for (int thread = 0; thread < threads; thread++) {
+      int threadIndex = thread;
+      futures.add(executor.submit(() -> work.apply(threadIndex)));
+    }
+    for (Future<List<Long>> future : futures) {
+      results.add(future.get());
+    }
+    return threads * PARKINGS_PER_THREAD / ((System.nanoTime() - start) / 1e9);
+  }
+
+  @Configuration
+  @ImportAutoConfiguration({DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class,
+    TransactionAutoConfiguration.class, JdbcTemplateAutoConfiguration.class})
+  @EntityScan(basePackageClasses = TollParkingApplication.class)
+  @EnableJpaRepositories(basePackageClasses = ParkingSpaceRepository.class)
+  @EnableConfigurationProperties(WriteBehindProperties.class)
+  @Import({InventoryController.class, WriteBehindInventory.class})
+  static class BenchmarkConfiguration {
+
+    // Billings priced right away, so that completions are bound by the database
+    @Bean
+    RequestReplyGateway gateway() {
+      RequestReplyGateway gateway = mock(RequestReplyGateway.class, withSettings().stubOnly());
+      when(gateway.sendAndReceive(eq(Operation.BILLING_CALCULATION), any(Parking.class)))
+        .thenAnswer(invocation -> CompletableFuture.completedFuture(new Billing("EUR", 5.0)));
+      return gateway;
+    }
+
+    @Bean
+    ParkingSpaceOwnership ownership() {
+      ParkingSpaceOwnership ownership = mock(ParkingSpaceOwnership.class);
+      when(ownership.owns(anyLong())).thenReturn(true);
+      return ownership;
+    }
+
+    @Bean
+    MeterRegistry meterRegistry() {
+      return new SimpleMeterRegistry();
+    }
+
+    @Bean
+    AppProperties appProperties() {
+      return new AppProperties();
+    }
+
+    @Bean
+    ParkingSpaceCounters counters(ParkingSpaceOwnership ownership, MeterRegistry meterRegistry) {
+      return new ParkingSpaceCounters(ownership, meterRegistry);
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package com.acme.parking.inventory;
+
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Status;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import com.acme.parking.messaging.serialization.ParkingBinaryFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InventoryLogTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void readsChangesBackAfterRestart() throws IOException {
+    Parking parking = new Parking(8L, 3L, Type.KW50, LocalDateTime.of(2026, 10, 18, 9, 30, 15, 123456789),
+      LocalDateTime.of(2026, 10, 18, 10, 0), 1785L, new Billing(4L, "EUR", 8.6, null, Billing.Status.CALCULATED));
+    ParkingSpace parkingSpace = new ParkingSpace(3L, Type.KW50, Status.OCCUPIED, parking, 7);
+    try (InventoryLog inventoryLog = new InventoryLog(directory)) {
+      inventoryLog.force(inventoryLog.append(List.of(parking, parkingSpace, new ParkingSpace(5L, Type.KW20))));
+    }
+
+    try (InventoryLog restarted = new InventoryLog(directory)) {
+      assertEquals(List.of(parking, parkingSpace, new ParkingSpace(5L, Type.KW20)), restarted.readPreviousSegments());
+    }
+  }
+
+  @Test
+  void ignoresRecordTornByCrash() throws IOException {
+    try (InventoryLog inventoryLog = new InventoryLog(directory)) {
+      inventoryLog.force(inventoryLog.append(List.of(new ParkingSpace(5L, Type.KW20))));
+    }
+    Path segment = segment(0);
+    byte[] torn = record(InventoryLogFormat.encode(new ParkingSpace(6L, Type.KW20)));
+    Files.write(segment, Arrays.copyOf(torn, torn.length - 3), StandardOpenOption.APPEND);
+
+    try (InventoryLog restarted = new InventoryLog(directory)) {
+      assertEquals(List.of(new ParkingSpace(5L, Type.KW20)), restarted.readPreviousSegments());
+    }
+  }
+
+  @Test
+  void readsRecordsWrittenInMessageFormat() throws IOException {
+    Files.write(segment(0), record(ParkingBinaryFormat.encode(new ParkingSpace(5L, Type.KW20))));
+
+    try (InventoryLog restarted = new InventoryLog(directory)) {
+      assertEquals(List.of(new ParkingSpace(5L, Type.KW20)), restarted.readPreviousSegments());
+    }
+  }
+
+  @Test
+  void failsOnRecordsOfNewerVersion() throws IOException {
+    byte[] newer = InventoryLogFormat.encode(new ParkingSpace(6L, Type.KW20));
+    newer[0] = InventoryLogFormat.VERSION + 1;
+    Files.write(segment(0), record(InventoryLogFormat.encode(new ParkingSpace(5L, Type.KW20))));
+    Files.write(segment(0), record(newer), StandardOpenOption.APPEND);
+
+    try (InventoryLog restarted = new InventoryLog(directory)) {
+      IOException exception = assertThrows(IOException.class, restarted::readPreviousSegments);
+      assertEquals("Unsupported inventory log record version 2", exception.getCause().getMessage());
+    }
+  }
+
+  private Path segment(long segment) {
+    return directory.resolve(String.format("inventory-%020d.log", segment));
+  }
+
+  private static byte[] record(byte[] payload) {
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    return ByteBuffer.allocate(2 * Integer.BYTES + payload.length)
+      .putInt(payload.length).putInt((int) crc.getValue()).put(payload)
+      .array();
+  }
+}
@@ -0,0 +1,137 @@
+package com.acme.parking.inventory;
+
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParkingSpaceAvailabilityIndexTest {
+
+  private static final int GASOLINE_COUNT = 1000;
+  private static final int KW20_COUNT = 100;
+
+  private ParkingSpaceAvailabilityIndex index;
+
+  @BeforeEach
+  void setUp() {
+    List<ParkingSpace> parkingSpaces = new ArrayList<>();
+    LongStream.rangeClosed(1, GASOLINE_COUNT).forEach(i -> parkingSpaces.add(new ParkingSpace(i, Type.GASOLINE)));
+    LongStream.rangeClosed(GASOLINE_COUNT + 1, GASOLINE_COUNT + KW20_COUNT)
+      .forEach(i -> parkingSpaces.add(new ParkingSpace(i, Type.KW20)));
+    parkingSpaces.get(0).setStatus(ParkingSpace.Status.OCCUPIED);
+
+    index = new ParkingSpaceAvailabilityIndex();
+    index.rebuild(parkingSpaces);
+  }
+
+  @Test
+  void rebuild() {
+    assertEquals(GASOLINE_COUNT - 1, index.availableCount(Type.GASOLINE));
+    assertEquals(KW20_COUNT, index.availableCount(Type.KW20));
+    assertEquals(0, index.availableCount(Type.KW50));
+    assertEquals(2L, index.nextAvailable(Type.GASOLINE));
+    assertEquals(GASOLINE_COUNT + 1L, index.nextAvailable(Type.KW20));
+    assertNull(index.nextAvailable(Type.KW50));
+  }
+
+  @Test
+  void claimAndRelease() {
+    assertTrue(index.claim(Type.GASOLINE, 2));
+    assertFalse(index.claim(Type.GASOLINE, 2));
+    assertFalse(index.claim(Type.KW20, 3));
+    assertEquals(3L, index.nextAvailable(Type.GASOLINE));
+
+    assertTrue(index.release(Type.GASOLINE, 1));
+    assertFalse(index.release(Type.GASOLINE, 1));
+    assertEquals(1L, index.nextAvailable(Type.GASOLINE));
+    assertEquals(GASOLINE_COUNT - 1, index.availableCount(Type.GASOLINE));
+  }
+
+  @Test
+  void available() {
+    assertEquals(List.of(2L, 3L, 4L), index.available(Type.GASOLINE, 3));
+    assertEquals(KW20_COUNT, index.available(Type.KW20, Integer.MAX_VALUE).size());
+    assertTrue(index.available(Type.KW50, 10).isEmpty());
+  }
+
+  @Test
+  void availableAfter() {
+    assertEquals(List.of(64L, 65L), index.available(Type.GASOLINE, 63, 2));
+    assertEquals(List.of(2L, 3L), index.available(Type.GASOLINE, -5, 2));
+    assertEquals(List.of(GASOLINE_COUNT + KW20_COUNT - 1L, (long) GASOLINE_COUNT + KW20_COUNT),
+      index.available(Type.KW20, GASOLINE_COUNT + KW20_COUNT - 2, 10));
+    assertTrue(index.available(Type.KW20, GASOLINE_COUNT + KW20_COUNT, 10).isEmpty());
+    assertTrue(index.available(Type.KW20, Long.MAX_VALUE, 10).isEmpty());
+
+    index.claim(Type.GASOLINE, 64);
+    assertEquals(List.of(65L, 66L), index.available(Type.GASOLINE, 63, 2));
+  }
+
+  @Test
+  void exhaustType() {
+    List<Long> ids = index.available(Type.KW20, KW20_COUNT);
+    ids.forEach(id -> assertTrue(index.claim(Type.KW20, id)));
+    assertNull(index.nextAvailable(Type.KW20));
+    assertEquals(0, index.availableCount(Type.KW20));
+
+    index.release(Type.KW20, ids.get(KW20_COUNT / 2));
+    assertEquals(ids.get(KW20_COUNT / 2), index.nextAvailable(Type.KW20));
+  }
+
+  @Test
+  void concurrentClaimAndRelease() throws InterruptedException {
+    int threads = 8;
+    int iterations = 200_000;
+    AtomicIntegerArray holders = new AtomicIntegerArray(GASOLINE_COUNT + 1);
+    AtomicReference<String> failure = new AtomicReference<>();
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+    for (int t = 0; t < threads; t++) {
+      executor.execute(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+          start.await();
+          for (int i = 0; i < iterations; i++) {
+            Long id = random.nextBoolean() ? index.nextAvailable(Type.GASOLINE) : (Long) (long) random.nextInt(2, GASOLINE_COUNT + 1);
+            if (id == null || !index.claim(Type.GASOLINE, id)) {
+              continue;
+            }
+            if (holders.incrementAndGet(id.intValue()) != 1) {
+              failure.compareAndSet(null, "Parking space " + id + " claimed twice");
+            }
+            holders.decrementAndGet(id.intValue());
+            if (!index.release(Type.GASOLINE, id)) {
+              failure.compareAndSet(null, "Parking space " + id + " released twice");
+            }
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+    }
+    start.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+    assertNull(failure.get());
+    assertEquals(GASOLINE_COUNT - 1, index.availableCount(Type.GASOLINE));
+    assertEquals(LongStream.rangeClosed(2, GASOLINE_COUNT).boxed().collect(Collectors.toList()),
+      index.available(Type.GASOLINE, GASOLINE_COUNT));
+    assertEquals(2L, index.nextAvailable(Type.GASOLINE));
+  }
+}
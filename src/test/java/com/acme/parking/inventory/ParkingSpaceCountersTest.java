@@ -0,0 +1,62 @@
+package com.acme.parking.inventory;
+
+import com.acme.parking.api.model.ParkingSpaceStats;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Status;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ParkingSpaceCountersTest {
+
+  private ParkingSpaceOwnership ownership;
+  private SimpleMeterRegistry meterRegistry;
+  private ParkingSpaceCounters counters;
+
+  @BeforeEach
+  void setUp() {
+    ownership = mock(ParkingSpaceOwnership.class);
+    when(ownership.partitionOf(2L)).thenReturn(1);
+    when(ownership.partitionOf(3L)).thenReturn(1);
+    meterRegistry = new SimpleMeterRegistry();
+    counters = new ParkingSpaceCounters(ownership, meterRegistry);
+  }
+
+  @Test
+  void reportsSumOfPartitions() {
+    counters.reset(List.of(new ParkingSpace(1L, Type.KW20), new ParkingSpace(2L, Type.KW20)));
+    counters.move(new ParkingSpace(2L, Type.KW20), Status.AVAILABLE, Status.OCCUPIED);
+
+    assertEquals(new ParkingSpaceStats(Type.KW20, 1, 0), counters.stats(Type.KW20, 0));
+    assertEquals(new ParkingSpaceStats(Type.KW20, 0, 1), counters.stats(Type.KW20, 1));
+    assertEquals(1, meterRegistry.get(ParkingSpaceCounters.METRIC).tags("type", "KW20", "status", "AVAILABLE")
+      .gauge().value());
+    assertEquals(1, meterRegistry.get(ParkingSpaceCounters.METRIC).tags("type", "KW20", "status", "OCCUPIED")
+      .gauge().value());
+  }
+
+  @Test
+  void reportsDriftOfRetainedPartitionsOnReset() {
+    counters.reset(List.of(new ParkingSpace(1L, Type.KW20), new ParkingSpace(2L, Type.KW20),
+      new ParkingSpace(3L, Type.KW50)));
+    // Parking started without being counted, in both partitions
+    ParkingSpace occupied = new ParkingSpace(1L, Type.KW20, Status.OCCUPIED, new Parking(), 1);
+    ParkingSpace alsoOccupied = new ParkingSpace(2L, Type.KW20, Status.OCCUPIED, new Parking(), 1);
+    when(ownership.getRetainedPartitions()).thenReturn(Set.of(1));
+
+    counters.reset(List.of(occupied, alsoOccupied, new ParkingSpace(3L, Type.KW50)));
+
+    // Partition 0 was owned by another node meanwhile
+    assertEquals(2, meterRegistry.get(ParkingSpaceCounters.DRIFT_METRIC).counter().count());
+    assertEquals(new ParkingSpaceStats(Type.KW20, 0, 1), counters.stats(Type.KW20, 1));
+  }
+}
@@ -0,0 +1,95 @@
+package com.acme.parking.inventory;
+
+import com.acme.parking.TollParkingApplication;
+import com.acme.parking.inventory.dao.ParkingSpaceRepository;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Status;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import com.acme.parking.properties.AppProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ParkingSpaceInitializerTest {
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @Autowired
+  private ParkingSpaceRepository parkingSpaceRepository;
+
+  private AppProperties config;
+
+  @BeforeEach
+  void setUp() {
+    jdbcTemplate.update("delete from parking_space");
+    config = new AppProperties();
+    config.setTypeGasolineCount(2500);
+    config.setTypeKW20Count(10);
+    config.setTypeKW50Count(0);
+    config.setSeedingBatchSize(100);
+  }
+
+  @Test
+  void seedsContiguousIdBlocksPerType() {
+    ParkingSpaceInitializer initializer = new ParkingSpaceInitializer(jdbcTemplate, transactionTemplate, config);
+    initializer.run();
+
+    assertFalse(initializer.getLastSeeding().isSkipped());
+    assertEquals(2510, parkingSpaceRepository.count());
+    assertEquals(2500, parkingSpaceRepository.findByTypeAndStatus(Type.GASOLINE, Status.AVAILABLE).size());
+    ParkingSpace kw20 = parkingSpaceRepository.findById(2501L);
+    assertEquals(Type.KW20, kw20.getType());
+    assertEquals(Status.AVAILABLE, kw20.getStatus());
+    assertNull(parkingSpaceRepository.findById(2511L));
+  }
+
+  @Test
+  void generatesIdsAfterSeededOnes() {
+    new ParkingSpaceInitializer(jdbcTemplate, transactionTemplate, config).run();
+
+    ParkingSpace parkingSpace = parkingSpaceRepository.save(new ParkingSpace(null, Type.KW50));
+
+    assertEquals(2511L, parkingSpace.getId());
+  }
+
+  @Test
+  void skipsExistingLayout() {
+    new ParkingSpaceInitializer(jdbcTemplate, transactionTemplate, config).run();
+    ParkingSpaceInitializer initializer = new ParkingSpaceInitializer(jdbcTemplate, transactionTemplate, config);
+    initializer.run();
+
+    assertTrue(initializer.getLastSeeding().isSkipped());
+    assertEquals(2510, parkingSpaceRepository.count());
+  }
+
+  @Test
+  void rejectsDifferentLayout() {
+    new ParkingSpaceInitializer(jdbcTemplate, transactionTemplate, config).run();
+    config.setTypeKW50Count(5);
+
+    assertThrows(IllegalStateException.class,
+      () -> new ParkingSpaceInitializer(jdbcTemplate, transactionTemplate, config).run());
+  }
+
+  @Configuration
+  @EntityScan(basePackageClasses = TollParkingApplication.class)
+  @EnableJpaRepositories(basePackageClasses = ParkingSpaceRepository.class)
+  static class InitializerTestConfiguration {
+  }
+}
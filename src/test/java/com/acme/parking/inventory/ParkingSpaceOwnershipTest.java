@@ -0,0 +1,97 @@
+package com.acme.parking.inventory;
+
+import com.acme.parking.properties.KafkaRequestTopics;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.internals.DefaultPartitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class ParkingSpaceOwnershipTest {
+
+  private static final String TOPIC = "parkingStartRequest";
+  private static final int PARTITIONS = 4;
+  private static final Node NODE = new Node(0, "localhost", 9092);
+
+  private ApplicationEventPublisher eventPublisher;
+  private ParkingSpaceOwnership ownership;
+  private MockConsumer<String, Object> consumer;
+
+  @BeforeEach
+  void setUp() {
+    KafkaRequestTopics requestTopics = new KafkaRequestTopics();
+    requestTopics.setParkingStart(TOPIC);
+    eventPublisher = mock(ApplicationEventPublisher.class);
+    ownership = new ParkingSpaceOwnership(requestTopics, eventPublisher);
+
+    consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+    consumer.updatePartitions(TOPIC, partitionInfos());
+  }
+
+  @Test
+  void ownsAllParkingSpacesUntilAssigned() {
+    assertFalse(ownership.isPartitioned());
+    assertTrue(LongStream.rangeClosed(1, 100).allMatch(ownership::owns));
+  }
+
+  @Test
+  void ownsParkingSpacesOfAssignedPartitions() {
+    ownership.onPartitionsAssigned(consumer, List.of(new TopicPartition(TOPIC, 1), new TopicPartition("other", 0)));
+
+    assertTrue(ownership.isPartitioned());
+    verify(eventPublisher).publishEvent(any(ParkingSpaceOwnership.OwnershipChangedEvent.class));
+    Set<Integer> ownedPartitions = LongStream.rangeClosed(1, 100)
+      .filter(ownership::owns)
+      .mapToObj(id -> ParkingSpaceOwnership.partitionFor(String.valueOf(id), PARTITIONS))
+      .collect(Collectors.toSet());
+    assertEquals(Set.of(1), ownedPartitions);
+
+    ownership.onPartitionsRevokedBeforeCommit(consumer, List.of(new TopicPartition(TOPIC, 1)));
+    assertTrue(LongStream.rangeClosed(1, 100).noneMatch(ownership::owns));
+  }
+
+  @Test
+  void retainsPartitionsOwnedAcrossRebalances() {
+    ownership.onPartitionsAssigned(consumer, List.of(new TopicPartition(TOPIC, 1), new TopicPartition(TOPIC, 2)));
+    assertEquals(Set.of(), ownership.getRetainedPartitions());
+
+    ownership.onPartitionsRevokedBeforeCommit(consumer, List.of(new TopicPartition(TOPIC, 1), new TopicPartition(TOPIC, 2)));
+    ownership.onPartitionsAssigned(consumer, List.of(new TopicPartition(TOPIC, 2), new TopicPartition(TOPIC, 3)));
+
+    assertEquals(Set.of(2), ownership.getRetainedPartitions());
+  }
+
+  @Test
+  void partitionsLikeKafkaDefaultPartitioner() {
+    Cluster cluster = new Cluster("cluster", List.of(NODE), partitionInfos(),
+      Collections.emptySet(), Collections.emptySet());
+    DefaultPartitioner partitioner = new DefaultPartitioner();
+    LongStream.rangeClosed(1, 1000).mapToObj(String::valueOf).forEach(key ->
+      assertEquals(partitioner.partition(TOPIC, key, key.getBytes(StandardCharsets.UTF_8), null, null, cluster),
+        ParkingSpaceOwnership.partitionFor(key, PARTITIONS)));
+  }
+
+  private static List<PartitionInfo> partitionInfos() {
+    return IntStream.range(0, PARTITIONS)
+      .mapToObj(partition -> new PartitionInfo(TOPIC, partition, NODE, new Node[]{NODE}, new Node[]{NODE}))
+      .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,58 @@
+package com.acme.parking.inventory;
+
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.inventory.dao.ParkingRepository;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.messaging.Operation;
+import com.acme.parking.messaging.RequestReplyGateway;
+import com.acme.parking.properties.AppProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest
+class PendingBillingSweeperTest {
+
+  @Autowired
+  private ParkingRepository parkingRepository;
+
+  @Test
+  void resendsOwnedBillingsLeftPending() {
+    LocalDateTime longAgo = LocalDateTime.now().minusHours(1);
+    Long leftPending = save(3L, longAgo, Billing.pending());
+    save(4L, longAgo, Billing.pending());
+    save(3L, longAgo, new Billing("EUR", 5.0));
+    // Possibly still being priced
+    save(3L, LocalDateTime.now(), Billing.pending());
+    AppProperties config = new AppProperties();
+    ParkingSpaceOwnership ownership = mock(ParkingSpaceOwnership.class);
+    when(ownership.owns(3L)).thenReturn(true);
+    RequestReplyGateway gateway = mock(RequestReplyGateway.class);
+    when(gateway.send(eq(Operation.PENDING_BILLING_CALCULATION), any(Parking.class)))
+      .thenReturn(CompletableFuture.completedFuture(null));
+
+    assertEquals(1, new PendingBillingSweeper(config, parkingRepository, ownership, gateway).sweep());
+
+    verify(gateway).send(eq(Operation.PENDING_BILLING_CALCULATION), argThat(parking -> parking.getId().equals(leftPending)
+      && parking.getBilling().getStatus() == Billing.Status.PENDING));
+  }
+
+  private Long save(Long parkingSpaceId, LocalDateTime endDateTime, Billing billing) {
+    Parking parking = new Parking();
+    parking.setParkingSpaceId(parkingSpaceId);
+    parking.setEndDateTime(endDateTime);
+    parking.setBilling(billing);
+    return parkingRepository.save(parking).getId();
+  }
+}
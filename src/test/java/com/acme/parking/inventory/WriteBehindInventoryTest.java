@@ -0,0 +1,193 @@
+package com.acme.parking.inventory;
+
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.inventory.dao.BillingRepository;
+import com.acme.parking.inventory.dao.ParkingRepository;
+import com.acme.parking.inventory.dao.ParkingSpaceRepository;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Status;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import com.acme.parking.properties.WriteBehindProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Flushes run their own transactions
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class WriteBehindInventoryTest {
+
+  @Autowired
+  private ParkingSpaceRepository parkingSpaceRepository;
+
+  @Autowired
+  private ParkingRepository parkingRepository;
+
+  @Autowired
+  private BillingRepository billingRepository;
+
+  @Autowired
+  private DataSource dataSource;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @TempDir
+  Path logDirectory;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private WriteBehindInventory writeBehind;
+
+  @BeforeEach
+  void setUp() {
+    writeBehind = start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    writeBehind.stop();
+  }
+
+  @Test
+  void flushesCoalescedChangesInBackground() {
+    Long parkingSpaceId = parkingSpaceRepository.save(new ParkingSpace(null, Type.KW20)).getId();
+    ParkingSpace parkingSpace = writeBehind.parkingSpace(parkingSpaceId);
+    assertTrue(writeBehind.claim(parkingSpaceId));
+    assertFalse(writeBehind.claim(parkingSpaceId));
+    Parking parking = new Parking();
+    parking.setParkingSpaceId(parkingSpaceId);
+    parkingSpace.setStatus(Status.OCCUPIED);
+    parkingSpace.setCurrentParkingInformation(parking);
+    writeBehind.save(List.of(parking, parkingSpace));
+    Long parkingId = parking.getId();
+
+    assertNotNull(parkingId);
+    assertEquals(parking, writeBehind.parking(parkingId));
+    assertEquals(Status.OCCUPIED, writeBehind.parkingSpace(parkingSpaceId).getStatus());
+    assertEquals(Status.AVAILABLE, parkingSpaceRepository.findById(parkingSpaceId).getStatus());
+    assertNull(parkingRepository.findById(parkingId));
+    assertTrue(writeBehind.lagNanos() > 0);
+
+    parkingSpace.setStatus(Status.AVAILABLE);
+    parkingSpace.setCurrentParkingInformation(null);
+    parking.setEndDateTime(LocalDateTime.now());
+    parking.setDurationSeconds(0L);
+    parking.setBilling(new Billing("EUR", 2.5));
+    writeBehind.save(List.of(parkingSpace, parking));
+    writeBehind.flush();
+
+    assertEquals(0, writeBehind.lagNanos());
+    // One parking then one parking space, despite two changes each
+    assertEquals(2, meterRegistry.get(WriteBehindInventory.BATCH_SIZE_METRIC).summary().count());
+    assertEquals(2, meterRegistry.get(WriteBehindInventory.BATCH_SIZE_METRIC).summary().totalAmount());
+    ParkingSpace flushedParkingSpace = parkingSpaceRepository.findWithCurrentParkingById(parkingSpaceId);
+    assertEquals(Status.AVAILABLE, flushedParkingSpace.getStatus());
+    assertNull(flushedParkingSpace.getCurrentParkingInformation());
+    assertEquals(1, flushedParkingSpace.getVersion());
+    Parking flushedParking = parkingRepository.findById(parkingId);
+    assertNotNull(flushedParking.getEndDateTime());
+    assertEquals(2.5, flushedParking.getBilling().getAmount());
+    assertEquals(flushedParking.getBilling(), writeBehind.parking(parkingId).getBilling());
+  }
+
+  @Test
+  void flushesChangesLeftInLogOnStartup() {
+    Long parkingSpaceId = parkingSpaceRepository.save(new ParkingSpace(null, Type.KW50)).getId();
+    ParkingSpace parkingSpace = writeBehind.parkingSpace(parkingSpaceId);
+    assertTrue(writeBehind.claim(parkingSpaceId));
+    Parking parking = new Parking();
+    parking.setParkingSpaceId(parkingSpaceId);
+    parkingSpace.setStatus(Status.OCCUPIED);
+    parkingSpace.setCurrentParkingInformation(parking);
+    writeBehind.save(List.of(parking, parkingSpace));
+
+    // Crashed before flushing: the next run replays its log
+    WriteBehindInventory restarted = start();
+    try {
+      ParkingSpace recovered = parkingSpaceRepository.findWithCurrentParkingById(parkingSpaceId);
+      assertEquals(Status.OCCUPIED, recovered.getStatus());
+      assertEquals(parking.getId(), recovered.getCurrentParkingInformation().getId());
+      assertEquals(parking.getStartDateTime(), parkingRepository.findById(parking.getId()).getStartDateTime());
+    } finally {
+      restarted.stop();
+    }
+  }
+
+  @Test
+  void releasesClaimOfChangesFailingToBeLogged() {
+    Long parkingSpaceId = parkingSpaceRepository.save(new ParkingSpace(null, Type.KW20)).getId();
+    ParkingSpace parkingSpace = writeBehind.parkingSpace(parkingSpaceId);
+    assertTrue(writeBehind.claim(parkingSpaceId));
+    Parking parking = new Parking();
+    parking.setParkingSpaceId(parkingSpaceId);
+    parkingSpace.setStatus(Status.OCCUPIED);
+    parkingSpace.setCurrentParkingInformation(parking);
+    // Closes the log
+    writeBehind.stop();
+
+    assertThrows(UncheckedIOException.class, () -> writeBehind.save(List.of(parking, parkingSpace)));
+    assertEquals(Status.AVAILABLE, writeBehind.parkingSpace(parkingSpaceId).getStatus());
+    assertNull(writeBehind.parking(parking.getId()));
+    assertTrue(writeBehind.claim(parkingSpaceId));
+  }
+
+  @Test
+  void completesPendingBillingsInMemory() {
+    Parking parking = new Parking();
+    parking.setParkingSpaceId(3L);
+    parking.setEndDateTime(LocalDateTime.now());
+    parking.setBilling(Billing.pending());
+    writeBehind.save(List.of(parking));
+    Long billingId = parking.getBilling().getId();
+
+    assertEquals(1, writeBehind.completePendingBilling(new Billing(billingId, "EUR", 8.6, "1", Billing.Status.CALCULATED)));
+    assertEquals(0, writeBehind.completePendingBilling(new Billing(billingId, "EUR", 9.0, "2", Billing.Status.CALCULATED)));
+    writeBehind.flush();
+
+    Billing billing = billingRepository.findById(billingId).orElseThrow();
+    assertEquals(Billing.Status.CALCULATED, billing.getStatus());
+    assertEquals(8.6, billing.getAmount());
+  }
+
+  private WriteBehindInventory start() {
+    WriteBehindProperties properties = new WriteBehindProperties();
+    properties.setEnabled(true);
+    properties.setLogDirectory(logDirectory.toString());
+    // Flushed by the tests only
+    properties.setFlushInterval(Duration.ofHours(1));
+    ParkingSpaceOwnership ownership = mock(ParkingSpaceOwnership.class);
+    when(ownership.owns(anyLong())).thenReturn(true);
+    meterRegistry = new SimpleMeterRegistry();
+    WriteBehindInventory writeBehind = new WriteBehindInventory(properties, ownership, parkingSpaceRepository,
+      parkingRepository, billingRepository, new JdbcTemplate(dataSource), transactionManager, entityManagerFactory,
+      meterRegistry);
+    writeBehind.start();
+    return writeBehind;
+  }
+}
@@ -0,0 +1,39 @@
+package com.acme.parking.inventory.dao;
+
+import com.acme.parking.TollParkingApplication;
+import com.acme.parking.billing.model.Billing;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class BillingRepositoryTest {
+
+  @Autowired
+  private BillingRepository billingRepository;
+
+  @Test
+  void completePending() {
+    Long id = billingRepository.save(Billing.pending()).getId();
+
+    assertEquals(1, billingRepository.completePending(id, "EUR", 8.6, "3f9a1c07d2e4"));
+    assertEquals(0, billingRepository.completePending(id, "EUR", 9.9, "3f9a1c07d2e4"));
+
+    Billing billing = billingRepository.findById(id).orElseThrow();
+    assertEquals(Billing.Status.CALCULATED, billing.getStatus());
+    assertEquals(8.6, billing.getAmount());
+    assertEquals("EUR", billing.getCurrency());
+    assertEquals("3f9a1c07d2e4", billing.getRuleSetVersion());
+  }
+
+  @Configuration
+  @EntityScan(basePackageClasses = TollParkingApplication.class)
+  @EnableJpaRepositories(basePackageClasses = BillingRepository.class)
+  static class RepositoryTestConfiguration {
+  }
+}
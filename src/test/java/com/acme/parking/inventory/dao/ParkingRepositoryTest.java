@@ -0,0 +1,61 @@
+package com.acme.parking.inventory.dao;
+
+import com.acme.parking.TollParkingApplication;
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.inventory.model.Parking;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class ParkingRepositoryTest {
+
+  @Autowired
+  private ParkingRepository parkingRepository;
+
+  @Autowired
+  private TestEntityManager entityManager;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Test
+  void readsParkingsAndTheirBillingsInOneStatement() {
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      Parking parking = new Parking();
+      parking.setParkingSpaceId((long) i);
+      parking.setBilling(new Billing("EUR", 5.0));
+      ids.add(parkingRepository.save(parking).getId());
+    }
+    entityManager.flush();
+    entityManager.clear();
+    Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    statistics.clear();
+
+    List<Parking> parkings = parkingRepository.findByIdIn(ids);
+    parkings.forEach(parking -> assertEquals(5.0, parking.getBilling().getAmount()));
+    assertEquals(5.0, parkingRepository.findById(ids.get(0)).getBilling().getAmount());
+
+    assertEquals(5, parkings.size());
+    assertEquals(2, statistics.getPrepareStatementCount());
+  }
+
+  @Configuration
+  @EntityScan(basePackageClasses = TollParkingApplication.class)
+  @EnableJpaRepositories(basePackageClasses = ParkingRepository.class)
+  static class RepositoryTestConfiguration {
+  }
+}
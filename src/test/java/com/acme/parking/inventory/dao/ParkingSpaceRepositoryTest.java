@@ -0,0 +1,135 @@
+package com.acme.parking.inventory.dao;
+
+import com.acme.parking.TollParkingApplication;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Status;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class ParkingSpaceRepositoryTest {
+
+  @Autowired
+  private TestEntityManager entityManager;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private ParkingSpaceRepository parkingSpaceRepository;
+
+  @Autowired
+  private ParkingRepository parkingRepository;
+
+  @Test
+  void compareAndSetStatus() {
+    Long id = parkingSpaceRepository.save(new ParkingSpace(null, Type.GASOLINE)).getId();
+
+    assertEquals(1, parkingSpaceRepository.compareAndSetStatus(id, Status.AVAILABLE, Status.OCCUPIED));
+    assertEquals(0, parkingSpaceRepository.compareAndSetStatus(id, Status.AVAILABLE, Status.OCCUPIED));
+
+    ParkingSpace parkingSpace = parkingSpaceRepository.findById(id);
+    assertEquals(Status.OCCUPIED, parkingSpace.getStatus());
+    assertEquals(1, parkingSpace.getVersion());
+  }
+
+  @Test
+  void updateCurrentParkingInformation() {
+    Long id = parkingSpaceRepository.save(new ParkingSpace(null, Type.KW20)).getId();
+    Parking parking = new Parking();
+    parking.setParkingSpaceId(id);
+    parking = parkingRepository.save(parking);
+
+    assertEquals(1, parkingSpaceRepository.updateCurrentParkingInformation(id, parking));
+    assertEquals(parking.getId(), parkingSpaceRepository.findById(id).getCurrentParkingInformation().getId());
+  }
+
+  @Test
+  void findByTypeAndStatusAndIdGreaterThan() {
+    for (long id = 1; id <= 6; id++) {
+      parkingSpaceRepository.save(new ParkingSpace(null, id % 2 == 0 ? Type.KW50 : Type.KW20));
+    }
+    List<Long> kw20Ids = parkingSpaceRepository.findByTypeAndStatus(Type.KW20, Status.AVAILABLE).stream()
+      .map(ParkingSpaceSummary::getId).sorted().collect(Collectors.toList());
+
+    List<ParkingSpaceSummary> firstPage = parkingSpaceRepository.findByTypeAndStatusAndIdGreaterThanOrderByIdAsc(
+      Type.KW20, Status.AVAILABLE, 0L, PageRequest.of(0, 2));
+    assertEquals(kw20Ids.subList(0, 2), firstPage.stream().map(ParkingSpaceSummary::getId).collect(Collectors.toList()));
+
+    List<ParkingSpaceSummary> nextPage = parkingSpaceRepository.findByTypeAndStatusAndIdGreaterThanOrderByIdAsc(
+      Type.KW20, Status.AVAILABLE, firstPage.get(1).getId(), PageRequest.of(0, 2));
+    assertEquals(kw20Ids.subList(2, 3), nextPage.stream().map(ParkingSpaceSummary::getId).collect(Collectors.toList()));
+  }
+
+  @Test
+  void readsParkingSpacesAndTheirOngoingParkingsInOneStatement() {
+    List<Long> ids = occupiedParkingSpaces(5);
+    Statistics statistics = statistics();
+
+    parkingSpaceRepository.findAll().forEach(parkingSpace -> parkingSpace.getCurrentParkingInformation().getStartDateTime());
+    assertEquals(1, statistics.getPrepareStatementCount());
+
+    statistics.clear();
+    entityManager.clear();
+    parkingSpaceRepository.findWithCurrentParkingByIdIn(ids)
+      .forEach(parkingSpace -> parkingSpace.getCurrentParkingInformation().getStartDateTime());
+    parkingSpaceRepository.findWithCurrentParkingByTypeAndStatusAndIdGreaterThanOrderByIdAsc(Type.KW50, Status.OCCUPIED,
+      0L, PageRequest.of(0, 10)).forEach(parkingSpace -> parkingSpace.getCurrentParkingInformation().getStartDateTime());
+    assertEquals(2, statistics.getPrepareStatementCount());
+  }
+
+  @Test
+  void readsParkingSpacesWithoutTheirOngoingParkings() {
+    List<Long> ids = occupiedParkingSpaces(5);
+    Statistics statistics = statistics();
+
+    parkingSpaceRepository.findByIdIn(ids).forEach(ParkingSpace::getStatus);
+    parkingSpaceRepository.findByTypeAndStatus(Type.KW50, Status.OCCUPIED).forEach(ParkingSpaceSummary::toParkingSpace);
+
+    assertEquals(2, statistics.getPrepareStatementCount());
+    assertEquals(0, statistics.getEntityStatistics(Parking.class.getName()).getLoadCount());
+  }
+
+  // Flushed & detached, for the next reads to hit the database
+  private List<Long> occupiedParkingSpaces(int count) {
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Parking parking = new Parking();
+      ParkingSpace parkingSpace = new ParkingSpace(null, Type.KW50, Status.OCCUPIED, parking, 0);
+      ids.add(parkingSpaceRepository.save(parkingSpace).getId());
+      parking.setParkingSpaceId(parkingSpace.getId());
+    }
+    entityManager.flush();
+    entityManager.clear();
+    return ids;
+  }
+
+  private Statistics statistics() {
+    Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    statistics.clear();
+    return statistics;
+  }
+
+  @Configuration
+  @EntityScan(basePackageClasses = TollParkingApplication.class)
+  @EnableJpaRepositories(basePackageClasses = ParkingSpaceRepository.class)
+  static class RepositoryTestConfiguration {
+  }
+}
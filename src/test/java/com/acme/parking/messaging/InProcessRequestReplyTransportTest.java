@@ -0,0 +1,249 @@
+package com.acme.parking.messaging;
+
+import com.acme.parking.api.model.ParkingCompletion;
+import com.acme.parking.api.model.ParkingResult;
+import com.acme.parking.exception.ServiceOverloadedException;
+import com.acme.parking.inventory.ParkingSpaceOwnership;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.properties.KafkaRequestTopics;
+import com.acme.parking.properties.MessagingProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.kafka.annotation.KafkaHandler;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InProcessRequestReplyTransportTest {
+
+  private GenericApplicationContext context;
+  private InProcessRequestReplyTransport transport;
+
+  @BeforeEach
+  void setUp() {
+    context = new GenericApplicationContext();
+    context.setEnvironment(new MockEnvironment()
+      .withProperty("kafka.topic.request.parkingById", "parkingByIdRequest")
+      .withProperty("kafka.topic.request.parkingStart", "parkingStartRequest")
+      .withProperty("kafka.topic.request.parkingCompletion", "parkingCompletionRequest")
+      .withProperty("kafka.topic.request.pendingBillingCalculation", "pendingBillingCalculationRequest"));
+    context.registerBean(ParkingListener.class);
+    context.registerBean(ParkingCommandListener.class);
+    context.refresh();
+
+    transport = transport(1, 1);
+  }
+
+  @AfterEach
+  void tearDown() {
+    transport.shutdown();
+    context.close();
+  }
+
+  @Test
+  void dispatchesToListenerMethod() throws Exception {
+    Parking parking = (Parking) transport.sendAndReceive(Operation.PARKING_BY_ID, null, 8L, Duration.ofSeconds(1)).get();
+    assertEquals(8L, parking.getId());
+  }
+
+  @Test
+  void propagatesListenerException() {
+    ExecutionException exception = assertThrows(ExecutionException.class,
+      () -> transport.sendAndReceive(Operation.PARKING_BY_ID, null, -1L, Duration.ofSeconds(1)).get());
+    assertTrue(exception.getCause() instanceof IllegalArgumentException);
+  }
+
+  @Test
+  void dispatchesToKafkaHandlerMethod() throws Exception {
+    Parking parking = new Parking();
+    parking.setParkingSpaceId(3L);
+    ParkingResult result = (ParkingResult) transport.sendAndReceive(Operation.PARKING_START, "3", parking,
+      Duration.ofSeconds(1)).get();
+    assertSame(parking, result.getParking());
+
+    ParkingResult completion = (ParkingResult) transport.sendAndReceive(Operation.PARKING_COMPLETION, "3", new ParkingCompletion(8L),
+      Duration.ofSeconds(1)).get();
+    assertEquals(8L, completion.getParking().getId());
+  }
+
+  @Test
+  void dispatchesOneWayRequest() throws Exception {
+    ParkingListener listener = context.getBean(ParkingListener.class);
+    Parking parking = new Parking();
+
+    transport.send(Operation.PENDING_BILLING_CALCULATION, null, parking).get();
+
+    assertTrue(listener.pendingBillings.await(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void failsWithoutListener() {
+    ExecutionException exception = assertThrows(ExecutionException.class,
+      () -> transport.sendAndReceive(Operation.BILLING_CALCULATION, null, new Parking(), Duration.ofSeconds(1)).get());
+    assertTrue(exception.getCause() instanceof IllegalStateException);
+  }
+
+  @Test
+  void timesOut() throws Exception {
+    ParkingListener listener = context.getBean(ParkingListener.class);
+    try {
+      ExecutionException exception = assertThrows(ExecutionException.class,
+        () -> transport.sendAndReceive(Operation.PARKING_BY_ID, null, 0L, Duration.ofMillis(50)).get());
+      assertTrue(exception.getCause() instanceof TimeoutException);
+    } finally {
+      listener.blocked.countDown();
+    }
+  }
+
+  @Test
+  void runsNestedRequestsOnCallerThread() throws Exception {
+    InProcessRequestReplyTransport transport = transport(2, 16);
+    try {
+      // More completions than threads, each waiting for a nested lookup
+      List<CompletableFuture<Object>> completions = new ArrayList<>();
+      for (long id = 1; id <= 8; id++) {
+        completions.add(transport.sendAndReceive(Operation.PARKING_COMPLETION, String.valueOf(id), new ParkingCompletion(-id),
+          Duration.ofSeconds(1)));
+      }
+
+      for (int i = 0; i < completions.size(); i++) {
+        assertEquals(i + 1L, ((ParkingResult) completions.get(i).get()).getParking().getId());
+      }
+    } finally {
+      transport.shutdown();
+    }
+  }
+
+  @Test
+  void serializesRequestsOfSamePartition() throws Exception {
+    InProcessRequestReplyTransport transport = transport(4, 16);
+    try {
+      List<CompletableFuture<Object>> starts = new ArrayList<>();
+      for (long id = 1; id <= 8; id++) {
+        Parking parking = new Parking();
+        parking.setParkingSpaceId(id);
+        starts.add(transport.sendAndReceive(Operation.PARKING_START, String.valueOf(id), parking, Duration.ofSeconds(1)));
+      }
+      CompletableFuture.allOf(starts.toArray(new CompletableFuture[0])).get();
+
+      // Single partition until partitions are assigned
+      assertEquals(1, context.getBean(ParkingCommandListener.class).maxConcurrentStarts.get());
+    } finally {
+      transport.shutdown();
+    }
+  }
+
+  @Test
+  void rejectsRequestsAboveQueueCapacity() throws Exception {
+    ParkingListener listener = context.getBean(ParkingListener.class);
+    try {
+      transport.sendAndReceive(Operation.PARKING_BY_ID, "3", 0L, Duration.ofSeconds(1));
+      assertTrue(listener.blocking.await(1, TimeUnit.SECONDS));
+      assertFalse(transport.sendAndReceive(Operation.PARKING_BY_ID, "3", 1L, Duration.ofSeconds(1)).isDone());
+
+      ExecutionException exception = assertThrows(ExecutionException.class,
+        () -> transport.sendAndReceive(Operation.PARKING_BY_ID, "3", 2L, Duration.ofSeconds(1)).get());
+      assertTrue(exception.getCause() instanceof ServiceOverloadedException);
+      assertEquals("Too many requests queued (capacity 1), please retry later", exception.getCause().getMessage());
+    } finally {
+      listener.blocked.countDown();
+    }
+  }
+
+  private InProcessRequestReplyTransport transport(int threads, int queueCapacity) {
+    KafkaRequestTopics requestTopics = new KafkaRequestTopics();
+    requestTopics.setParkingById("parkingByIdRequest");
+    requestTopics.setParkingStart("parkingStartRequest");
+    requestTopics.setParkingCompletion("parkingCompletionRequest");
+    requestTopics.setBillingCalculation("billingCalculationRequest");
+    requestTopics.setPendingBillingCalculation("pendingBillingCalculationRequest");
+    MessagingProperties messagingProperties = new MessagingProperties();
+    messagingProperties.setInProcessThreads(threads);
+    messagingProperties.setInProcessQueueCapacity(queueCapacity);
+
+    InProcessRequestReplyTransport transport = new InProcessRequestReplyTransport(context, requestTopics,
+      messagingProperties, new ParkingSpaceOwnership(requestTopics, event -> {
+    }));
+    transport.afterSingletonsInstantiated();
+    context.getBean(ParkingCommandListener.class).transport = transport;
+    return transport;
+  }
+
+  static class ParkingListener {
+
+    private final CountDownLatch blocking = new CountDownLatch(1);
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private final CountDownLatch pendingBillings = new CountDownLatch(1);
+
+    @KafkaListener(topics = "${kafka.topic.request.parkingById}")
+    public Parking getParkingById(Long id) throws InterruptedException {
+      if (id < 0) {
+        throw new IllegalArgumentException();
+      }
+      if (id == 0) {
+        blocking.countDown();
+        blocked.await();
+      }
+      Parking parking = new Parking();
+      parking.setId(id);
+      return parking;
+    }
+
+    @KafkaListener(topics = "${kafka.topic.request.pendingBillingCalculation}")
+    public void calculatePendingBilling(Parking parking) {
+      pendingBillings.countDown();
+    }
+
+    // Batch listener of the same topic, never dispatched to
+    @KafkaListener(topics = "${kafka.topic.request.pendingBillingCalculation}")
+    public void calculatePendingBillings(List<Parking> parkings) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  @KafkaListener(topics = {"${kafka.topic.request.parkingStart}", "${kafka.topic.request.parkingCompletion}"})
+  static class ParkingCommandListener {
+
+    private RequestReplyTransport transport;
+
+    private final AtomicInteger concurrentStarts = new AtomicInteger();
+    private final AtomicInteger maxConcurrentStarts = new AtomicInteger();
+
+    @KafkaHandler
+    public ParkingResult startParking(Parking parking) throws InterruptedException {
+      maxConcurrentStarts.accumulateAndGet(concurrentStarts.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(5);
+        return ParkingResult.accepted(parking);
+      } finally {
+        concurrentStarts.decrementAndGet();
+      }
+    }
+
+    // Negative ids are looked up with a nested request, like the billing of a completion
+    @KafkaHandler
+    public ParkingResult endParking(ParkingCompletion completion) throws Exception {
+      long id = completion.getParkingId();
+      if (id < 0) {
+        return ParkingResult.accepted((Parking) transport.sendAndReceive(Operation.PARKING_BY_ID, null, -id,
+          Duration.ofSeconds(1)).get());
+      }
+      Parking parking = new Parking();
+      parking.setId(id);
+      return ParkingResult.accepted(parking);
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package com.acme.parking.messaging;
+
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.properties.KafkaRequestTopics;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.requestreply.ReplyingKafkaTemplate;
+import org.springframework.kafka.requestreply.RequestReplyFuture;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class KafkaRequestReplyTransportTest {
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void sendAndReceive() throws Exception {
+    ReplyingKafkaTemplate<String, Object, Object> template = mock(ReplyingKafkaTemplate.class);
+    RequestReplyFuture<String, Object, Object> pendingReply = new RequestReplyFuture<>();
+    when(template.sendAndReceive(any(), any(Duration.class))).thenReturn(pendingReply);
+    KafkaRequestTopics requestTopics = new KafkaRequestTopics();
+    requestTopics.setParkingById("parkingByIdRequest");
+    KafkaRequestReplyTransport transport = new KafkaRequestReplyTransport(template, requestTopics);
+
+    CompletableFuture<Object> reply = transport.sendAndReceive(Operation.PARKING_BY_ID, "3", 8L, Duration.ofMillis(250));
+
+    ArgumentCaptor<ProducerRecord<String, Object>> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+    verify(template).sendAndReceive(captor.capture(), eq(Duration.ofMillis(250)));
+    ProducerRecord<String, Object> record = captor.getValue();
+    assertEquals("parkingByIdRequest", record.topic());
+    assertEquals("3", record.key());
+    assertEquals(8L, record.value());
+
+    Parking parking = new Parking();
+    pendingReply.set(new ConsumerRecord<>("parkingReply-local", 0, 0, "key", parking));
+    assertSame(parking, reply.get());
+  }
+}
@@ -0,0 +1,121 @@
+package com.acme.parking.messaging;
+
+import com.acme.parking.api.model.ParkingSpaceStats;
+import com.acme.parking.api.model.ParkingSpaceStatsQuery;
+import com.acme.parking.inventory.ParkingSpaceOwnership;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import com.acme.parking.properties.KafkaReplyTimeouts;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.requestreply.KafkaReplyTimeoutException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RequestReplyGatewayTest {
+
+  private RequestReplyTransport transport;
+  private SimpleMeterRegistry meterRegistry;
+  private RequestReplyGateway gateway;
+  private CompletableFuture<Object> pendingReply;
+
+  @BeforeEach
+  void setUp() {
+    transport = mock(RequestReplyTransport.class);
+    pendingReply = new CompletableFuture<>();
+    when(transport.sendAndReceive(any(), any(), any(), any())).thenReturn(pendingReply);
+
+    KafkaReplyTimeouts replyTimeouts = new KafkaReplyTimeouts();
+    replyTimeouts.setParkingById(Duration.ofMillis(250));
+
+    meterRegistry = new SimpleMeterRegistry();
+    gateway = new RequestReplyGateway(transport, replyTimeouts, meterRegistry);
+  }
+
+  @Test
+  void sendAndReceive() throws Exception {
+    CompletableFuture<Parking> reply = gateway.sendAndReceive(Operation.PARKING_BY_ID, 8L);
+    verify(transport).sendAndReceive(Operation.PARKING_BY_ID, null, 8L, Duration.ofMillis(250));
+
+    Parking parking = new Parking();
+    pendingReply.complete(parking);
+    assertSame(parking, reply.get());
+    assertEquals(1, meterRegistry.get(RequestReplyGateway.LATENCY_METRIC)
+      .tags("operation", "parkingById", "outcome", "success").timer().count());
+  }
+
+  @Test
+  void replyTimeout() {
+    CompletableFuture<Parking> reply = gateway.sendAndReceive(Operation.PARKING_BY_ID, 8L);
+    pendingReply.completeExceptionally(new KafkaReplyTimeoutException("Reply timed out"));
+
+    ExecutionException exception = assertThrows(ExecutionException.class, reply::get);
+    assertTrue(exception.getCause() instanceof KafkaReplyTimeoutException);
+    assertEquals(1, meterRegistry.get(RequestReplyGateway.LATENCY_METRIC)
+      .tags("operation", "parkingById", "outcome", "timeout").timer().count());
+  }
+
+  @Test
+  void unexpectedReplyType() {
+    CompletableFuture<Parking> reply = gateway.sendAndReceive(Operation.PARKING_BY_ID, 8L);
+    pendingReply.complete("not a parking");
+
+    ExecutionException exception = assertThrows(ExecutionException.class, reply::get);
+    assertTrue(exception.getCause() instanceof ClassCastException);
+    assertEquals(1, meterRegistry.get(RequestReplyGateway.LATENCY_METRIC)
+      .tags("operation", "parkingById", "outcome", "error").timer().count());
+  }
+
+  @Test
+  void sendToEachPartition() {
+    when(transport.partitionCount(Operation.PARKING_SPACE_STATS)).thenReturn(3);
+
+    List<CompletableFuture<ParkingSpaceStats>> replies = gateway.sendToEachPartition(Operation.PARKING_SPACE_STATS,
+      partition -> new ParkingSpaceStatsQuery(Type.KW20, partition));
+
+    assertEquals(3, replies.size());
+    for (int partition = 0; partition < 3; partition++) {
+      int expectedPartition = partition;
+      verify(transport).sendAndReceive(eq(Operation.PARKING_SPACE_STATS),
+        argThat(key -> ParkingSpaceOwnership.partitionFor(key, 3) == expectedPartition),
+        eq(new ParkingSpaceStatsQuery(Type.KW20, partition)), any());
+    }
+  }
+
+  @Test
+  void groupByPartition() {
+    List<Long> parkingSpaceIds = new ArrayList<>();
+    for (long id = 1; id <= 20; id++) {
+      parkingSpaceIds.add(id);
+    }
+    assertEquals(List.of(parkingSpaceIds), new ArrayList<>(gateway.groupByPartition(Operation.PARKING_START_BATCH,
+      parkingSpaceIds, String::valueOf)));
+
+    when(transport.partitionCount(Operation.PARKING_START_BATCH)).thenReturn(3);
+    List<List<Long>> groups = new ArrayList<>(gateway.groupByPartition(Operation.PARKING_START_BATCH, parkingSpaceIds,
+      String::valueOf));
+
+    assertEquals(3, groups.size());
+    assertEquals(20, groups.stream().mapToInt(List::size).sum());
+    for (List<Long> group : groups) {
+      assertEquals(1, group.stream()
+        .map(id -> ParkingSpaceOwnership.partitionFor(String.valueOf(id), 3))
+        .distinct().count());
+      assertEquals(group.stream().sorted().collect(Collectors.toList()), group);
+    }
+  }
+}
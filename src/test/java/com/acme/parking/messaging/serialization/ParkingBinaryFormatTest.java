@@ -0,0 +1,96 @@
+package com.acme.parking.messaging.serialization;
+
+import com.acme.parking.api.model.IdBatch;
+import com.acme.parking.api.model.ParkingBatchResult;
+import com.acme.parking.api.model.ParkingCompletion;
+import com.acme.parking.api.model.ParkingCompletionBatch;
+import com.acme.parking.api.model.ParkingResult;
+import com.acme.parking.api.model.ParkingSpaceQuery;
+import com.acme.parking.api.model.ParkingSpaceQueryResult;
+import com.acme.parking.api.model.ParkingSpaceStats;
+import com.acme.parking.api.model.ParkingSpaceStatsQuery;
+import com.acme.parking.api.model.ParkingStartBatch;
+import com.acme.parking.api.model.UnflushedParkingsQuery;
+import com.acme.parking.billing.model.Billing;
+import com.acme.parking.inventory.model.Parking;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Status;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import com.acme.parking.inventory.model.ParkingSpaceEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParkingBinaryFormatTest {
+
+  static Parking completedParking() {
+    return new Parking(8L, 3L, Type.KW50, LocalDateTime.of(2020, 4, 13, 7, 30, 0, 123_456_789),
+      LocalDateTime.of(2020, 4, 13, 8, 30), 3600L, new Billing(9L, "EUR", 8.6, "3f9a1c07d2e4", Billing.Status.CALCULATED));
+  }
+
+  @Test
+  void roundTrip() {
+    ParkingSpace occupied = new ParkingSpace(3L, Type.KW50, Status.OCCUPIED, completedParking(), 0);
+    List<Object> values = List.of(
+      8L, -1L, Long.MAX_VALUE,
+      Type.KW20,
+      completedParking(),
+      new ParkingSpace(1L, Type.GASOLINE),
+      occupied,
+      new Billing(null, "EUR", null, null, null),
+      Billing.pending(),
+      new ParkingSpaceQuery(Type.GASOLINE, Status.OCCUPIED, 20, ParkingSpaceQuery.cursorAfter(42)),
+      new ParkingSpaceQueryResult(List.of(new ParkingSpace(1L, Type.GASOLINE), occupied), "Mg"),
+      new ParkingSpaceQueryResult(null, null),
+      ParkingResult.accepted(completedParking()),
+      ParkingResult.rejected(ParkingResult.Rejection.PARKING_SPACE_NOT_AVAILABLE),
+      ParkingSpaceEvent.parkingStarted(occupied, completedParking()),
+      ParkingSpaceEvent.parkingCompleted(occupied),
+      new ParkingSpaceStats(Type.KW50, 12, 3),
+      new ParkingSpaceStatsQuery(Type.KW20, 5),
+      new UnflushedParkingsQuery(List.of(8L, 9L), 2),
+      new IdBatch(List.of(8L, 9L)),
+      new ParkingStartBatch(List.of(1L, 300L)),
+      new ParkingCompletion(8L),
+      new ParkingCompletionBatch(List.of(8L)),
+      new ParkingBatchResult(List.of(ParkingResult.accepted(completedParking()),
+        ParkingResult.rejected(ParkingResult.Rejection.PARKING_ALREADY_COMPLETED))));
+
+    for (Object value : values) {
+      byte[] encoded = ParkingBinaryFormat.encode(value);
+      assertTrue(ParkingBinaryFormat.isBinary(encoded));
+      assertEquals(value, ParkingBinaryFormat.decode(encoded));
+    }
+  }
+
+  @Test
+  void keepsNullFields() {
+    Parking parking = new Parking(null, 3L, null, null, null, null, null);
+    assertEquals(parking, ParkingBinaryFormat.decode(ParkingBinaryFormat.encode(parking)));
+  }
+
+  @Test
+  void rejectsUnsupportedVersion() {
+    byte[] encoded = ParkingBinaryFormat.encode(8L);
+    encoded[1] = ParkingBinaryFormat.VERSION + 1;
+    assertThrows(SerializationException.class, () -> ParkingBinaryFormat.decode(encoded));
+  }
+
+  @Test
+  void rejectsTruncatedMessage() {
+    byte[] encoded = ParkingBinaryFormat.encode(completedParking());
+    assertThrows(SerializationException.class,
+      () -> ParkingBinaryFormat.decode(Arrays.copyOf(encoded, encoded.length - 3)));
+  }
+
+  @Test
+  void rejectsUnsupportedType() {
+    assertFalse(ParkingBinaryFormat.supports("text"));
+    assertThrows(SerializationException.class, () -> ParkingBinaryFormat.encode("text"));
+  }
+}
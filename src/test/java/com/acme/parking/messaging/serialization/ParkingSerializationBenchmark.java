@@ -0,0 +1,88 @@
+package com.acme.parking.messaging.serialization;
+
+import com.acme.parking.api.model.ParkingSpaceQueryResult;
+import com.acme.parking.inventory.model.ParkingSpace;
+import com.acme.parking.inventory.model.ParkingSpace.Type;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares payload size and serialization round trip time of the binary and JSON formats.
+ * Run with {@code mvn test -Pbenchmark}
+ */
+class ParkingSerializationBenchmark {
+
+  private static final String TOPIC = "parkingReply-benchmark";
+  private static final int WARMUP_ITERATIONS = 200_000;
+  private static final int ITERATIONS = 500_000;
+
+  @Test
+  void binaryVersusJson() {
+    Map<String, Object> messages = new LinkedHashMap<>();
+    messages.put("parking space id", 123_456L);
+    messages.put("parking space type", Type.KW20);
+    messages.put("completed parking", ParkingBinaryFormatTest.completedParking());
+    messages.put("query result of 100", new ParkingSpaceQueryResult(LongStream.rangeClosed(1, 100)
+      .mapToObj(id -> new ParkingSpace(id, Type.GASOLINE)).collect(Collectors.toList()), "MTAw"));
+
+    JsonSerializer<Object> jsonSerializer = new JsonSerializer<>();
+    JsonDeserializer<Object> jsonDeserializer = new JsonDeserializer<>();
+    jsonDeserializer.configure(Map.of(JsonDeserializer.TRUSTED_PACKAGES,
+      "com.acme.parking.api.model,com.acme.parking.inventory.model,com.acme.parking.billing.model"), false);
+    ParkingSerializer binarySerializer = new ParkingSerializer();
+    binarySerializer.configure(Map.of(ParkingSerializer.BINARY_TOPICS, TOPIC), false);
+    ParkingDeserializer binaryDeserializer = new ParkingDeserializer();
+    binaryDeserializer.configure(Map.of(), false);
+
+    System.out.printf("%-20s %12s %12s %14s %14s%n", "message", "json bytes", "binary bytes", "json ns/op", "binary ns/op");
+    messages.forEach((name, message) -> {
+      int jsonSize = recordSize(jsonSerializer, message);
+      int binarySize = recordSize(binarySerializer, message);
+      double jsonNanos = roundTripNanos(jsonSerializer, jsonDeserializer, message);
+      double binaryNanos = roundTripNanos(binarySerializer, binaryDeserializer, message);
+      System.out.printf("%-20s %12d %12d %14.0f %14.0f%n", name, jsonSize, binarySize, jsonNanos, binaryNanos);
+      assertTrue(binarySize < jsonSize);
+    });
+  }
+
+  // Value and headers, type headers being part of the JSON format
+  private static int recordSize(Serializer<Object> serializer, Object message) {
+    RecordHeaders headers = new RecordHeaders();
+    int size = serializer.serialize(TOPIC, headers, message).length;
+    for (Header header : headers) {
+      size += header.key().length() + header.value().length;
+    }
+    return size;
+  }
+
+  private static double roundTripNanos(Serializer<Object> serializer, Deserializer<Object> deserializer, Object message) {
+    long blackhole = 0;
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      blackhole += roundTrip(serializer, deserializer, message).hashCode();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      blackhole += roundTrip(serializer, deserializer, message).hashCode();
+    }
+    long elapsed = System.nanoTime() - start;
+    assertNotEquals(42, blackhole);
+    return (double) elapsed / ITERATIONS;
+  }
+
+  private static Object roundTrip(Serializer<Object> serializer, Deserializer<Object> deserializer, Object message) {
+    RecordHeaders headers = new RecordHeaders();
+    return deserializer.deserialize(TOPIC, headers, serializer.serialize(TOPIC, headers, message));
+  }
+}
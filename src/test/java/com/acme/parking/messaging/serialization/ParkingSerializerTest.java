@@ -0,0 +1,49 @@
+package com.acme.parking.messaging.serialization;
+
+import com.acme.parking.inventory.model.Parking;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParkingSerializerTest {
+
+  private ParkingSerializer serializer;
+  private ParkingDeserializer deserializer;
+
+  @BeforeEach
+  void setUp() {
+    serializer = new ParkingSerializer();
+    serializer.configure(Map.of(ParkingSerializer.BINARY_TOPICS, "parkingByIdRequest, parkingReply-*"), false);
+    deserializer = new ParkingDeserializer();
+    deserializer.configure(Map.of(JsonDeserializer.TRUSTED_PACKAGES,
+      "com.acme.parking.api.model,com.acme.parking.inventory.model,com.acme.parking.billing.model"), false);
+  }
+
+  @Test
+  void binaryTopics() {
+    assertTrue(ParkingBinaryFormat.isBinary(serializer.serialize("parkingByIdRequest", new RecordHeaders(), 8L)));
+    assertTrue(ParkingBinaryFormat.isBinary(serializer.serialize("parkingReply-node1", new RecordHeaders(), 8L)));
+    assertFalse(ParkingBinaryFormat.isBinary(serializer.serialize("parkingStartRequest", new RecordHeaders(), 8L)));
+    assertFalse(ParkingBinaryFormat.isBinary(serializer.serialize("parkingByIdRequest", new RecordHeaders(), "text")));
+  }
+
+  @Test
+  void readsBinaryAndJson() {
+    for (String topic : new String[]{"parkingByIdRequest", "parkingCompletionRequest"}) {
+      RecordHeaders headers = new RecordHeaders();
+      byte[] data = serializer.serialize(topic, headers, 8L);
+      assertEquals(8L, deserializer.deserialize(topic, headers, data));
+    }
+
+    // Unlike JSON, the binary format keeps the start time of the parking
+    Parking parking = ParkingBinaryFormatTest.completedParking();
+    RecordHeaders headers = new RecordHeaders();
+    assertEquals(parking, deserializer.deserialize("parkingReply-node1", headers,
+      serializer.serialize("parkingReply-node1", headers, parking)));
+  }
+}